@@ -0,0 +1,75 @@
+package com.example.email.benchmarks;
+
+import com.example.email.benchmarks.support.BenchmarkFixtures;
+import com.example.email.core.model.Email;
+import com.example.email.core.provider.EmailContext;
+import com.example.email.core.sender.ConfigurableEmailSender;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of turning an {@link Email} into the {@link EmailContext} handed to providers
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ContextConversionBenchmark {
+
+    @Param({"1", "10"})
+    private int recipients;
+
+    @Param({"0", "3"})
+    private int attachments;
+
+    private Email email;
+    private ExposedEmailSender sender;
+
+    @Setup
+    public void setup() {
+        email = BenchmarkFixtures.email(recipients, attachments, 1024);
+        sender = new ExposedEmailSender();
+    }
+
+    @Benchmark
+    public EmailContext convert() {
+        return sender.convert(email);
+    }
+
+    /**
+     * Conversion followed by the reads a provider does when building the message
+     */
+    @Benchmark
+    public void convertAndRead(Blackhole blackhole) {
+        EmailContext context = sender.convert(email);
+        blackhole.consume(context.getFrom());
+        blackhole.consume(context.getTo().size());
+        blackhole.consume(context.getCc().size());
+        blackhole.consume(context.getBcc().size());
+        blackhole.consume(context.getSubject());
+        blackhole.consume(context.getContent());
+        for (int i = 0; i < context.getAttachments().size(); i++) {
+            blackhole.consume(context.getAttachments().get(i));
+        }
+    }
+
+    private static final class ExposedEmailSender extends ConfigurableEmailSender {
+        EmailContext convert(Email email) {
+            return createEmailContext(email);
+        }
+    }
+}
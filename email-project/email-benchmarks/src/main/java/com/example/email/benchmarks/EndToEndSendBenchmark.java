@@ -0,0 +1,131 @@
+package com.example.email.benchmarks;
+
+import com.example.email.benchmarks.support.BenchmarkFixtures;
+import com.example.email.core.model.Email;
+import com.example.email.core.provider.MailBatchResult;
+import com.example.email.core.provider.MailProviderFactory;
+import com.example.email.core.sender.BatchSendResult;
+import com.example.email.core.sender.ConfigurableEmailSender;
+import com.example.email.core.sender.EmailSender;
+import com.example.email.spring.provider.SmtpTransportPool;
+import com.example.email.spring.provider.SpringMailProvider;
+import com.example.email.testsupport.FakeSmtpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full send through {@link ConfigurableEmailSender} and {@link SpringMailProvider}
+ * to an in-process SMTP server, with and without the transport pool.
+ * The server can delay its replies to approximate the round trip to a real relay.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class EndToEndSendBenchmark {
+
+    private static final String PROVIDER_NAME = "benchmark-smtp";
+
+    @Param({"false", "true"})
+    private boolean pooled;
+
+    /**
+     * Delay of every SMTP reply in microseconds
+     */
+    @Param({"0", "500"})
+    private int replyLatencyMicros;
+
+    private FakeSmtpServer server;
+    private SmtpTransportPool transportPool;
+    private ConfigurableEmailSender sender;
+    private Email email;
+    private List<Email> batch;
+    private List<String> broadcastRecipients;
+
+    @Setup
+    public void setup() {
+        server = FakeSmtpServer.builder()
+                .bodyMode(FakeSmtpServer.BodyMode.COUNT)
+                .commandLatency(Duration.ofNanos(replyLatencyMicros * 1000L))
+                .build()
+                .start();
+        JavaMailSenderImpl mailSender = BenchmarkFixtures.mailSender(server.getPort());
+        SpringMailProvider provider = new SpringMailProvider(mailSender, true);
+        if (pooled) {
+            transportPool = SmtpTransportPool.builder(mailSender).build();
+            provider.setTransportPool(transportPool);
+        }
+        MailProviderFactory.registerProvider(PROVIDER_NAME, provider, false);
+        sender = new ConfigurableEmailSender(PROVIDER_NAME);
+
+        email = BenchmarkFixtures.email(1, 0, 0);
+        batch = new ArrayList<>();
+        broadcastRecipients = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            batch.add(email);
+            broadcastRecipients.add("recipient" + i + "@example.com");
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (transportPool != null) {
+            transportPool.close();
+        }
+        server.close();
+    }
+
+    @Benchmark
+    public Email send() throws EmailSender.EmailSendException {
+        sender.send(email);
+        return email;
+    }
+
+    /**
+     * Ten messages per invocation through {@link EmailSender#sendAll}
+     */
+    @Benchmark
+    public BatchSendResult sendBatch() {
+        return sender.sendAll(batch);
+    }
+
+    /**
+     * The same email to ten recipients through {@link ConfigurableEmailSender#sendBroadcast},
+     * comparable to {@link #sendBatch()}
+     */
+    @Benchmark
+    public MailBatchResult sendBroadcast() {
+        return sender.sendBroadcast(email, broadcastRecipients);
+    }
+
+    /**
+     * Messages per second with eight threads sharing the provider
+     */
+    @Benchmark
+    @Threads(8)
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public Email sendConcurrent() throws EmailSender.EmailSendException {
+        sender.send(email);
+        return email;
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.email.benchmarks;
+
+import com.example.email.core.provider.AbstractMailInterceptor;
+import com.example.email.core.provider.EmailContext;
+import com.example.email.core.provider.MailContext;
+import com.example.email.core.provider.MailService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of {@link MailService#sendMail(MailContext)} for interceptor chains of
+ * different lengths, against a provider that does nothing
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InterceptorChainBenchmark {
+
+    @Param({"0", "1", "4", "16"})
+    private int interceptors;
+
+    private MailService mailService;
+
+    @Setup
+    public void setup() {
+        mailService = new MailService(context -> {
+        });
+        for (int i = 0; i < interceptors; i++) {
+            mailService.addInterceptor(new HeaderInterceptor("X-Interceptor-" + i));
+        }
+    }
+
+    @Benchmark
+    public boolean sendMail(Message message) {
+        return mailService.sendMail(message.context);
+    }
+
+    /**
+     * Several threads sharing one service and its interceptor chain
+     */
+    @Benchmark
+    @Threads(4)
+    public boolean sendMailShared(Message message) {
+        return mailService.sendMail(message.context);
+    }
+
+    /**
+     * Contexts are not thread-safe, so every thread sends its own
+     */
+    @State(Scope.Thread)
+    public static class Message {
+        private EmailContext context;
+
+        @Setup
+        public void setup() {
+            context = new EmailContext("sender@example.com", List.of("recipient@example.com"),
+                    "Benchmark", "<p>Body</p>", true);
+        }
+    }
+
+    /**
+     * Typical interceptor work: one attribute write before and one read after sending
+     */
+    private static final class HeaderInterceptor extends AbstractMailInterceptor {
+        private final String name;
+
+        private HeaderInterceptor(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public boolean beforeSend(MailContext context) {
+            context.setAttribute(name, Boolean.TRUE);
+            return true;
+        }
+
+        @Override
+        public void afterSend(MailContext context, boolean success) {
+            context.getAttribute(name);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.email.benchmarks;
+
+import com.example.email.benchmarks.support.BenchmarkFixtures;
+import com.example.email.benchmarks.support.SerializingMailSender;
+import com.example.email.core.model.Email;
+import com.example.email.core.provider.MailProviderFactory;
+import com.example.email.core.sender.ConfigurableEmailSender;
+import com.example.email.core.sender.EmailSender;
+import com.example.email.spring.provider.SpringMailProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building and encoding the MIME message in {@link SpringMailProvider}, with
+ * attachments of different sizes. Messages are serialized to a discarding
+ * stream instead of being sent.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MimeAssemblyBenchmark {
+
+    private static final String PROVIDER_NAME = "benchmark-mime";
+
+    @Param({"0", "2"})
+    private int attachments;
+
+    @Param({"10240", "1048576"})
+    private int attachmentSize;
+
+    private Email email;
+    private EmailSender sender;
+
+    @Setup
+    public void setup() {
+        email = BenchmarkFixtures.email(3, attachments, attachmentSize);
+        MailProviderFactory.registerProvider(PROVIDER_NAME,
+                new SpringMailProvider(new SerializingMailSender(), true), false);
+        sender = new ConfigurableEmailSender(PROVIDER_NAME);
+    }
+
+    @Benchmark
+    public Email send() throws EmailSender.EmailSendException {
+        sender.send(email);
+        return email;
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.email.benchmarks;
+
+import com.example.email.benchmarks.generated.BenchmarkEmailService;
+import com.example.email.benchmarks.generated.OrderConfirmationParams;
+import com.example.email.benchmarks.generated.OrderConfirmationShippingParams;
+import com.example.email.benchmarks.generated.OrderConfirmationTrackingParams;
+import com.example.email.benchmarks.generated.PasswordResetParams;
+import com.example.email.benchmarks.generated.WelcomeParams;
+import com.example.email.benchmarks.support.BenchmarkFixtures;
+import com.example.email.core.model.Email;
+import com.example.email.spring.ThymeleafTemplateEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rendering the generated example templates, both through {@link ThymeleafTemplateEngine}
+ * directly and through the generated typed email service
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TemplateRenderBenchmark {
+
+    @Param({"welcome", "passwordReset", "orderConfirmation"})
+    private String template;
+
+    private ThymeleafTemplateEngine templateEngine;
+    private BenchmarkEmailService emailService;
+    private Map<String, Object> model;
+
+    @Setup
+    public void setup() {
+        templateEngine = new ThymeleafTemplateEngine(BenchmarkFixtures.thymeleaf());
+        emailService = new BenchmarkEmailService(templateEngine, BenchmarkFixtures.emailConfig());
+        model = createModel();
+    }
+
+    @Benchmark
+    public String engine() {
+        return templateEngine.process("email/" + template, model);
+    }
+
+    @Benchmark
+    public Email typedService() {
+        switch (template) {
+            case "welcome":
+                return emailService.createWelcomeEmail(WelcomeParams.builder()
+                                .userName("Jane Doe")
+                                .email("jane@example.com")
+                                .activationUrl("http://localhost:8080/activate?token=abc")
+                                .expiryHours(24)
+                                .build())
+                        .to("jane@example.com")
+                        .build();
+            case "passwordReset":
+                return emailService.createPasswordResetEmail(PasswordResetParams.builder()
+                                .resetUrl("http://localhost:8080/reset?token=abc")
+                                .expiryMinutes(30)
+                                .build())
+                        .to("jane@example.com")
+                        .build();
+            default:
+                return emailService.createOrderConfirmationEmail(OrderConfirmationParams.builder()
+                                .customerName("Jane Doe")
+                                .orderNumber("ORD-12345")
+                                .shippingParams(OrderConfirmationShippingParams.builder()
+                                        .shippingAddress("1 Main Street, Springfield")
+                                        .shippingMethod("Express")
+                                        .estimatedDelivery("January 3, 2025")
+                                        .build())
+                                .trackingParams(OrderConfirmationTrackingParams.builder()
+                                        .trackingUrl("http://localhost:8080/orders/ORD-12345")
+                                        .build())
+                                .build())
+                        .to("jane@example.com")
+                        .build();
+        }
+    }
+
+    private Map<String, Object> createModel() {
+        Map<String, Object> values = new HashMap<>();
+        values.put("subject", "Benchmark");
+        values.put("userName", "Jane Doe");
+        values.put("email", "jane@example.com");
+        values.put("activationUrl", "http://localhost:8080/activate?token=abc");
+        values.put("expiryHours", 24);
+        values.put("resetUrl", "http://localhost:8080/reset?token=abc");
+        values.put("expiryMinutes", 30);
+        values.put("customerName", "Jane Doe");
+        values.put("orderNumber", "ORD-12345");
+
+        Map<String, Object> shipping = new HashMap<>();
+        shipping.put("shippingAddress", "1 Main Street, Springfield");
+        shipping.put("shippingMethod", "Express");
+        shipping.put("estimatedDelivery", "January 3, 2025");
+        values.put("shipping", shipping);
+
+        Map<String, Object> tracking = new HashMap<>();
+        tracking.put("trackingUrl", "http://localhost:8080/orders/ORD-12345");
+        values.put("tracking", tracking);
+        return values;
+    }
+}
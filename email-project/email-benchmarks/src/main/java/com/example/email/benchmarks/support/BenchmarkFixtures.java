@@ -0,0 +1,100 @@
+package com.example.email.benchmarks.support;
+
+import com.example.email.core.model.Attachment;
+import com.example.email.core.model.Email;
+import com.example.email.core.service.EmailConfig;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+import org.thymeleaf.TemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+
+import java.util.Random;
+
+/**
+ * Shared test data and wiring for the benchmarks
+ */
+public final class BenchmarkFixtures {
+
+    private BenchmarkFixtures() {
+    }
+
+    /**
+     * Create an email with generated content and byte array attachments
+     *
+     * @param recipients The number of To recipients
+     * @param attachments The number of attachments
+     * @param attachmentSize The size of each attachment in bytes
+     * @return The email
+     */
+    public static Email email(int recipients, int attachments, int attachmentSize) {
+        Email.Builder builder = Email.builder()
+                .from("sender@example.com")
+                .subject("Benchmark message")
+                .content(htmlContent())
+                .html(true);
+        for (int i = 0; i < recipients; i++) {
+            builder.to("recipient" + i + "@example.com");
+        }
+        Random random = new Random(42);
+        for (int i = 0; i < attachments; i++) {
+            byte[] bytes = new byte[attachmentSize];
+            random.nextBytes(bytes);
+            builder.attachment(Attachment.fromBytes(bytes, "attachment-" + i + ".bin", "application/octet-stream"));
+        }
+        return builder.build();
+    }
+
+    private static String htmlContent() {
+        StringBuilder content = new StringBuilder("<html><body>");
+        for (int i = 0; i < 20; i++) {
+            content.append("<p>Paragraph ").append(i).append(" of the benchmark message body.</p>");
+        }
+        return content.append("</body></html>").toString();
+    }
+
+    /**
+     * Create a caching Thymeleaf engine reading the generated templates from the classpath
+     *
+     * @return The template engine
+     */
+    public static TemplateEngine thymeleaf() {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix("templates/");
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        resolver.setCacheable(true);
+
+        TemplateEngine engine = new TemplateEngine();
+        engine.setTemplateResolver(resolver);
+        return engine;
+    }
+
+    public static EmailConfig emailConfig() {
+        return new EmailConfig() {
+            @Override
+            public String getFromAddress() {
+                return "sender@example.com";
+            }
+
+            @Override
+            public String getBaseUrl() {
+                return "http://localhost:8080";
+            }
+        };
+    }
+
+    /**
+     * Create a JavaMailSender talking to a local SMTP server
+     *
+     * @param port The SMTP port
+     * @return The mail sender
+     */
+    public static JavaMailSenderImpl mailSender(int port) {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost("127.0.0.1");
+        mailSender.setPort(port);
+        mailSender.setDefaultEncoding("UTF-8");
+        return mailSender;
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.email.benchmarks.support;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimeMessage;
+import org.springframework.mail.MailSendException;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * JavaMailSender that writes messages to a discarding stream instead of a server,
+ * so benchmarks measure building and encoding the MIME message without network I/O
+ */
+public class SerializingMailSender extends JavaMailSenderImpl {
+    private long bytesWritten;
+
+    @Override
+    protected void doSend(MimeMessage[] mimeMessages, Object[] originalMessages) {
+        for (MimeMessage message : mimeMessages) {
+            try {
+                message.saveChanges();
+                CountingOutputStream out = new CountingOutputStream();
+                message.writeTo(out);
+                bytesWritten += out.count;
+            } catch (MessagingException | IOException e) {
+                throw new MailSendException("Failed to serialize message", e);
+            }
+        }
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    private static final class CountingOutputStream extends OutputStream {
+        private long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+    }
+}
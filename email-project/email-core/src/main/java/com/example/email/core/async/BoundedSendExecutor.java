@@ -0,0 +1,231 @@
+package com.example.email.core.async;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SendExecutor backed by a fixed pool of worker threads and a bounded queue.
+ * Mail throughput is governed by the number of workers, while the queue
+ * capacity and overflow policy decide what callers experience under load.
+ */
+public class BoundedSendExecutor implements SendExecutor {
+
+    /**
+     * What to do with a new send when the queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * Block the submitting thread until there is room in the queue
+         */
+        BLOCK,
+
+        /**
+         * Fail the new send immediately
+         */
+        REJECT,
+
+        /**
+         * Fail the oldest queued send and enqueue the new one in its place
+         */
+        DROP_OLDEST
+    }
+
+    private static final AtomicInteger POOL_COUNTER = new AtomicInteger();
+
+    // How often a send blocked on a full queue checks whether the executor was shut down
+    private static final long SHUTDOWN_CHECK_INTERVAL_MS = 50;
+
+    private final ThreadPoolExecutor executor;
+    private final OverflowPolicy overflowPolicy;
+    private final int queueCapacity;
+
+    /**
+     * Create a bounded executor
+     *
+     * @param workerThreads Number of threads sending mail concurrently
+     * @param queueCapacity Maximum number of sends waiting for a worker
+     * @param overflowPolicy What to do when the queue is full
+     */
+    public BoundedSendExecutor(int workerThreads, int queueCapacity, OverflowPolicy overflowPolicy) {
+        if (workerThreads < 1) {
+            throw new IllegalArgumentException("workerThreads must be at least 1");
+        }
+        if (queueCapacity < 1) {
+            throw new IllegalArgumentException("queueCapacity must be at least 1");
+        }
+        if (overflowPolicy == null) {
+            throw new IllegalArgumentException("overflowPolicy must not be null");
+        }
+
+        this.overflowPolicy = overflowPolicy;
+        this.queueCapacity = queueCapacity;
+        this.executor = new ThreadPoolExecutor(
+                workerThreads,
+                workerThreads,
+                0L,
+                TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity),
+                new WorkerThreadFactory(),
+                new OverflowHandler());
+        // Workers are started eagerly so the overflow handler can hand tasks straight to the queue
+        this.executor.prestartAllCoreThreads();
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        SendTask<T> sendTask = new SendTask<>(task);
+        try {
+            executor.execute(sendTask);
+        } catch (RejectedExecutionException e) {
+            sendTask.reject(e);
+        }
+        return sendTask.future;
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Wait for all accepted sends to finish after {@link #shutdown()}
+     *
+     * @param timeout The maximum time to wait
+     * @param unit The unit of the timeout
+     * @return true if all sends finished, false if the timeout elapsed first
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        return executor.awaitTermination(timeout, unit);
+    }
+
+    /**
+     * Get the number of sends waiting for a worker
+     *
+     * @return The current queue depth
+     */
+    public int getQueueSize() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Get the maximum number of sends that can wait for a worker
+     *
+     * @return The queue capacity
+     */
+    public int getQueueCapacity() {
+        return queueCapacity;
+    }
+
+    /**
+     * Get the number of sends currently being executed
+     *
+     * @return The number of busy workers
+     */
+    public int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    /**
+     * Runnable carrying the future that callers wait on, so dropped or
+     * rejected tasks can still be completed.
+     */
+    private static final class SendTask<T> implements Runnable {
+        private final Callable<T> task;
+        private final CompletableFuture<T> future = new CompletableFuture<>();
+
+        private SendTask(Callable<T> task) {
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            if (future.isDone()) {
+                return;
+            }
+            try {
+                future.complete(task.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        }
+
+        private void reject(RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    /**
+     * Applies the configured overflow policy when the queue is full
+     */
+    private final class OverflowHandler implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            if (pool.isShutdown()) {
+                throw new RejectedExecutionException("Send executor has been shut down");
+            }
+
+            BlockingQueue<Runnable> queue = pool.getQueue();
+            switch (overflowPolicy) {
+                case BLOCK:
+                    try {
+                        // Offer with a timeout rather than put, so a shutdown while waiting is noticed
+                        while (!queue.offer(r, SHUTDOWN_CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS)) {
+                            if (pool.isShutdown()) {
+                                throw new RejectedExecutionException("Send executor has been shut down");
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted while waiting for room in the send queue", e);
+                    }
+                    break;
+                case DROP_OLDEST:
+                    while (!queue.offer(r)) {
+                        Runnable oldest = queue.poll();
+                        if (oldest instanceof SendTask) {
+                            ((SendTask<?>) oldest).reject(
+                                    new RejectedExecutionException("Dropped from full send queue"));
+                        }
+                    }
+                    break;
+                case REJECT:
+                default:
+                    throw new RejectedExecutionException("Send queue is full (capacity " + queueCapacity + ")");
+            }
+
+            // Workers may already have drained the queue and exited if the executor was shut
+            // down while the task was being enqueued; take it back unless a worker picked it up
+            if (pool.isShutdown() && queue.remove(r)) {
+                throw new RejectedExecutionException("Send executor has been shut down");
+            }
+        }
+    }
+
+    /**
+     * Creates named daemon worker threads
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+        private final int poolId = POOL_COUNTER.incrementAndGet();
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "mail-send-" + poolId + "-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
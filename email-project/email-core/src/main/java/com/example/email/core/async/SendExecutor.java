@@ -0,0 +1,27 @@
+package com.example.email.core.async;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Strategy for running email sends off the caller's thread.
+ * Implementations decide how many sends run concurrently and what happens
+ * when more work arrives than they can accept.
+ */
+public interface SendExecutor {
+
+    /**
+     * Submit a send task for asynchronous execution
+     *
+     * @param task The task performing the send
+     * @param <T> The result type of the task
+     * @return A future completed with the task result, or exceptionally if the task
+     *         failed or was rejected by the executor
+     */
+    <T> CompletableFuture<T> submit(Callable<T> task);
+
+    /**
+     * Stop accepting new tasks. Tasks already accepted are still executed.
+     */
+    void shutdown();
+}
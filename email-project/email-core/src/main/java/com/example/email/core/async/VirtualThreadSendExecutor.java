@@ -0,0 +1,171 @@
+package com.example.email.core.async;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * SendExecutor that runs every send on its own virtual thread.
+ * Sending mail is almost entirely blocking I/O, so each send parks cheaply
+ * instead of holding a platform thread. A semaphore caps the number of
+ * sends talking to the mail relay at the same time; the remaining sends
+ * wait on their own virtual threads.
+ * <p>
+ * Virtual threads require Java 21. On older runtimes this executor falls
+ * back to a platform thread pool sized to the concurrency cap, which gives
+ * the same concurrency limit. Its queue is bounded, and sends submitted while
+ * it is full fail with a {@link RejectedExecutionException}, so the fallback
+ * applies backpressure like a {@link BoundedSendExecutor} with the REJECT policy.
+ */
+public class VirtualThreadSendExecutor implements SendExecutor {
+
+    /**
+     * Queue capacity of the platform thread fallback unless given explicitly
+     */
+    public static final int DEFAULT_FALLBACK_QUEUE_CAPACITY = 1000;
+
+    private final ExecutorService executor;
+    private final Semaphore permits;
+    private final int maxConcurrentSends;
+    private final boolean virtual;
+
+    /**
+     * Create a virtual thread executor
+     *
+     * @param maxConcurrentSends Maximum number of sends running at the same time
+     */
+    public VirtualThreadSendExecutor(int maxConcurrentSends) {
+        this(maxConcurrentSends, DEFAULT_FALLBACK_QUEUE_CAPACITY);
+    }
+
+    /**
+     * Create a virtual thread executor
+     *
+     * @param maxConcurrentSends Maximum number of sends running at the same time
+     * @param fallbackQueueCapacity Maximum number of sends waiting for a thread when
+     *                              the platform thread fallback is used
+     */
+    public VirtualThreadSendExecutor(int maxConcurrentSends, int fallbackQueueCapacity) {
+        this(maxConcurrentSends, fallbackQueueCapacity, createVirtualThreadExecutor());
+    }
+
+    VirtualThreadSendExecutor(int maxConcurrentSends, int fallbackQueueCapacity, ExecutorService virtualExecutor) {
+        if (maxConcurrentSends < 1) {
+            throw new IllegalArgumentException("maxConcurrentSends must be at least 1");
+        }
+        if (fallbackQueueCapacity < 1) {
+            throw new IllegalArgumentException("fallbackQueueCapacity must be at least 1");
+        }
+        this.maxConcurrentSends = maxConcurrentSends;
+        this.permits = new Semaphore(maxConcurrentSends);
+
+        if (virtualExecutor != null) {
+            this.executor = virtualExecutor;
+            this.virtual = true;
+        } else {
+            this.executor = new ThreadPoolExecutor(maxConcurrentSends, maxConcurrentSends, 0L, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(fallbackQueueCapacity), new PlatformThreadFactory());
+            this.virtual = false;
+        }
+    }
+
+    @Override
+    public <T> CompletableFuture<T> submit(Callable<T> task) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        try {
+            executor.execute(() -> run(task, future));
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private <T> void run(Callable<T> task, CompletableFuture<T> future) {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.completeExceptionally(e);
+            return;
+        }
+        try {
+            future.complete(task.call());
+        } catch (Throwable t) {
+            future.completeExceptionally(t);
+        } finally {
+            permits.release();
+        }
+    }
+
+    @Override
+    public void shutdown() {
+        executor.shutdown();
+    }
+
+    /**
+     * Check whether sends actually run on virtual threads
+     *
+     * @return true if the runtime supports virtual threads, false if the platform thread fallback is used
+     */
+    public boolean isVirtual() {
+        return virtual;
+    }
+
+    public int getMaxConcurrentSends() {
+        return maxConcurrentSends;
+    }
+
+    /**
+     * Get the number of sends currently holding a relay permit
+     *
+     * @return The number of sends in progress
+     */
+    public int getActiveCount() {
+        return maxConcurrentSends - permits.availablePermits();
+    }
+
+    /**
+     * Get the estimated number of sends waiting for a relay permit
+     *
+     * @return The number of waiting sends
+     */
+    public int getWaitingCount() {
+        return permits.getQueueLength();
+    }
+
+    /**
+     * Look up Executors.newVirtualThreadPerTaskExecutor() reflectively so this
+     * class still loads on runtimes without virtual threads
+     */
+    private static ExecutorService createVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Creates named daemon threads for the platform thread fallback
+     */
+    private static final class PlatformThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "mail-send-vt-fallback-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
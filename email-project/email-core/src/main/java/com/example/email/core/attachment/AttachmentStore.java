@@ -0,0 +1,324 @@
+package com.example.email.core.attachment;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Content-addressed cache of base64 encoded attachment content.
+ * <p>
+ * Files are memory-mapped and hashed with SHA-256 once per modification time and
+ * size. Content is encoded once per hash and kept off-heap in a cache with
+ * least-recently-used eviction, shared by every attachment with the same content,
+ * no matter which file or byte array it came from. A repeated file attachment
+ * costs a file attribute lookup instead of reading and encoding the file.
+ * File hashes are kept for the most recently used file versions only.
+ * <p>
+ * Evicted content is released when its direct buffer is garbage collected, so
+ * off-heap memory can briefly exceed the configured maximum.
+ */
+public class AttachmentStore {
+    private final long maxCacheBytes;
+    private final long maxEntryBytes;
+    private final int maxTrackedFiles;
+
+    // Access ordered, so iteration starts at the least recently used entry; guarded by itself
+    private final LinkedHashMap<String, EncodedContent> cache = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+    // Access ordered and limited to maxTrackedFiles entries; guarded by cache
+    private final LinkedHashMap<FileKey, String> fileHashes;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    private AttachmentStore(Builder builder) {
+        this.maxCacheBytes = builder.maxCacheBytes;
+        this.maxEntryBytes = builder.maxEntryBytes;
+        this.maxTrackedFiles = builder.maxTrackedFiles;
+        this.fileHashes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<FileKey, String> eldest) {
+                return size() > maxTrackedFiles;
+            }
+        };
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the encoded content of a file
+     *
+     * @param path The file
+     * @return The encoded content, or null if the file is larger than the maximum entry size
+     * @throws IOException If the file cannot be read
+     */
+    public EncodedContent get(Path path) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+        if (attributes.size() > maxEntryBytes) {
+            return null;
+        }
+        FileKey key = new FileKey(path.toAbsolutePath().normalize(), attributes.lastModifiedTime(), attributes.size());
+        String hash;
+        EncodedContent known = null;
+        synchronized (cache) {
+            hash = fileHashes.get(key);
+            if (hash != null) {
+                known = cache.get(hash);
+            }
+        }
+        if (known != null) {
+            hitCount.incrementAndGet();
+            return known;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > maxEntryBytes) {
+                return null;
+            }
+            ByteBuffer content = size == 0 ? ByteBuffer.allocate(0) : channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (hash == null) {
+                hash = sha256(content.duplicate());
+                synchronized (cache) {
+                    fileHashes.put(key, hash);
+                }
+                // The same content may already be cached from another file or byte array
+                EncodedContent cached = lookup(hash);
+                if (cached != null) {
+                    return cached;
+                }
+            }
+            missCount.incrementAndGet();
+            return store(encode(hash, content));
+        }
+    }
+
+    /**
+     * Get the encoded form of in-memory content.
+     * The content is hashed on every call, so this only pays off for content
+     * sent with many emails, such as attachments created with
+     * {@link com.example.email.core.model.Attachment#fromSharedBytes}.
+     *
+     * @param bytes The content
+     * @return The encoded content, or null if the content is larger than the maximum entry size
+     */
+    public EncodedContent get(byte[] bytes) {
+        if (bytes.length > maxEntryBytes) {
+            return null;
+        }
+        String hash = sha256(ByteBuffer.wrap(bytes));
+        EncodedContent cached = lookup(hash);
+        if (cached != null) {
+            return cached;
+        }
+        missCount.incrementAndGet();
+        return store(encode(hash, ByteBuffer.wrap(bytes)));
+    }
+
+    private EncodedContent lookup(String hash) {
+        EncodedContent content;
+        synchronized (cache) {
+            content = cache.get(hash);
+        }
+        if (content != null) {
+            hitCount.incrementAndGet();
+        }
+        return content;
+    }
+
+    private EncodedContent store(EncodedContent content) {
+        synchronized (cache) {
+            EncodedContent existing = cache.get(content.getHash());
+            if (existing != null) {
+                // Encoded concurrently by another thread
+                return existing;
+            }
+            cache.put(content.getHash(), content);
+            cachedBytes += content.getEncodedSize();
+            Iterator<EncodedContent> eldest = cache.values().iterator();
+            while (cachedBytes > maxCacheBytes && eldest.hasNext()) {
+                EncodedContent evicted = eldest.next();
+                if (evicted == content) {
+                    break;
+                }
+                eldest.remove();
+                cachedBytes -= evicted.getEncodedSize();
+                evictionCount.incrementAndGet();
+            }
+        }
+        return content;
+    }
+
+    private static EncodedContent encode(String hash, ByteBuffer content) {
+        long size = content.remaining();
+        ByteBuffer encoded = ByteBuffer.allocateDirect(Math.toIntExact(Base64Lines.encodedLength(size)));
+        byte[] scratch = new byte[(int) Base64Lines.encodedLength(Math.min(size, Base64Lines.CHUNK_SIZE))];
+        ByteBuffer input = content.duplicate();
+        while (input.hasRemaining()) {
+            int length = Math.min(Base64Lines.CHUNK_SIZE, input.remaining());
+            ByteBuffer chunk = input.slice();
+            chunk.limit(length);
+            encoded.put(scratch, 0, Base64Lines.encode(chunk, scratch));
+            input.position(input.position() + length);
+        }
+        encoded.flip();
+        return new EncodedContent(hash, size, encoded);
+    }
+
+    private static String sha256(ByteBuffer content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(content);
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Drop all cached content and file hashes
+     */
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+            cachedBytes = 0;
+            fileHashes.clear();
+        }
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    /**
+     * Get the off-heap memory held by cached content
+     *
+     * @return The total encoded size of all cached entries
+     */
+    public long getCachedBytes() {
+        synchronized (cache) {
+            return cachedBytes;
+        }
+    }
+
+    public int getEntryCount() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+
+    int getTrackedFileCount() {
+        synchronized (cache) {
+            return fileHashes.size();
+        }
+    }
+
+    /**
+     * A file in a specific version
+     */
+    private static final class FileKey {
+        private final Path path;
+        private final FileTime lastModified;
+        private final long size;
+
+        private FileKey(Path path, FileTime lastModified, long size) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof FileKey)) {
+                return false;
+            }
+            FileKey other = (FileKey) o;
+            return size == other.size && path.equals(other.path) && lastModified.equals(other.lastModified);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(path, lastModified, size);
+        }
+    }
+
+    /**
+     * Builder for AttachmentStore
+     */
+    public static class Builder {
+        private long maxCacheBytes = 64L * 1024 * 1024;
+        private long maxEntryBytes = 16L * 1024 * 1024;
+        private int maxTrackedFiles = 10_000;
+
+        private Builder() {
+        }
+
+        /**
+         * Maximum off-heap memory for encoded content
+         */
+        public Builder maxCacheSize(long bytes) {
+            this.maxCacheBytes = bytes;
+            return this;
+        }
+
+        /**
+         * Content larger than this is not cached and should be streamed instead.
+         * Once encoded, content of this size must fit in the maximum cache size.
+         */
+        public Builder maxEntrySize(long bytes) {
+            this.maxEntryBytes = bytes;
+            return this;
+        }
+
+        /**
+         * The maximum number of file versions whose hash is kept; the least recently used are forgotten first
+         */
+        public Builder maxTrackedFiles(int maxTrackedFiles) {
+            this.maxTrackedFiles = maxTrackedFiles;
+            return this;
+        }
+
+        public AttachmentStore build() {
+            if (maxCacheBytes < 1 || maxEntryBytes < 0) {
+                throw new IllegalStateException("Cache and entry sizes must be positive");
+            }
+            if (Base64Lines.encodedLength(maxEntryBytes) > maxCacheBytes) {
+                throw new IllegalStateException("Maximum entry size must fit in the maximum cache size once encoded");
+            }
+            if (Base64Lines.encodedLength(maxEntryBytes) > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Maximum entry size is too large to encode into a single buffer");
+            }
+            if (maxTrackedFiles < 1) {
+                throw new IllegalStateException("maxTrackedFiles must be at least 1");
+            }
+            return new AttachmentStore(this);
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.email.core.attachment;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Base64 encoding in MIME format: lines of 76 characters, each ended by CRLF.
+ * Content is encoded chunk by chunk; as long as every chunk but the last is a
+ * multiple of {@link #LINE_BYTES} long, the chunks concatenate to a correctly
+ * wrapped encoding.
+ */
+public final class Base64Lines {
+    /**
+     * Number of input bytes encoded on one line
+     */
+    public static final int LINE_BYTES = 57;
+
+    /**
+     * Default chunk size for encoding large content, a multiple of {@link #LINE_BYTES}
+     */
+    public static final int CHUNK_SIZE = LINE_BYTES * 1024;
+
+    private static final byte[] ALPHABET =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/".getBytes(StandardCharsets.US_ASCII);
+
+    private Base64Lines() {
+    }
+
+    /**
+     * Encode the remaining bytes of a buffer
+     *
+     * @param input The bytes to encode
+     * @param output The array to write the encoded lines to, at least {@link #encodedLength(long)} long
+     * @return The number of bytes written
+     */
+    public static int encode(ByteBuffer input, byte[] output) {
+        int position = 0;
+        int lineGroups = 0;
+        while (input.remaining() >= 3) {
+            int bits = (input.get() & 0xff) << 16 | (input.get() & 0xff) << 8 | (input.get() & 0xff);
+            output[position++] = ALPHABET[bits >>> 18];
+            output[position++] = ALPHABET[(bits >>> 12) & 0x3f];
+            output[position++] = ALPHABET[(bits >>> 6) & 0x3f];
+            output[position++] = ALPHABET[bits & 0x3f];
+            if (++lineGroups == LINE_BYTES / 3) {
+                output[position++] = '\r';
+                output[position++] = '\n';
+                lineGroups = 0;
+            }
+        }
+        int rest = input.remaining();
+        if (rest > 0) {
+            int bits = (input.get() & 0xff) << 16 | (rest == 2 ? (input.get() & 0xff) << 8 : 0);
+            output[position++] = ALPHABET[bits >>> 18];
+            output[position++] = ALPHABET[(bits >>> 12) & 0x3f];
+            output[position++] = rest == 2 ? ALPHABET[(bits >>> 6) & 0x3f] : (byte) '=';
+            output[position++] = '=';
+            lineGroups++;
+        }
+        if (lineGroups > 0) {
+            output[position++] = '\r';
+            output[position++] = '\n';
+        }
+        return position;
+    }
+
+    /**
+     * Get the length of the encoding of the given number of bytes, including line breaks
+     *
+     * @param size The number of bytes to encode
+     * @return The encoded length
+     */
+    public static long encodedLength(long size) {
+        long length = size / LINE_BYTES * 78;
+        long rest = size % LINE_BYTES;
+        if (rest > 0) {
+            length += (rest + 2) / 3 * 4 + 2;
+        }
+        return length;
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.email.core.attachment;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Attachment content in its base64 MIME encoding, shared by all attachments with the same content
+ */
+public final class EncodedContent {
+    private final String hash;
+    private final long size;
+    private final ByteBuffer encoded;
+
+    EncodedContent(String hash, long size, ByteBuffer encoded) {
+        this.hash = hash;
+        this.size = size;
+        this.encoded = encoded.asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the hash identifying the content
+     *
+     * @return The hex encoded SHA-256 hash of the raw content
+     */
+    public String getHash() {
+        return hash;
+    }
+
+    /**
+     * Get the size of the raw content
+     *
+     * @return The size in bytes before encoding
+     */
+    public long getSize() {
+        return size;
+    }
+
+    public int getEncodedSize() {
+        return encoded.capacity();
+    }
+
+    /**
+     * Get the encoded content
+     *
+     * @return A read-only buffer positioned at the start of the encoding
+     */
+    public ByteBuffer getEncoded() {
+        return encoded.duplicate();
+    }
+
+    /**
+     * Write the encoded content to a stream
+     *
+     * @param out The stream to write to
+     * @param buffer Scratch array used to copy the content out of its buffer
+     * @throws IOException If writing fails
+     */
+    public void writeTo(OutputStream out, byte[] buffer) throws IOException {
+        ByteBuffer source = encoded.duplicate();
+        while (source.hasRemaining()) {
+            int length = Math.min(buffer.length, source.remaining());
+            source.get(buffer, 0, length);
+            out.write(buffer, 0, length);
+        }
+    }
+
+    /**
+     * Open a stream over the encoded content
+     *
+     * @return A new stream reading the encoding from the start
+     */
+    public InputStream openStream() {
+        ByteBuffer source = encoded.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return source.hasRemaining() ? source.get() & 0xff : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (len == 0) {
+                    return 0;
+                }
+                if (!source.hasRemaining()) {
+                    return -1;
+                }
+                int length = Math.min(len, source.remaining());
+                source.get(b, off, length);
+                return length;
+            }
+
+            @Override
+            public int available() {
+                return source.remaining();
+            }
+        };
+    }
+}
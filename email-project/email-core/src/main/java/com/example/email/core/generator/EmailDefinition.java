@@ -125,6 +125,15 @@ public class EmailDefinition {
         return "create" + capitalize(identifier) + "Email";
     }
 
+    /**
+     * Get the method name for this email template with content rendered as it is sent.
+     *
+     * @return The streaming method name
+     */
+    public String getStreamingMethodName() {
+        return "create" + capitalize(identifier) + "StreamingEmail";
+    }
+
     /**
      * Get the full render method name for this email template.
      *
@@ -134,6 +143,24 @@ public class EmailDefinition {
         return "render" + capitalize(identifier) + "Email";
     }
 
+    /**
+     * Get the method name for rendering many emails of this template at once.
+     *
+     * @return The bulk render method name
+     */
+    public String getBulkRenderMethodName() {
+        return "render" + capitalize(identifier) + "Emails";
+    }
+
+    /**
+     * Get the method name for creating the model of this email template.
+     *
+     * @return The model method name
+     */
+    public String getModelMethodName() {
+        return "create" + capitalize(identifier) + "Model";
+    }
+
     /**
      * Get the template path for this email.
      *
@@ -0,0 +1,66 @@
+package com.example.email.core.metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Base class for metrics implementations.
+ * Takes care of the clock and of in-flight counting, so subclasses only
+ * have to store durations and outcomes.
+ */
+public abstract class AbstractMailMetrics implements MailMetrics {
+    private final ConcurrentHashMap<String, AtomicInteger> inFlight = new ConcurrentHashMap<>();
+
+    @Override
+    public long startTimer() {
+        return System.nanoTime();
+    }
+
+    @Override
+    public void recordStage(String component, Stage stage, long startNanos) {
+        recordDuration(component, stage, System.nanoTime() - startNanos);
+    }
+
+    @Override
+    public void inFlight(String component, int delta) {
+        AtomicInteger counter = inFlight.get(component);
+        if (counter == null) {
+            counter = inFlight.computeIfAbsent(component, key -> {
+                AtomicInteger created = new AtomicInteger();
+                registerInFlight(key, created);
+                return created;
+            });
+        }
+        counter.addAndGet(delta);
+    }
+
+    /**
+     * Get the number of sends currently in progress
+     *
+     * @param component The layer doing the sends
+     * @return The number of in-flight sends
+     */
+    public int getInFlight(String component) {
+        AtomicInteger counter = inFlight.get(component);
+        return counter != null ? counter.get() : 0;
+    }
+
+    /**
+     * Store the duration of a stage
+     *
+     * @param component The layer that ran the stage
+     * @param stage The stage
+     * @param nanos The duration in nanoseconds
+     */
+    protected abstract void recordDuration(String component, Stage stage, long nanos);
+
+    /**
+     * Called once for every component when its first send starts,
+     * e.g. to register a gauge for the counter
+     *
+     * @param component The layer doing the sends
+     * @param counter The live in-flight counter
+     */
+    protected void registerInFlight(String component, AtomicInteger counter) {
+    }
+}
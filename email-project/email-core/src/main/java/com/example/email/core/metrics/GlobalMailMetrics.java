@@ -0,0 +1,11 @@
+package com.example.email.core.metrics;
+
+/**
+ * Holder for the global metrics instance
+ */
+final class GlobalMailMetrics {
+    static volatile MailMetrics instance = MailMetrics.NOOP;
+
+    private GlobalMailMetrics() {
+    }
+}
@@ -0,0 +1,169 @@
+package com.example.email.core.metrics;
+
+import java.util.function.IntSupplier;
+
+/**
+ * Instrumentation hooks for the send pipeline.
+ * <p>
+ * Every method has a no-op default, and {@link #NOOP} is used until an
+ * implementation is installed with {@link #setGlobal(MailMetrics)}, so
+ * uninstrumented sends cost a few virtual calls and no clock reads.
+ * Timings are taken with {@link #startTimer()} and reported with
+ * {@link #recordStage(String, Stage, long)}; implementations that record nothing
+ * can return 0 from startTimer and skip the clock entirely.
+ * <p>
+ * The component names the layer reporting the measurement, e.g. {@code "service"}
+ * for {@code MailService} or {@code "spring"} for the Spring provider, so
+ * nested layers do not double count.
+ */
+public interface MailMetrics {
+
+    /**
+     * Metrics implementation that records nothing
+     */
+    MailMetrics NOOP = new MailMetrics() {
+    };
+
+    /**
+     * Stages of the send pipeline that are timed
+     */
+    enum Stage {
+        /**
+         * Running the beforeSend interceptors
+         */
+        INTERCEPTOR_BEFORE,
+
+        /**
+         * Rendering the email template
+         */
+        TEMPLATE_RENDER,
+
+        /**
+         * Building the MIME message
+         */
+        MIME_BUILD,
+
+        /**
+         * Handing the message to the transport or the next provider;
+         * batch sends record one timing for the whole batch
+         */
+        TRANSPORT_SEND,
+
+        /**
+         * Running the afterSend interceptors
+         */
+        INTERCEPTOR_AFTER,
+
+        /**
+         * The complete send, from the first interceptor to the last;
+         * batch sends record one timing for the whole batch
+         */
+        TOTAL
+    }
+
+    /**
+     * How a send ended
+     */
+    enum Outcome {
+        SUCCESS,
+        FAILURE,
+
+        /**
+         * An interceptor cancelled the send
+         */
+        VETOED,
+
+        /**
+         * Sending is disabled by configuration
+         */
+        DISABLED,
+
+        /**
+         * A circuit breaker or bulkhead rejected the send without calling the provider
+         */
+        REJECTED
+    }
+
+    /**
+     * Start timing a stage
+     *
+     * @return The start time to pass to {@link #recordStage(String, Stage, long)}
+     */
+    default long startTimer() {
+        return 0L;
+    }
+
+    /**
+     * Record the duration of a stage
+     *
+     * @param component The layer that ran the stage
+     * @param stage The stage
+     * @param startNanos The value returned by {@link #startTimer()}
+     */
+    default void recordStage(String component, Stage stage, long startNanos) {
+    }
+
+    /**
+     * Count how a send ended
+     *
+     * @param component The layer that decided the outcome
+     * @param outcome The outcome
+     */
+    default void recordOutcome(String component, Outcome outcome) {
+    }
+
+    /**
+     * Track the number of sends currently in progress
+     *
+     * @param component The layer doing the sends
+     * @param delta The number of sends started, or negative for sends finished
+     */
+    default void inFlight(String component, int delta) {
+    }
+
+    /**
+     * Expose the depth of a queue in front of the send pipeline
+     *
+     * @param name The name of the queue
+     * @param depth Supplies the current number of queued sends
+     */
+    default void registerQueue(String name, IntSupplier depth) {
+    }
+
+    /**
+     * Expose the state of a circuit breaker guarding a provider
+     *
+     * @param name The name of the guarded provider
+     * @param state Supplies the ordinal of the current
+     *              {@link com.example.email.core.resilience.CircuitBreaker.State}
+     */
+    default void registerCircuitBreaker(String name, IntSupplier state) {
+    }
+
+    /**
+     * Expose the number of calls in progress through a bulkhead guarding a provider
+     *
+     * @param name The name of the guarded provider
+     * @param activeCalls Supplies the current number of concurrent calls
+     */
+    default void registerBulkhead(String name, IntSupplier activeCalls) {
+    }
+
+    /**
+     * Get the metrics used by components that have no metrics set explicitly
+     *
+     * @return The global metrics, {@link #NOOP} by default
+     */
+    static MailMetrics global() {
+        return GlobalMailMetrics.instance;
+    }
+
+    /**
+     * Set the metrics used by components that have no metrics set explicitly
+     *
+     * @param metrics The metrics implementation, or null to disable metrics
+     */
+    static void setGlobal(MailMetrics metrics) {
+        GlobalMailMetrics.instance = metrics != null ? metrics : NOOP;
+    }
+}
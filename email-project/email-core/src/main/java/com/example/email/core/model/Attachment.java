@@ -1,10 +1,21 @@
 package com.example.email.core.model;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * Represents an email attachment.
+ * The same attachment is passed from the email model through interceptors to the
+ * mail provider, which reads the content straight from its source.
  */
 public class Attachment {
     private final String name;
@@ -51,16 +62,68 @@ public class Attachment {
     }
 
     /**
-     * Interface for different attachment sources
+     * Create an attachment from a byte array that is sent with many emails, such as
+     * a logo or terms and conditions. Providers may cache the encoded form of shared
+     * content; content unique to one email should use {@link #fromBytes} instead.
      */
-    public interface AttachmentSource {
-        // Marker interface for different attachment sources
+    public static Attachment fromSharedBytes(byte[] bytes, String name, String contentType) {
+        return new Attachment(name, contentType, new ByteArrayAttachmentSource(bytes, true));
+    }
+
+    /**
+     * Create an attachment from a custom source
+     */
+    public static Attachment fromSource(ChannelAttachmentSource source, String name, String contentType) {
+        return new Attachment(name, contentType, source);
+    }
+
+    /**
+     * Source of attachment content.
+     * Providers can read any source through {@link #openChannel()}, and check for
+     * the built-in source types to handle them specially. Other sources, such as
+     * blob stores or generated documents, implement {@link ChannelAttachmentSource}.
+     */
+    public sealed interface AttachmentSource
+            permits PathAttachmentSource, InputStreamAttachmentSource, ByteArrayAttachmentSource, ChannelAttachmentSource {
+
+        /**
+         * Open a channel reading the content from the start
+         *
+         * @return A new channel, closed by the caller
+         * @throws IOException If the content cannot be read
+         */
+        ReadableByteChannel openChannel() throws IOException;
+
+        /**
+         * Get the size of the content
+         *
+         * @return The size in bytes, or -1 if it is not known in advance
+         * @throws IOException If the size cannot be determined
+         */
+        default long size() throws IOException {
+            return -1;
+        }
+
+        /**
+         * Check whether the content can be read more than once
+         *
+         * @return true if {@link #openChannel()} can be called repeatedly
+         */
+        default boolean isRepeatable() {
+            return true;
+        }
+    }
+
+    /**
+     * Extension point for attachment sources other than the built-in ones
+     */
+    public non-sealed interface ChannelAttachmentSource extends AttachmentSource {
     }
 
     /**
      * Attachment source from a file path
      */
-    public static class PathAttachmentSource implements AttachmentSource {
+    public static final class PathAttachmentSource implements AttachmentSource {
         private final Path path;
 
         public PathAttachmentSource(Path path) {
@@ -70,13 +133,24 @@ public class Attachment {
         public Path getPath() {
             return path;
         }
+
+        @Override
+        public ReadableByteChannel openChannel() throws IOException {
+            return FileChannel.open(path, StandardOpenOption.READ);
+        }
+
+        @Override
+        public long size() throws IOException {
+            return Files.size(path);
+        }
     }
 
     /**
-     * Attachment source from an input stream
+     * Attachment source from an input stream, which can only be read once
      */
-    public static class InputStreamAttachmentSource implements AttachmentSource {
+    public static final class InputStreamAttachmentSource implements AttachmentSource {
         private final InputStream inputStream;
+        private final AtomicBoolean opened = new AtomicBoolean();
 
         public InputStreamAttachmentSource(InputStream inputStream) {
             this.inputStream = inputStream;
@@ -85,20 +159,130 @@ public class Attachment {
         public InputStream getInputStream() {
             return inputStream;
         }
+
+        /**
+         * @throws IOException If a channel was already opened on the stream
+         */
+        @Override
+        public ReadableByteChannel openChannel() throws IOException {
+            if (!opened.compareAndSet(false, true)) {
+                throw new IOException("Attachment stream can only be read once");
+            }
+            return Channels.newChannel(inputStream);
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return false;
+        }
+
+        /**
+         * Check whether a channel was opened on the stream, after which it cannot be read again
+         *
+         * @return true if the content has been handed out
+         */
+        public boolean isOpened() {
+            return opened.get();
+        }
     }
 
     /**
      * Attachment source from a byte array
      */
-    public static class ByteArrayAttachmentSource implements AttachmentSource {
+    public static final class ByteArrayAttachmentSource implements AttachmentSource {
         private final byte[] bytes;
+        private final boolean shared;
 
         public ByteArrayAttachmentSource(byte[] bytes) {
+            this(bytes, false);
+        }
+
+        public ByteArrayAttachmentSource(byte[] bytes, boolean shared) {
             this.bytes = bytes;
+            this.shared = shared;
         }
 
         public byte[] getBytes() {
             return bytes;
         }
+
+        /**
+         * Check whether the content is sent with many emails and worth caching
+         *
+         * @return true if created with {@link Attachment#fromSharedBytes}
+         */
+        public boolean isShared() {
+            return shared;
+        }
+
+        @Override
+        public ReadableByteChannel openChannel() {
+            return new ByteArrayChannel(bytes);
+        }
+
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+    }
+
+    /**
+     * Channel reading a byte array without copying it
+     */
+    private static final class ByteArrayChannel implements SeekableByteChannel {
+        private final byte[] bytes;
+        private int position;
+        private boolean open = true;
+
+        private ByteArrayChannel(byte[] bytes) {
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) {
+            if (position >= bytes.length) {
+                return -1;
+            }
+            int length = Math.min(dst.remaining(), bytes.length - position);
+            dst.put(bytes, position, length);
+            position += length;
+            return length;
+        }
+
+        @Override
+        public int write(ByteBuffer src) throws IOException {
+            throw new IOException("Attachment content is read-only");
+        }
+
+        @Override
+        public long position() {
+            return position;
+        }
+
+        @Override
+        public SeekableByteChannel position(long newPosition) {
+            position = (int) Math.min(newPosition, bytes.length);
+            return this;
+        }
+
+        @Override
+        public long size() {
+            return bytes.length;
+        }
+
+        @Override
+        public SeekableByteChannel truncate(long size) throws IOException {
+            throw new IOException("Attachment content is read-only");
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
     }
 }
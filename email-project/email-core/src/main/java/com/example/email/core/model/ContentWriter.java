@@ -0,0 +1,41 @@
+package com.example.email.core.model;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+
+/**
+ * Email content that is written on demand instead of being held as a string,
+ * e.g. a template rendered straight into the message body as it is sent.
+ * <p>
+ * Content may be written more than once, for example when a send is retried,
+ * and must produce the same output every time.
+ */
+@FunctionalInterface
+public interface ContentWriter {
+
+    /**
+     * Write the content
+     *
+     * @param writer The writer to write the content to, not closed by this method
+     * @throws IOException If the content cannot be written
+     */
+    void writeTo(Writer writer) throws IOException;
+
+    /**
+     * Write the content into a string
+     *
+     * @return The content
+     * @throws UncheckedIOException If the content cannot be written
+     */
+    default String render() {
+        StringWriter writer = new StringWriter();
+        try {
+            writeTo(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to render email content", e);
+        }
+        return writer.toString();
+    }
+}
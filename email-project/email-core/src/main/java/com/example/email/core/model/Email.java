@@ -16,9 +16,12 @@ public class Email {
     private final List<String> bcc;
     private final String subject;
     private final String content;
+    private final ContentWriter contentWriter;
     private final boolean html;
     private final List<Attachment> attachments;
     private final Map<String, Object> modelAttributes;
+    // Content rendered from the content writer, set on the first getContent() call
+    private volatile String renderedContent;
 
     private Email(Builder builder) {
         this.from = builder.from;
@@ -27,6 +30,7 @@ public class Email {
         this.bcc = Collections.unmodifiableList(new ArrayList<>(builder.bcc));
         this.subject = builder.subject;
         this.content = builder.content;
+        this.contentWriter = builder.contentWriter;
         this.html = builder.html;
         this.attachments = Collections.unmodifiableList(new ArrayList<>(builder.attachments));
         this.modelAttributes = Collections.unmodifiableMap(new HashMap<>(builder.modelAttributes));
@@ -52,10 +56,35 @@ public class Email {
         return subject;
     }
 
+    /**
+     * Get the content. Content set as a {@link ContentWriter} is rendered into a
+     * string on the first call and the string is kept for later calls; use
+     * {@link #getContentWriter()} to stream it instead.
+     *
+     * @return The content
+     */
     public String getContent() {
+        if (content == null && contentWriter != null) {
+            String rendered = renderedContent;
+            if (rendered == null) {
+                // Concurrent first calls may both render; either result is kept
+                rendered = contentWriter.render();
+                renderedContent = rendered;
+            }
+            return rendered;
+        }
         return content;
     }
 
+    /**
+     * Get the writer producing the content
+     *
+     * @return The content writer, or null if the content was set as a string
+     */
+    public ContentWriter getContentWriter() {
+        return contentWriter;
+    }
+
     public boolean isHtml() {
         return html;
     }
@@ -82,6 +111,7 @@ public class Email {
         private final List<String> bcc = new ArrayList<>();
         private String subject;
         private String content;
+        private ContentWriter contentWriter;
         private boolean html = true;
         private final List<Attachment> attachments = new ArrayList<>();
         private final Map<String, Object> modelAttributes = new HashMap<>();
@@ -128,6 +158,17 @@ public class Email {
 
         public Builder content(String content) {
             this.content = content;
+            this.contentWriter = null;
+            return this;
+        }
+
+        /**
+         * Set content that is written into the message when it is sent,
+         * instead of being rendered into a string up front
+         */
+        public Builder content(ContentWriter contentWriter) {
+            this.contentWriter = contentWriter;
+            this.content = null;
             return this;
         }
 
@@ -166,7 +207,7 @@ public class Email {
             if (subject == null) {
                 throw new IllegalStateException("Email must have a subject");
             }
-            if (content == null) {
+            if (content == null && contentWriter == null) {
                 throw new IllegalStateException("Email must have content");
             }
             return new Email(this);
@@ -0,0 +1,149 @@
+package com.example.email.core.outbox;
+
+import com.example.email.core.model.Attachment;
+import com.example.email.core.model.Email;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Binary encoding of emails stored in the outbox log.
+ * Model attributes are not stored, since the content has already been rendered.
+ * Stream and custom attachments are read fully when encoded, because they cannot
+ * be assumed to be readable after a restart; path attachments store only the path.
+ */
+final class EmailCodec {
+    private static final byte VERSION = 1;
+
+    private static final byte SOURCE_PATH = 1;
+    private static final byte SOURCE_BYTES = 2;
+
+    private EmailCodec() {
+    }
+
+    static byte[] encode(Email email) throws IOException {
+        // Content from a content writer is rendered here, once
+        String content = email.getContent();
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256 + (content != null ? content.length() : 0));
+        DataOutputStream out = new DataOutputStream(bytes);
+
+        out.writeByte(VERSION);
+        writeString(out, email.getFrom());
+        writeStrings(out, email.getTo());
+        writeStrings(out, email.getCc());
+        writeStrings(out, email.getBcc());
+        writeString(out, email.getSubject());
+        writeString(out, content);
+        out.writeBoolean(email.isHtml());
+
+        out.writeInt(email.getAttachments().size());
+        for (Attachment attachment : email.getAttachments()) {
+            writeString(out, attachment.getName());
+            writeString(out, attachment.getContentType());
+            Attachment.AttachmentSource source = attachment.getSource();
+            if (source instanceof Attachment.PathAttachmentSource) {
+                out.writeByte(SOURCE_PATH);
+                writeString(out, ((Attachment.PathAttachmentSource) source).getPath().toString());
+            } else if (source instanceof Attachment.ByteArrayAttachmentSource) {
+                out.writeByte(SOURCE_BYTES);
+                writeBytes(out, ((Attachment.ByteArrayAttachmentSource) source).getBytes());
+            } else {
+                // Streams and custom sources may not be readable again after a restart
+                out.writeByte(SOURCE_BYTES);
+                try (InputStream in = Channels.newInputStream(source.openChannel())) {
+                    writeBytes(out, in.readAllBytes());
+                }
+            }
+        }
+
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Email decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported outbox record version: " + version);
+        }
+
+        Email.Builder builder = Email.builder()
+                .from(readString(in));
+        readStrings(in, builder::to);
+        readStrings(in, builder::cc);
+        readStrings(in, builder::bcc);
+        builder.subject(readString(in))
+                .content(readString(in))
+                .html(in.readBoolean());
+
+        int attachmentCount = in.readInt();
+        for (int i = 0; i < attachmentCount; i++) {
+            String name = readString(in);
+            String contentType = readString(in);
+            byte sourceType = in.readByte();
+            if (sourceType == SOURCE_PATH) {
+                Path path = Paths.get(readString(in));
+                builder.attachment(Attachment.fromPath(path, name, contentType));
+            } else if (sourceType == SOURCE_BYTES) {
+                builder.attachment(Attachment.fromBytes(readBytes(in), name, contentType));
+            } else {
+                throw new IOException("Unknown attachment source type: " + sourceType);
+            }
+        }
+
+        return builder.build();
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        writeBytes(out, value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        byte[] bytes = readBytes(in);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+        out.writeInt(values.size());
+        for (String value : values) {
+            writeString(out, value);
+        }
+    }
+
+    private static void readStrings(DataInputStream in, Consumer<String> target) throws IOException {
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            target.accept(readString(in));
+        }
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,356 @@
+package com.example.email.core.outbox;
+
+import com.example.email.core.model.Email;
+import com.example.email.core.sender.EmailSender;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Durable outbox for outgoing email.
+ * <p>
+ * Emails are appended to a file-based write-ahead log before they are sent, so
+ * nothing is lost when sending fails or the application restarts. Dispatcher
+ * threads deliver pending emails through an {@link EmailSender}, retrying failed
+ * deliveries with exponential backoff. Delivered emails are acknowledged in the
+ * log and log segments are deleted once all their emails are acknowledged.
+ * <p>
+ * Delivery is at least once: an email sent just before a crash, whose
+ * acknowledgement had not reached the disk yet, is sent again after restart.
+ * Retry counts are kept in memory and start over after a restart. Emails the
+ * sender rejects permanently, such as invalid recipients, are not retried.
+ */
+public class MailOutbox implements AutoCloseable {
+
+    private final EmailSender emailSender;
+    private final OutboxLog log;
+    private final DelayQueue<OutboxEntry> deliveryQueue = new DelayQueue<>();
+    private final List<Thread> dispatchers = new ArrayList<>();
+    private final AtomicLong nextId;
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final AtomicLong deliveredCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private final long initialBackoffNanos;
+    private final long maxBackoffNanos;
+    private final int maxAttempts;
+    private volatile boolean running;
+
+    private MailOutbox(Builder builder) throws IOException {
+        this.emailSender = builder.emailSender;
+        this.initialBackoffNanos = builder.initialBackoff.toNanos();
+        this.maxBackoffNanos = builder.maxBackoff.toNanos();
+        this.maxAttempts = builder.maxAttempts;
+
+        // Replay the log: every enqueue without a matching completion is still pending
+        Map<Long, OutboxEntry> recovered = new HashMap<>();
+        long[] maxId = {-1L};
+        this.log = OutboxLog.open(builder.directory, builder.segmentSize,
+                (type, id, segment, offset, length) -> {
+                    maxId[0] = Math.max(maxId[0], id);
+                    if (type == OutboxLog.TYPE_ENQUEUE) {
+                        recovered.put(id, new OutboxEntry(id, new OutboxLog.Position(segment, offset, length, 0L)));
+                    } else {
+                        recovered.remove(id);
+                    }
+                });
+        this.nextId = new AtomicLong(maxId[0] + 1);
+
+        for (OutboxEntry entry : recovered.values()) {
+            log.retain(entry.position.segment);
+            deliveryQueue.add(entry);
+        }
+        pendingCount.set(recovered.size());
+        log.compactNow();
+
+        for (int i = 0; i < builder.dispatcherThreads; i++) {
+            Thread dispatcher = new Thread(this::dispatchLoop, "mail-outbox-dispatcher-" + (i + 1));
+            dispatcher.setDaemon(true);
+            dispatchers.add(dispatcher);
+        }
+    }
+
+    /**
+     * Create a builder for an outbox stored in the given directory
+     *
+     * @param directory The directory holding the outbox log
+     * @param emailSender The sender used to deliver emails
+     * @return A new builder
+     */
+    public static Builder builder(Path directory, EmailSender emailSender) {
+        return new Builder(directory, emailSender);
+    }
+
+    /**
+     * Start delivering pending emails, including those recovered from a previous run
+     *
+     * @return This outbox for chaining
+     */
+    public synchronized MailOutbox start() {
+        if (!running) {
+            running = true;
+            for (Thread dispatcher : dispatchers) {
+                dispatcher.start();
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Append an email to the outbox.
+     * The append itself only copies the email into the mapped log; the returned
+     * future completes once the log has been forced to disk together with other
+     * concurrently enqueued emails. The email is delivered after that point.
+     * <p>
+     * If the future fails, the email is cancelled in the log and not delivered.
+     * The cancellation can only be lost when the disk fails in a way that still
+     * persists the email itself, so a caller retrying a failed enqueue may rarely
+     * see the email delivered twice, in line with at-least-once delivery.
+     *
+     * @param email The email to send
+     * @return A future completed with the outbox id of the email once it is durable
+     */
+    public CompletableFuture<Long> enqueue(Email email) {
+        byte[] payload;
+        OutboxLog.Position position;
+        long id = nextId.getAndIncrement();
+        try {
+            payload = EmailCodec.encode(email);
+            position = log.appendEnqueue(id, payload);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+
+        OutboxEntry entry = new OutboxEntry(id, position);
+        pendingCount.incrementAndGet();
+        return log.whenDurable(position.appendedBytes).handle((ignored, failure) -> {
+            if (failure != null) {
+                // Not known to be durable, so leave redelivery to the caller and cancel
+                // the record in case it still reaches the disk with a later force
+                try {
+                    log.appendCompletion(OutboxLog.TYPE_FAILED, id);
+                } catch (IOException e) {
+                    failure.addSuppressed(e);
+                }
+                pendingCount.decrementAndGet();
+                log.release(position.segment);
+                throw new OutboxException("Failed to persist email to outbox: " + failure.getMessage(), failure);
+            }
+            deliveryQueue.add(entry);
+            return id;
+        });
+    }
+
+    private void dispatchLoop() {
+        while (running) {
+            OutboxEntry entry;
+            try {
+                entry = deliveryQueue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            deliver(entry);
+        }
+    }
+
+    private void deliver(OutboxEntry entry) {
+        Email email;
+        try {
+            email = EmailCodec.decode(log.read(entry.position));
+        } catch (IOException | RuntimeException e) {
+            // An unreadable record can never succeed
+            complete(entry, OutboxLog.TYPE_FAILED);
+            return;
+        }
+
+        try {
+            emailSender.send(email);
+            complete(entry, OutboxLog.TYPE_DELIVERED);
+        } catch (EmailSender.EmailSendException | RuntimeException e) {
+            entry.attempts++;
+            if (entry.attempts >= maxAttempts || isPermanent(e)) {
+                complete(entry, OutboxLog.TYPE_FAILED);
+            } else {
+                entry.scheduleRetry(backoffNanos(entry.attempts));
+                deliveryQueue.add(entry);
+            }
+        }
+    }
+
+    /**
+     * Whether a failed delivery would fail the same way again. Unchecked exceptions
+     * other than I/O failures point at a programming or validation error.
+     */
+    private static boolean isPermanent(Exception e) {
+        if (e instanceof EmailSender.EmailSendException) {
+            return ((EmailSender.EmailSendException) e).isPermanent();
+        }
+        return !(e instanceof UncheckedIOException);
+    }
+
+    private void complete(OutboxEntry entry, byte type) {
+        try {
+            log.appendCompletion(type, entry.id);
+        } catch (IOException e) {
+            // Without the completion record the email is redelivered after a restart
+        }
+        log.release(entry.position.segment);
+        pendingCount.decrementAndGet();
+        if (type == OutboxLog.TYPE_DELIVERED) {
+            deliveredCount.incrementAndGet();
+        } else {
+            failedCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Exponential backoff with up to 20% jitter, capped at the maximum backoff
+     */
+    private long backoffNanos(int attempts) {
+        int exponent = Math.min(attempts - 1, 30);
+        long backoff = initialBackoffNanos << exponent;
+        if (backoff <= 0 || backoff > maxBackoffNanos) {
+            backoff = maxBackoffNanos;
+        }
+        long jitter = (long) (backoff * 0.2 * ThreadLocalRandom.current().nextDouble());
+        return backoff - jitter;
+    }
+
+    /**
+     * Get the number of emails waiting for delivery, including scheduled retries
+     *
+     * @return The number of pending emails
+     */
+    public int getPendingCount() {
+        return pendingCount.get();
+    }
+
+    /**
+     * Get the number of emails delivered since the outbox was opened
+     *
+     * @return The number of delivered emails
+     */
+    public long getDeliveredCount() {
+        return deliveredCount.get();
+    }
+
+    /**
+     * Get the number of emails that were rejected permanently or given up after the maximum number of attempts
+     *
+     * @return The number of failed emails
+     */
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Stop the dispatchers and close the log. Pending emails stay in the log
+     * and are delivered when the outbox is opened again.
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            running = false;
+        }
+        for (Thread dispatcher : dispatchers) {
+            dispatcher.interrupt();
+        }
+        for (Thread dispatcher : dispatchers) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        log.close();
+    }
+
+    /**
+     * Exception thrown when an email cannot be persisted to the outbox
+     */
+    public static class OutboxException extends RuntimeException {
+        public OutboxException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Builder for MailOutbox
+     */
+    public static class Builder {
+        private final Path directory;
+        private final EmailSender emailSender;
+        private int segmentSize = 64 * 1024 * 1024;
+        private int dispatcherThreads = 1;
+        private Duration initialBackoff = Duration.ofSeconds(1);
+        private Duration maxBackoff = Duration.ofMinutes(5);
+        private int maxAttempts = 10;
+
+        private Builder(Path directory, EmailSender emailSender) {
+            this.directory = directory;
+            this.emailSender = emailSender;
+        }
+
+        public Builder segmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        public Builder dispatcherThreads(int dispatcherThreads) {
+            this.dispatcherThreads = dispatcherThreads;
+            return this;
+        }
+
+        public Builder initialBackoff(Duration initialBackoff) {
+            this.initialBackoff = initialBackoff;
+            return this;
+        }
+
+        public Builder maxBackoff(Duration maxBackoff) {
+            this.maxBackoff = maxBackoff;
+            return this;
+        }
+
+        public Builder maxAttempts(int maxAttempts) {
+            this.maxAttempts = maxAttempts;
+            return this;
+        }
+
+        /**
+         * Open the outbox, replaying any existing log in the directory
+         *
+         * @return The opened outbox; call {@link MailOutbox#start()} to begin delivery
+         * @throws IOException If the log cannot be opened
+         */
+        public MailOutbox build() throws IOException {
+            if (directory == null) {
+                throw new IllegalStateException("Outbox must have a directory");
+            }
+            if (emailSender == null) {
+                throw new IllegalStateException("Outbox must have an email sender");
+            }
+            if (segmentSize < 4096) {
+                throw new IllegalStateException("Outbox segment size must be at least 4096 bytes");
+            }
+            if (dispatcherThreads < 1) {
+                throw new IllegalStateException("Outbox must have at least one dispatcher thread");
+            }
+            if (maxAttempts < 1) {
+                throw new IllegalStateException("maxAttempts must be at least 1");
+            }
+            return new MailOutbox(this);
+        }
+    }
+}
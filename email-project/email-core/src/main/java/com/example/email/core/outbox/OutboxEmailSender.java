@@ -0,0 +1,45 @@
+package com.example.email.core.outbox;
+
+import com.example.email.core.model.Email;
+import com.example.email.core.sender.EmailSender;
+
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Email sender that hands emails to a {@link MailOutbox}.
+ * {@link #send(Email)} returns once the email is durably stored in the outbox;
+ * the actual delivery happens in the background with retries.
+ */
+public class OutboxEmailSender implements EmailSender {
+    private final MailOutbox outbox;
+
+    public OutboxEmailSender(MailOutbox outbox) {
+        this.outbox = outbox;
+    }
+
+    @Override
+    public void send(Email email) throws EmailSendException {
+        try {
+            outbox.enqueue(email).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new EmailSendException("Interrupted while storing email in outbox", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            throw new EmailSendException("Failed to store email in outbox: " + cause.getMessage(), cause);
+        }
+    }
+
+    /**
+     * Get the outbox emails are stored in
+     *
+     * @return The outbox
+     */
+    public MailOutbox getOutbox() {
+        return outbox;
+    }
+}
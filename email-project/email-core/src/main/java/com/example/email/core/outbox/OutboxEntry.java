@@ -0,0 +1,40 @@
+package com.example.email.core.outbox;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A pending email in the outbox, scheduled for its next delivery attempt.
+ * The email itself stays in the mapped log and is decoded when it is dispatched.
+ */
+final class OutboxEntry implements Delayed {
+    final long id;
+    final OutboxLog.Position position;
+    int attempts;
+    private long nextAttemptNanos;
+
+    OutboxEntry(long id, OutboxLog.Position position) {
+        this.id = id;
+        this.position = position;
+        this.nextAttemptNanos = System.nanoTime();
+    }
+
+    void scheduleRetry(long delayNanos) {
+        nextAttemptNanos = System.nanoTime() + delayNanos;
+    }
+
+    @Override
+    public long getDelay(TimeUnit unit) {
+        return unit.convert(nextAttemptNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public int compareTo(Delayed other) {
+        if (other instanceof OutboxEntry) {
+            OutboxEntry entry = (OutboxEntry) other;
+            int byTime = Long.compare(nextAttemptNanos - entry.nextAttemptNanos, 0L);
+            return byTime != 0 ? byTime : Long.compare(id, entry.id);
+        }
+        return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+    }
+}
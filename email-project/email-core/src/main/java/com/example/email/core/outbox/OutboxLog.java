@@ -0,0 +1,416 @@
+package com.example.email.core.outbox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only write-ahead log of outbox records, split into memory-mapped segments.
+ * <p>
+ * Appends copy the record into the mapped segment and return immediately. A
+ * flusher thread forces written ranges to disk in groups: every append that
+ * happened while the previous force was running is covered by the next one, so
+ * producers share the cost of each fsync instead of paying it individually.
+ * <p>
+ * Segments are deleted oldest first once every record they enqueued has been
+ * acknowledged. Acknowledgements are only ever written after the record they
+ * refer to, so replaying the remaining segments never resurrects a delivered email.
+ */
+final class OutboxLog implements AutoCloseable {
+    static final byte TYPE_ENQUEUE = 1;
+    static final byte TYPE_DELIVERED = 2;
+    static final byte TYPE_FAILED = 3;
+
+    // type (1) + id (8) + payload length (4) + crc (4)
+    static final int HEADER_SIZE = 17;
+    private static final byte[] EMPTY = new byte[0];
+
+    private final Path directory;
+    private final int segmentSize;
+    private final Object lock = new Object();
+    private final Deque<OutboxSegment> segments = new ArrayDeque<>();
+    private final Map<OutboxSegment, Boolean> dirtySegments = new LinkedHashMap<>();
+    private final Deque<DurabilityWaiter> waiters = new ArrayDeque<>();
+    private final Thread flusher;
+
+    private OutboxSegment active;
+    private long appendedBytes;
+    private long flushedBytes;
+    // Log position covered by the last force, successful or not
+    private long attemptedBytes;
+    private boolean closed;
+
+    private OutboxLog(Path directory, int segmentSize) {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.flusher = new Thread(this::flushLoop, "mail-outbox-flusher");
+        this.flusher.setDaemon(true);
+    }
+
+    /**
+     * Open the log in a directory, replaying all existing records
+     *
+     * @param directory The directory holding the segment files
+     * @param segmentSize The size of newly created segments in bytes
+     * @param visitor Receives every valid record in log order
+     * @return The opened log
+     * @throws IOException If the directory or a segment cannot be read
+     */
+    static OutboxLog open(Path directory, int segmentSize, RecordVisitor visitor) throws IOException {
+        Files.createDirectories(directory);
+        OutboxLog log = new OutboxLog(directory, segmentSize);
+
+        List<Path> files;
+        try (Stream<Path> stream = Files.list(directory)) {
+            files = stream.filter(OutboxSegment::isSegmentFile).sorted().collect(Collectors.toList());
+        }
+        for (Path file : files) {
+            OutboxSegment segment = OutboxSegment.open(file);
+            log.segments.addLast(segment);
+            log.replay(segment, visitor);
+        }
+
+        if (log.segments.isEmpty()) {
+            log.active = OutboxSegment.create(directory, 0, segmentSize);
+            log.segments.addLast(log.active);
+        } else {
+            log.active = log.segments.peekLast();
+        }
+        for (OutboxSegment segment : log.segments) {
+            segment.forcedPosition = segment.writePosition;
+        }
+
+        log.flusher.start();
+        return log;
+    }
+
+    private void replay(OutboxSegment segment, RecordVisitor visitor) {
+        int position = 0;
+        int capacity = segment.getCapacity();
+        CRC32 crc = new CRC32();
+        while (position + HEADER_SIZE <= capacity) {
+            byte type = segment.readByte(position);
+            if (type == 0) {
+                break;
+            }
+            long id = segment.readLong(position + 1);
+            int length = segment.readInt(position + 9);
+            int storedCrc = segment.readInt(position + 13);
+            if (length < 0 || position + HEADER_SIZE + length > capacity) {
+                break;
+            }
+
+            byte[] header = new byte[13];
+            byte[] payload = new byte[length];
+            segment.read(position, header);
+            segment.read(position + HEADER_SIZE, payload);
+            crc.reset();
+            crc.update(header);
+            crc.update(payload);
+            if ((int) crc.getValue() != storedCrc) {
+                // Torn write from a crash; everything after it in this segment is garbage
+                break;
+            }
+
+            visitor.visit(type, id, segment, position + HEADER_SIZE, length);
+            position += HEADER_SIZE + length;
+        }
+        segment.writePosition = position;
+    }
+
+    /**
+     * Append an enqueue record and count it as live in its segment
+     *
+     * @param id The record id
+     * @param payload The encoded email
+     * @return The location of the record
+     * @throws IOException If a new segment cannot be created
+     */
+    Position appendEnqueue(long id, byte[] payload) throws IOException {
+        return append(TYPE_ENQUEUE, id, payload, true);
+    }
+
+    /**
+     * Append a record marking an enqueued email as finished
+     *
+     * @param type Either {@link #TYPE_DELIVERED} or {@link #TYPE_FAILED}
+     * @param id The id of the enqueued record
+     * @return The location of the record
+     * @throws IOException If a new segment cannot be created
+     */
+    Position appendCompletion(byte type, long id) throws IOException {
+        return append(type, id, EMPTY, false);
+    }
+
+    private Position append(byte type, long id, byte[] payload, boolean live) throws IOException {
+        byte[] record = encodeRecord(type, id, payload);
+        synchronized (lock) {
+            if (closed) {
+                throw new IOException("Outbox log is closed");
+            }
+            if (active.remaining() < record.length) {
+                roll(record.length);
+            }
+            OutboxSegment segment = active;
+            int offset = segment.writePosition;
+            segment.write(offset, record);
+            segment.writePosition += record.length;
+            if (live) {
+                segment.liveEntries++;
+            }
+            appendedBytes += record.length;
+            dirtySegments.put(segment, Boolean.TRUE);
+            lock.notifyAll();
+            return new Position(segment, offset + HEADER_SIZE, payload.length, appendedBytes);
+        }
+    }
+
+    private static byte[] encodeRecord(byte type, long id, byte[] payload) {
+        byte[] record = new byte[HEADER_SIZE + payload.length];
+        ByteBuffer buffer = ByteBuffer.wrap(record);
+        buffer.put(type).putLong(id).putInt(payload.length);
+        CRC32 crc = new CRC32();
+        crc.update(record, 0, 13);
+        crc.update(payload);
+        buffer.putInt((int) crc.getValue());
+        buffer.put(payload);
+        return record;
+    }
+
+    private void roll(int recordSize) throws IOException {
+        int capacity = Math.max(segmentSize, recordSize);
+        active = OutboxSegment.create(directory, active.getSequence() + 1, capacity);
+        segments.addLast(active);
+    }
+
+    /**
+     * Get a future that completes once everything up to the given log position is on disk
+     *
+     * @param appendedBytes The log position returned by an append
+     * @return A future completed by the flusher
+     */
+    CompletableFuture<Void> whenDurable(long appendedBytes) {
+        synchronized (lock) {
+            if (appendedBytes <= flushedBytes) {
+                return CompletableFuture.completedFuture(null);
+            }
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            waiters.addLast(new DurabilityWaiter(appendedBytes, future));
+            // Wakes the flusher if this range was attempted before and failed
+            lock.notifyAll();
+            return future;
+        }
+    }
+
+    /**
+     * Read the payload of a record
+     */
+    byte[] read(Position position) {
+        byte[] payload = new byte[position.length];
+        position.segment.read(position.offset, payload);
+        return payload;
+    }
+
+    /**
+     * Mark a live record as finished and delete segments that no longer hold live records
+     *
+     * @param segment The segment holding the finished enqueue record
+     */
+    void release(OutboxSegment segment) {
+        synchronized (lock) {
+            segment.liveEntries--;
+            compact();
+        }
+    }
+
+    /**
+     * Count a replayed enqueue record as live in its segment
+     */
+    void retain(OutboxSegment segment) {
+        synchronized (lock) {
+            segment.liveEntries++;
+        }
+    }
+
+    /**
+     * Delete fully acknowledged segments from the head of the log.
+     * Must be called while holding the lock.
+     */
+    private void compact() {
+        while (segments.size() > 1) {
+            OutboxSegment oldest = segments.peekFirst();
+            if (oldest == active || oldest.liveEntries > 0 || dirtySegments.containsKey(oldest)) {
+                return;
+            }
+            try {
+                oldest.delete();
+            } catch (IOException e) {
+                // Try again on the next compaction
+                return;
+            }
+            segments.removeFirst();
+        }
+    }
+
+    /**
+     * Run compaction for segments emptied during replay
+     */
+    void compactNow() {
+        synchronized (lock) {
+            compact();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            long target;
+            List<OutboxSegment> toForce = new ArrayList<>();
+            List<Integer> forceUpTo = new ArrayList<>();
+            synchronized (lock) {
+                while (!closed && !isFlushNeeded()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                }
+                // After close, a range whose force already failed is not retried
+                if (appendedBytes == flushedBytes || (closed && appendedBytes == attemptedBytes)) {
+                    return;
+                }
+                target = appendedBytes;
+                attemptedBytes = target;
+                for (OutboxSegment segment : dirtySegments.keySet()) {
+                    toForce.add(segment);
+                    forceUpTo.add(segment.writePosition);
+                }
+                dirtySegments.clear();
+            }
+
+            Throwable failure = null;
+            int forced = 0;
+            try {
+                for (; forced < toForce.size(); forced++) {
+                    OutboxSegment segment = toForce.get(forced);
+                    segment.force(segment.forcedPosition, forceUpTo.get(forced));
+                    segment.forcedPosition = forceUpTo.get(forced);
+                }
+            } catch (RuntimeException e) {
+                // MappedByteBuffer.force reports I/O errors as unchecked exceptions
+                failure = e;
+            }
+
+            List<DurabilityWaiter> completed = new ArrayList<>();
+            synchronized (lock) {
+                if (failure == null) {
+                    flushedBytes = target;
+                } else {
+                    // Keep the segments that were not forced dirty, so the next flush retries them
+                    for (int i = forced; i < toForce.size(); i++) {
+                        dirtySegments.put(toForce.get(i), Boolean.TRUE);
+                    }
+                }
+                Iterator<DurabilityWaiter> pending = waiters.iterator();
+                while (pending.hasNext()) {
+                    DurabilityWaiter waiter = pending.next();
+                    if (waiter.appendedBytes <= target) {
+                        completed.add(waiter);
+                        pending.remove();
+                    }
+                }
+                compact();
+            }
+            for (DurabilityWaiter waiter : completed) {
+                if (failure == null) {
+                    waiter.future.complete(null);
+                } else {
+                    waiter.future.completeExceptionally(failure);
+                }
+            }
+        }
+    }
+
+    /**
+     * Check whether there are appends to force. A range whose force failed is
+     * retried with the next append, or when a caller waits for it again.
+     * Must be called while holding the lock.
+     */
+    private boolean isFlushNeeded() {
+        return appendedBytes != flushedBytes && (appendedBytes != attemptedBytes || !waiters.isEmpty());
+    }
+
+    /**
+     * Flush all pending appends and close every segment
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            for (DurabilityWaiter waiter : waiters) {
+                waiter.future.completeExceptionally(new IOException("Outbox log closed before flush"));
+            }
+            waiters.clear();
+            for (OutboxSegment segment : segments) {
+                segment.close();
+            }
+        }
+    }
+
+    /**
+     * Callback for records found while replaying the log
+     */
+    interface RecordVisitor {
+        void visit(byte type, long id, OutboxSegment segment, int payloadOffset, int payloadLength);
+    }
+
+    /**
+     * Location of a record payload in the log
+     */
+    static final class Position {
+        final OutboxSegment segment;
+        final int offset;
+        final int length;
+        final long appendedBytes;
+
+        Position(OutboxSegment segment, int offset, int length, long appendedBytes) {
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.appendedBytes = appendedBytes;
+        }
+    }
+
+    private static final class DurabilityWaiter {
+        private final long appendedBytes;
+        private final CompletableFuture<Void> future;
+
+        private DurabilityWaiter(long appendedBytes, CompletableFuture<Void> future) {
+            this.appendedBytes = appendedBytes;
+            this.future = future;
+        }
+    }
+}
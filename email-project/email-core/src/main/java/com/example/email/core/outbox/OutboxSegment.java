@@ -0,0 +1,136 @@
+package com.example.email.core.outbox;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A single memory-mapped file of the outbox log.
+ * Reads and writes use absolute buffer positions, so appends and reads of
+ * already written records can happen from different threads.
+ */
+final class OutboxSegment {
+    private static final String PREFIX = "outbox-";
+    private static final String SUFFIX = ".log";
+
+    private final long sequence;
+    private final Path file;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+
+    // Guarded by the OutboxLog lock
+    int writePosition;
+    int liveEntries;
+
+    // Only accessed by the flusher thread
+    int forcedPosition;
+
+    private OutboxSegment(long sequence, Path file, FileChannel channel, int capacity) throws IOException {
+        this.sequence = sequence;
+        this.file = file;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    /**
+     * Create a new, zero-filled segment file
+     */
+    static OutboxSegment create(Path directory, long sequence, int capacity) throws IOException {
+        Path file = directory.resolve(fileName(sequence));
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new OutboxSegment(sequence, file, channel, capacity);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Open an existing segment file
+     */
+    static OutboxSegment open(Path file) throws IOException {
+        long sequence = parseSequence(file);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            return new OutboxSegment(sequence, file, channel, (int) channel.size());
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    static boolean isSegmentFile(Path file) {
+        String name = file.getFileName().toString();
+        return name.startsWith(PREFIX) && name.endsWith(SUFFIX);
+    }
+
+    private static String fileName(long sequence) {
+        return String.format("%s%020d%s", PREFIX, sequence, SUFFIX);
+    }
+
+    private static long parseSequence(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(PREFIX.length(), name.length() - SUFFIX.length()));
+    }
+
+    long getSequence() {
+        return sequence;
+    }
+
+    int getCapacity() {
+        return capacity;
+    }
+
+    int remaining() {
+        return capacity - writePosition;
+    }
+
+    void write(int position, byte[] data) {
+        buffer.put(position, data);
+    }
+
+    byte readByte(int position) {
+        return buffer.get(position);
+    }
+
+    int readInt(int position) {
+        return buffer.getInt(position);
+    }
+
+    long readLong(int position) {
+        return buffer.getLong(position);
+    }
+
+    void read(int position, byte[] target) {
+        buffer.get(position, target);
+    }
+
+    /**
+     * Flush a range of the mapping to disk
+     */
+    void force(int from, int to) {
+        if (to > from) {
+            buffer.force(from, to - from);
+        }
+    }
+
+    void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Close and delete the segment file.
+     * The mapping itself is released when the buffer is garbage collected.
+     */
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(file);
+    }
+}
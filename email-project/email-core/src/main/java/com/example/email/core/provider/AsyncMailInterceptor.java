@@ -0,0 +1,53 @@
+package com.example.email.core.provider;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Interceptor whose hooks complete asynchronously, for slow work such as
+ * audit logging to a database or calling a spam scoring service.
+ * <p>
+ * Asynchronous veto checks run at their position in the chain. Consecutive
+ * asynchronous checks run concurrently with each other, so a send waits only for
+ * the slowest of them; give such interceptors adjacent orders to overlap them.
+ * They must not modify the context. The send does not wait for {@link #afterSendAsync} at all.
+ * Both methods should return quickly and do their work on another thread.
+ * <p>
+ * The synchronous {@link #beforeSend} and {@link #afterSend} wait for the
+ * asynchronous hooks, so these interceptors also work where interceptors are
+ * called directly.
+ */
+public interface AsyncMailInterceptor extends MailInterceptor {
+
+    /**
+     * Check whether the email should be sent
+     *
+     * @param context The mail context, which must not be modified
+     * @return A stage completed with true if the email should be sent, false to cancel
+     *         sending; completing exceptionally also cancels sending
+     */
+    default CompletionStage<Boolean> beforeSendAsync(MailContext context) {
+        return CompletableFuture.completedFuture(true);
+    }
+
+    /**
+     * Process the mail context after the mail has been sent or sending was attempted
+     *
+     * @param context The mail context
+     * @param success Whether the email was sent successfully
+     * @return A stage completed when processing is done
+     */
+    default CompletionStage<Void> afterSendAsync(MailContext context, boolean success) {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    @Override
+    default boolean beforeSend(MailContext context) {
+        return beforeSendAsync(context).toCompletableFuture().join();
+    }
+
+    @Override
+    default void afterSend(MailContext context, boolean success) {
+        afterSendAsync(context, success).toCompletableFuture().join();
+    }
+}
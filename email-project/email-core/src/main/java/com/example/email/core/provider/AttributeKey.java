@@ -0,0 +1,116 @@
+package com.example.email.core.provider;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Typed key for a {@link MailContext} attribute.
+ * Every key created through {@link #of(String, Class)} is registered once and
+ * assigned a fixed slot, so contexts store its value in an array instead of a
+ * hash map and typed access needs neither hashing nor casting by the caller.
+ * <p>
+ * Keys are meant to be created once and kept in static final fields, like the
+ * standard keys in {@link EmailContext}.
+ *
+ * @param <T> The type of the attribute value
+ */
+public final class AttributeKey<T> {
+    private static final Map<String, AttributeKey<?>> KEYS_BY_NAME = new ConcurrentHashMap<>();
+    private static volatile AttributeKey<?>[] keysBySlot = new AttributeKey<?>[0];
+
+    private final String name;
+    private final Class<? super T> type;
+    private final int slot;
+
+    private AttributeKey(String name, Class<? super T> type, int slot) {
+        this.name = name;
+        this.type = type;
+        this.slot = slot;
+    }
+
+    /**
+     * Get or register the key for an attribute name
+     *
+     * @param name The attribute name, also used by the string based MailContext accessors
+     * @param type The type of the attribute value
+     * @param <T> The type of the attribute value
+     * @return The key registered for the name
+     * @throws IllegalArgumentException If the name is already registered with a different type
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> AttributeKey<T> of(String name, Class<? super T> type) {
+        if (name == null || type == null) {
+            throw new IllegalArgumentException("Attribute key name and type must not be null");
+        }
+        AttributeKey<?> existing = KEYS_BY_NAME.get(name);
+        if (existing == null) {
+            existing = register(name, type);
+        }
+        if (existing.type != type) {
+            throw new IllegalArgumentException("Attribute '" + name + "' is already registered with type "
+                    + existing.type.getName());
+        }
+        return (AttributeKey<T>) existing;
+    }
+
+    private static synchronized AttributeKey<?> register(String name, Class<?> type) {
+        AttributeKey<?> existing = KEYS_BY_NAME.get(name);
+        if (existing != null) {
+            return existing;
+        }
+        AttributeKey<?>[] current = keysBySlot;
+        AttributeKey<?> key = new AttributeKey<>(name, type, current.length);
+        AttributeKey<?>[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[key.slot] = key;
+        keysBySlot = updated;
+        KEYS_BY_NAME.put(name, key);
+        return key;
+    }
+
+    /**
+     * Find the registered key for an attribute name
+     *
+     * @param name The attribute name
+     * @return The key, or null if the name was never registered
+     */
+    static AttributeKey<?> forName(String name) {
+        return KEYS_BY_NAME.get(name);
+    }
+
+    /**
+     * Find the registered key for a slot
+     *
+     * @param slot The slot index
+     * @return The key using the slot
+     */
+    static AttributeKey<?> forSlot(int slot) {
+        return keysBySlot[slot];
+    }
+
+    /**
+     * Get the number of slots assigned so far
+     *
+     * @return The number of registered keys
+     */
+    static int slotCount() {
+        return keysBySlot.length;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Class<? super T> getType() {
+        return type;
+    }
+
+    int getSlot() {
+        return slot;
+    }
+
+    @Override
+    public String toString() {
+        return "AttributeKey{" + name + ": " + type.getSimpleName() + '}';
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.email.core.provider;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Mutable list that reads through to a source list until it is first modified.
+ * The source is copied only on the first write, so contexts built from an
+ * immutable email share its lists as long as no interceptor changes them.
+ *
+ * @param <E> The element type
+ */
+final class CopyOnWriteListView<E> extends AbstractList<E> implements RandomAccess {
+    private List<E> elements;
+    private boolean copied;
+
+    CopyOnWriteListView(List<E> source) {
+        this.elements = source;
+    }
+
+    @Override
+    public E get(int index) {
+        return elements.get(index);
+    }
+
+    @Override
+    public int size() {
+        return elements.size();
+    }
+
+    @Override
+    public E set(int index, E element) {
+        return writable().set(index, element);
+    }
+
+    @Override
+    public void add(int index, E element) {
+        writable().add(index, element);
+        modCount++;
+    }
+
+    @Override
+    public E remove(int index) {
+        E removed = writable().remove(index);
+        modCount++;
+        return removed;
+    }
+
+    private List<E> writable() {
+        if (!copied) {
+            elements = new ArrayList<>(elements);
+            copied = true;
+        }
+        return elements;
+    }
+}
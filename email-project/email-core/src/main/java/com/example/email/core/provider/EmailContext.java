@@ -1,7 +1,11 @@
 package com.example.email.core.provider;
 
+import com.example.email.core.model.Attachment;
+import com.example.email.core.model.ContentWriter;
+
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 /**
  * Specialized MailContext for email operations.
@@ -17,6 +21,18 @@ public class EmailContext extends MailContext {
     public static final String CONTENT = "content";
     public static final String IS_HTML = "isHtml";
     public static final String ATTACHMENTS = "attachments";
+    public static final String CONTENT_WRITER = "contentWriter";
+
+    // Typed keys for the standard fields, stored in fixed slots
+    public static final AttributeKey<String> FROM_KEY = AttributeKey.of(FROM, String.class);
+    public static final AttributeKey<List<String>> TO_KEY = AttributeKey.of(TO, List.class);
+    public static final AttributeKey<List<String>> CC_KEY = AttributeKey.of(CC, List.class);
+    public static final AttributeKey<List<String>> BCC_KEY = AttributeKey.of(BCC, List.class);
+    public static final AttributeKey<String> SUBJECT_KEY = AttributeKey.of(SUBJECT, String.class);
+    public static final AttributeKey<String> CONTENT_KEY = AttributeKey.of(CONTENT, String.class);
+    public static final AttributeKey<Boolean> IS_HTML_KEY = AttributeKey.of(IS_HTML, Boolean.class);
+    public static final AttributeKey<List<Attachment>> ATTACHMENTS_KEY = AttributeKey.of(ATTACHMENTS, List.class);
+    public static final AttributeKey<ContentWriter> CONTENT_WRITER_KEY = AttributeKey.of(CONTENT_WRITER, ContentWriter.class);
 
     /**
      * Create a new EmailContext with the required fields
@@ -28,44 +44,129 @@ public class EmailContext extends MailContext {
      * @param isHtml Whether the content is HTML
      */
     public EmailContext(String from, List<String> to, String subject, String content, boolean isHtml) {
-        setAttribute(FROM, from);
-        setAttribute(TO, new ArrayList<>(to)); // Create a new list to avoid external modification
-        setAttribute(SUBJECT, subject);
-        setAttribute(CONTENT, content);
-        setAttribute(IS_HTML, isHtml);
-        setAttribute(CC, new ArrayList<String>());
-        setAttribute(BCC, new ArrayList<String>());
-        setAttribute(ATTACHMENTS, new ArrayList<MailAttachment>());
+        set(FROM_KEY, from);
+        set(TO_KEY, new ArrayList<>(to)); // Create a new list to avoid external modification
+        set(SUBJECT_KEY, subject);
+        set(CONTENT_KEY, content);
+        set(IS_HTML_KEY, isHtml);
+        set(CC_KEY, new ArrayList<>());
+        set(BCC_KEY, new ArrayList<>());
+        set(ATTACHMENTS_KEY, new ArrayList<>());
+    }
+
+    private EmailContext() {
+    }
+
+    /**
+     * Create an EmailContext that shares the given lists instead of copying them.
+     * The lists are only copied when the context is modified through them, so the
+     * sources may be immutable and are never changed by this context.
+     *
+     * @param from The sender email address
+     * @param to List of recipient email addresses
+     * @param cc List of CC addresses
+     * @param bcc List of BCC addresses
+     * @param subject Email subject
+     * @param content Email content
+     * @param isHtml Whether the content is HTML
+     * @param attachments List of attachments
+     * @return A new EmailContext backed by the given lists
+     */
+    public static EmailContext wrap(String from, List<String> to, List<String> cc, List<String> bcc,
+                                    String subject, String content, boolean isHtml,
+                                    List<Attachment> attachments) {
+        EmailContext context = new EmailContext();
+        context.set(FROM_KEY, from);
+        context.set(TO_KEY, new CopyOnWriteListView<>(to));
+        context.set(CC_KEY, new CopyOnWriteListView<>(cc));
+        context.set(BCC_KEY, new CopyOnWriteListView<>(bcc));
+        context.set(SUBJECT_KEY, subject);
+        context.set(CONTENT_KEY, content);
+        context.set(IS_HTML_KEY, isHtml);
+        context.set(ATTACHMENTS_KEY, new CopyOnWriteListView<>(attachments));
+        return context;
+    }
+
+    /**
+     * Create a context for one recipient of a broadcast.
+     * The new context shares sender, subject, content and attachments with this
+     * context, has the given recipient as its only To address and no CC or BCC.
+     * Other attributes are not copied.
+     *
+     * @param recipient The recipient address
+     * @return A new EmailContext for the recipient
+     */
+    public EmailContext forRecipient(String recipient) {
+        EmailContext context = wrap(getFrom(), List.of(recipient), List.of(), List.of(),
+                getSubject(), get(CONTENT_KEY), isHtml(), getAttachments());
+        ContentWriter contentWriter = get(CONTENT_WRITER_KEY);
+        if (contentWriter != null) {
+            context.set(CONTENT_WRITER_KEY, contentWriter);
+        }
+        return context;
+    }
+
+    /**
+     * Check whether another context has the same message content as this one,
+     * i.e. everything but the To addresses is the same.
+     * Attachments and content writers are compared by identity.
+     *
+     * @param other The context to compare to
+     * @return true if both contexts render to the same message body
+     */
+    public boolean hasSameContent(EmailContext other) {
+        if (!Objects.equals(getFrom(), other.getFrom())
+                || !Objects.equals(getSubject(), other.getSubject())
+                || !Objects.equals(get(CONTENT_KEY), other.get(CONTENT_KEY))
+                || get(CONTENT_WRITER_KEY) != other.get(CONTENT_WRITER_KEY)
+                || isHtml() != other.isHtml()
+                || !Objects.equals(getCc(), other.getCc())
+                || !Objects.equals(getBcc(), other.getBcc())) {
+            return false;
+        }
+        List<Attachment> attachments = getAttachments();
+        List<Attachment> otherAttachments = other.getAttachments();
+        if (attachments == otherAttachments) {
+            return true;
+        }
+        int size = attachments != null ? attachments.size() : 0;
+        if (size != (otherAttachments != null ? otherAttachments.size() : 0)) {
+            return false;
+        }
+        for (int i = 0; i < size; i++) {
+            if (attachments.get(i) != otherAttachments.get(i)) {
+                return false;
+            }
+        }
+        return true;
     }
 
     // Convenience getters and setters
 
     public String getFrom() {
-        return (String) getAttribute(FROM);
+        return get(FROM_KEY);
     }
 
     public EmailContext setFrom(String from) {
-        setAttribute(FROM, from);
+        set(FROM_KEY, from);
         return this;
     }
 
-    @SuppressWarnings("unchecked")
     public List<String> getTo() {
-        return (List<String>) getAttribute(TO);
+        return get(TO_KEY);
     }
 
     public EmailContext setTo(List<String> to) {
-        setAttribute(TO, new ArrayList<>(to));
+        set(TO_KEY, new ArrayList<>(to));
         return this;
     }
 
-    @SuppressWarnings("unchecked")
     public List<String> getCc() {
-        return (List<String>) getAttribute(CC);
+        return get(CC_KEY);
     }
 
     public EmailContext setCc(List<String> cc) {
-        setAttribute(CC, new ArrayList<>(cc));
+        set(CC_KEY, new ArrayList<>(cc));
         return this;
     }
 
@@ -74,13 +175,12 @@ public class EmailContext extends MailContext {
         return this;
     }
 
-    @SuppressWarnings("unchecked")
     public List<String> getBcc() {
-        return (List<String>) getAttribute(BCC);
+        return get(BCC_KEY);
     }
 
     public EmailContext setBcc(List<String> bcc) {
-        setAttribute(BCC, new ArrayList<>(bcc));
+        set(BCC_KEY, new ArrayList<>(bcc));
         return this;
     }
 
@@ -90,43 +190,79 @@ public class EmailContext extends MailContext {
     }
 
     public String getSubject() {
-        return (String) getAttribute(SUBJECT);
+        return get(SUBJECT_KEY);
     }
 
     public EmailContext setSubject(String subject) {
-        setAttribute(SUBJECT, subject);
+        set(SUBJECT_KEY, subject);
         return this;
     }
 
+    /**
+     * Get the content. Content set as a {@link ContentWriter} is rendered into
+     * a string on the first call, which then replaces the writer.
+     *
+     * @return The content
+     */
     public String getContent() {
-        return (String) getAttribute(CONTENT);
+        String content = get(CONTENT_KEY);
+        if (content == null) {
+            ContentWriter contentWriter = get(CONTENT_WRITER_KEY);
+            if (contentWriter != null) {
+                content = contentWriter.render();
+                set(CONTENT_KEY, content);
+            }
+        }
+        return content;
     }
 
     public EmailContext setContent(String content) {
-        setAttribute(CONTENT, content);
+        set(CONTENT_KEY, content);
+        remove(CONTENT_WRITER_KEY);
+        return this;
+    }
+
+    /**
+     * Get the writer producing the content, for providers that write it straight
+     * into the message
+     *
+     * @return The content writer, or null if the content is a string
+     */
+    public ContentWriter getContentWriter() {
+        return get(CONTENT_KEY) == null ? get(CONTENT_WRITER_KEY) : null;
+    }
+
+    /**
+     * Set content that is written into the message when it is sent
+     *
+     * @param contentWriter The content writer
+     * @return This context
+     */
+    public EmailContext setContentWriter(ContentWriter contentWriter) {
+        remove(CONTENT_KEY);
+        set(CONTENT_WRITER_KEY, contentWriter);
         return this;
     }
 
     public boolean isHtml() {
-        return (boolean) getAttribute(IS_HTML);
+        return Boolean.TRUE.equals(get(IS_HTML_KEY));
     }
 
     public EmailContext setHtml(boolean isHtml) {
-        setAttribute(IS_HTML, isHtml);
+        set(IS_HTML_KEY, isHtml);
         return this;
     }
 
-    @SuppressWarnings("unchecked")
-    public List<MailAttachment> getAttachments() {
-        return (List<MailAttachment>) getAttribute(ATTACHMENTS);
+    public List<Attachment> getAttachments() {
+        return get(ATTACHMENTS_KEY);
     }
 
-    public EmailContext setAttachments(List<MailAttachment> attachments) {
-        setAttribute(ATTACHMENTS, new ArrayList<>(attachments));
+    public EmailContext setAttachments(List<Attachment> attachments) {
+        set(ATTACHMENTS_KEY, new ArrayList<>(attachments));
         return this;
     }
 
-    public EmailContext addAttachment(MailAttachment attachment) {
+    public EmailContext addAttachment(Attachment attachment) {
         getAttachments().add(attachment);
         return this;
     }
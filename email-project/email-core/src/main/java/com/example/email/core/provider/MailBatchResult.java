@@ -0,0 +1,71 @@
+package com.example.email.core.provider;
+
+/**
+ * Per-message outcome of a batch sent through {@link MailProvider#sendMails(java.util.List)}.
+ * Results are indexed in the same order as the contexts passed to the provider.
+ */
+public class MailBatchResult {
+    private final Exception[] failures;
+    private int failureCount;
+
+    /**
+     * Create a result for a batch in which every message is initially successful
+     *
+     * @param size The number of messages in the batch
+     */
+    public MailBatchResult(int size) {
+        this.failures = new Exception[size];
+    }
+
+    /**
+     * Record that a message of the batch could not be sent
+     *
+     * @param index The index of the message in the batch
+     * @param failure The cause of the failure
+     * @return This result for chaining
+     */
+    public MailBatchResult markFailed(int index, Exception failure) {
+        if (failures[index] == null) {
+            failureCount++;
+        }
+        failures[index] = failure;
+        return this;
+    }
+
+    /**
+     * Get the number of messages in the batch
+     *
+     * @return The batch size
+     */
+    public int size() {
+        return failures.length;
+    }
+
+    /**
+     * Check whether a message was sent successfully
+     *
+     * @param index The index of the message in the batch
+     * @return true if no failure was recorded for the message
+     */
+    public boolean isSuccess(int index) {
+        return failures[index] == null;
+    }
+
+    /**
+     * Get the failure recorded for a message
+     *
+     * @param index The index of the message in the batch
+     * @return The failure, or null if the message was sent successfully
+     */
+    public Exception getFailure(int index) {
+        return failures[index];
+    }
+
+    public int getSuccessCount() {
+        return failures.length - failureCount;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+}
@@ -1,5 +1,7 @@
 package com.example.email.core.provider;
 
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -7,9 +9,111 @@ import java.util.Map;
  * An extendable context object for email processing.
  * This allows for customization and modification of emails
  * during the sending process without modifying the core interfaces.
+ * <p>
+ * Attributes with a registered {@link AttributeKey} are stored in array slots and
+ * can be read and written without hashing through {@link #get(AttributeKey)} and
+ * {@link #set(AttributeKey, Object)}. Ad-hoc string keys are kept in a small map
+ * that is only created when first used; a value set by name before its key was
+ * registered is moved into the key's slot when the key first accesses it.
  */
 public class MailContext {
-    private final Map<String, Object> attributes = new HashMap<>();
+    // Marks a slot explicitly set to null, so it can be told apart from an absent attribute
+    private static final Object NULL_VALUE = new Object();
+    private static final Object[] NO_SLOTS = new Object[0];
+
+    // Grown on demand, so keys registered after this context was created get a slot as well
+    private Object[] slots = NO_SLOTS;
+    private Map<String, Object> extraAttributes;
+    // Cached result of getAttributes(), dropped on every change
+    private Map<String, Object> attributesView;
+    // Stages of the outermost pipeline the context is in, kept out of the attributes
+    MailPipeline.Stages activeStages;
+
+    public MailContext() {
+    }
+
+    /**
+     * Get a typed attribute from the context
+     *
+     * @param key The attribute key
+     * @param <T> The type of the attribute value
+     * @return The attribute value or null if not found
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(AttributeKey<T> key) {
+        Object value = slotValue(key);
+        return value == NULL_VALUE ? null : (T) value;
+    }
+
+    /**
+     * Set a typed attribute in the context
+     *
+     * @param key The attribute key
+     * @param value The attribute value
+     * @param <T> The type of the attribute value
+     * @return This context instance for chaining
+     */
+    public <T> MailContext set(AttributeKey<T> key, T value) {
+        int slot = key.getSlot();
+        if (slot >= slots.length) {
+            slots = Arrays.copyOf(slots, Math.max(slot + 1, AttributeKey.slotCount()));
+        }
+        slots[slot] = value == null ? NULL_VALUE : value;
+        if (extraAttributes != null) {
+            extraAttributes.remove(key.getName());
+        }
+        attributesView = null;
+        return this;
+    }
+
+    /**
+     * Check if the context has a typed attribute
+     *
+     * @param key The attribute key
+     * @return true if the attribute exists
+     */
+    public boolean has(AttributeKey<?> key) {
+        return slotValue(key) != null;
+    }
+
+    /**
+     * Remove a typed attribute from the context
+     *
+     * @param key The attribute key
+     * @param <T> The type of the attribute value
+     * @return The previous value or null if not found
+     */
+    public <T> T remove(AttributeKey<T> key) {
+        T previous = get(key);
+        int slot = key.getSlot();
+        if (slot < slots.length && slots[slot] != null) {
+            slots[slot] = null;
+            attributesView = null;
+        }
+        return previous;
+    }
+
+    /**
+     * Get the raw slot value for a key, moving a value stored under the key's name
+     * before the key was registered into its slot
+     */
+    private Object slotValue(AttributeKey<?> key) {
+        int slot = key.getSlot();
+        Object value = slot < slots.length ? slots[slot] : null;
+        if (value == null && extraAttributes != null && extraAttributes.containsKey(key.getName())) {
+            Object extra = extraAttributes.get(key.getName());
+            if (extra == null || key.getType().isInstance(extra)) {
+                adopt(key, extra);
+                value = extra == null ? NULL_VALUE : extra;
+            }
+        }
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void adopt(AttributeKey<?> key, Object value) {
+        set((AttributeKey<Object>) key, value);
+    }
 
     /**
      * Get an attribute from the context
@@ -18,7 +122,11 @@ public class MailContext {
      * @return The attribute value or null if not found
      */
     public Object getAttribute(String key) {
-        return attributes.get(key);
+        AttributeKey<?> attributeKey = AttributeKey.forName(key);
+        if (attributeKey != null) {
+            return get(attributeKey);
+        }
+        return extraAttributes != null ? extraAttributes.get(key) : null;
     }
 
     /**
@@ -27,9 +135,23 @@ public class MailContext {
      * @param key The attribute key
      * @param value The attribute value
      * @return This context instance for chaining
+     * @throws IllegalArgumentException If the key is registered for a different value type
      */
+    @SuppressWarnings("unchecked")
     public MailContext setAttribute(String key, Object value) {
-        attributes.put(key, value);
+        AttributeKey<Object> attributeKey = (AttributeKey<Object>) AttributeKey.forName(key);
+        if (attributeKey != null) {
+            if (value != null && !attributeKey.getType().isInstance(value)) {
+                throw new IllegalArgumentException("Attribute '" + key + "' requires a value of type "
+                        + attributeKey.getType().getName());
+            }
+            return set(attributeKey, value);
+        }
+        if (extraAttributes == null) {
+            extraAttributes = new HashMap<>(4);
+        }
+        extraAttributes.put(key, value);
+        attributesView = null;
         return this;
     }
 
@@ -40,7 +162,11 @@ public class MailContext {
      * @return true if the attribute exists
      */
     public boolean hasAttribute(String key) {
-        return attributes.containsKey(key);
+        AttributeKey<?> attributeKey = AttributeKey.forName(key);
+        if (attributeKey != null) {
+            return has(attributeKey);
+        }
+        return extraAttributes != null && extraAttributes.containsKey(key);
     }
 
     /**
@@ -50,15 +176,41 @@ public class MailContext {
      * @return The previous value or null if not found
      */
     public Object removeAttribute(String key) {
-        return attributes.remove(key);
+        AttributeKey<?> attributeKey = AttributeKey.forName(key);
+        if (attributeKey != null) {
+            return remove(attributeKey);
+        }
+        if (extraAttributes == null || !extraAttributes.containsKey(key)) {
+            return null;
+        }
+        attributesView = null;
+        return extraAttributes.remove(key);
     }
 
     /**
-     * Get all attributes as an unmodifiable map
+     * Get a snapshot of all attributes as an unmodifiable map.
+     * The snapshot is built on first use and reused until the context changes,
+     * so it does not reflect later changes; use the typed accessors on hot paths.
      *
      * @return Unmodifiable map of attributes
      */
     public Map<String, Object> getAttributes() {
-        return Map.copyOf(attributes);
+        Map<String, Object> view = attributesView;
+        if (view != null) {
+            return view;
+        }
+        Map<String, Object> attributes = new HashMap<>();
+        if (extraAttributes != null) {
+            attributes.putAll(extraAttributes);
+        }
+        for (int slot = 0; slot < slots.length; slot++) {
+            Object value = slots[slot];
+            if (value != null) {
+                attributes.put(AttributeKey.forSlot(slot).getName(), value == NULL_VALUE ? null : value);
+            }
+        }
+        view = Collections.unmodifiableMap(attributes);
+        attributesView = view;
+        return view;
     }
 }
@@ -17,9 +17,22 @@ public interface MailInterceptor {
 
     /**
      * Process the mail context after the mail has been sent or sending was attempted.
+     * When the pipeline has an after send executor, this runs concurrently with other
+     * hooks on the same context and must not modify it.
      *
      * @param context The mail context (potentially modified by beforeSend)
      * @param success Whether the email was sent successfully
      */
     void afterSend(MailContext context, boolean success);
+
+    /**
+     * Get the position of this interceptor in the chain.
+     * Interceptors with lower values run first; interceptors with equal
+     * values run in the order they were added.
+     *
+     * @return The order of this interceptor, 0 by default
+     */
+    default int getOrder() {
+        return 0;
+    }
 }
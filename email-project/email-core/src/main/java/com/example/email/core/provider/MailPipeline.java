@@ -0,0 +1,538 @@
+package com.example.email.core.provider;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Interceptor pipeline shared by every component that runs interceptors around a send,
+ * such as {@link MailService} and mail providers.
+ * <p>
+ * The interceptors are compiled into an immutable {@link Stages} snapshot, with the
+ * runs of consecutive asynchronous interceptors marked once, that is replaced
+ * atomically when interceptors are added or removed. A send runs:
+ * <ol>
+ *     <li>the {@code beforeSend} hooks in chain order on the sending thread, where each
+ *     run of consecutive {@link AsyncMailInterceptor} checks is started together and
+ *     waited for until all of them allowed the send, the first one vetoed it, or the
+ *     veto timeout expired, before the chain goes on;</li>
+ *     <li>after the send, the hooks in chain order: the asynchronous {@code afterSendAsync}
+ *     hooks, which are not waited for, and the synchronous {@code afterSend} hooks, on
+ *     the sending thread or independently on the after send executor if one is set.</li>
+ * </ol>
+ * A hook that returns false or throws cancels the send, and so does an asynchronous
+ * check that has not answered within the veto timeout; failures and timeouts are
+ * reported to the {@link ErrorListener} and never propagate to the caller.
+ * <p>
+ * Pipelines can be nested, e.g. a MailService in front of a provider with its own
+ * pipeline. While a context is inside a pipeline, a nested pipeline only runs the
+ * interceptors the outer one does not have, and nothing at all if it is the same
+ * pipeline, so no hook runs twice for a message.
+ */
+public class MailPipeline {
+    private static final Duration DEFAULT_VETO_TIMEOUT = Duration.ofSeconds(30);
+
+    private final AtomicReference<Stages> stages = new AtomicReference<>(new Stages(this, new MailInterceptor[0], new int[0]));
+    private final Stages emptyNested = new Stages(this, new MailInterceptor[0], new int[0], true);
+    private volatile Executor afterSendExecutor;
+    private volatile ErrorListener errorListener;
+    private volatile Duration vetoTimeout = DEFAULT_VETO_TIMEOUT;
+
+    public MailPipeline() {
+    }
+
+    /**
+     * Create a pipeline with interceptors, ordered by their {@link MailInterceptor#getOrder()}
+     *
+     * @param interceptors The interceptors to add, may be null
+     */
+    public MailPipeline(List<? extends MailInterceptor> interceptors) {
+        addInterceptors(interceptors);
+    }
+
+    /**
+     * Hook of an interceptor
+     */
+    public enum Phase {
+        BEFORE_SEND,
+        AFTER_SEND
+    }
+
+    /**
+     * Listener for interceptor failures
+     */
+    public interface ErrorListener {
+        void interceptorFailed(MailInterceptor interceptor, Phase phase, Throwable error);
+    }
+
+    /**
+     * Add an interceptor at the position given by its {@link MailInterceptor#getOrder()}
+     *
+     * @param interceptor The interceptor to add
+     * @return This pipeline for chaining
+     */
+    public MailPipeline addInterceptor(MailInterceptor interceptor) {
+        return addInterceptor(interceptor, interceptor.getOrder());
+    }
+
+    /**
+     * Add an interceptor with an explicit order.
+     * Interceptors with lower order run first; interceptors with equal order
+     * run in the order they were added.
+     *
+     * @param interceptor The interceptor to add
+     * @param order The position of the interceptor in the chain
+     * @return This pipeline for chaining
+     */
+    public MailPipeline addInterceptor(MailInterceptor interceptor, int order) {
+        if (interceptor == null) {
+            throw new IllegalArgumentException("Interceptor must not be null");
+        }
+        Stages current;
+        do {
+            current = stages.get();
+        } while (!stages.compareAndSet(current, current.with(interceptor, order)));
+        return this;
+    }
+
+    /**
+     * Add several interceptors, each at the position given by its order
+     *
+     * @param interceptors The interceptors to add, may be null
+     * @return This pipeline for chaining
+     */
+    public MailPipeline addInterceptors(List<? extends MailInterceptor> interceptors) {
+        if (interceptors != null) {
+            for (MailInterceptor interceptor : interceptors) {
+                addInterceptor(interceptor);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Remove an interceptor
+     *
+     * @param interceptor The interceptor to remove
+     * @return true if the interceptor was removed
+     */
+    public boolean removeInterceptor(MailInterceptor interceptor) {
+        Stages current;
+        Stages updated;
+        do {
+            current = stages.get();
+            updated = current.without(interceptor);
+            if (updated == current) {
+                return false;
+            }
+        } while (!stages.compareAndSet(current, updated));
+        return true;
+    }
+
+    /**
+     * Get the interceptors in execution order
+     *
+     * @return An unmodifiable snapshot of the interceptors
+     */
+    public List<MailInterceptor> getInterceptors() {
+        return stages.get().view;
+    }
+
+    /**
+     * Start running the pipeline for a context.
+     * The returned stages must be used for both hooks of the send, so a concurrent
+     * change to the pipeline cannot split them, and {@link Stages#afterSend} must be
+     * called once the send is over, whatever its outcome.
+     *
+     * @param context The mail context
+     * @return The stages to run for this context
+     */
+    public Stages enter(MailContext context) {
+        Stages current = stages.get();
+        Stages outer = context.activeStages;
+        if (outer == null) {
+            context.activeStages = current;
+            return current;
+        }
+        return current.nestedIn(outer);
+    }
+
+    /**
+     * Run afterSend hooks of synchronous interceptors on an executor instead of the
+     * sending thread, each independently of the others.
+     * The hooks then run concurrently with each other and with the caller, so they
+     * share the context and must only read it.
+     *
+     * @param executor The executor, or null to run the hooks on the sending thread
+     * @return This pipeline for chaining
+     */
+    public MailPipeline setAfterSendExecutor(Executor executor) {
+        this.afterSendExecutor = executor;
+        return this;
+    }
+
+    public Executor getAfterSendExecutor() {
+        return afterSendExecutor;
+    }
+
+    /**
+     * Set the listener notified when a hook fails
+     *
+     * @param errorListener The listener, or null to ignore failures
+     * @return This pipeline for chaining
+     */
+    public MailPipeline setErrorListener(ErrorListener errorListener) {
+        this.errorListener = errorListener;
+        return this;
+    }
+
+    public ErrorListener getErrorListener() {
+        return errorListener;
+    }
+
+    /**
+     * Set how long a send waits for its asynchronous checks. When the timeout expires,
+     * the send is cancelled and every check that has not answered is reported to the
+     * error listener with a {@link TimeoutException}.
+     *
+     * @param vetoTimeout The maximum wait, 30 seconds by default, or null to wait indefinitely
+     * @return This pipeline for chaining
+     * @throws IllegalArgumentException If the timeout is zero or negative
+     */
+    public MailPipeline setVetoTimeout(Duration vetoTimeout) {
+        if (vetoTimeout != null && (vetoTimeout.isZero() || vetoTimeout.isNegative())) {
+            throw new IllegalArgumentException("Veto timeout must be positive");
+        }
+        this.vetoTimeout = vetoTimeout;
+        return this;
+    }
+
+    public Duration getVetoTimeout() {
+        return vetoTimeout;
+    }
+
+    private void failed(MailInterceptor interceptor, Phase phase, Throwable error) {
+        ErrorListener listener = errorListener;
+        if (listener != null) {
+            listener.interceptorFailed(interceptor, phase, error);
+        }
+    }
+
+    private static Throwable unwrap(Throwable error) {
+        return error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+    }
+
+    /**
+     * Immutable, compiled snapshot of a pipeline's interceptors
+     */
+    public static final class Stages {
+        private final MailPipeline pipeline;
+        private final MailInterceptor[] interceptors;
+        private final int[] orders;
+        private final List<MailInterceptor> view;
+        // For an asynchronous interceptor, the end of the run of consecutive asynchronous
+        // interceptors it starts or belongs to; -1 for synchronous ones. Computed once, so
+        // sends do not test every interceptor's type.
+        private final int[] asyncRunEnd;
+        // Set for stages that run inside another pipeline and must leave its marker alone
+        private final boolean nested;
+        // The stages last derived for running inside another pipeline's stages
+        private volatile NestedStages lastNested;
+
+        private Stages(MailPipeline pipeline, MailInterceptor[] interceptors, int[] orders) {
+            this(pipeline, interceptors, orders, false);
+        }
+
+        private Stages(MailPipeline pipeline, MailInterceptor[] interceptors, int[] orders, boolean nested) {
+            this.pipeline = pipeline;
+            this.interceptors = interceptors;
+            this.orders = orders;
+            this.view = Collections.unmodifiableList(Arrays.asList(interceptors));
+            this.nested = nested;
+            this.asyncRunEnd = new int[interceptors.length];
+            int runEnd = interceptors.length;
+            for (int i = interceptors.length - 1; i >= 0; i--) {
+                if (interceptors[i] instanceof AsyncMailInterceptor) {
+                    asyncRunEnd[i] = runEnd;
+                } else {
+                    asyncRunEnd[i] = -1;
+                    runEnd = i;
+                }
+            }
+        }
+
+        /**
+         * Run the before send hooks
+         *
+         * @param context The mail context
+         * @return true if sending should proceed
+         */
+        public boolean beforeSend(MailContext context) {
+            int i = 0;
+            while (i < interceptors.length) {
+                int runEnd = asyncRunEnd[i];
+                if (runEnd >= 0) {
+                    if (!runAsyncChecks(context, i, runEnd)) {
+                        return false;
+                    }
+                    i = runEnd;
+                    continue;
+                }
+                MailInterceptor interceptor = interceptors[i++];
+                try {
+                    if (!interceptor.beforeSend(context)) {
+                        return false;
+                    }
+                } catch (Exception e) {
+                    pipeline.failed(interceptor, Phase.BEFORE_SEND, e);
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * Run the checks of a run of consecutive asynchronous interceptors concurrently
+         */
+        private boolean runAsyncChecks(MailContext context, int from, int to) {
+            CompletableFuture<?>[] pending = null;
+            int pendingCount = 0;
+            for (int i = from; i < to; i++) {
+                AsyncMailInterceptor interceptor = (AsyncMailInterceptor) interceptors[i];
+                CompletableFuture<Boolean> check;
+                try {
+                    check = interceptor.beforeSendAsync(context).toCompletableFuture();
+                } catch (Exception e) {
+                    pipeline.failed(interceptor, Phase.BEFORE_SEND, e);
+                    return false;
+                }
+                if (check.isDone()) {
+                    // Checks answered from memory need no coordination
+                    if (!allowed(interceptor, check)) {
+                        return false;
+                    }
+                    continue;
+                }
+                if (pending == null) {
+                    pending = new CompletableFuture<?>[interceptors.length];
+                }
+                pending[i] = check;
+                pendingCount++;
+            }
+            if (pendingCount == 0) {
+                return true;
+            }
+
+            CompletableFuture<Boolean> decision = new CompletableFuture<>();
+            AtomicInteger remaining = new AtomicInteger(pendingCount);
+            for (int i = from; i < to; i++) {
+                if (pending[i] == null) {
+                    continue;
+                }
+                MailInterceptor interceptor = interceptors[i];
+                pending[i].whenComplete((allowed, error) -> {
+                    if (error != null) {
+                        pipeline.failed(interceptor, Phase.BEFORE_SEND, unwrap(error));
+                        decision.complete(false);
+                    } else if (!Boolean.TRUE.equals(allowed)) {
+                        decision.complete(false);
+                    } else if (remaining.decrementAndGet() == 0) {
+                        decision.complete(true);
+                    }
+                });
+            }
+            Duration timeout = pipeline.vetoTimeout;
+            try {
+                return timeout != null ? decision.get(timeout.toNanos(), TimeUnit.NANOSECONDS) : decision.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                return false;
+            } catch (TimeoutException e) {
+                // The checks may be shared with other sends, so they are left running
+                if (decision.complete(false)) {
+                    for (int i = from; i < to; i++) {
+                        if (pending[i] != null && !pending[i].isDone()) {
+                            pipeline.failed(interceptors[i], Phase.BEFORE_SEND,
+                                    new TimeoutException("No answer within the veto timeout of " + timeout));
+                        }
+                    }
+                    return false;
+                }
+                return decision.join();
+            }
+        }
+
+        private boolean allowed(MailInterceptor interceptor, CompletableFuture<Boolean> check) {
+            try {
+                return Boolean.TRUE.equals(check.join());
+            } catch (Exception e) {
+                pipeline.failed(interceptor, Phase.BEFORE_SEND, unwrap(e));
+                return false;
+            }
+        }
+
+        /**
+         * Run the after send hooks and leave the pipeline
+         *
+         * @param context The mail context
+         * @param success Whether the email was sent successfully
+         */
+        public void afterSend(MailContext context, boolean success) {
+            if (!nested) {
+                context.activeStages = null;
+            }
+            Executor executor = pipeline.afterSendExecutor;
+            for (int i = 0; i < interceptors.length; i++) {
+                MailInterceptor interceptor = interceptors[i];
+                if (asyncRunEnd[i] >= 0) {
+                    runAfterSendAsync((AsyncMailInterceptor) interceptor, context, success);
+                    continue;
+                }
+                if (executor != null) {
+                    try {
+                        executor.execute(() -> runAfterSend(interceptor, context, success));
+                        continue;
+                    } catch (RejectedExecutionException e) {
+                        // Run it on the sending thread instead
+                    }
+                }
+                runAfterSend(interceptor, context, success);
+            }
+        }
+
+        private void runAfterSendAsync(AsyncMailInterceptor interceptor, MailContext context, boolean success) {
+            try {
+                interceptor.afterSendAsync(context, success).whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        pipeline.failed(interceptor, Phase.AFTER_SEND, unwrap(error));
+                    }
+                });
+            } catch (Exception e) {
+                pipeline.failed(interceptor, Phase.AFTER_SEND, e);
+            }
+        }
+
+        private void runAfterSend(MailInterceptor interceptor, MailContext context, boolean success) {
+            try {
+                interceptor.afterSend(context, success);
+            } catch (Exception e) {
+                pipeline.failed(interceptor, Phase.AFTER_SEND, e);
+            }
+        }
+
+        /**
+         * Get the interceptors in execution order
+         *
+         * @return An unmodifiable list of the interceptors
+         */
+        public List<MailInterceptor> getInterceptors() {
+            return view;
+        }
+
+        /**
+         * Get the stages to run inside an outer pipeline: only the interceptors
+         * the outer stages do not run themselves. Both snapshots are immutable, so
+         * the result is derived once and reused while the same outer stages come in.
+         */
+        private Stages nestedIn(Stages outer) {
+            if (outer.pipeline == pipeline) {
+                return pipeline.emptyNested;
+            }
+            NestedStages cached = lastNested;
+            if (cached != null && cached.outer == outer) {
+                return cached.stages;
+            }
+            Stages derived = deriveNested(outer);
+            lastNested = new NestedStages(outer, derived);
+            return derived;
+        }
+
+        private Stages deriveNested(Stages outer) {
+            MailInterceptor[] remaining = new MailInterceptor[interceptors.length];
+            int[] remainingOrders = new int[interceptors.length];
+            int count = 0;
+            for (int i = 0; i < interceptors.length; i++) {
+                if (!outer.contains(interceptors[i])) {
+                    remaining[count] = interceptors[i];
+                    remainingOrders[count++] = orders[i];
+                }
+            }
+            return new Stages(pipeline, Arrays.copyOf(remaining, count), Arrays.copyOf(remainingOrders, count), true);
+        }
+
+        /**
+         * Stages derived for an outer snapshot
+         */
+        private static final class NestedStages {
+            private final Stages outer;
+            private final Stages stages;
+
+            private NestedStages(Stages outer, Stages stages) {
+                this.outer = outer;
+                this.stages = stages;
+            }
+        }
+
+        private boolean contains(MailInterceptor interceptor) {
+            for (MailInterceptor candidate : interceptors) {
+                if (candidate == interceptor) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private Stages with(MailInterceptor interceptor, int order) {
+            // Insert after every interceptor with the same or lower order
+            int position = 0;
+            while (position < orders.length && orders[position] <= order) {
+                position++;
+            }
+
+            int size = interceptors.length;
+            MailInterceptor[] newInterceptors = new MailInterceptor[size + 1];
+            int[] newOrders = new int[size + 1];
+            System.arraycopy(interceptors, 0, newInterceptors, 0, position);
+            System.arraycopy(orders, 0, newOrders, 0, position);
+            newInterceptors[position] = interceptor;
+            newOrders[position] = order;
+            System.arraycopy(interceptors, position, newInterceptors, position + 1, size - position);
+            System.arraycopy(orders, position, newOrders, position + 1, size - position);
+            return new Stages(pipeline, newInterceptors, newOrders);
+        }
+
+        private Stages without(MailInterceptor interceptor) {
+            int position = -1;
+            for (int i = 0; i < interceptors.length; i++) {
+                if (interceptors[i].equals(interceptor)) {
+                    position = i;
+                    break;
+                }
+            }
+            if (position < 0) {
+                return this;
+            }
+
+            int size = interceptors.length;
+            MailInterceptor[] newInterceptors = new MailInterceptor[size - 1];
+            int[] newOrders = new int[size - 1];
+            System.arraycopy(interceptors, 0, newInterceptors, 0, position);
+            System.arraycopy(orders, 0, newOrders, 0, position);
+            System.arraycopy(interceptors, position + 1, newInterceptors, position, size - position - 1);
+            System.arraycopy(orders, position + 1, newOrders, position, size - position - 1);
+            return new Stages(pipeline, newInterceptors, newOrders);
+        }
+    }
+}
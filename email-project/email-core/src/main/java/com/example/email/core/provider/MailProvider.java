@@ -1,5 +1,8 @@
 package com.example.email.core.provider;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * Interface for mail providers that handle the actual sending of emails.
  * Implementations can use different technologies (SMTP, API-based services, etc.)
@@ -13,16 +16,79 @@ public interface MailProvider {
      */
     void sendMail(MailContext context) throws MailProviderException;
 
+    /**
+     * Send a batch of emails.
+     * The default implementation sends each context with {@link #sendMail(MailContext)};
+     * providers can override it to share resources such as a transport connection
+     * across the whole batch.
+     *
+     * @param contexts The mail contexts to send
+     * @return The per-message outcome, indexed like the given contexts
+     */
+    default MailBatchResult sendMails(List<? extends MailContext> contexts) {
+        MailBatchResult result = new MailBatchResult(contexts.size());
+        for (int i = 0; i < contexts.size(); i++) {
+            try {
+                sendMail(contexts.get(i));
+            } catch (Exception e) {
+                result.markFailed(i, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Send the same email to many recipients, one message per recipient.
+     * Every message has the template's sender, subject, content and attachments
+     * and a single recipient as its To address; the template's own recipients are ignored.
+     * The default implementation sends a context per recipient through
+     * {@link #sendMails(List)}; providers can override it to encode the shared
+     * content only once.
+     *
+     * @param template The email to send
+     * @param recipients The recipient addresses
+     * @return The per-recipient outcome, indexed like the given recipients
+     */
+    default MailBatchResult sendBroadcast(EmailContext template, List<String> recipients) {
+        List<EmailContext> contexts = new ArrayList<>(recipients.size());
+        for (String recipient : recipients) {
+            contexts.add(template.forRecipient(recipient));
+        }
+        return sendMails(contexts);
+    }
+
     /**
      * Exception thrown when there is an error sending an email
      */
     class MailProviderException extends Exception {
+        private final boolean permanent;
+
         public MailProviderException(String message) {
-            super(message);
+            this(message, null, false);
         }
 
         public MailProviderException(String message, Throwable cause) {
+            this(message, cause, false);
+        }
+
+        /**
+         * @param permanent true if the email itself was rejected, see {@link #isPermanent()}
+         */
+        public MailProviderException(String message, Throwable cause, boolean permanent) {
             super(message, cause);
+            this.permanent = permanent;
+        }
+
+        /**
+         * Check whether the email itself was rejected, for example because of an
+         * invalid address or a recipient refused by the relay. Sending it again or
+         * through another provider would fail the same way, and the failure says
+         * nothing about the health of the provider.
+         *
+         * @return true for permanent failures, false for transport and connection failures
+         */
+        public boolean isPermanent() {
+            return permanent;
         }
     }
 }
@@ -1,17 +1,25 @@
 package com.example.email.core.provider;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.ServiceLoader;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Factory for creating and registering mail providers.
  * Supports both programmatic registration and service loader discovery.
+ * <p>
+ * Registered providers are held in an immutable snapshot that is replaced on
+ * every registration, so lookups never lock. Registrations are serialized.
+ * Callers that cache a resolved provider can compare {@link #getGeneration()}
+ * before using it, or register a {@link RegistryListener} to learn when the
+ * registry changes.
  */
 public class MailProviderFactory {
-    private static final Map<String, MailProvider> providers = new HashMap<>();
-    private static String defaultProviderName = null;
-    private static boolean initialized = false;
+    private static final Object registrationLock = new Object();
+    private static volatile Registry registry = new Registry(new HashMap<>(), null, 0L);
+    private static final CopyOnWriteArrayList<RegistryListener> listeners = new CopyOnWriteArrayList<>();
 
     /**
      * Register a mail provider
@@ -21,10 +29,15 @@ public class MailProviderFactory {
      * @param makeDefault Whether to make this the default provider
      */
     public static void registerProvider(String name, MailProvider provider, boolean makeDefault) {
-        providers.put(name, provider);
-        if (makeDefault || defaultProviderName == null) {
-            defaultProviderName = name;
+        synchronized (registrationLock) {
+            Registry current = registry;
+            Map<String, MailProvider> providers = new HashMap<>(current.providers);
+            providers.put(name, provider);
+            String defaultProviderName = makeDefault || current.defaultProviderName == null
+                    ? name : current.defaultProviderName;
+            registry = new Registry(providers, defaultProviderName, current.generation + 1);
         }
+        fireRegistryChanged();
     }
 
     /**
@@ -35,8 +48,7 @@ public class MailProviderFactory {
      * @throws IllegalArgumentException If no provider with the given name exists
      */
     public static MailProvider getProvider(String name) {
-        initialize();
-        MailProvider provider = providers.get(name);
+        MailProvider provider = registry().providers.get(name);
         if (provider == null) {
             throw new IllegalArgumentException("No mail provider found with name: " + name);
         }
@@ -50,11 +62,11 @@ public class MailProviderFactory {
      * @throws IllegalStateException If no default provider is configured
      */
     public static MailProvider getDefaultProvider() {
-        initialize();
-        if (defaultProviderName == null) {
+        Registry current = registry();
+        if (current.defaultProviderName == null) {
             throw new IllegalStateException("No default mail provider configured");
         }
-        return providers.get(defaultProviderName);
+        return current.defaultProvider;
     }
 
     /**
@@ -64,11 +76,15 @@ public class MailProviderFactory {
      * @throws IllegalArgumentException If no provider with the given name exists
      */
     public static void setDefaultProvider(String name) {
-        initialize();
-        if (!providers.containsKey(name)) {
-            throw new IllegalArgumentException("No mail provider found with name: " + name);
+        Discovery.ensureLoaded();
+        synchronized (registrationLock) {
+            Registry current = registry;
+            if (!current.providers.containsKey(name)) {
+                throw new IllegalArgumentException("No mail provider found with name: " + name);
+            }
+            registry = new Registry(current.providers, name, current.generation + 1);
         }
-        defaultProviderName = name;
+        fireRegistryChanged();
     }
 
     /**
@@ -78,8 +94,7 @@ public class MailProviderFactory {
      * @return true if a provider with the given name exists
      */
     public static boolean hasProvider(String name) {
-        initialize();
-        return providers.containsKey(name);
+        return registry().providers.containsKey(name);
     }
 
     /**
@@ -88,25 +103,85 @@ public class MailProviderFactory {
      * @return Array of provider names
      */
     public static String[] getProviderNames() {
-        initialize();
-        return providers.keySet().toArray(new String[0]);
+        return registry().providers.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Get the generation of the registry, which changes with every registration or
+     * default provider change. A provider resolved at one generation is current for
+     * as long as the generation stays the same.
+     *
+     * @return The current generation
+     */
+    public static long getGeneration() {
+        return registry().generation;
+    }
+
+    /**
+     * Add a listener notified after every registration or default provider change
+     *
+     * @param listener The listener to add
+     */
+    public static void addRegistryListener(RegistryListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Remove a previously added registry listener
+     *
+     * @param listener The listener to remove
+     */
+    public static void removeRegistryListener(RegistryListener listener) {
+        listeners.remove(listener);
+    }
+
+    private static void fireRegistryChanged() {
+        for (RegistryListener listener : listeners) {
+            listener.registryChanged();
+        }
+    }
+
+    /**
+     * Get the current snapshot, discovering providers on first use
+     */
+    private static Registry registry() {
+        Discovery.ensureLoaded();
+        return registry;
     }
 
     /**
-     * Initialize the factory by discovering providers using ServiceLoader
+     * Immutable set of registered providers
      */
-    private static synchronized void initialize() {
-        if (initialized) {
-            return;
+    private static final class Registry {
+        private final Map<String, MailProvider> providers;
+        private final String defaultProviderName;
+        private final MailProvider defaultProvider;
+        private final long generation;
+
+        private Registry(Map<String, MailProvider> providers, String defaultProviderName, long generation) {
+            this.providers = Collections.unmodifiableMap(providers);
+            this.defaultProviderName = defaultProviderName;
+            this.generation = generation;
+            this.defaultProvider = defaultProviderName != null ? providers.get(defaultProviderName) : null;
         }
+    }
 
-        // Discover providers using ServiceLoader
-        ServiceLoader<MailProviderRegistrar> registrars = ServiceLoader.load(MailProviderRegistrar.class);
-        for (MailProviderRegistrar registrar : registrars) {
-            registrar.registerProviders();
+    /**
+     * Discovers providers using ServiceLoader when the class is first initialized.
+     * The JVM guarantees that this happens exactly once, after which
+     * {@link #ensureLoaded()} costs nothing.
+     */
+    private static final class Discovery {
+        static {
+            ServiceLoader<MailProviderRegistrar> registrars = ServiceLoader.load(MailProviderRegistrar.class);
+            for (MailProviderRegistrar registrar : registrars) {
+                registrar.registerProviders();
+            }
         }
 
-        initialized = true;
+        private static void ensureLoaded() {
+            // Calling this method triggers the static initializer
+        }
     }
 
     /**
@@ -115,4 +190,12 @@ public class MailProviderFactory {
     public interface MailProviderRegistrar {
         void registerProviders();
     }
+
+    /**
+     * Listener for changes to the registered providers.
+     * Called on the thread that changed the registry, after the change is visible to lookups.
+     */
+    public interface RegistryListener {
+        void registryChanged();
+    }
 }
@@ -1,30 +1,83 @@
 package com.example.email.core.provider;
 
 
-import java.util.ArrayList;
+import com.example.email.core.async.SendExecutor;
+import com.example.email.core.metrics.MailMetrics;
+
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 /**
  * Service that manages the email sending process, including interceptor chain execution.
  * This class coordinates the interception process and delegates to the mail provider.
+ * <p>
+ * Interceptors run in a {@link MailPipeline}, which can be shared with the mail
+ * provider so that every hook runs once per message even though both run the
+ * pipeline. Interceptors can be changed at runtime while other threads are
+ * sending without locking the send path.
  */
 public class MailService {
 
-    private final List<MailInterceptor> interceptors = new ArrayList<>();
+    /**
+     * Component name used when reporting metrics
+     */
+    public static final String METRICS_COMPONENT = "service";
+
+    private final MailPipeline pipeline;
     private final MailProvider mailProvider;
+    private final SendExecutor sendExecutor;
+    private volatile MailMetrics metrics;
 
     public MailService(MailProvider mailProvider) {
+        this(mailProvider, null);
+    }
+
+    /**
+     * Create a MailService that can also send asynchronously
+     *
+     * @param mailProvider The provider used to send mail
+     * @param sendExecutor The executor used by {@link #sendMailAsync(MailContext)}
+     */
+    public MailService(MailProvider mailProvider, SendExecutor sendExecutor) {
+        this(mailProvider, sendExecutor, new MailPipeline());
+    }
+
+    /**
+     * Create a MailService running the interceptors of an existing pipeline
+     *
+     * @param mailProvider The provider used to send mail
+     * @param sendExecutor The executor used by {@link #sendMailAsync(MailContext)}, may be null
+     * @param pipeline The interceptor pipeline, possibly shared with the provider
+     */
+    public MailService(MailProvider mailProvider, SendExecutor sendExecutor, MailPipeline pipeline) {
         this.mailProvider = mailProvider;
+        this.sendExecutor = sendExecutor;
+        this.pipeline = pipeline;
     }
 
     /**
-     * Add an interceptor to the chain
+     * Add an interceptor to the chain at the position given by its {@link MailInterceptor#getOrder()}
      *
      * @param interceptor The interceptor to add
      * @return This service instance for chaining
      */
     public MailService addInterceptor(MailInterceptor interceptor) {
-        interceptors.add(interceptor);
+        pipeline.addInterceptor(interceptor);
+        return this;
+    }
+
+    /**
+     * Add an interceptor to the chain with an explicit order.
+     * Interceptors with lower order run first; interceptors with equal order
+     * run in the order they were added.
+     *
+     * @param interceptor The interceptor to add
+     * @param order The position of the interceptor in the chain
+     * @return This service instance for chaining
+     */
+    public MailService addInterceptor(MailInterceptor interceptor, int order) {
+        pipeline.addInterceptor(interceptor, order);
         return this;
     }
 
@@ -35,16 +88,25 @@ public class MailService {
      * @return true if the interceptor was removed
      */
     public boolean removeInterceptor(MailInterceptor interceptor) {
-        return interceptors.remove(interceptor);
+        return pipeline.removeInterceptor(interceptor);
     }
 
     /**
-     * Get the list of all registered interceptors
+     * Get the list of all registered interceptors in execution order
      *
-     * @return An unmodifiable list of interceptors
+     * @return An unmodifiable snapshot of the interceptors
      */
     public List<MailInterceptor> getInterceptors() {
-        return List.copyOf(interceptors);
+        return pipeline.getInterceptors();
+    }
+
+    /**
+     * Get the pipeline the interceptors run in
+     *
+     * @return The interceptor pipeline
+     */
+    public MailPipeline getPipeline() {
+        return pipeline;
     }
 
     /**
@@ -54,39 +116,100 @@ public class MailService {
      * @return true if the email was sent successfully
      */
     public boolean sendMail(MailContext context) {
-        boolean proceed = true;
-
-        // Apply all interceptors before sending
-        for (MailInterceptor interceptor : interceptors) {
-            try {
-                if (!interceptor.beforeSend(context)) {
-                    proceed = false;
-                    break;
-                }
-            } catch (Exception e) {
-                proceed = false;
-                break;
-            }
-        }
+        MailMetrics metrics = getMetrics();
+        long start = metrics.startTimer();
+        metrics.inFlight(METRICS_COMPONENT, 1);
 
+        MailPipeline.Stages stages = pipeline.enter(context);
+        boolean vetoed = false;
         boolean success = false;
-        if (proceed) {
-            try {
-                mailProvider.sendMail(context);
-                success = true;
-            } catch (MailProvider.MailProviderException e) {
-                success = false;
+        try {
+            // Apply all interceptors before sending
+            long stageStart = metrics.startTimer();
+            vetoed = !stages.beforeSend(context);
+            metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.INTERCEPTOR_BEFORE, stageStart);
+
+            if (!vetoed) {
+                stageStart = metrics.startTimer();
+                try {
+                    mailProvider.sendMail(context);
+                    success = true;
+                } catch (MailProvider.MailProviderException e) {
+                    success = false;
+                }
+                metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.TRANSPORT_SEND, stageStart);
             }
+        } finally {
+            // Apply all interceptors after sending, also when the provider threw an unchecked
+            // exception, so the context leaves the pipeline
+            long stageStart = metrics.startTimer();
+            stages.afterSend(context, success);
+            metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.INTERCEPTOR_AFTER, stageStart);
+
+            metrics.inFlight(METRICS_COMPONENT, -1);
+            metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.TOTAL, start);
+            metrics.recordOutcome(METRICS_COMPONENT, vetoed ? MailMetrics.Outcome.VETOED
+                    : success ? MailMetrics.Outcome.SUCCESS : MailMetrics.Outcome.FAILURE);
         }
+        return success;
+    }
 
-        // Apply all interceptors after sending
-        for (MailInterceptor interceptor : interceptors) {
-            try {
-                interceptor.afterSend(context, success);
-            } catch (Exception e) {
-            }
+    /**
+     * Send an email asynchronously, applying all interceptors on a worker thread.
+     * The returned future completes exceptionally with a
+     * {@link java.util.concurrent.RejectedExecutionException} if the executor
+     * could not accept the send.
+     *
+     * @param context The email context
+     * @return A future completed with true if the email was sent successfully
+     * @throws IllegalStateException If this service has no send executor
+     */
+    public CompletableFuture<Boolean> sendMailAsync(MailContext context) {
+        if (sendExecutor == null) {
+            throw new IllegalStateException("No send executor configured for asynchronous sending");
         }
+        return sendExecutor.submit(() -> sendMail(context));
+    }
 
-        return success;
+    /**
+     * Get the executor used for asynchronous sending
+     *
+     * @return The send executor, or null if only synchronous sending is supported
+     */
+    public SendExecutor getSendExecutor() {
+        return sendExecutor;
+    }
+
+    /**
+     * Run the afterSend hooks of synchronous interceptors on an executor instead of the
+     * sending thread, each independently of the others
+     *
+     * @param executor The executor, or null to run the hooks on the sending thread
+     * @return This service instance for chaining
+     */
+    public MailService setAfterSendExecutor(Executor executor) {
+        pipeline.setAfterSendExecutor(executor);
+        return this;
+    }
+
+    /**
+     * Set the metrics this service reports to
+     *
+     * @param metrics The metrics, or null to use {@link MailMetrics#global()}
+     * @return This service instance for chaining
+     */
+    public MailService setMetrics(MailMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Get the metrics this service reports to
+     *
+     * @return The metrics set on this service, or the global metrics
+     */
+    public MailMetrics getMetrics() {
+        MailMetrics current = metrics;
+        return current != null ? current : MailMetrics.global();
     }
 }
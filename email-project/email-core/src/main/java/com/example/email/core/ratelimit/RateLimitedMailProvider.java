@@ -0,0 +1,471 @@
+package com.example.email.core.ratelimit;
+
+import com.example.email.core.provider.EmailContext;
+import com.example.email.core.provider.MailBatchResult;
+import com.example.email.core.provider.MailContext;
+import com.example.email.core.provider.MailProvider;
+import com.example.email.core.provider.MailProviderFactory;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongSupplier;
+
+/**
+ * Mail provider decorator that limits the sending rate per provider and per recipient domain.
+ * <p>
+ * Emails over the limit are delayed, never dropped: the calling thread waits until
+ * every bucket the email draws from has a permit for it. Each recipient domain of an
+ * email takes one permit from its domain bucket, no matter how many recipients share
+ * that domain. Under the limit the overhead is one CAS per bucket.
+ * <p>
+ * Domains with an explicit limit always have their own bucket. Other domains get a
+ * bucket with the default domain limit, up to {@code maxTrackedDomains} of them; idle
+ * buckets are evicted a few at a time to make room, and while none are idle, further
+ * domains share a single overflow bucket, which only ever limits them more strictly.
+ */
+public class RateLimitedMailProvider implements MailProvider {
+    private final MailProvider delegate;
+    private final String providerName;
+    private final TokenBucket providerBucket;
+    private final Limit defaultDomainLimit;
+    private final Map<String, TokenBucket> configuredBuckets;
+    private final int maxTrackedDomains;
+    private final LongSupplier clock;
+    private final ConcurrentHashMap<String, TokenBucket> domainBuckets = new ConcurrentHashMap<>();
+    private final TokenBucket overflowBucket;
+    // Guarded by domainBuckets; resumes where the previous eviction stopped
+    private Iterator<TokenBucket> evictionCursor;
+
+    /**
+     * Buckets examined per eviction, so tracking a new domain stays cheap at the cap
+     */
+    private static final int EVICTION_SAMPLE = 16;
+
+    private RateLimitedMailProvider(Builder builder) {
+        this.delegate = builder.delegate;
+        this.providerName = builder.providerName;
+        this.clock = builder.clock;
+        this.providerBucket = builder.providerLimit != null ? builder.providerLimit.newBucket(clock) : null;
+        this.defaultDomainLimit = builder.defaultDomainLimit;
+        Map<String, TokenBucket> configured = new HashMap<>();
+        builder.domainLimits.forEach((domain, limit) -> configured.put(domain, limit.newBucket(clock)));
+        this.configuredBuckets = Map.copyOf(configured);
+        this.maxTrackedDomains = builder.maxTrackedDomains;
+        this.overflowBucket = defaultDomainLimit != null ? defaultDomainLimit.newBucket(clock) : null;
+    }
+
+    /**
+     * Create a builder decorating the given provider
+     *
+     * @param delegate The provider that sends the emails
+     * @return A new builder
+     */
+    public static Builder builder(MailProvider delegate) {
+        return new Builder(delegate, null);
+    }
+
+    /**
+     * Create a builder decorating a provider registered with {@link MailProviderFactory}.
+     * Use {@link Builder#register()} to replace the registered provider with the decorator.
+     *
+     * @param providerName The name the provider is registered under
+     * @return A new builder
+     * @throws IllegalArgumentException If no provider with the given name exists
+     */
+    public static Builder forRegisteredProvider(String providerName) {
+        return new Builder(MailProviderFactory.getProvider(providerName), providerName);
+    }
+
+    @Override
+    public void sendMail(MailContext context) throws MailProviderException {
+        try {
+            TokenBucket.park(reserve(context));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MailProviderException("Interrupted while waiting for the send rate limit", e);
+        }
+        delegate.sendMail(context);
+    }
+
+    /**
+     * Send a batch, split into sub-batches at the points where the rate limit forces a wait.
+     * Emails within the limit are still handed to the delegate together.
+     */
+    @Override
+    public MailBatchResult sendMails(List<? extends MailContext> contexts) {
+        MailBatchResult result = new MailBatchResult(contexts.size());
+        int start = 0;
+        for (int i = 0; i < contexts.size(); i++) {
+            long wait = reserve(contexts.get(i));
+            if (wait > 0) {
+                sendChunk(contexts, start, i, result);
+                start = i;
+                try {
+                    TokenBucket.park(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    MailProviderException failure =
+                            new MailProviderException("Interrupted while waiting for the send rate limit", e);
+                    for (int j = i; j < contexts.size(); j++) {
+                        result.markFailed(j, failure);
+                    }
+                    return result;
+                }
+            }
+        }
+        sendChunk(contexts, start, contexts.size(), result);
+        return result;
+    }
+
+    /**
+     * Broadcast in sub-broadcasts split where the rate limit forces a wait,
+     * so the delegate still encodes the shared content once per sub-broadcast
+     */
+    @Override
+    public MailBatchResult sendBroadcast(EmailContext template, List<String> recipients) {
+        MailBatchResult result = new MailBatchResult(recipients.size());
+        int start = 0;
+        for (int i = 0; i < recipients.size(); i++) {
+            long wait = reserve(recipients.get(i));
+            if (wait > 0) {
+                broadcastChunk(template, recipients, start, i, result);
+                start = i;
+                try {
+                    TokenBucket.park(wait);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    MailProviderException failure =
+                            new MailProviderException("Interrupted while waiting for the send rate limit", e);
+                    for (int j = i; j < recipients.size(); j++) {
+                        result.markFailed(j, failure);
+                    }
+                    return result;
+                }
+            }
+        }
+        broadcastChunk(template, recipients, start, recipients.size(), result);
+        return result;
+    }
+
+    private void broadcastChunk(EmailContext template, List<String> recipients, int start, int end,
+                                MailBatchResult result) {
+        if (end <= start) {
+            return;
+        }
+        copyFailures(delegate.sendBroadcast(template, recipients.subList(start, end)), start, result);
+    }
+
+    private static void copyFailures(MailBatchResult chunk, int start, MailBatchResult result) {
+        for (int i = 0; i < chunk.size(); i++) {
+            if (!chunk.isSuccess(i)) {
+                result.markFailed(start + i, chunk.getFailure(i));
+            }
+        }
+    }
+
+    private void sendChunk(List<? extends MailContext> contexts, int start, int end, MailBatchResult result) {
+        if (end <= start) {
+            return;
+        }
+        copyFailures(delegate.sendMails(contexts.subList(start, end)), start, result);
+    }
+
+    /**
+     * Reserve a permit from every bucket the email draws from
+     *
+     * @return The time to wait until all reserved permits are available
+     */
+    private long reserve(MailContext context) {
+        long wait = providerBucket != null ? providerBucket.reserve() : 0L;
+        if ((defaultDomainLimit == null && configuredBuckets.isEmpty()) || !(context instanceof EmailContext)) {
+            return wait;
+        }
+
+        EmailContext emailContext = (EmailContext) context;
+        String[] seen = new String[recipientCount(emailContext)];
+        int seenCount = 0;
+        seenCount = collectDomains(emailContext.getTo(), seen, seenCount);
+        seenCount = collectDomains(emailContext.getCc(), seen, seenCount);
+        seenCount = collectDomains(emailContext.getBcc(), seen, seenCount);
+        for (int i = 0; i < seenCount; i++) {
+            TokenBucket bucket = domainBucket(seen[i]);
+            if (bucket != null) {
+                wait = Math.max(wait, bucket.reserve());
+            }
+        }
+        return wait;
+    }
+
+    /**
+     * Reserve a permit for a single broadcast recipient
+     *
+     * @return The time to wait until all reserved permits are available
+     */
+    private long reserve(String recipient) {
+        long wait = providerBucket != null ? providerBucket.reserve() : 0L;
+        if (defaultDomainLimit == null && configuredBuckets.isEmpty()) {
+            return wait;
+        }
+        String domain = domainOf(recipient);
+        TokenBucket bucket = domain != null ? domainBucket(domain) : null;
+        if (bucket != null) {
+            wait = Math.max(wait, bucket.reserve());
+        }
+        return wait;
+    }
+
+    private static int recipientCount(EmailContext context) {
+        return size(context.getTo()) + size(context.getCc()) + size(context.getBcc());
+    }
+
+    private static int size(List<String> list) {
+        return list != null ? list.size() : 0;
+    }
+
+    /**
+     * Collect the distinct domains of a recipient list
+     */
+    private static int collectDomains(List<String> recipients, String[] seen, int seenCount) {
+        if (recipients == null) {
+            return seenCount;
+        }
+        for (String recipient : recipients) {
+            String domain = domainOf(recipient);
+            if (domain == null) {
+                continue;
+            }
+            boolean duplicate = false;
+            for (int i = 0; i < seenCount; i++) {
+                if (seen[i].equals(domain)) {
+                    duplicate = true;
+                    break;
+                }
+            }
+            if (!duplicate) {
+                seen[seenCount++] = domain;
+            }
+        }
+        return seenCount;
+    }
+
+    /**
+     * Extract the domain from an address, also in the form {@code Name <user@domain>}
+     */
+    static String domainOf(String address) {
+        if (address == null) {
+            return null;
+        }
+        int at = address.lastIndexOf('@');
+        if (at < 0) {
+            return null;
+        }
+        int end = address.length();
+        while (end > at + 1 && (address.charAt(end - 1) == '>' || Character.isWhitespace(address.charAt(end - 1)))) {
+            end--;
+        }
+        return address.substring(at + 1, end).toLowerCase(Locale.ROOT);
+    }
+
+    private TokenBucket domainBucket(String domain) {
+        TokenBucket bucket = configuredBuckets.get(domain);
+        if (bucket != null || defaultDomainLimit == null) {
+            return bucket;
+        }
+        bucket = domainBuckets.get(domain);
+        return bucket != null ? bucket : trackDomain(domain);
+    }
+
+    private TokenBucket trackDomain(String domain) {
+        synchronized (domainBuckets) {
+            TokenBucket bucket = domainBuckets.get(domain);
+            if (bucket != null) {
+                return bucket;
+            }
+            if (domainBuckets.size() >= maxTrackedDomains) {
+                evictIdleBuckets();
+                if (domainBuckets.size() >= maxTrackedDomains) {
+                    return overflowBucket;
+                }
+            }
+            bucket = defaultDomainLimit.newBucket(clock);
+            domainBuckets.put(domain, bucket);
+            return bucket;
+        }
+    }
+
+    /**
+     * Examine the next few buckets and drop the idle ones.
+     * A full bucket behaves exactly like a new one, so dropping it loses no state.
+     */
+    private void evictIdleBuckets() {
+        long now = clock.getAsLong();
+        for (int i = 0; i < EVICTION_SAMPLE; i++) {
+            if (evictionCursor == null || !evictionCursor.hasNext()) {
+                evictionCursor = domainBuckets.values().iterator();
+                if (!evictionCursor.hasNext()) {
+                    return;
+                }
+            }
+            if (evictionCursor.next().isIdle(now)) {
+                evictionCursor.remove();
+            }
+        }
+    }
+
+    /**
+     * Get the decorated provider
+     *
+     * @return The provider that sends the emails
+     */
+    public MailProvider getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get the name the decorated provider is registered under
+     *
+     * @return The provider name, or null if the provider was decorated directly
+     */
+    public String getProviderName() {
+        return providerName;
+    }
+
+    /**
+     * Get the number of recipient domains without an explicit limit that currently have a bucket
+     *
+     * @return The number of tracked domains
+     */
+    public int getTrackedDomainCount() {
+        return domainBuckets.size();
+    }
+
+    /**
+     * A rate limit: a sustained rate and the burst allowed after an idle period
+     */
+    public static final class Limit {
+        private final double permitsPerSecond;
+        private final int burst;
+
+        private Limit(double permitsPerSecond, int burst) {
+            if (!(permitsPerSecond > 0)) {
+                throw new IllegalArgumentException("permitsPerSecond must be positive");
+            }
+            if (burst < 1) {
+                throw new IllegalArgumentException("burst must be at least 1");
+            }
+            this.permitsPerSecond = permitsPerSecond;
+            this.burst = burst;
+        }
+
+        /**
+         * Create a limit
+         *
+         * @param permitsPerSecond The sustained number of emails per second
+         * @param burst The number of emails that can be sent at once after an idle period
+         * @return The limit
+         */
+        public static Limit perSecond(double permitsPerSecond, int burst) {
+            return new Limit(permitsPerSecond, burst);
+        }
+
+        public double getPermitsPerSecond() {
+            return permitsPerSecond;
+        }
+
+        public int getBurst() {
+            return burst;
+        }
+
+        TokenBucket newBucket(LongSupplier clock) {
+            return new TokenBucket(permitsPerSecond, burst, clock);
+        }
+    }
+
+    /**
+     * Builder for RateLimitedMailProvider
+     */
+    public static class Builder {
+        private final MailProvider delegate;
+        private final String providerName;
+        private Limit providerLimit;
+        private Limit defaultDomainLimit;
+        private final Map<String, Limit> domainLimits = new HashMap<>();
+        private int maxTrackedDomains = 10_000;
+        private LongSupplier clock = System::nanoTime;
+
+        private Builder(MailProvider delegate, String providerName) {
+            this.delegate = delegate;
+            this.providerName = providerName;
+        }
+
+        /**
+         * Limit all emails sent through the provider
+         */
+        public Builder providerLimit(Limit limit) {
+            this.providerLimit = limit;
+            return this;
+        }
+
+        /**
+         * Limit every recipient domain without an explicit limit
+         */
+        public Builder defaultDomainLimit(Limit limit) {
+            this.defaultDomainLimit = limit;
+            return this;
+        }
+
+        /**
+         * Limit a single recipient domain
+         */
+        public Builder domainLimit(String domain, Limit limit) {
+            this.domainLimits.put(domain.toLowerCase(Locale.ROOT), limit);
+            return this;
+        }
+
+        /**
+         * The maximum number of domains without an explicit limit that get their own bucket
+         */
+        public Builder maxTrackedDomains(int maxTrackedDomains) {
+            this.maxTrackedDomains = maxTrackedDomains;
+            return this;
+        }
+
+        /**
+         * Read the time from the given clock instead of {@link System#nanoTime()}
+         */
+        Builder clock(LongSupplier clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public RateLimitedMailProvider build() {
+            if (delegate == null) {
+                throw new IllegalStateException("Rate limited provider must have a delegate");
+            }
+            if (maxTrackedDomains < 1) {
+                throw new IllegalStateException("maxTrackedDomains must be at least 1");
+            }
+            return new RateLimitedMailProvider(this);
+        }
+
+        /**
+         * Build the decorator and register it with {@link MailProviderFactory}
+         * in place of the decorated provider
+         *
+         * @return The registered decorator
+         * @throws IllegalStateException If the builder was not created with {@link #forRegisteredProvider(String)}
+         */
+        public RateLimitedMailProvider register() {
+            if (providerName == null) {
+                throw new IllegalStateException("Only providers created with forRegisteredProvider can be registered");
+            }
+            RateLimitedMailProvider provider = build();
+            MailProviderFactory.registerProvider(providerName, provider, false);
+            return provider;
+        }
+    }
+}
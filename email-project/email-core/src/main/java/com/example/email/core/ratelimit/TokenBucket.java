@@ -0,0 +1,126 @@
+package com.example.email.core.ratelimit;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free token bucket.
+ * <p>
+ * The bucket is stored as a single "theoretical arrival time" (the generic cell
+ * rate algorithm): each permit pushes that time forward by one emission interval,
+ * and a permit is free as long as the time stays within the burst window ahead of
+ * now. Taking a permit is one CAS on an {@link AtomicLong}, so callers under the
+ * limit never block or contend on a lock. Callers over the limit still reserve
+ * their permit immediately and are told how long to wait for it, which keeps
+ * waiting callers in arrival order without a queue.
+ */
+public final class TokenBucket {
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival;
+    private final LongSupplier clock;
+
+    /**
+     * Create a bucket that starts full
+     *
+     * @param permitsPerSecond The sustained rate
+     * @param burst The number of permits that can be taken at once after the bucket has been idle
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        this(permitsPerSecond, burst, System::nanoTime);
+    }
+
+    /**
+     * Create a bucket that reads the time from the given clock instead of {@link System#nanoTime()}
+     */
+    TokenBucket(double permitsPerSecond, int burst, LongSupplier clock) {
+        if (!(permitsPerSecond > 0)) {
+            throw new IllegalArgumentException("permitsPerSecond must be positive");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("burst must be at least 1");
+        }
+        this.intervalNanos = Math.max(1L, Math.round(TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        this.clock = clock;
+        this.theoreticalArrival = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * Reserve one permit
+     *
+     * @return The time in nanoseconds the caller has to wait before using the permit, 0 if it can be used now
+     */
+    public long reserve() {
+        while (true) {
+            long now = clock.getAsLong();
+            long current = theoreticalArrival.get();
+            long next = (current - now > 0 ? current : now) + intervalNanos;
+            if (theoreticalArrival.compareAndSet(current, next)) {
+                long wait = next - now - burstNanos;
+                return wait > 0 ? wait : 0L;
+            }
+        }
+    }
+
+    /**
+     * Take one permit, waiting until it is available.
+     * A permit reserved by an interrupted caller is not returned to the bucket.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        park(reserve());
+    }
+
+    /**
+     * Check whether the bucket is full, in which case it behaves like a new bucket
+     *
+     * @param now The current time of the bucket's clock
+     * @return true if no permits have been taken within the last burst window
+     */
+    boolean isIdle(long now) {
+        return theoreticalArrival.get() - now <= 0;
+    }
+
+    /**
+     * Wait for the given time, ignoring spurious wakeups
+     *
+     * @param nanos The time to wait in nanoseconds
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public static void park(long nanos) throws InterruptedException {
+        if (nanos <= 0) {
+            return;
+        }
+        long deadline = System.nanoTime() + nanos;
+        long remaining = nanos;
+        while (remaining > 0) {
+            LockSupport.parkNanos(remaining);
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            remaining = deadline - System.nanoTime();
+        }
+    }
+
+    /**
+     * Get the sustained rate of this bucket
+     *
+     * @return The number of permits per second
+     */
+    public double getPermitsPerSecond() {
+        return (double) TimeUnit.SECONDS.toNanos(1) / intervalNanos;
+    }
+
+    /**
+     * Get the burst size of this bucket
+     *
+     * @return The number of permits that can be taken at once
+     */
+    public int getBurst() {
+        return (int) (burstNanos / intervalNanos);
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.email.core.resilience;
+
+import com.example.email.core.provider.MailProvider;
+
+/**
+ * Thrown when a send is rejected without calling the provider,
+ * because its circuit breaker is open or its bulkhead is full
+ */
+public class CallNotPermittedException extends MailProvider.MailProviderException {
+    public CallNotPermittedException(String message) {
+        super(message);
+    }
+}
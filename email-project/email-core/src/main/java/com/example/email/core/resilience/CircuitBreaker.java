@@ -0,0 +1,212 @@
+package com.example.email.core.resilience;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free circuit breaker driven by the failure rate over a window of calls.
+ * <p>
+ * While closed, outcomes are counted in windows of {@code windowSize} calls. When
+ * a window ends with a failure rate at or above the threshold, or optionally after
+ * a number of consecutive failures, the breaker opens and rejects calls. After the open duration a single trial call is let through:
+ * its success closes the breaker, its failure opens it again.
+ * <p>
+ * Callers take a permit with {@link #tryAcquire()} and must report the outcome of
+ * every permitted call with {@link #onSuccess()} or {@link #onFailure()}.
+ */
+public final class CircuitBreaker {
+    private static final int CLOSED = 0;
+    private static final int OPEN = 1;
+    private static final int HALF_OPEN = 2;
+
+    private final double failureRateThreshold;
+    private final int windowSize;
+    private final int consecutiveFailureThreshold;
+    private final long openNanos;
+
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+    private volatile long openedAt;
+    // Calls in the high 32 bits, failures in the low 32 bits, so both change with one CAS
+    private final AtomicLong window = new AtomicLong();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    /**
+     * Create a circuit breaker
+     *
+     * @param failureRateThreshold The failure rate between 0 and 1 at which the breaker opens
+     * @param windowSize The number of calls the failure rate is computed over
+     * @param openDuration How long the breaker rejects calls before letting a trial call through
+     */
+    public CircuitBreaker(double failureRateThreshold, int windowSize, Duration openDuration) {
+        this(failureRateThreshold, windowSize, 0, openDuration);
+    }
+
+    /**
+     * Create a circuit breaker that also opens after consecutive failures
+     *
+     * @param failureRateThreshold The failure rate between 0 and 1 at which the breaker opens
+     * @param windowSize The number of calls the failure rate is computed over
+     * @param consecutiveFailureThreshold The number of failures in a row that open the breaker, 0 to disable
+     * @param openDuration How long the breaker rejects calls before letting a trial call through
+     */
+    public CircuitBreaker(double failureRateThreshold, int windowSize, int consecutiveFailureThreshold,
+                          Duration openDuration) {
+        if (!(failureRateThreshold > 0 && failureRateThreshold <= 1)) {
+            throw new IllegalArgumentException("failureRateThreshold must be greater than 0 and at most 1");
+        }
+        if (windowSize < 1) {
+            throw new IllegalArgumentException("windowSize must be at least 1");
+        }
+        if (consecutiveFailureThreshold < 0) {
+            throw new IllegalArgumentException("consecutiveFailureThreshold must not be negative");
+        }
+        if (openDuration.isNegative()) {
+            throw new IllegalArgumentException("openDuration must not be negative");
+        }
+        this.failureRateThreshold = failureRateThreshold;
+        this.windowSize = windowSize;
+        this.consecutiveFailureThreshold = consecutiveFailureThreshold;
+        this.openNanos = openDuration.toNanos();
+    }
+
+    /**
+     * States of a circuit breaker
+     */
+    public enum State {
+        /**
+         * Calls are permitted and their outcomes counted
+         */
+        CLOSED,
+
+        /**
+         * Calls are rejected until the open duration has passed
+         */
+        OPEN,
+
+        /**
+         * A single trial call is in progress
+         */
+        HALF_OPEN
+    }
+
+    /**
+     * Try to take a permit for a call
+     *
+     * @return true if the call may proceed and its outcome must be reported
+     */
+    public boolean tryAcquire() {
+        int current = state.get();
+        if (current == CLOSED) {
+            return true;
+        }
+        if (current == OPEN && System.nanoTime() - openedAt >= openNanos) {
+            return state.compareAndSet(OPEN, HALF_OPEN);
+        }
+        return false;
+    }
+
+    /**
+     * Check whether a call would currently be permitted, without taking the permit
+     *
+     * @return true if {@link #tryAcquire()} would likely succeed
+     */
+    public boolean isCallPermitted() {
+        int current = state.get();
+        return current == CLOSED || (current == OPEN && System.nanoTime() - openedAt >= openNanos);
+    }
+
+    /**
+     * Report that a permitted call succeeded
+     */
+    public void onSuccess() {
+        if (consecutiveFailures.get() != 0) {
+            consecutiveFailures.set(0);
+        }
+        if (state.get() == HALF_OPEN) {
+            window.set(0L);
+            state.compareAndSet(HALF_OPEN, CLOSED);
+            return;
+        }
+        record(false);
+    }
+
+    /**
+     * Report that a permitted call failed
+     */
+    public void onFailure() {
+        if (state.get() == HALF_OPEN) {
+            open(HALF_OPEN);
+            return;
+        }
+        if (consecutiveFailureThreshold > 0
+                && consecutiveFailures.incrementAndGet() >= consecutiveFailureThreshold) {
+            consecutiveFailures.set(0);
+            window.set(0L);
+            open(CLOSED);
+            return;
+        }
+        record(true);
+    }
+
+    private void record(boolean failure) {
+        while (true) {
+            long current = window.get();
+            int calls = (int) (current >>> 32) + 1;
+            int failures = (int) current + (failure ? 1 : 0);
+            if (calls < windowSize) {
+                if (window.compareAndSet(current, ((long) calls << 32) | failures)) {
+                    return;
+                }
+                continue;
+            }
+            if (window.compareAndSet(current, 0L)) {
+                if (failures >= failureRateThreshold * calls) {
+                    open(CLOSED);
+                }
+                return;
+            }
+        }
+    }
+
+    private void open(int from) {
+        openedAt = System.nanoTime();
+        state.compareAndSet(from, OPEN);
+    }
+
+    /**
+     * Get the failure rate at which the breaker opens
+     *
+     * @return The failure rate threshold between 0 and 1
+     */
+    public double getFailureRateThreshold() {
+        return failureRateThreshold;
+    }
+
+    /**
+     * Get the current state
+     *
+     * @return The state
+     */
+    public State getState() {
+        switch (state.get()) {
+            case OPEN:
+                return State.OPEN;
+            case HALF_OPEN:
+                return State.HALF_OPEN;
+            default:
+                return State.CLOSED;
+        }
+    }
+
+    /**
+     * Get the failure rate of the current, incomplete window
+     *
+     * @return The failure rate between 0 and 1, or 0 if no calls were counted yet
+     */
+    public double getFailureRate() {
+        long current = window.get();
+        int calls = (int) (current >>> 32);
+        return calls == 0 ? 0.0 : (double) (int) current / calls;
+    }
+}
@@ -0,0 +1,583 @@
+package com.example.email.core.resilience;
+
+import com.example.email.core.model.Attachment;
+import com.example.email.core.provider.EmailContext;
+import com.example.email.core.provider.MailBatchResult;
+import com.example.email.core.provider.MailContext;
+import com.example.email.core.provider.MailProvider;
+import com.example.email.core.provider.MailProviderFactory;
+
+import java.time.Duration;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntPredicate;
+
+/**
+ * Composite mail provider that spreads sends across several providers and fails over between them.
+ * <p>
+ * Each send goes to a member chosen by weighted round robin or by the fewest
+ * outstanding sends relative to weight. Every member has its own
+ * {@link CircuitBreaker}; members whose breaker is open are skipped. A send that
+ * fails on transport is retried on the remaining members in order and finally on
+ * the fallback provider, which is only used when no member could send. Batches and
+ * broadcasts go to a single member as a whole, and only their messages that failed
+ * on transport move on to the next member. Permanent failures, such as a rejected
+ * recipient, are returned as they are and do not count against the member.
+ * A message with an attachment that can only be read once, such as one created
+ * from an input stream, is not failed over once its attachment has been read.
+ * <p>
+ * A message that failed after the relay accepted it can be delivered twice.
+ */
+public class LoadBalancingMailProvider implements MailProvider {
+    private final Member[] members;
+    private final int[] schedule;
+    private final Strategy strategy;
+    private final MailProvider fallback;
+    private final AtomicLong cursor = new AtomicLong();
+
+    private LoadBalancingMailProvider(Builder builder) {
+        this.members = new Member[builder.members.size()];
+        for (int i = 0; i < members.length; i++) {
+            MemberSpec spec = builder.members.get(i);
+            members[i] = new Member(spec.name, spec.provider, spec.weight,
+                    new CircuitBreaker(builder.failureRateThreshold, builder.windowSize, builder.openDuration));
+        }
+        this.schedule = schedule(members);
+        this.strategy = builder.strategy;
+        this.fallback = builder.fallback;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * How the first member for a send is chosen
+     */
+    public enum Strategy {
+        /**
+         * Members take turns in proportion to their weight
+         */
+        WEIGHTED_ROUND_ROBIN,
+
+        /**
+         * The member with the fewest outstanding sends per unit of weight is chosen
+         */
+        LEAST_OUTSTANDING
+    }
+
+    @Override
+    public void sendMail(MailContext context) throws MailProviderException {
+        Exception failure = null;
+        int start = select();
+        for (int n = 0; n < members.length; n++) {
+            Member member = members[(start + n) % members.length];
+            if (!member.breaker.tryAcquire()) {
+                continue;
+            }
+            member.outstanding.incrementAndGet();
+            try {
+                member.provider.sendMail(context);
+                member.record(1, 0, 0);
+                return;
+            } catch (Exception e) {
+                if (!MailFailures.isTransient(e)) {
+                    member.record(1, 1, 0);
+                    keepEarlierFailure(e, failure);
+                    throw e;
+                }
+                member.record(1, 1, 1);
+                if (!canResend(context)) {
+                    keepEarlierFailure(e, failure);
+                    throw e;
+                }
+                failure = addFailure(failure, e);
+            } finally {
+                member.outstanding.decrementAndGet();
+            }
+        }
+        if (fallback != null) {
+            try {
+                fallback.sendMail(context);
+                return;
+            } catch (Exception e) {
+                if (!MailFailures.isTransient(e)) {
+                    keepEarlierFailure(e, failure);
+                    throw e;
+                }
+                failure = addFailure(failure, e);
+            }
+        }
+        throw failure != null
+                ? new MailProviderException("All mail providers failed: " + failure.getMessage(), failure)
+                : new MailProviderException("No mail provider available, all circuit breakers are open");
+    }
+
+    /**
+     * Keep the transport failures of members tried before the one that rejected the email
+     */
+    private static void keepEarlierFailure(Exception rejection, Exception earlier) {
+        if (earlier != null) {
+            rejection.addSuppressed(earlier);
+        }
+    }
+
+    @Override
+    public MailBatchResult sendMails(List<? extends MailContext> contexts) {
+        return send(contexts.size(), (provider, indexes, count) ->
+                provider.sendMails(new IndexedList<>(contexts, indexes, count)),
+                index -> canResend(contexts.get(index)));
+    }
+
+    @Override
+    public MailBatchResult sendBroadcast(EmailContext template, List<String> recipients) {
+        return send(recipients.size(), (provider, indexes, count) ->
+                provider.sendBroadcast(template, new IndexedList<>(recipients, indexes, count)),
+                index -> canResend(template));
+    }
+
+    /**
+     * Check whether an email can be handed to another provider, which is not the
+     * case once an attachment that can only be read once has been read
+     */
+    private static boolean canResend(MailContext context) {
+        if (!(context instanceof EmailContext)) {
+            return true;
+        }
+        List<Attachment> attachments = ((EmailContext) context).getAttachments();
+        if (attachments == null) {
+            return true;
+        }
+        for (Attachment attachment : attachments) {
+            Attachment.AttachmentSource source = attachment.getSource();
+            if (source.isRepeatable()) {
+                continue;
+            }
+            if (!(source instanceof Attachment.InputStreamAttachmentSource)
+                    || ((Attachment.InputStreamAttachmentSource) source).isOpened()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Send a batch through the members in order, passing only the messages that failed on transport on
+     */
+    private MailBatchResult send(int size, BatchCall call, IntPredicate resendable) {
+        MailBatchResult result = new MailBatchResult(size);
+        Exception[] failures = new Exception[size];
+        // Messages that failed for good, which no other provider is asked to send
+        boolean[] rejected = new boolean[size];
+        int[] pending = new int[size];
+        for (int i = 0; i < size; i++) {
+            pending[i] = i;
+        }
+        int pendingCount = size;
+
+        int start = select();
+        for (int n = 0; n < members.length && pendingCount > 0; n++) {
+            Member member = members[(start + n) % members.length];
+            if (!member.breaker.tryAcquire()) {
+                continue;
+            }
+            member.outstanding.addAndGet(pendingCount);
+            int sent = pendingCount;
+            int failed;
+            try {
+                failed = attempt(member.provider, call, pending, pendingCount, failures, rejected);
+            } finally {
+                member.outstanding.addAndGet(-sent);
+            }
+            int remaining = compact(pending, sent, rejected);
+            member.record(sent, failed, remaining);
+            pendingCount = dropSingleUse(pending, remaining, rejected, resendable);
+        }
+        if (fallback != null && pendingCount > 0) {
+            attempt(fallback, call, pending, pendingCount, failures, rejected);
+            pendingCount = compact(pending, pendingCount, rejected);
+        }
+
+        for (int i = 0; i < size; i++) {
+            if (rejected[i]) {
+                result.markFailed(i, failures[i]);
+            }
+        }
+        for (int i = 0; i < pendingCount; i++) {
+            int index = pending[i];
+            result.markFailed(index, failures[index] != null
+                    ? failures[index]
+                    : new MailProviderException("No mail provider available, all circuit breakers are open"));
+        }
+        return result;
+    }
+
+    /**
+     * Send the pending messages through one provider, recording their failures.
+     * Sent messages are removed from the pending array by setting them to -1,
+     * permanently failed ones are marked as rejected.
+     *
+     * @return The number of messages that failed
+     */
+    private static int attempt(MailProvider provider, BatchCall call, int[] pending, int pendingCount,
+                               Exception[] failures, boolean[] rejected) {
+        MailBatchResult chunk;
+        try {
+            chunk = call.send(provider, pending, pendingCount);
+        } catch (Exception e) {
+            boolean permanent = !MailFailures.isTransient(e);
+            for (int i = 0; i < pendingCount; i++) {
+                failures[pending[i]] = addFailure(failures[pending[i]], e);
+                rejected[pending[i]] = permanent;
+            }
+            return pendingCount;
+        }
+        int failed = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            if (chunk.isSuccess(i)) {
+                pending[i] = -1;
+            } else {
+                Exception failure = chunk.getFailure(i);
+                failures[pending[i]] = addFailure(failures[pending[i]], failure);
+                rejected[pending[i]] = !MailFailures.isTransient(failure);
+                failed++;
+            }
+        }
+        return failed;
+    }
+
+    /**
+     * Move the messages that failed on transport to the front of the pending array
+     *
+     * @return The number of messages still pending
+     */
+    private static int compact(int[] pending, int pendingCount, boolean[] rejected) {
+        int remaining = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            int index = pending[i];
+            if (index >= 0 && !rejected[index]) {
+                pending[remaining++] = index;
+            }
+        }
+        return remaining;
+    }
+
+    /**
+     * Keep the transport failures of messages that cannot be sent again as final
+     *
+     * @return The number of messages still pending
+     */
+    private static int dropSingleUse(int[] pending, int pendingCount, boolean[] rejected, IntPredicate resendable) {
+        int remaining = 0;
+        for (int i = 0; i < pendingCount; i++) {
+            int index = pending[i];
+            if (resendable.test(index)) {
+                pending[remaining++] = index;
+            } else {
+                rejected[index] = true;
+            }
+        }
+        return remaining;
+    }
+
+    private static Exception addFailure(Exception first, Exception next) {
+        if (first == null) {
+            return next;
+        }
+        if (next != first) {
+            first.addSuppressed(next);
+        }
+        return first;
+    }
+
+    /**
+     * Choose the member to try first
+     */
+    private int select() {
+        if (members.length == 1) {
+            return 0;
+        }
+        long turn = cursor.getAndIncrement();
+        if (strategy == Strategy.WEIGHTED_ROUND_ROBIN) {
+            return schedule[(int) Math.floorMod(turn, (long) schedule.length)];
+        }
+
+        int offset = (int) Math.floorMod(turn, (long) members.length);
+        int best = -1;
+        for (int n = 0; n < members.length; n++) {
+            int i = (offset + n) % members.length;
+            Member member = members[i];
+            if (!member.breaker.isCallPermitted()) {
+                continue;
+            }
+            if (best < 0 || (long) member.outstanding.get() * members[best].weight
+                    < (long) members[best].outstanding.get() * member.weight) {
+                best = i;
+            }
+        }
+        return best < 0 ? offset : best;
+    }
+
+    /**
+     * Interleave members by weight with smooth weighted round robin,
+     * so a heavy member does not get all its turns in a row
+     */
+    private static int[] schedule(Member[] members) {
+        int total = 0;
+        for (Member member : members) {
+            total += member.weight;
+        }
+        int[] schedule = new int[total];
+        int[] current = new int[members.length];
+        for (int turn = 0; turn < total; turn++) {
+            int best = 0;
+            for (int i = 0; i < members.length; i++) {
+                current[i] += members[i].weight;
+                if (current[i] > current[best]) {
+                    best = i;
+                }
+            }
+            current[best] -= total;
+            schedule[turn] = best;
+        }
+        return schedule;
+    }
+
+    /**
+     * Get the members in the order they were added
+     *
+     * @return The members
+     */
+    public List<Member> getMembers() {
+        return List.of(members);
+    }
+
+    /**
+     * Get the provider used when no member could send
+     *
+     * @return The fallback provider, or null if there is none
+     */
+    public MailProvider getFallback() {
+        return fallback;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Sends pending messages of a batch through a provider
+     */
+    private interface BatchCall {
+        MailBatchResult send(MailProvider provider, int[] indexes, int count) throws Exception;
+    }
+
+    /**
+     * View of selected elements of a list, without copying them
+     */
+    private static final class IndexedList<E> extends AbstractList<E> {
+        private final List<? extends E> list;
+        private final int[] indexes;
+        private final int size;
+
+        private IndexedList(List<? extends E> list, int[] indexes, int size) {
+            this.list = list;
+            this.indexes = Arrays.copyOf(indexes, size);
+            this.size = size;
+        }
+
+        @Override
+        public E get(int index) {
+            return list.get(indexes[index]);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+
+    /**
+     * A provider taking part in load balancing, with its live statistics
+     */
+    public static final class Member {
+        private final String name;
+        private final MailProvider provider;
+        private final int weight;
+        private final CircuitBreaker breaker;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicLong sentCount = new AtomicLong();
+        private final AtomicLong failedCount = new AtomicLong();
+
+        private Member(String name, MailProvider provider, int weight, CircuitBreaker breaker) {
+            this.name = name;
+            this.provider = provider;
+            this.weight = weight;
+            this.breaker = breaker;
+        }
+
+        /**
+         * Record the outcome of a send. Only transport failures count for the circuit
+         * breaker; a batch counts as a failure once the share of its messages that
+         * failed on transport reaches the breaker's failure rate threshold.
+         *
+         * @param messages The number of messages sent
+         * @param failed The number of messages that failed for any reason
+         * @param transientFailed The number of messages that failed on transport
+         */
+        private void record(int messages, int failed, int transientFailed) {
+            sentCount.addAndGet(messages - failed);
+            failedCount.addAndGet(failed);
+            if (transientFailed > 0 && transientFailed >= breaker.getFailureRateThreshold() * messages) {
+                breaker.onFailure();
+            } else {
+                breaker.onSuccess();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public MailProvider getProvider() {
+            return provider;
+        }
+
+        public int getWeight() {
+            return weight;
+        }
+
+        /**
+         * Get the number of messages currently being sent through this member
+         *
+         * @return The outstanding message count
+         */
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        public long getSentCount() {
+            return sentCount.get();
+        }
+
+        public long getFailedCount() {
+            return failedCount.get();
+        }
+
+        public CircuitBreaker.State getCircuitState() {
+            return breaker.getState();
+        }
+
+        /**
+         * Get the failure rate of the circuit breaker's current window
+         *
+         * @return The failure rate between 0 and 1
+         */
+        public double getFailureRate() {
+            return breaker.getFailureRate();
+        }
+    }
+
+    private static final class MemberSpec {
+        private final String name;
+        private final MailProvider provider;
+        private final int weight;
+
+        private MemberSpec(String name, MailProvider provider, int weight) {
+            this.name = name;
+            this.provider = provider;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * Builder for LoadBalancingMailProvider
+     */
+    public static class Builder {
+        private static final int MAX_WEIGHT = 1000;
+
+        private final List<MemberSpec> members = new ArrayList<>();
+        private MailProvider fallback;
+        private Strategy strategy = Strategy.WEIGHTED_ROUND_ROBIN;
+        private double failureRateThreshold = 0.5;
+        private int windowSize = 20;
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        private Builder() {
+        }
+
+        /**
+         * Add a provider to balance across
+         *
+         * @param name The name shown in statistics
+         * @param provider The provider
+         * @param weight The share of sends relative to the other members, from 1 to 1000
+         */
+        public Builder provider(String name, MailProvider provider, int weight) {
+            if (weight < 1 || weight > MAX_WEIGHT) {
+                throw new IllegalArgumentException("weight must be between 1 and " + MAX_WEIGHT);
+            }
+            members.add(new MemberSpec(name, provider, weight));
+            return this;
+        }
+
+        /**
+         * Add a provider registered with {@link MailProviderFactory}
+         *
+         * @throws IllegalArgumentException If no provider with the given name exists
+         */
+        public Builder registeredProvider(String name, int weight) {
+            return provider(name, MailProviderFactory.getProvider(name), weight);
+        }
+
+        /**
+         * Provider used only when no member could send
+         */
+        public Builder fallback(MailProvider fallback) {
+            this.fallback = fallback;
+            return this;
+        }
+
+        /**
+         * Use a provider registered with {@link MailProviderFactory} as the fallback
+         *
+         * @throws IllegalArgumentException If no provider with the given name exists
+         */
+        public Builder registeredFallback(String name) {
+            return fallback(MailProviderFactory.getProvider(name));
+        }
+
+        public Builder strategy(Strategy strategy) {
+            this.strategy = strategy;
+            return this;
+        }
+
+        /**
+         * Configure the circuit breaker of every member
+         *
+         * @param failureRateThreshold The failure rate between 0 and 1 at which a member is taken out
+         * @param windowSize The number of sends the failure rate is computed over
+         * @param openDuration How long a member is skipped before a trial send
+         */
+        public Builder circuitBreaker(double failureRateThreshold, int windowSize, Duration openDuration) {
+            this.failureRateThreshold = failureRateThreshold;
+            this.windowSize = windowSize;
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        public LoadBalancingMailProvider build() {
+            if (members.isEmpty()) {
+                throw new IllegalStateException("Load balancing provider must have at least one provider");
+            }
+            if (strategy == null) {
+                throw new IllegalStateException("Load balancing strategy must be set");
+            }
+            return new LoadBalancingMailProvider(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.email.core.resilience;
+
+import com.example.email.core.provider.MailBatchResult;
+import com.example.email.core.provider.MailProvider;
+
+import java.io.UncheckedIOException;
+
+/**
+ * Tells failures of the provider apart from failures of the email.
+ * Only transport and connection failures are worth failing over and count
+ * towards a circuit breaker; a rejected address or an invalid email fails the
+ * same way everywhere and says nothing about the provider.
+ */
+final class MailFailures {
+
+    private MailFailures() {
+    }
+
+    /**
+     * Check whether a send failure was caused by the provider or its connection
+     *
+     * @param failure The failure
+     * @return true for transport and connection failures
+     */
+    static boolean isTransient(Throwable failure) {
+        if (failure instanceof MailProvider.MailProviderException) {
+            return !((MailProvider.MailProviderException) failure).isPermanent();
+        }
+        // Other unchecked exceptions are programming or validation errors
+        return failure instanceof UncheckedIOException;
+    }
+
+    /**
+     * Count the messages of a batch that failed with a transient failure
+     *
+     * @param result The batch result
+     * @return The number of transient failures
+     */
+    static int countTransient(MailBatchResult result) {
+        int count = 0;
+        for (int i = 0; i < result.size(); i++) {
+            if (!result.isSuccess(i) && isTransient(result.getFailure(i))) {
+                count++;
+            }
+        }
+        return count;
+    }
+}
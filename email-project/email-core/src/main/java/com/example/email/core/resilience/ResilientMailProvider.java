@@ -0,0 +1,410 @@
+package com.example.email.core.resilience;
+
+import com.example.email.core.metrics.MailMetrics;
+import com.example.email.core.provider.EmailContext;
+import com.example.email.core.provider.MailBatchResult;
+import com.example.email.core.provider.MailContext;
+import com.example.email.core.provider.MailProvider;
+import com.example.email.core.provider.MailProviderFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mail provider decorator with a circuit breaker and a bulkhead.
+ * <p>
+ * The bulkhead limits the number of concurrent calls into the delegate, so a hanging
+ * relay ties up at most that many threads; further sends are rejected, or wait up to
+ * a configured time for a free slot. The {@link CircuitBreaker} opens after too many
+ * failed or slow calls, after which sends are rejected immediately until a trial call
+ * succeeds. Rejected sends fail with a {@link CallNotPermittedException} and are
+ * counted as {@link MailMetrics.Outcome#REJECTED}. A batch or broadcast counts as a
+ * single call, which fails when the share of its messages that failed on transport
+ * reaches the breaker's failure rate threshold.
+ * <p>
+ * Only transport and connection failures count against the breaker. Permanent
+ * failures of an email, such as a rejected recipient, mean the provider is working.
+ */
+public class ResilientMailProvider implements MailProvider {
+    /**
+     * Component name used when reporting metrics
+     */
+    public static final String METRICS_COMPONENT = "resilient";
+
+    private final MailProvider delegate;
+    private final String providerName;
+    private final String name;
+    private final CircuitBreaker breaker;
+    private final int maxConcurrentCalls;
+    private final Semaphore bulkhead;
+    private final long maxWaitNanos;
+    private final long slowCallNanos;
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private volatile MailMetrics metrics;
+    private volatile MailMetrics registeredMetrics;
+
+    private ResilientMailProvider(Builder builder) {
+        this.delegate = builder.delegate;
+        this.providerName = builder.providerName;
+        this.name = builder.name != null ? builder.name : builder.providerName != null ? builder.providerName : "default";
+        this.breaker = new CircuitBreaker(builder.failureRateThreshold, builder.windowSize,
+                builder.consecutiveFailureThreshold, builder.openDuration);
+        this.maxConcurrentCalls = builder.maxConcurrentCalls;
+        this.bulkhead = new Semaphore(builder.maxConcurrentCalls);
+        this.maxWaitNanos = builder.maxWait.toNanos();
+        this.slowCallNanos = builder.slowCallThreshold != null ? builder.slowCallThreshold.toNanos() : Long.MAX_VALUE;
+    }
+
+    /**
+     * Create a builder decorating the given provider
+     *
+     * @param delegate The provider that sends the emails
+     * @return A new builder
+     */
+    public static Builder builder(MailProvider delegate) {
+        return new Builder(delegate, null);
+    }
+
+    /**
+     * Create a builder decorating a provider registered with {@link MailProviderFactory}.
+     * Use {@link Builder#register()} to replace the registered provider with the decorator.
+     *
+     * @param providerName The name the provider is registered under
+     * @return A new builder
+     * @throws IllegalArgumentException If no provider with the given name exists
+     */
+    public static Builder forRegisteredProvider(String providerName) {
+        return new Builder(MailProviderFactory.getProvider(providerName), providerName);
+    }
+
+    @Override
+    public void sendMail(MailContext context) throws MailProviderException {
+        acquire(1);
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            delegate.sendMail(context);
+        } catch (MailProviderException | RuntimeException e) {
+            failed = MailFailures.isTransient(e);
+            throw e;
+        } finally {
+            release(failed, System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public MailBatchResult sendMails(List<? extends MailContext> contexts) {
+        if (contexts.isEmpty()) {
+            return new MailBatchResult(0);
+        }
+        try {
+            acquire(contexts.size());
+        } catch (MailProviderException e) {
+            return failAll(contexts.size(), e);
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            MailBatchResult result = delegate.sendMails(contexts);
+            failed = isFailed(result);
+            return result;
+        } catch (RuntimeException e) {
+            failed = MailFailures.isTransient(e);
+            throw e;
+        } finally {
+            release(failed, (System.nanoTime() - start) / contexts.size());
+        }
+    }
+
+    @Override
+    public MailBatchResult sendBroadcast(EmailContext template, List<String> recipients) {
+        if (recipients.isEmpty()) {
+            return new MailBatchResult(0);
+        }
+        try {
+            acquire(recipients.size());
+        } catch (MailProviderException e) {
+            return failAll(recipients.size(), e);
+        }
+        long start = System.nanoTime();
+        boolean failed = false;
+        try {
+            MailBatchResult result = delegate.sendBroadcast(template, recipients);
+            failed = isFailed(result);
+            return result;
+        } catch (RuntimeException e) {
+            failed = MailFailures.isTransient(e);
+            throw e;
+        } finally {
+            release(failed, (System.nanoTime() - start) / recipients.size());
+        }
+    }
+
+    /**
+     * Check whether a batch counts as a failed call: its share of transport
+     * failures reaches the breaker's failure rate threshold
+     */
+    private boolean isFailed(MailBatchResult result) {
+        int failed = MailFailures.countTransient(result);
+        return failed > 0 && failed >= breaker.getFailureRateThreshold() * result.size();
+    }
+
+    /**
+     * Take a bulkhead slot and a circuit breaker permit.
+     * The bulkhead comes first, so a half-open breaker's trial permit is never
+     * taken by a call the bulkhead then rejects.
+     *
+     * @param messages The number of messages in the call, for the rejection count
+     */
+    private void acquire(int messages) throws MailProviderException {
+        MailMetrics metrics = getMetrics();
+        registerGauges(metrics);
+
+        boolean permitted;
+        if (maxWaitNanos > 0) {
+            try {
+                permitted = bulkhead.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new MailProviderException("Interrupted while waiting for the bulkhead of " + name, e);
+            }
+        } else {
+            permitted = bulkhead.tryAcquire();
+        }
+        if (!permitted) {
+            reject(metrics, messages);
+            throw new CallNotPermittedException("Bulkhead of " + name + " is full, "
+                    + maxConcurrentCalls + " concurrent calls in progress");
+        }
+        if (!breaker.tryAcquire()) {
+            bulkhead.release();
+            reject(metrics, messages);
+            throw new CallNotPermittedException("Circuit breaker of " + name + " is open");
+        }
+    }
+
+    private void reject(MailMetrics metrics, int messages) {
+        rejectedCount.addAndGet(messages);
+        for (int i = 0; i < messages; i++) {
+            metrics.recordOutcome(METRICS_COMPONENT, MailMetrics.Outcome.REJECTED);
+        }
+    }
+
+    /**
+     * Return the bulkhead slot and report the outcome; slow calls count as failures for the breaker
+     */
+    private void release(boolean failed, long nanosPerMessage) {
+        bulkhead.release();
+        if (failed || nanosPerMessage > slowCallNanos) {
+            breaker.onFailure();
+        } else {
+            breaker.onSuccess();
+        }
+    }
+
+    private static MailBatchResult failAll(int size, Exception failure) {
+        MailBatchResult result = new MailBatchResult(size);
+        for (int i = 0; i < size; i++) {
+            result.markFailed(i, failure);
+        }
+        return result;
+    }
+
+    private void registerGauges(MailMetrics metrics) {
+        if (registeredMetrics == metrics) {
+            return;
+        }
+        synchronized (this) {
+            if (registeredMetrics != metrics) {
+                metrics.registerCircuitBreaker(name, () -> breaker.getState().ordinal());
+                metrics.registerBulkhead(name, this::getActiveCalls);
+                registeredMetrics = metrics;
+            }
+        }
+    }
+
+    /**
+     * Set the metrics this provider reports to
+     *
+     * @param metrics The metrics, or null to use {@link MailMetrics#global()}
+     * @return This provider for chaining
+     */
+    public ResilientMailProvider setMetrics(MailMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Get the metrics this provider reports to
+     *
+     * @return The metrics set explicitly, or {@link MailMetrics#global()}
+     */
+    public MailMetrics getMetrics() {
+        MailMetrics current = metrics;
+        return current != null ? current : MailMetrics.global();
+    }
+
+    /**
+     * Get the decorated provider
+     *
+     * @return The provider that sends the emails
+     */
+    public MailProvider getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * Get the name the decorated provider is registered under
+     *
+     * @return The provider name, or null if the provider was decorated directly
+     */
+    public String getProviderName() {
+        return providerName;
+    }
+
+    /**
+     * Get the name used in rejection messages and metrics
+     *
+     * @return The name
+     */
+    public String getName() {
+        return name;
+    }
+
+    public CircuitBreaker.State getCircuitState() {
+        return breaker.getState();
+    }
+
+    /**
+     * Get the number of calls currently in the delegate
+     *
+     * @return The number of occupied bulkhead slots
+     */
+    public int getActiveCalls() {
+        return maxConcurrentCalls - bulkhead.availablePermits();
+    }
+
+    /**
+     * Get the number of messages rejected by the bulkhead or circuit breaker
+     *
+     * @return The rejected message count
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * Builder for ResilientMailProvider
+     */
+    public static class Builder {
+        private final MailProvider delegate;
+        private final String providerName;
+        private String name;
+        private double failureRateThreshold = 0.5;
+        private int windowSize = 20;
+        private int consecutiveFailureThreshold = 5;
+        private Duration openDuration = Duration.ofSeconds(30);
+        private Duration slowCallThreshold;
+        private int maxConcurrentCalls = 20;
+        private Duration maxWait = Duration.ZERO;
+
+        private Builder(MailProvider delegate, String providerName) {
+            this.delegate = delegate;
+            this.providerName = providerName;
+        }
+
+        /**
+         * Name used in rejection messages and metrics, defaults to the registered provider name
+         */
+        public Builder name(String name) {
+            this.name = name;
+            return this;
+        }
+
+        /**
+         * Open the breaker when the failure rate over a window of calls reaches the threshold
+         *
+         * @param failureRateThreshold The failure rate between 0 and 1
+         * @param windowSize The number of calls the failure rate is computed over
+         */
+        public Builder failureRate(double failureRateThreshold, int windowSize) {
+            this.failureRateThreshold = failureRateThreshold;
+            this.windowSize = windowSize;
+            return this;
+        }
+
+        /**
+         * Open the breaker after this many failed calls in a row, 0 to disable
+         */
+        public Builder consecutiveFailureThreshold(int consecutiveFailureThreshold) {
+            this.consecutiveFailureThreshold = consecutiveFailureThreshold;
+            return this;
+        }
+
+        /**
+         * How long sends are rejected before a trial call is let through
+         */
+        public Builder openDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        /**
+         * Calls taking longer than this per message count as failures for the breaker,
+         * even if they succeed; null to disable
+         */
+        public Builder slowCallThreshold(Duration slowCallThreshold) {
+            this.slowCallThreshold = slowCallThreshold;
+            return this;
+        }
+
+        /**
+         * Maximum number of concurrent calls into the delegate
+         */
+        public Builder maxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+            return this;
+        }
+
+        /**
+         * How long a send waits for a free bulkhead slot before it is rejected
+         */
+        public Builder maxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+            return this;
+        }
+
+        public ResilientMailProvider build() {
+            if (delegate == null) {
+                throw new IllegalStateException("Resilient provider must have a delegate");
+            }
+            if (maxConcurrentCalls < 1) {
+                throw new IllegalStateException("maxConcurrentCalls must be at least 1");
+            }
+            if (maxWait == null || maxWait.isNegative()) {
+                throw new IllegalStateException("maxWait must not be negative");
+            }
+            return new ResilientMailProvider(this);
+        }
+
+        /**
+         * Build the decorator and register it with {@link MailProviderFactory}
+         * in place of the decorated provider
+         *
+         * @return The registered decorator
+         * @throws IllegalStateException If the builder was not created with {@link #forRegisteredProvider(String)}
+         */
+        public ResilientMailProvider register() {
+            if (providerName == null) {
+                throw new IllegalStateException("Only providers created with forRegisteredProvider can be registered");
+            }
+            ResilientMailProvider provider = build();
+            MailProviderFactory.registerProvider(providerName, provider, false);
+            return provider;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.email.core.sender;
+
+import com.example.email.core.model.Email;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Report of a batch sent through {@link EmailSender#sendAll(java.util.Collection)}.
+ * Contains one result per email, in the order the emails were passed in.
+ */
+public class BatchSendResult {
+    private final List<Result> results;
+    private final int failureCount;
+
+    public BatchSendResult(List<Result> results) {
+        this.results = Collections.unmodifiableList(new ArrayList<>(results));
+        int failures = 0;
+        for (Result result : this.results) {
+            if (!result.isSuccess()) {
+                failures++;
+            }
+        }
+        this.failureCount = failures;
+    }
+
+    /**
+     * Get the results of all emails in the batch
+     *
+     * @return Unmodifiable list of results in batch order
+     */
+    public List<Result> getResults() {
+        return results;
+    }
+
+    /**
+     * Get the results of all emails that could not be sent
+     *
+     * @return List of failed results in batch order
+     */
+    public List<Result> getFailures() {
+        List<Result> failures = new ArrayList<>(failureCount);
+        for (Result result : results) {
+            if (!result.isSuccess()) {
+                failures.add(result);
+            }
+        }
+        return failures;
+    }
+
+    public int getSuccessCount() {
+        return results.size() - failureCount;
+    }
+
+    public int getFailureCount() {
+        return failureCount;
+    }
+
+    /**
+     * Check whether every email in the batch was sent
+     *
+     * @return true if no email failed
+     */
+    public boolean isAllSuccessful() {
+        return failureCount == 0;
+    }
+
+    /**
+     * Outcome of a single email in the batch
+     */
+    public static class Result {
+        private final Email email;
+        private final EmailSender.EmailSendException error;
+
+        private Result(Email email, EmailSender.EmailSendException error) {
+            this.email = email;
+            this.error = error;
+        }
+
+        /**
+         * Create a result for an email that was sent
+         */
+        public static Result success(Email email) {
+            return new Result(email, null);
+        }
+
+        /**
+         * Create a result for an email that could not be sent
+         */
+        public static Result failure(Email email, EmailSender.EmailSendException error) {
+            return new Result(email, error);
+        }
+
+        public Email getEmail() {
+            return email;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * Get the reason the email could not be sent
+         *
+         * @return The error, or null if the email was sent
+         */
+        public EmailSender.EmailSendException getError() {
+            return error;
+        }
+    }
+}
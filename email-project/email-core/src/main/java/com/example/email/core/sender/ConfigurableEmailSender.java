@@ -1,27 +1,40 @@
 package com.example.email.core.sender;
 
-import com.example.email.core.model.Attachment;
+import com.example.email.core.async.SendExecutor;
+import com.example.email.core.model.ContentWriter;
 import com.example.email.core.model.Email;
 import com.example.email.core.provider.EmailContext;
-import com.example.email.core.provider.MailAttachment;
+import com.example.email.core.provider.MailBatchResult;
 import com.example.email.core.provider.MailProvider;
 import com.example.email.core.provider.MailProviderFactory;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * An implementation of EmailSender that supports switching between
  * different mail providers at runtime.
+ * <p>
+ * The provider is resolved once and cached until the provider name is changed
+ * or the {@link MailProviderFactory} registry changes; each send compares the
+ * registry generation, so the sender registers nothing with the factory.
  */
 public class ConfigurableEmailSender implements EmailSender {
-    private String providerName;
+    // Emails of a batch are converted and handed to the provider in chunks of this size
+    private static final int BATCH_CHUNK_SIZE = 500;
+
+    private volatile String providerName;
+    private SendExecutor sendExecutor;
+    private final AtomicReference<Resolution> resolution = new AtomicReference<>(Resolution.NONE);
 
     /**
      * Create a ConfigurableEmailSender with the default mail provider
      */
     public ConfigurableEmailSender() {
-        this.providerName = null;
+        this(null);
     }
 
     /**
@@ -43,6 +56,14 @@ public class ConfigurableEmailSender implements EmailSender {
             throw new IllegalArgumentException("Unknown mail provider: " + providerName);
         }
         this.providerName = providerName;
+        invalidateMailProvider();
+    }
+
+    /**
+     * Drop the cached provider so the next send resolves it again
+     */
+    public void invalidateMailProvider() {
+        resolution.set(Resolution.NONE);
     }
 
     /**
@@ -54,84 +75,218 @@ public class ConfigurableEmailSender implements EmailSender {
         return providerName;
     }
 
+    /**
+     * Set the executor used by {@link #sendAsync(Email)}
+     *
+     * @param sendExecutor The send executor, or null to disable asynchronous sending
+     */
+    public void setSendExecutor(SendExecutor sendExecutor) {
+        this.sendExecutor = sendExecutor;
+    }
+
+    /**
+     * Get the executor used for asynchronous sending
+     *
+     * @return The send executor, or null if only synchronous sending is supported
+     */
+    public SendExecutor getSendExecutor() {
+        return sendExecutor;
+    }
+
     /**
      * Get the mail provider to use
      *
      * @return The mail provider
      */
     protected MailProvider getMailProvider() {
-        if (providerName == null) {
-            return MailProviderFactory.getDefaultProvider();
+        Resolution current = resolution.get();
+        long generation = MailProviderFactory.getGeneration();
+        if (current.provider != null && current.generation == generation) {
+            return current.provider;
         }
-        return MailProviderFactory.getProvider(providerName);
+        String name = providerName;
+        MailProvider provider = name == null
+                ? MailProviderFactory.getDefaultProvider()
+                : MailProviderFactory.getProvider(name);
+        // Only cache if nothing was invalidated during the lookup; a registry change
+        // during the lookup leaves a stale generation, so the next send looks again
+        resolution.compareAndSet(current, new Resolution(provider, generation));
+        return provider;
     }
 
     @Override
     public void send(Email email) throws EmailSendException {
+        // Convert Email to EmailContext; an email that cannot be converted never will be
+        EmailContext context;
         try {
-            // Convert Email to EmailContext
-            EmailContext context = createEmailContext(email);
+            context = createEmailContext(email);
+        } catch (Exception e) {
+            throw new EmailSendException("Failed to send email: " + e.getMessage(), e, true);
+        }
 
+        try {
             // Get the mail provider and send directly
             MailProvider provider = getMailProvider();
             provider.sendMail(context);
         } catch (Exception e) {
-            throw new EmailSendException("Failed to send email: " + e.getMessage(), e);
+            throw sendFailure(e);
+        }
+    }
+
+    /**
+     * Wrap a provider failure, keeping whether the provider considers it permanent
+     */
+    private static EmailSendException sendFailure(Exception e) {
+        boolean permanent = e instanceof MailProvider.MailProviderException
+                && ((MailProvider.MailProviderException) e).isPermanent();
+        return new EmailSendException("Failed to send email: " + e.getMessage(), e, permanent);
+    }
+
+    /**
+     * Send a batch of emails through as few provider calls as possible.
+     * The provider is resolved once for the whole batch, and providers that
+     * override {@link MailProvider#sendMails(List)} can reuse their transport.
+     * Emails are converted and sent in chunks, so only the contexts of one
+     * chunk are held at a time.
+     */
+    @Override
+    public BatchSendResult sendAll(Collection<Email> emails) {
+        List<Email> batch = emails instanceof List ? (List<Email>) emails : new ArrayList<>(emails);
+        EmailSendException[] errors = new EmailSendException[batch.size()];
+
+        MailProvider provider;
+        try {
+            provider = getMailProvider();
+        } catch (Exception e) {
+            EmailSendException error = new EmailSendException("Failed to send email: " + e.getMessage(), e);
+            List<BatchSendResult.Result> results = new ArrayList<>(batch.size());
+            for (Email email : batch) {
+                results.add(BatchSendResult.Result.failure(email, error));
+            }
+            return new BatchSendResult(results);
+        }
+
+        for (int start = 0; start < batch.size(); start += BATCH_CHUNK_SIZE) {
+            sendChunk(provider, batch, start, Math.min(start + BATCH_CHUNK_SIZE, batch.size()), errors);
+        }
+
+        List<BatchSendResult.Result> results = new ArrayList<>(batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            results.add(errors[i] == null
+                    ? BatchSendResult.Result.success(batch.get(i))
+                    : BatchSendResult.Result.failure(batch.get(i), errors[i]));
+        }
+        return new BatchSendResult(results);
+    }
+
+    private void sendChunk(MailProvider provider, List<Email> batch, int start, int end,
+                           EmailSendException[] errors) {
+        // Convert the chunk up front; emails that fail conversion are left out of the provider call
+        List<EmailContext> contexts = new ArrayList<>(end - start);
+        int[] batchIndexes = new int[end - start];
+        for (int i = start; i < end; i++) {
+            try {
+                batchIndexes[contexts.size()] = i;
+                contexts.add(createEmailContext(batch.get(i)));
+            } catch (Exception e) {
+                errors[i] = new EmailSendException("Failed to send email: " + e.getMessage(), e, true);
+            }
+        }
+
+        if (!contexts.isEmpty()) {
+            MailBatchResult providerResult = provider.sendMails(contexts);
+            for (int i = 0; i < contexts.size(); i++) {
+                Exception failure = providerResult.getFailure(i);
+                if (failure != null) {
+                    errors[batchIndexes[i]] = sendFailure(failure);
+                }
+            }
         }
     }
 
     /**
-     * Convert the Email model to an EmailContext
+     * Send the same email to many recipients, one message per recipient.
+     * The email's own To, CC and BCC addresses are ignored. Providers that support
+     * it encode the content and attachments once and only write the recipient
+     * headers per message, see {@link MailProvider#sendBroadcast(EmailContext, List)}.
+     *
+     * @param email The email to send
+     * @param recipients The recipient addresses
+     * @return The per-recipient outcome, indexed like the given recipients
+     */
+    public MailBatchResult sendBroadcast(Email email, List<String> recipients) {
+        MailBatchResult result;
+        try {
+            result = getMailProvider().sendBroadcast(createEmailContext(email), recipients);
+        } catch (Exception e) {
+            result = new MailBatchResult(recipients.size());
+            EmailSendException error = new EmailSendException("Failed to send email: " + e.getMessage(), e);
+            for (int i = 0; i < recipients.size(); i++) {
+                result.markFailed(i, error);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Send an email on the configured send executor
+     *
+     * @param email The email to send
+     * @return A future completed when the email was sent, or exceptionally with an
+     *         {@link EmailSendException} if sending failed
+     * @throws IllegalStateException If no send executor is configured
+     */
+    public CompletableFuture<Void> sendAsync(Email email) {
+        if (sendExecutor == null) {
+            throw new IllegalStateException("No send executor configured for asynchronous sending");
+        }
+        return sendExecutor.submit(() -> {
+            send(email);
+            return null;
+        });
+    }
+
+    /**
+     * Convert the Email model to an EmailContext.
+     * The context shares the email's immutable lists, including its attachments,
+     * so nothing is copied unless an interceptor modifies the context.
+     * Content from a {@link ContentWriter} is passed on without rendering it.
      *
      * @param email The email to convert
      * @return A new EmailContext
      */
     protected EmailContext createEmailContext(Email email) {
-        EmailContext context = new EmailContext(
+        ContentWriter contentWriter = email.getContentWriter();
+        EmailContext context = EmailContext.wrap(
                 email.getFrom(),
                 email.getTo(),
+                email.getCc(),
+                email.getBcc(),
                 email.getSubject(),
-                email.getContent(),
-                email.isHtml()
+                contentWriter == null ? email.getContent() : null,
+                email.isHtml(),
+                email.getAttachments()
         );
-
-        // Add CC and BCC
-        context.setCc(email.getCc());
-        context.setBcc(email.getBcc());
-
-        // Convert attachments
-        List<MailAttachment> attachments = new ArrayList<>();
-        for (Attachment attachment : email.getAttachments()) {
-            attachments.add(convertAttachment(attachment));
+        if (contentWriter != null) {
+            context.setContentWriter(contentWriter);
         }
-        context.setAttachments(attachments);
-
         return context;
     }
 
-    private MailAttachment convertAttachment(Attachment attachment) {
-        Attachment.AttachmentSource source = attachment.getSource();
-
-        if (source instanceof Attachment.PathAttachmentSource) {
-            return MailAttachment.fromPath(
-                    ((Attachment.PathAttachmentSource) source).getPath(),
-                    attachment.getName(),
-                    attachment.getContentType()
-            );
-        } else if (source instanceof Attachment.InputStreamAttachmentSource) {
-            return MailAttachment.fromInputStream(
-                    ((Attachment.InputStreamAttachmentSource) source).getInputStream(),
-                    attachment.getName(),
-                    attachment.getContentType()
-            );
-        } else if (source instanceof Attachment.ByteArrayAttachmentSource) {
-            return MailAttachment.fromBytes(
-                    ((Attachment.ByteArrayAttachmentSource) source).getBytes(),
-                    attachment.getName(),
-                    attachment.getContentType()
-            );
-        }
+    /**
+     * A provider with the registry generation it was resolved at, or {@link #NONE}.
+     * Every invalidation installs NONE, so a lookup that raced with an
+     * invalidation fails to replace it.
+     */
+    private static final class Resolution {
+        private static final Resolution NONE = new Resolution(null, -1L);
+
+        private final MailProvider provider;
+        private final long generation;
 
-        throw new IllegalArgumentException("Unsupported attachment source type: " + source.getClass().getName());
+        private Resolution(MailProvider provider, long generation) {
+            this.provider = provider;
+            this.generation = generation;
+        }
     }
 }
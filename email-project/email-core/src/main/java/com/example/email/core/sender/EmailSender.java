@@ -2,6 +2,10 @@ package com.example.email.core.sender;
 
 import com.example.email.core.model.Email;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
 /**
  * Interface for all email senders.
  * Implementations can use different mailing technologies (SMTP, API-based services, etc.)
@@ -16,16 +20,62 @@ public interface EmailSender {
      */
     void send(Email email) throws EmailSendException;
 
+    /**
+     * Send a batch of emails.
+     * The default implementation calls {@link #send(Email)} for each email;
+     * implementations can override it to share work across the batch.
+     * A failing email does not stop the rest of the batch.
+     *
+     * @param emails The emails to send
+     * @return The per-email results, in iteration order of the given collection
+     */
+    default BatchSendResult sendAll(Collection<Email> emails) {
+        List<BatchSendResult.Result> results = new ArrayList<>(emails.size());
+        for (Email email : emails) {
+            try {
+                send(email);
+                results.add(BatchSendResult.Result.success(email));
+            } catch (EmailSendException e) {
+                results.add(BatchSendResult.Result.failure(email, e));
+            }
+        }
+        return new BatchSendResult(results);
+    }
+
     /**
      * Exception thrown when there is an error sending an email
      */
     class EmailSendException extends Exception {
+        private final boolean permanent;
+
         public EmailSendException(String message) {
-            super(message);
+            this(message, null, false);
         }
 
         public EmailSendException(String message, Throwable cause) {
+            this(message, cause, false);
+        }
+
+        /**
+         * Create an exception for a failed send
+         *
+         * @param message The detail message
+         * @param cause The cause
+         * @param permanent Whether sending the same email again would fail the same way
+         */
+        public EmailSendException(String message, Throwable cause, boolean permanent) {
             super(message, cause);
+            this.permanent = permanent;
+        }
+
+        /**
+         * Check whether the email itself was rejected, e.g. for an invalid recipient,
+         * so that retrying it is pointless
+         *
+         * @return true for permanent failures, false for failures worth retrying
+         */
+        public boolean isPermanent() {
+            return permanent;
         }
     }
 }
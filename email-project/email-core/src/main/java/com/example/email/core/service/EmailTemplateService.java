@@ -1,15 +1,26 @@
 package com.example.email.core.service;
 
+import com.example.email.core.metrics.MailMetrics;
+import com.example.email.core.model.ContentWriter;
 import com.example.email.core.model.Email;
+import com.example.email.core.template.BulkRenderer;
 import com.example.email.core.template.TemplateEngine;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public abstract class EmailTemplateService {
 
+    /**
+     * Component name used when reporting metrics
+     */
+    public static final String METRICS_COMPONENT = "template";
+
     private final TemplateEngine templateEngine;
     private final EmailConfig emailConfig;
+    private volatile BulkRenderer bulkRenderer = BulkRenderer.builder().build();
 
     protected EmailTemplateService(TemplateEngine templateEngine, EmailConfig emailConfig) {
         this.templateEngine = templateEngine;
@@ -26,9 +37,82 @@ public abstract class EmailTemplateService {
     protected String processTemplate(String templateName, Map<String, Object> model) {
         // Transform the flat dot notation model into a nested structure
         // No need for additional transformation - the model is already structured correctly
-        return templateEngine.process(templateName, model);
+        MailMetrics metrics = MailMetrics.global();
+        long start = metrics.startTimer();
+        String content = templateEngine.process(templateName, model);
+        metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.TEMPLATE_RENDER, start);
+        return content;
+    }
+
+    /**
+     * Create content that processes a template while the email is written,
+     * so large emails are streamed into the message instead of built as a string.
+     * Render time is reported each time the content is written, and includes
+     * the time spent writing the output.
+     *
+     * @param templateName The template name
+     * @param model The model data
+     * @return The content
+     */
+    protected ContentWriter renderTemplate(String templateName, Map<String, Object> model) {
+        ContentWriter content = templateEngine.render(templateName, model);
+        return writer -> {
+            MailMetrics metrics = MailMetrics.global();
+            long start = metrics.startTimer();
+            content.writeTo(writer);
+            metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.TEMPLATE_RENDER, start);
+        };
+    }
+
+    /**
+     * Process a template for many models in parallel
+     *
+     * @param templateName The template name
+     * @param models The model data, one model per rendered content
+     * @param order Whether results follow the order of the models or are returned as soon as they are rendered
+     * @return The rendered contents, each with the model it was rendered for
+     * @see BulkRenderer#render(Stream, Function, BulkRenderer.Order)
+     */
+    protected Stream<BulkRenderer.Result<Map<String, Object>>> processTemplates(
+            String templateName, Stream<Map<String, Object>> models, BulkRenderer.Order order) {
+        return renderTemplates(templateName, models, Function.identity(), order);
     }
 
+    /**
+     * Process a template for many inputs in parallel.
+     * Models are created on the calling thread as results are consumed, so only
+     * a bounded number of models and rendered contents are held at a time.
+     *
+     * @param templateName The template name
+     * @param inputs The inputs, one per rendered content
+     * @param model Creates the model data for an input
+     * @param order Whether results follow the order of the inputs or are returned as soon as they are rendered
+     * @param <P> The type of the inputs
+     * @return The rendered contents, each with the input it was rendered for
+     */
+    protected <P> Stream<BulkRenderer.Result<P>> renderTemplates(
+            String templateName, Stream<P> inputs, Function<? super P, Map<String, Object>> model,
+            BulkRenderer.Order order) {
+        return bulkRenderer.render(inputs, input -> renderTemplate(templateName, model.apply(input)), order);
+    }
+
+    /**
+     * Set the renderer used for bulk rendering
+     *
+     * @param bulkRenderer The bulk renderer
+     */
+    public void setBulkRenderer(BulkRenderer bulkRenderer) {
+        this.bulkRenderer = bulkRenderer;
+    }
+
+    /**
+     * Get the renderer used for bulk rendering
+     *
+     * @return The bulk renderer
+     */
+    public BulkRenderer getBulkRenderer() {
+        return bulkRenderer;
+    }
 
     /**
      * Create a basic email builder with from address set
@@ -0,0 +1,284 @@
+package com.example.email.core.template;
+
+import com.example.email.core.model.ContentWriter;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Renders content for many inputs in parallel, e.g. one template for every
+ * recipient of a campaign.
+ * <p>
+ * Inputs are pulled from their stream on the consuming thread as results are
+ * consumed, and at most {@code maxPending} contents are rendering or waiting to be
+ * consumed at any time, so memory stays bounded however many inputs there are.
+ * Content writers are created on the consuming thread, where template engines
+ * capture state such as the locale, and rendered on the executor.
+ * <p>
+ * Unless an executor is given, renders run on a pool of daemon threads shared by
+ * all bulk renderers and sized to the available processors. It is separate from
+ * the common fork/join pool, so a large campaign does not starve parallel
+ * streams or other work of the application.
+ */
+public final class BulkRenderer {
+
+    /**
+     * Order in which rendered results are returned
+     */
+    public enum Order {
+        /**
+         * Results follow the order of the inputs
+         */
+        INPUT,
+        /**
+         * Results are returned as soon as they are rendered
+         */
+        COMPLETION
+    }
+
+    private final Executor executor;
+    private final int maxPending;
+
+    private BulkRenderer(Builder builder) {
+        this.executor = builder.executor != null ? builder.executor : DefaultExecutor.INSTANCE;
+        this.maxPending = builder.maxPending;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Render content for every input.
+     * The returned stream is sequential and renders lazily as it is consumed;
+     * closing it stops rendering the remaining inputs and closes the input stream.
+     * A failed render does not end the stream, its result carries the error.
+     *
+     * @param inputs The inputs
+     * @param content Creates the content for an input, called on the consuming thread
+     * @param order The order of the results
+     * @param <P> The type of the inputs
+     * @return The rendered results
+     */
+    public <P> Stream<Result<P>> render(Stream<P> inputs, Function<? super P, ContentWriter> content, Order order) {
+        RenderSpliterator<P> spliterator = new RenderSpliterator<>(inputs.iterator(), content, order == Order.INPUT);
+        return StreamSupport.stream(spliterator, false)
+                .onClose(spliterator::cancel)
+                .onClose(inputs::close);
+    }
+
+    public Executor getExecutor() {
+        return executor;
+    }
+
+    public int getMaxPending() {
+        return maxPending;
+    }
+
+    /**
+     * Spliterator keeping a window of renders ahead of the consumer
+     */
+    private final class RenderSpliterator<P> extends Spliterators.AbstractSpliterator<Result<P>> {
+        private final Iterator<P> inputs;
+        private final Function<? super P, ContentWriter> content;
+        private final boolean inputOrder;
+        // Pending renders in input order, only used for Order.INPUT
+        private final ArrayDeque<CompletableFuture<Result<P>>> pending = new ArrayDeque<>();
+        // Finished renders in completion order, only used for Order.COMPLETION
+        private final BlockingQueue<Result<P>> completed = new LinkedBlockingQueue<>();
+        private volatile boolean cancelled;
+        private long nextIndex;
+        private int outstanding;
+
+        private RenderSpliterator(Iterator<P> inputs, Function<? super P, ContentWriter> content, boolean inputOrder) {
+            super(Long.MAX_VALUE, inputOrder ? Spliterator.ORDERED | Spliterator.NONNULL : Spliterator.NONNULL);
+            this.inputs = inputs;
+            this.content = content;
+            this.inputOrder = inputOrder;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Result<P>> action) {
+            while (!cancelled && outstanding < maxPending && inputs.hasNext()) {
+                submit(inputs.next());
+            }
+            if (outstanding == 0) {
+                return false;
+            }
+            Result<P> result = inputOrder ? pending.poll().join() : take();
+            outstanding--;
+            action.accept(result);
+            return true;
+        }
+
+        private void submit(P input) {
+            long index = nextIndex++;
+            CompletableFuture<Result<P>> future;
+            try {
+                ContentWriter writer = content.apply(input);
+                future = CompletableFuture.supplyAsync(() -> render(index, input, writer), executor);
+            } catch (RuntimeException e) {
+                // Creating the content failed, or the executor rejected the render
+                future = CompletableFuture.failedFuture(e);
+            }
+            future = future.handle((result, error) -> result != null ? result
+                    : new Result<>(index, input, null, error instanceof CompletionException ? error.getCause() : error));
+            if (inputOrder) {
+                pending.add(future);
+            } else {
+                future.thenAccept(completed::add);
+            }
+            outstanding++;
+        }
+
+        private Result<P> render(long index, P input, ContentWriter writer) {
+            if (cancelled) {
+                return new Result<>(index, input, null, new RejectedExecutionException("Bulk render was closed"));
+            }
+            try {
+                return new Result<>(index, input, writer.render(), null);
+            } catch (RuntimeException e) {
+                return new Result<>(index, input, null, e);
+            }
+        }
+
+        private Result<P> take() {
+            try {
+                return completed.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for rendered content", e);
+            }
+        }
+
+        private void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * The rendered content for one input, or the error rendering it
+     *
+     * @param <P> The type of the input
+     */
+    public static final class Result<P> {
+        private final long index;
+        private final P input;
+        private final String content;
+        private final Throwable error;
+
+        private Result(long index, P input, String content, Throwable error) {
+            this.index = index;
+            this.input = input;
+            this.content = content;
+            this.error = error;
+        }
+
+        /**
+         * Get the position of the input in the input stream
+         *
+         * @return The zero based index of the input
+         */
+        public long getIndex() {
+            return index;
+        }
+
+        public P getInput() {
+            return input;
+        }
+
+        /**
+         * Get the rendered content
+         *
+         * @return The content, or null if rendering failed
+         */
+        public String getContent() {
+            return content;
+        }
+
+        /**
+         * Get the error rendering the content
+         *
+         * @return The error, or null if rendering succeeded
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+    }
+
+    /**
+     * Pool shared by bulk renderers without their own executor, created on first use
+     */
+    private static final class DefaultExecutor {
+        private static final ExecutorService INSTANCE = Executors.newFixedThreadPool(
+                Runtime.getRuntime().availableProcessors(), new RenderThreadFactory());
+    }
+
+    private static final class RenderThreadFactory implements ThreadFactory {
+        private final AtomicInteger threadCounter = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "bulk-render-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+
+    /**
+     * Builder for BulkRenderer
+     */
+    public static class Builder {
+        private Executor executor;
+        private int maxPending = 4 * Runtime.getRuntime().availableProcessors();
+
+        private Builder() {
+        }
+
+        /**
+         * Executor rendering the contents; rendering is CPU bound, so the default is
+         * a shared pool with one daemon thread per available processor
+         *
+         * @param executor The executor, or null for the shared pool
+         */
+        public Builder executor(Executor executor) {
+            this.executor = executor;
+            return this;
+        }
+
+        /**
+         * Maximum number of contents rendering or rendered but not yet consumed
+         */
+        public Builder maxPending(int maxPending) {
+            this.maxPending = maxPending;
+            return this;
+        }
+
+        public BulkRenderer build() {
+            if (maxPending < 1) {
+                throw new IllegalStateException("maxPending must be at least 1");
+            }
+            return new BulkRenderer(this);
+        }
+    }
+}
@@ -1,5 +1,9 @@
 package com.example.email.core.template;
 
+import com.example.email.core.model.ContentWriter;
+
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Map;
 
 /**
@@ -16,4 +20,31 @@ public interface TemplateEngine {
      * @return The rendered content (typically HTML)
      */
     String process(String templateName, Map<String, Object> model);
+
+    /**
+     * Process a template and write the rendered content.
+     * The default implementation renders into a string first; engines that can
+     * write their output incrementally should override it.
+     *
+     * @param templateName The name/path of the template to process
+     * @param model The model containing data for template variables
+     * @param writer The writer to write the content to, not closed by this method
+     * @throws IOException If the content cannot be written
+     */
+    default void process(String templateName, Map<String, Object> model, Writer writer) throws IOException {
+        writer.write(process(templateName, model));
+    }
+
+    /**
+     * Create content that processes a template each time it is written.
+     * Implementations capture any state the template depends on, such as the
+     * current locale, when this method is called rather than when the content is written.
+     *
+     * @param templateName The name/path of the template to process
+     * @param model The model containing data for template variables, which must not change afterwards
+     * @return The content
+     */
+    default ContentWriter render(String templateName, Map<String, Object> model) {
+        return writer -> process(templateName, model, writer);
+    }
 }
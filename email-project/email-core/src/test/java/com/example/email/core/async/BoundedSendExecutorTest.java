@@ -0,0 +1,56 @@
+package com.example.email.core.async;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BoundedSendExecutorTest {
+
+    @Test
+    void blockedSendIsRejectedWhenExecutorShutsDown() throws Exception {
+        BoundedSendExecutor executor = new BoundedSendExecutor(1, 1, BoundedSendExecutor.OverflowPolicy.BLOCK);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> running = executor.submit(() -> {
+            release.await();
+            return "running";
+        });
+        CompletableFuture<String> queued = executor.submit(() -> "queued");
+
+        // The queue is full, so this submit blocks until there is room or the executor shuts down
+        CompletableFuture<CompletableFuture<String>> blocked = CompletableFuture.supplyAsync(
+                () -> executor.submit(() -> "blocked"));
+        Thread.sleep(100);
+        assertEquals(false, blocked.isDone());
+
+        executor.shutdown();
+        CompletableFuture<String> blockedSend = blocked.get(5, TimeUnit.SECONDS);
+        ExecutionException failure = assertThrows(ExecutionException.class,
+                () -> blockedSend.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+
+        // Sends accepted before the shutdown still run
+        release.countDown();
+        assertEquals("running", running.get(5, TimeUnit.SECONDS));
+        assertEquals("queued", queued.get(5, TimeUnit.SECONDS));
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void sendAfterShutdownIsRejected() {
+        BoundedSendExecutor executor = new BoundedSendExecutor(1, 1, BoundedSendExecutor.OverflowPolicy.BLOCK);
+        executor.shutdown();
+
+        CompletableFuture<String> send = executor.submit(() -> "late");
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> send.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.email.core.async;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadSendExecutorTest {
+
+    @Test
+    void concurrentSendsAreCapped() throws Exception {
+        VirtualThreadSendExecutor executor = new VirtualThreadSendExecutor(2);
+        assertConcurrencyCapped(executor, 8);
+        executor.shutdown();
+    }
+
+    @Test
+    void platformThreadFallbackIsCapped() throws Exception {
+        VirtualThreadSendExecutor executor = new VirtualThreadSendExecutor(2, 6, null);
+        assertFalse(executor.isVirtual());
+        assertConcurrencyCapped(executor, 8);
+        executor.shutdown();
+    }
+
+    @Test
+    void platformThreadFallbackRejectsSendsWhenItsQueueIsFull() throws Exception {
+        VirtualThreadSendExecutor executor = new VirtualThreadSendExecutor(2, 6, null);
+
+        // Two sends are running and six are queued, so the queue is full
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Boolean>> blocked = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            blocked.add(executor.submit(() -> release.await(5, TimeUnit.SECONDS)));
+        }
+        CompletableFuture<String> overflow = executor.submit(() -> "overflow");
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> overflow.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+
+        release.countDown();
+        for (CompletableFuture<Boolean> send : blocked) {
+            assertTrue(send.get(5, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    void sendAfterShutdownIsRejected() {
+        VirtualThreadSendExecutor executor = new VirtualThreadSendExecutor(1);
+        executor.shutdown();
+
+        CompletableFuture<String> send = executor.submit(() -> "late");
+        ExecutionException failure = assertThrows(ExecutionException.class, () -> send.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, failure.getCause());
+    }
+
+    private static void assertConcurrencyCapped(VirtualThreadSendExecutor executor, int sends) throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < sends; i++) {
+            futures.add(executor.submit(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                try {
+                    release.await();
+                    return 1;
+                } finally {
+                    running.decrementAndGet();
+                }
+            }));
+        }
+
+        // Wait until the cap is reached, then give the other sends time to exceed it
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getActiveCount() < 2 && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        Thread.sleep(100);
+        assertEquals(2, executor.getActiveCount());
+
+        release.countDown();
+        int completed = 0;
+        for (CompletableFuture<Integer> future : futures) {
+            completed += future.get(5, TimeUnit.SECONDS);
+        }
+        assertEquals(sends, completed);
+        assertEquals(2, maxRunning.get());
+    }
+}
@@ -0,0 +1,139 @@
+package com.example.email.core.attachment;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class AttachmentStoreTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void repeatedFileIsServedFromTheCacheUntilItChanges() throws Exception {
+        AttachmentStore store = AttachmentStore.builder().build();
+        Path file = write("report.txt", "first version", Instant.parse("2024-01-01T00:00:00Z"));
+
+        EncodedContent first = store.get(file);
+        assertSame(first, store.get(file));
+        assertEquals(1, store.getMissCount());
+        assertEquals(1, store.getHitCount());
+
+        // Same size, newer modification time
+        write("report.txt", "other version", Instant.parse("2024-01-02T00:00:00Z"));
+        EncodedContent changed = store.get(file);
+        assertNotEquals(first.getHash(), changed.getHash());
+        assertEquals(2, store.getMissCount());
+
+        // Same modification time, different size
+        write("report.txt", "third, longer version", Instant.parse("2024-01-02T00:00:00Z"));
+        assertNotEquals(changed.getHash(), store.get(file).getHash());
+        assertEquals(3, store.getMissCount());
+        assertEquals(3, store.getTrackedFileCount());
+    }
+
+    @Test
+    void sameContentIsSharedBetweenFilesAndByteArrays() throws Exception {
+        AttachmentStore store = AttachmentStore.builder().build();
+        Path file = write("logo.png", "logo bytes", Instant.now());
+        Path copy = write("copy.png", "logo bytes", Instant.now());
+
+        EncodedContent fromFile = store.get(file);
+        assertSame(fromFile, store.get("logo bytes".getBytes(StandardCharsets.UTF_8)));
+        assertSame(fromFile, store.get(copy));
+        assertEquals(1, store.getMissCount());
+        assertEquals(1, store.getEntryCount());
+        assertEquals(fromFile.getEncodedSize(), store.getCachedBytes());
+    }
+
+    @Test
+    void leastRecentlyUsedContentIsEvictedByEncodedSize() {
+        byte[] a = bytes('a', 570);
+        byte[] b = bytes('b', 570);
+        byte[] c = bytes('c', 570);
+        long entrySize = Base64Lines.encodedLength(570);
+        AttachmentStore store = AttachmentStore.builder()
+                .maxCacheSize(2 * entrySize + 10)
+                .maxEntrySize(570)
+                .build();
+
+        EncodedContent first = store.get(a);
+        store.get(b);
+        assertSame(first, store.get(a));
+        store.get(c);
+
+        assertEquals(1, store.getEvictionCount());
+        assertEquals(2, store.getEntryCount());
+        assertEquals(2 * entrySize, store.getCachedBytes());
+        // a was used after b, so b was evicted
+        assertSame(first, store.get(a));
+        long misses = store.getMissCount();
+        store.get(b);
+        assertEquals(misses + 1, store.getMissCount());
+    }
+
+    @Test
+    void contentLargerThanTheEntrySizeIsNotCached() throws Exception {
+        AttachmentStore store = AttachmentStore.builder().maxEntrySize(10).build();
+        Path file = write("large.bin", "more than ten bytes", Instant.now());
+
+        assertNull(store.get(file));
+        assertNull(store.get(bytes('x', 11)));
+        assertNotNull(store.get(bytes('x', 10)));
+        assertEquals(1, store.getEntryCount());
+    }
+
+    @Test
+    void builderRejectsEntriesThatCannotFitInTheCache() {
+        assertThrows(IllegalStateException.class,
+                () -> AttachmentStore.builder().maxCacheSize(1000).maxEntrySize(1000).build());
+        assertNotNull(AttachmentStore.builder().maxCacheSize(1000).maxEntrySize(700).build());
+    }
+
+    @Test
+    void onlyTheMostRecentlyUsedFileHashesAreKept() throws Exception {
+        AttachmentStore store = AttachmentStore.builder().maxTrackedFiles(2).build();
+        Path first = write("first.txt", "first", Instant.now());
+        Path second = write("second.txt", "second", Instant.now());
+        Path third = write("third.txt", "third", Instant.now());
+
+        store.get(first);
+        store.get(second);
+        store.get(first);
+        store.get(third);
+
+        assertEquals(2, store.getTrackedFileCount());
+        // The hashes of first and third are still known, so their content is found by path
+        long hits = store.getHitCount();
+        store.get(first);
+        store.get(third);
+        assertEquals(hits + 2, store.getHitCount());
+        assertEquals(3, store.getMissCount());
+    }
+
+    private Path write(String name, String content, Instant modified) throws Exception {
+        Path file = directory.resolve(name);
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(modified));
+        return file;
+    }
+
+    private static byte[] bytes(char value, int size) {
+        byte[] bytes = new byte[size];
+        Arrays.fill(bytes, (byte) value);
+        return bytes;
+    }
+}
@@ -0,0 +1,47 @@
+package com.example.email.core.model;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class EmailTest {
+
+    @Test
+    void contentWriterIsRenderedOnceAndReused() {
+        AtomicInteger renders = new AtomicInteger();
+        ContentWriter writer = out -> {
+            renders.incrementAndGet();
+            out.write("<p>Hello J\u00fcrg</p>");
+        };
+        Email email = Email.builder()
+                .from("sender@example.com")
+                .to("to@example.com")
+                .subject("Hello")
+                .content(writer)
+                .build();
+
+        String first = email.getContent();
+        assertEquals("<p>Hello J\u00fcrg</p>", first);
+        assertSame(first, email.getContent());
+        assertEquals(1, renders.get());
+        // Streaming still goes through the writer
+        assertSame(writer, email.getContentWriter());
+    }
+
+    @Test
+    void stringContentIsReturnedAsIs() {
+        Email email = Email.builder()
+                .from("sender@example.com")
+                .to("to@example.com")
+                .subject("Hello")
+                .content("<p>Hello</p>")
+                .build();
+
+        assertSame(email.getContent(), email.getContent());
+        assertEquals("<p>Hello</p>", email.getContent());
+        assertEquals(null, email.getContentWriter());
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.email.core.outbox;
+
+import com.example.email.core.model.Attachment;
+import com.example.email.core.model.Email;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EmailCodecTest {
+
+    @Test
+    void roundTripsEmail() throws Exception {
+        Email email = Email.builder()
+                .from("sender@example.com")
+                .to("to@example.com")
+                .cc("cc@example.com")
+                .subject("Subject")
+                .content("<p>Hello</p>")
+                .html(true)
+                .attachment(Attachment.fromBytes("data".getBytes(StandardCharsets.UTF_8), "data.txt", "text/plain"))
+                .build();
+
+        Email decoded = EmailCodec.decode(EmailCodec.encode(email));
+
+        assertEquals("sender@example.com", decoded.getFrom());
+        assertEquals(List.of("to@example.com"), decoded.getTo());
+        assertEquals(List.of("cc@example.com"), decoded.getCc());
+        assertEquals(List.of(), decoded.getBcc());
+        assertEquals("Subject", decoded.getSubject());
+        assertEquals("<p>Hello</p>", decoded.getContent());
+        assertTrue(decoded.isHtml());
+        assertEquals(1, decoded.getAttachments().size());
+        Attachment attachment = decoded.getAttachments().get(0);
+        assertEquals("data.txt", attachment.getName());
+        assertArrayEquals("data".getBytes(StandardCharsets.UTF_8),
+                ((Attachment.ByteArrayAttachmentSource) attachment.getSource()).getBytes());
+    }
+
+    @Test
+    void rendersContentWriterOnce() throws Exception {
+        AtomicInteger renders = new AtomicInteger();
+        Email email = Email.builder()
+                .from("sender@example.com")
+                .to("to@example.com")
+                .subject("Subject")
+                .content(writer -> {
+                    renders.incrementAndGet();
+                    writer.write("rendered");
+                })
+                .build();
+
+        Email decoded = EmailCodec.decode(EmailCodec.encode(email));
+
+        assertEquals(1, renders.get());
+        assertEquals("rendered", decoded.getContent());
+        assertNull(decoded.getContentWriter());
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.email.core.outbox;
+
+import com.example.email.core.model.Email;
+import com.example.email.core.sender.EmailSender;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailOutboxTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void deliversEnqueuedEmails() throws Exception {
+        List<String> sent = new CopyOnWriteArrayList<>();
+        try (MailOutbox outbox = MailOutbox.builder(directory, email -> sent.add(email.getSubject())).build().start()) {
+            outbox.enqueue(email("first")).get(5, TimeUnit.SECONDS);
+            outbox.enqueue(email("second")).get(5, TimeUnit.SECONDS);
+
+            awaitTrue(() -> outbox.getDeliveredCount() == 2);
+            assertEquals(0, outbox.getPendingCount());
+            assertEquals(List.of("first", "second"), sent.stream().sorted().toList());
+        }
+    }
+
+    @Test
+    void retriesTransientFailuresWithBackoff() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        EmailSender sender = email -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new EmailSender.EmailSendException("Connection refused");
+            }
+        };
+        try (MailOutbox outbox = MailOutbox.builder(directory, sender)
+                .initialBackoff(Duration.ofMillis(10))
+                .build()
+                .start()) {
+            outbox.enqueue(email("retried")).get(5, TimeUnit.SECONDS);
+
+            awaitTrue(() -> outbox.getDeliveredCount() == 1);
+            assertEquals(3, attempts.get());
+            assertEquals(0, outbox.getFailedCount());
+        }
+    }
+
+    @Test
+    void givesUpAfterMaxAttempts() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        EmailSender sender = email -> {
+            attempts.incrementAndGet();
+            throw new EmailSender.EmailSendException("Connection refused");
+        };
+        try (MailOutbox outbox = MailOutbox.builder(directory, sender)
+                .initialBackoff(Duration.ofMillis(1))
+                .maxAttempts(3)
+                .build()
+                .start()) {
+            outbox.enqueue(email("failing")).get(5, TimeUnit.SECONDS);
+
+            awaitTrue(() -> outbox.getFailedCount() == 1);
+            assertEquals(3, attempts.get());
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+
+    @Test
+    void doesNotRetryPermanentFailures() throws Exception {
+        AtomicInteger attempts = new AtomicInteger();
+        EmailSender sender = email -> {
+            attempts.incrementAndGet();
+            throw new EmailSender.EmailSendException("Unknown recipient", null, true);
+        };
+        try (MailOutbox outbox = MailOutbox.builder(directory, sender)
+                .initialBackoff(Duration.ofMillis(1))
+                .build()
+                .start()) {
+            outbox.enqueue(email("rejected")).get(5, TimeUnit.SECONDS);
+
+            awaitTrue(() -> outbox.getFailedCount() == 1);
+            assertEquals(1, attempts.get());
+        }
+    }
+
+    @Test
+    void recoversPendingEmailsAfterRestart() throws Exception {
+        // Not started, so the emails are only in the log when the outbox goes away
+        try (MailOutbox outbox = MailOutbox.builder(directory, email -> { }).build()) {
+            outbox.enqueue(email("first")).get(5, TimeUnit.SECONDS);
+            outbox.enqueue(email("second")).get(5, TimeUnit.SECONDS);
+            assertEquals(2, outbox.getPendingCount());
+        }
+
+        List<String> sent = new CopyOnWriteArrayList<>();
+        try (MailOutbox outbox = MailOutbox.builder(directory, email -> sent.add(email.getSubject())).build()) {
+            assertEquals(2, outbox.getPendingCount());
+            outbox.start();
+            awaitTrue(() -> outbox.getDeliveredCount() == 2);
+            assertEquals(List.of("first", "second"), sent.stream().sorted().toList());
+        }
+
+        // Delivered emails are acknowledged and not sent again
+        try (MailOutbox outbox = MailOutbox.builder(directory, email -> sent.add(email.getSubject())).build()) {
+            assertEquals(0, outbox.getPendingCount());
+        }
+    }
+
+    private static Email email(String subject) {
+        return Email.builder()
+                .from("sender@example.com")
+                .to("to@example.com")
+                .subject(subject)
+                .content("Hello")
+                .build();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+}
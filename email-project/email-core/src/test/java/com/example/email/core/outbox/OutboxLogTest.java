@@ -0,0 +1,99 @@
+package com.example.email.core.outbox;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class OutboxLogTest {
+    private static final int SEGMENT_SIZE = 64 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void replaysDurableRecordsAfterReopen() throws Exception {
+        try (OutboxLog log = OutboxLog.open(directory, SEGMENT_SIZE, (type, id, segment, offset, length) -> { })) {
+            log.appendEnqueue(1, payload("first"));
+            log.appendEnqueue(2, payload("second"));
+            OutboxLog.Position last = log.appendCompletion(OutboxLog.TYPE_DELIVERED, 1);
+            log.whenDurable(last.appendedBytes).get(5, TimeUnit.SECONDS);
+        }
+
+        List<String> records = replay();
+        assertEquals(List.of("1:1:first", "1:2:second", "2:1:"), records);
+    }
+
+    @Test
+    void tornRecordEndsReplayAndIsOverwritten() throws Exception {
+        int secondRecord;
+        try (OutboxLog log = OutboxLog.open(directory, SEGMENT_SIZE, (type, id, segment, offset, length) -> { })) {
+            OutboxLog.Position first = log.appendEnqueue(1, payload("first"));
+            log.appendEnqueue(2, payload("second"));
+            secondRecord = first.offset + first.length;
+        }
+        // Lose the tail of the second record, as if the process died halfway through writing it
+        int secondLength = OutboxLog.HEADER_SIZE + payload("second").length;
+        overwrite(secondRecord + secondLength - 3, new byte[3]);
+
+        try (OutboxLog log = OutboxLog.open(directory, SEGMENT_SIZE, (type, id, segment, offset, length) -> { })) {
+            OutboxLog.Position third = log.appendEnqueue(3, payload("third"));
+            assertEquals(secondRecord + OutboxLog.HEADER_SIZE, third.offset);
+            log.whenDurable(third.appendedBytes).get(5, TimeUnit.SECONDS);
+        }
+
+        assertEquals(List.of("1:1:first", "1:3:third"), replay());
+    }
+
+    @Test
+    void recordWithBadChecksumIsNotReplayed() throws Exception {
+        try (OutboxLog log = OutboxLog.open(directory, SEGMENT_SIZE, (type, id, segment, offset, length) -> { })) {
+            log.appendEnqueue(1, payload("first"));
+            log.appendEnqueue(2, payload("second"));
+        }
+        // Flip a payload byte of the first record; its checksum no longer matches
+        overwrite(OutboxLog.HEADER_SIZE, new byte[] {'F'});
+
+        assertEquals(List.of(), replay());
+    }
+
+    private List<String> replay() throws IOException {
+        List<String> records = new ArrayList<>();
+        try (OutboxLog log = OutboxLog.open(directory, SEGMENT_SIZE, (type, id, segment, offset, length) -> {
+            byte[] payload = new byte[length];
+            segment.read(offset, payload);
+            records.add(type + ":" + id + ":" + new String(payload, StandardCharsets.UTF_8));
+        })) {
+            return records;
+        }
+    }
+
+    private void overwrite(int position, byte[] data) throws IOException {
+        Path segment;
+        try (Stream<Path> files = Files.list(directory)) {
+            List<Path> segments = files.filter(OutboxSegment::isSegmentFile).collect(Collectors.toList());
+            assertEquals(1, segments.size());
+            segment = segments.get(0);
+        }
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(data), position);
+        }
+    }
+
+    private static byte[] payload(String text) {
+        return text.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,51 @@
+package com.example.email.core.provider;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailContextTest {
+
+    @Test
+    void keyRegisteredAfterContextCreationGetsASlot() {
+        MailContext context = new MailContext();
+        AttributeKey<String> key = AttributeKey.of("mailContextTest.late", String.class);
+
+        context.set(key, "value");
+
+        assertEquals("value", context.get(key));
+        assertEquals("value", context.getAttribute("mailContextTest.late"));
+    }
+
+    @Test
+    void valueSetByNameBeforeRegistrationIsFoundThroughTheKey() {
+        MailContext context = new MailContext();
+        context.setAttribute("mailContextTest.early", 42);
+
+        AttributeKey<Integer> key = AttributeKey.of("mailContextTest.early", Integer.class);
+
+        assertTrue(context.has(key));
+        assertEquals(42, context.get(key));
+        assertEquals(42, context.getAttribute("mailContextTest.early"));
+        assertEquals(Map.of("mailContextTest.early", 42), context.getAttributes());
+    }
+
+    @Test
+    void attributeViewIsReusedUntilTheContextChanges() {
+        MailContext context = new MailContext();
+        context.setAttribute("mailContextTest.view", "a");
+
+        Map<String, Object> first = context.getAttributes();
+        assertSame(first, context.getAttributes());
+
+        context.setAttribute("mailContextTest.view", "b");
+        Map<String, Object> second = context.getAttributes();
+        assertNotSame(first, second);
+        assertEquals("b", second.get("mailContextTest.view"));
+    }
+}
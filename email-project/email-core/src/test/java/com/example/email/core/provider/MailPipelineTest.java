@@ -0,0 +1,164 @@
+package com.example.email.core.provider;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailPipelineTest {
+
+    @Test
+    void unansweredCheckCancelsTheSendAfterTheVetoTimeout() {
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        AsyncMailInterceptor hanging = new AsyncMailInterceptor() {
+            @Override
+            public CompletionStage<Boolean> beforeSendAsync(MailContext context) {
+                return new CompletableFuture<>();
+            }
+        };
+        MailPipeline pipeline = new MailPipeline(List.of(hanging))
+                .setVetoTimeout(Duration.ofMillis(50))
+                .setErrorListener((interceptor, phase, error) -> {
+                    assertSame(hanging, interceptor);
+                    assertEquals(MailPipeline.Phase.BEFORE_SEND, phase);
+                    errors.add(error);
+                });
+
+        MailContext context = new MailContext();
+        MailPipeline.Stages stages = pipeline.enter(context);
+        long start = System.nanoTime();
+        assertFalse(stages.beforeSend(context));
+        stages.afterSend(context, false);
+
+        assertTrue(System.nanoTime() - start < Duration.ofSeconds(5).toNanos());
+        assertEquals(1, errors.size());
+        assertInstanceOf(TimeoutException.class, errors.get(0));
+    }
+
+    @Test
+    void checksAnsweringInTimeAllowTheSend() {
+        AsyncMailInterceptor slow = new AsyncMailInterceptor() {
+            @Override
+            public CompletionStage<Boolean> beforeSendAsync(MailContext context) {
+                return CompletableFuture.supplyAsync(() -> true,
+                        CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS));
+            }
+        };
+        List<Throwable> errors = new ArrayList<>();
+        MailPipeline pipeline = new MailPipeline(List.of(slow))
+                .setVetoTimeout(Duration.ofSeconds(5))
+                .setErrorListener((interceptor, phase, error) -> errors.add(error));
+
+        MailContext context = new MailContext();
+        MailPipeline.Stages stages = pipeline.enter(context);
+        assertTrue(stages.beforeSend(context));
+        stages.afterSend(context, true);
+        assertEquals(List.of(), errors);
+    }
+
+    @Test
+    void hooksRunInChainOrderAndOnlyConsecutiveChecksOverlap() {
+        List<String> events = new CopyOnWriteArrayList<>();
+        CompletableFuture<Void> secondCheckStarted = new CompletableFuture<>();
+        MailPipeline pipeline = new MailPipeline()
+                .addInterceptor(recording("sync-1", events), 1)
+                .addInterceptor(delayedCheck("async-2", events, CompletableFuture.completedFuture(null)), 2)
+                .addInterceptor(recording("sync-3", events), 3)
+                // Only answers once the next check has started, so it fails unless both run together
+                .addInterceptor(delayedCheck("async-4", events, secondCheckStarted), 4)
+                .addInterceptor(new AsyncMailInterceptor() {
+                    @Override
+                    public CompletionStage<Boolean> beforeSendAsync(MailContext context) {
+                        events.add("async-5");
+                        secondCheckStarted.complete(null);
+                        return CompletableFuture.completedFuture(true);
+                    }
+                }, 5)
+                .addInterceptor(recording("sync-6", events), 6)
+                .setVetoTimeout(Duration.ofSeconds(5));
+
+        MailContext context = new MailContext();
+        MailPipeline.Stages stages = pipeline.enter(context);
+        assertTrue(stages.beforeSend(context));
+        stages.afterSend(context, true);
+
+        assertEquals(List.of("sync-1", "async-2", "async-2 done", "sync-3", "async-4", "async-5", "async-4 done",
+                "sync-6", "after sync-1", "after sync-3", "after sync-6"), events);
+    }
+
+    @Test
+    void nestedPipelineOnlyRunsItsOwnInterceptorsAndReusesTheDerivedStages() {
+        List<String> events = new CopyOnWriteArrayList<>();
+        MailInterceptor shared = recording("shared", events);
+        MailInterceptor own = recording("own", events);
+        MailPipeline outer = new MailPipeline(List.of(shared));
+        MailPipeline inner = new MailPipeline(List.of(shared, own));
+
+        MailContext first = new MailContext();
+        MailPipeline.Stages outerStages = outer.enter(first);
+        MailPipeline.Stages nested = inner.enter(first);
+        assertEquals(List.of(own), nested.getInterceptors());
+        // The marker is not an attribute of the message
+        assertEquals(0, first.getAttributes().size());
+        assertTrue(outerStages.beforeSend(first));
+        assertTrue(nested.beforeSend(first));
+        nested.afterSend(first, true);
+        assertSame(inner.enter(first), nested);
+        outerStages.afterSend(first, true);
+        assertEquals(List.of("shared", "own", "after own", "after shared"), events);
+
+        MailContext second = new MailContext();
+        outer.enter(second);
+        assertSame(nested, inner.enter(second));
+        assertSame(nested, inner.enter(second));
+
+        // Outside the outer pipeline the inner one runs all its interceptors
+        MailContext alone = new MailContext();
+        assertEquals(List.of(shared, own), inner.enter(alone).getInterceptors());
+        // A changed outer pipeline gets new stages
+        outer.addInterceptor(own);
+        MailContext third = new MailContext();
+        outer.enter(third);
+        assertEquals(List.of(), inner.enter(third).getInterceptors());
+    }
+
+    private static MailInterceptor recording(String name, List<String> events) {
+        return new MailInterceptor() {
+            @Override
+            public boolean beforeSend(MailContext context) {
+                events.add(name);
+                return true;
+            }
+
+            @Override
+            public void afterSend(MailContext context, boolean success) {
+                events.add("after " + name);
+            }
+        };
+    }
+
+    private static AsyncMailInterceptor delayedCheck(String name, List<String> events, CompletableFuture<Void> answerAfter) {
+        return new AsyncMailInterceptor() {
+            @Override
+            public CompletionStage<Boolean> beforeSendAsync(MailContext context) {
+                events.add(name);
+                return answerAfter.thenApplyAsync(ignored -> {
+                    events.add(name + " done");
+                    return true;
+                }, CompletableFuture.delayedExecutor(10, TimeUnit.MILLISECONDS));
+            }
+        };
+    }
+}
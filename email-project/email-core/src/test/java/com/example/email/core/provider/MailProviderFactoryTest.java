@@ -0,0 +1,82 @@
+package com.example.email.core.provider;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailProviderFactoryTest {
+
+    // The registry is global, so every test uses its own provider names
+
+    @Test
+    void registeredProviderIsFoundByName() {
+        MailProvider provider = context -> { };
+        MailProviderFactory.registerProvider("factory-lookup", provider, false);
+
+        assertSame(provider, MailProviderFactory.getProvider("factory-lookup"));
+        assertTrue(MailProviderFactory.hasProvider("factory-lookup"));
+        assertTrue(Arrays.asList(MailProviderFactory.getProviderNames()).contains("factory-lookup"));
+        assertFalse(MailProviderFactory.hasProvider("factory-missing"));
+        assertThrows(IllegalArgumentException.class, () -> MailProviderFactory.getProvider("factory-missing"));
+    }
+
+    @Test
+    void registeringANameAgainReplacesTheProviderAndTheDefault() {
+        MailProvider first = context -> { };
+        MailProvider second = context -> { };
+        MailProviderFactory.registerProvider("factory-replace", first, true);
+        assertSame(first, MailProviderFactory.getDefaultProvider());
+
+        MailProviderFactory.registerProvider("factory-replace", second, false);
+
+        assertSame(second, MailProviderFactory.getProvider("factory-replace"));
+        // The default is looked up by name, so it follows the replacement
+        assertSame(second, MailProviderFactory.getDefaultProvider());
+    }
+
+    @Test
+    void defaultProviderCanBeChangedByName() {
+        MailProvider first = context -> { };
+        MailProvider second = context -> { };
+        MailProviderFactory.registerProvider("factory-default-1", first, true);
+        MailProviderFactory.registerProvider("factory-default-2", second, false);
+        assertSame(first, MailProviderFactory.getDefaultProvider());
+
+        MailProviderFactory.setDefaultProvider("factory-default-2");
+
+        assertSame(second, MailProviderFactory.getDefaultProvider());
+        assertThrows(IllegalArgumentException.class, () -> MailProviderFactory.setDefaultProvider("factory-missing"));
+        assertSame(second, MailProviderFactory.getDefaultProvider());
+    }
+
+    @Test
+    void listenersSeeEveryChangeUntilRemoved() {
+        MailProvider first = context -> { };
+        MailProvider second = context -> { };
+        List<MailProvider> seen = new ArrayList<>();
+        MailProviderFactory.RegistryListener listener =
+                () -> seen.add(MailProviderFactory.getProvider("factory-listener"));
+        MailProviderFactory.registerProvider("factory-listener", first, false);
+        MailProviderFactory.addRegistryListener(listener);
+        try {
+            MailProviderFactory.registerProvider("factory-listener", second, false);
+            MailProviderFactory.setDefaultProvider("factory-listener");
+
+            // Changes are visible to lookups by the time the listener runs
+            assertEquals(List.of(second, second), seen);
+        } finally {
+            MailProviderFactory.removeRegistryListener(listener);
+        }
+
+        MailProviderFactory.registerProvider("factory-listener", first, false);
+        assertEquals(2, seen.size());
+    }
+}
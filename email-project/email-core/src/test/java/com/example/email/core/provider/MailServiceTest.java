@@ -0,0 +1,101 @@
+package com.example.email.core.provider;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MailServiceTest {
+
+    @Test
+    void providerThrowingUncheckedExceptionLeavesThePipeline() {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        MailPipeline pipeline = new MailPipeline(List.of(new RecordingInterceptor("audit", calls)));
+        MailService service = new MailService(context -> {
+            throw new IllegalStateException("Provider bug");
+        }, null, pipeline);
+
+        MailContext context = new MailContext();
+        assertThrows(IllegalStateException.class, () -> service.sendMail(context));
+        assertEquals(List.of("audit:before", "audit:after:false"), calls);
+
+        // The same context goes through the interceptors again instead of being treated as nested
+        calls.clear();
+        assertThrows(IllegalStateException.class, () -> service.sendMail(context));
+        assertEquals(List.of("audit:before", "audit:after:false"), calls);
+    }
+
+    @Test
+    void sharedPipelineRunsEachInterceptorOnce() {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        MailPipeline pipeline = new MailPipeline(List.of(new RecordingInterceptor("audit", calls)));
+        MailService service = new MailService(new PipelineProvider(pipeline), null, pipeline);
+
+        assertTrue(service.sendMail(new MailContext()));
+        assertEquals(List.of("audit:before", "audit:after:true"), calls);
+    }
+
+    @Test
+    void nestedPipelineRunsOnlyInterceptorsTheOuterPipelineDoesNot() {
+        List<String> calls = new CopyOnWriteArrayList<>();
+        MailInterceptor shared = new RecordingInterceptor("shared", calls);
+        MailPipeline outer = new MailPipeline(List.of(shared));
+        MailPipeline inner = new MailPipeline(List.of(shared, new RecordingInterceptor("inner", calls)));
+        MailService service = new MailService(new PipelineProvider(inner), null, outer);
+
+        assertTrue(service.sendMail(new MailContext()));
+        assertEquals(List.of("shared:before", "inner:before", "inner:after:true", "shared:after:true"), calls);
+
+        // Sending through the inner pipeline alone runs all of its interceptors
+        calls.clear();
+        new MailService(new PipelineProvider(inner), null, inner).sendMail(new MailContext());
+        assertEquals(List.of("shared:before", "inner:before", "shared:after:true", "inner:after:true"), calls);
+    }
+
+    /**
+     * Provider running its own pipeline around the send, like SpringMailProvider
+     */
+    private static final class PipelineProvider implements MailProvider {
+        private final MailPipeline pipeline;
+
+        private PipelineProvider(MailPipeline pipeline) {
+            this.pipeline = pipeline;
+        }
+
+        @Override
+        public void sendMail(MailContext context) {
+            MailPipeline.Stages stages = pipeline.enter(context);
+            boolean success = false;
+            try {
+                success = stages.beforeSend(context);
+            } finally {
+                stages.afterSend(context, success);
+            }
+        }
+    }
+
+    private static final class RecordingInterceptor implements MailInterceptor {
+        private final String name;
+        private final List<String> calls;
+
+        private RecordingInterceptor(String name, List<String> calls) {
+            this.name = name;
+            this.calls = calls;
+        }
+
+        @Override
+        public boolean beforeSend(MailContext context) {
+            calls.add(name + ":before");
+            return true;
+        }
+
+        @Override
+        public void afterSend(MailContext context, boolean success) {
+            calls.add(name + ":after:" + success);
+        }
+    }
+}
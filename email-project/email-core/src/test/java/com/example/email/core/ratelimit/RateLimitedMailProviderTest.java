@@ -0,0 +1,137 @@
+package com.example.email.core.ratelimit;
+
+import com.example.email.core.provider.EmailContext;
+import com.example.email.core.provider.MailBatchResult;
+import com.example.email.core.provider.MailContext;
+import com.example.email.core.provider.MailProvider;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RateLimitedMailProviderTest {
+
+    // The clock stands still, so every permit beyond the burst forces a wait of about a millisecond
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void batchIsSplitWhereTheProviderLimitForcesAWait() {
+        RecordingProvider delegate = new RecordingProvider();
+        RateLimitedMailProvider provider = RateLimitedMailProvider.builder(delegate)
+                .providerLimit(RateLimitedMailProvider.Limit.perSecond(1000, 2))
+                .clock(clock::get)
+                .build();
+
+        MailBatchResult result = provider.sendMails(List.of(
+                context("a@example.com"), context("b@example.com"), context("c@example.com"),
+                context("d@example.com")));
+
+        assertEquals(4, result.getSuccessCount());
+        assertEquals(List.of(List.of("a@example.com", "b@example.com"), List.of("c@example.com"),
+                List.of("d@example.com")), delegate.batches);
+    }
+
+    @Test
+    void broadcastOnlyWaitsForLimitedDomains() {
+        RecordingProvider delegate = new RecordingProvider();
+        RateLimitedMailProvider provider = RateLimitedMailProvider.builder(delegate)
+                .domainLimit("Example.com", RateLimitedMailProvider.Limit.perSecond(1000, 1))
+                .clock(clock::get)
+                .build();
+
+        MailBatchResult result = provider.sendBroadcast(context("unused@example.com"), List.of(
+                "a@example.com", "b@other.org", "c@other.org", "Carol <C@EXAMPLE.COM>", "d@other.org"));
+
+        assertEquals(5, result.getSuccessCount());
+        assertEquals(List.of(List.of("a@example.com", "b@other.org", "c@other.org"),
+                List.of("Carol <C@EXAMPLE.COM>", "d@other.org")), delegate.batches);
+        // Domains without a limit get no bucket
+        assertEquals(0, provider.getTrackedDomainCount());
+    }
+
+    @Test
+    void recipientsSharingADomainTakeOnePermit() {
+        RecordingProvider delegate = new RecordingProvider();
+        RateLimitedMailProvider provider = RateLimitedMailProvider.builder(delegate)
+                .defaultDomainLimit(RateLimitedMailProvider.Limit.perSecond(1000, 2))
+                .clock(clock::get)
+                .build();
+
+        EmailContext first = context("a@example.com").addCc("b@Example.com").addBcc("c@other.org");
+        provider.sendMails(List.of(first, context("d@example.com"), context("e@example.com")));
+
+        assertEquals(List.of(List.of("a@example.com", "d@example.com"), List.of("e@example.com")),
+                delegate.batches);
+        assertEquals(2, provider.getTrackedDomainCount());
+    }
+
+    @Test
+    void domainsAreParsedFromAddresses() {
+        assertEquals("example.com", RateLimitedMailProvider.domainOf("user@Example.COM"));
+        assertEquals("example.com", RateLimitedMailProvider.domainOf("User <user@example.com> "));
+        assertEquals("example.com", RateLimitedMailProvider.domainOf("\"a@b\" <user@example.com>"));
+        assertNull(RateLimitedMailProvider.domainOf("user"));
+        assertNull(RateLimitedMailProvider.domainOf(null));
+    }
+
+    @Test
+    void trackedDomainsStayWithinTheCap() {
+        RecordingProvider delegate = new RecordingProvider();
+        RateLimitedMailProvider provider = RateLimitedMailProvider.builder(delegate)
+                .defaultDomainLimit(RateLimitedMailProvider.Limit.perSecond(1, 100))
+                .maxTrackedDomains(3)
+                .clock(clock::get)
+                .build();
+
+        List<String> recipients = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            recipients.add("user@domain" + i + ".com");
+        }
+        // No bucket is idle yet, so the domains beyond the cap share the overflow bucket
+        provider.sendBroadcast(context("unused@example.com"), recipients);
+        assertEquals(3, provider.getTrackedDomainCount());
+
+        // Once the buckets have refilled they are evicted to make room for new domains
+        clock.addAndGet(2_000_000_000L);
+        provider.sendBroadcast(context("unused@example.com"), List.of("user@new1.com", "user@new2.com"));
+        assertEquals(2, provider.getTrackedDomainCount());
+        assertTrue(delegate.batches.stream().allMatch(batch -> !batch.isEmpty()));
+    }
+
+    private static EmailContext context(String to) {
+        return new EmailContext("sender@example.com", List.of(to), "Hello", "<p>Hello</p>", true);
+    }
+
+    /**
+     * Provider recording the To addresses of every batch it is handed
+     */
+    private static final class RecordingProvider implements MailProvider {
+        private final List<List<String>> batches = new ArrayList<>();
+
+        @Override
+        public void sendMail(MailContext context) {
+            batches.add(List.of(((EmailContext) context).getTo().get(0)));
+        }
+
+        @Override
+        public MailBatchResult sendMails(List<? extends MailContext> contexts) {
+            List<String> batch = new ArrayList<>();
+            for (MailContext context : contexts) {
+                batch.add(((EmailContext) context).getTo().get(0));
+            }
+            batches.add(batch);
+            return new MailBatchResult(contexts.size());
+        }
+
+        @Override
+        public MailBatchResult sendBroadcast(EmailContext template, List<String> recipients) {
+            batches.add(List.copyOf(recipients));
+            return new MailBatchResult(recipients.size());
+        }
+    }
+}
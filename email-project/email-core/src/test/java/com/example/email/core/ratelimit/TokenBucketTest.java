@@ -0,0 +1,60 @@
+package com.example.email.core.ratelimit;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TokenBucketTest {
+    private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final AtomicLong clock = new AtomicLong(1_000_000_000L);
+
+    @Test
+    void burstIsFreeAndFurtherPermitsWaitOneIntervalEach() {
+        TokenBucket bucket = new TokenBucket(10, 3, clock::get);
+
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(0, bucket.reserve());
+        assertEquals(INTERVAL, bucket.reserve());
+        assertEquals(2 * INTERVAL, bucket.reserve());
+    }
+
+    @Test
+    void permitsRefillAtTheSustainedRate() {
+        TokenBucket bucket = new TokenBucket(10, 2, clock::get);
+        bucket.reserve();
+        bucket.reserve();
+        assertEquals(INTERVAL, bucket.reserve());
+
+        // The third permit is used up once its wait has passed, the next one refills after another interval
+        clock.addAndGet(INTERVAL);
+        assertEquals(INTERVAL, bucket.reserve());
+        clock.addAndGet(3 * INTERVAL);
+        assertEquals(0, bucket.reserve());
+    }
+
+    @Test
+    void bucketIsIdleOnceItHasRefilled() {
+        TokenBucket bucket = new TokenBucket(10, 2, clock::get);
+        assertTrue(bucket.isIdle(clock.get()));
+
+        bucket.reserve();
+        assertFalse(bucket.isIdle(clock.get()));
+        clock.addAndGet(INTERVAL);
+        assertTrue(bucket.isIdle(clock.get()));
+
+        // Idle time does not accumulate beyond the burst
+        clock.addAndGet(10 * INTERVAL);
+        bucket.reserve();
+        bucket.reserve();
+        assertEquals(INTERVAL, bucket.reserve());
+        assertEquals(10.0, bucket.getPermitsPerSecond(), 1e-9);
+        assertEquals(2, bucket.getBurst());
+    }
+}
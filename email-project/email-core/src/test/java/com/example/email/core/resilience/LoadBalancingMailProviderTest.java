@@ -0,0 +1,192 @@
+package com.example.email.core.resilience;
+
+import com.example.email.core.model.Attachment;
+import com.example.email.core.provider.EmailContext;
+import com.example.email.core.provider.MailBatchResult;
+import com.example.email.core.provider.MailContext;
+import com.example.email.core.provider.MailProvider;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoadBalancingMailProviderTest {
+
+    @Test
+    void transportFailureFailsOverToTheNextProvider() throws Exception {
+        ScriptedProvider first = new ScriptedProvider();
+        ScriptedProvider second = new ScriptedProvider();
+        first.failing.add("user@example.com");
+        LoadBalancingMailProvider provider = provider(first, second);
+
+        provider.sendMail(context("user@example.com"));
+
+        assertEquals(List.of("user@example.com"), first.attempts);
+        assertEquals(List.of("user@example.com"), second.attempts);
+        assertEquals(1, provider.getMembers().get(0).getFailedCount());
+    }
+
+    @Test
+    void permanentFailureIsNotFailedOverAndKeepsTheBreakerClosed() {
+        ScriptedProvider first = new ScriptedProvider();
+        ScriptedProvider second = new ScriptedProvider();
+        first.rejecting.add("invalid@example.com");
+        LoadBalancingMailProvider provider = provider(first, second);
+
+        for (int i = 0; i < 4; i++) {
+            MailProvider.MailProviderException failure = assertThrows(MailProvider.MailProviderException.class,
+                    () -> provider.sendMail(context("invalid@example.com")));
+            assertTrue(failure.isPermanent());
+        }
+
+        assertEquals(List.of(), second.attempts);
+        assertEquals(CircuitBreaker.State.CLOSED, provider.getMembers().get(0).getCircuitState());
+    }
+
+    @Test
+    void batchOnlyPassesTransportFailuresOn() {
+        ScriptedProvider first = new ScriptedProvider();
+        ScriptedProvider second = new ScriptedProvider();
+        first.failing.add("down@example.com");
+        first.rejecting.add("invalid@example.com");
+        LoadBalancingMailProvider provider = provider(first, second);
+
+        MailBatchResult result = provider.sendMails(List.of(
+                context("ok@example.com"), context("down@example.com"), context("invalid@example.com")));
+
+        assertTrue(result.isSuccess(0));
+        assertTrue(result.isSuccess(1));
+        assertFalse(result.isSuccess(2));
+        assertEquals(List.of("down@example.com"), second.attempts);
+    }
+
+    @Test
+    void noAvailableProviderFailsWithTheTransportFailure() {
+        ScriptedProvider only = new ScriptedProvider();
+        only.failing.add("user@example.com");
+        LoadBalancingMailProvider provider = LoadBalancingMailProvider.builder()
+                .provider("only", only, 1)
+                .build();
+
+        MailProvider.MailProviderException failure = assertThrows(MailProvider.MailProviderException.class,
+                () -> provider.sendMail(context("user@example.com")));
+        assertSame(only.lastFailure, failure.getCause());
+    }
+
+    @Test
+    void readStreamAttachmentIsNotFailedOver() throws Exception {
+        List<String> attempts = new ArrayList<>();
+        MailProvider reading = context -> {
+            attempts.add("first");
+            readAttachments((EmailContext) context);
+            throw new MailProvider.MailProviderException("Connection reset");
+        };
+        MailProvider second = context -> attempts.add("second");
+        LoadBalancingMailProvider provider = provider(reading, second);
+
+        MailProvider.MailProviderException failure = assertThrows(MailProvider.MailProviderException.class,
+                () -> provider.sendMail(withStream("user@example.com")));
+
+        assertEquals("Connection reset", failure.getMessage());
+        assertEquals(List.of("first"), attempts);
+    }
+
+    @Test
+    void unreadStreamAttachmentIsFailedOver() throws Exception {
+        ScriptedProvider first = new ScriptedProvider();
+        List<String> read = new ArrayList<>();
+        MailProvider second = context -> read.add(readAttachments((EmailContext) context));
+        first.failing.add("user@example.com");
+        LoadBalancingMailProvider provider = provider(first, second);
+
+        provider.sendMail(withStream("user@example.com"));
+
+        assertEquals(List.of("data"), read);
+    }
+
+    @Test
+    void batchKeepsTheTransportFailureOfReadStreamAttachments() {
+        List<String> secondAttempts = new ArrayList<>();
+        MailProvider reading = new MailProvider() {
+            @Override
+            public void sendMail(MailContext context) throws MailProviderException {
+                readAttachments((EmailContext) context);
+                throw new MailProviderException("Connection reset");
+            }
+        };
+        MailProvider second = context -> secondAttempts.add(((EmailContext) context).getTo().get(0));
+        LoadBalancingMailProvider provider = provider(reading, second);
+
+        MailBatchResult result = provider.sendMails(List.of(withStream("a@example.com"), context("b@example.com")));
+
+        assertFalse(result.isSuccess(0));
+        assertEquals("Connection reset", result.getFailure(0).getMessage());
+        assertTrue(result.isSuccess(1));
+        assertEquals(List.of("b@example.com"), secondAttempts);
+    }
+
+    private static EmailContext withStream(String to) {
+        return context(to).addAttachment(Attachment.fromInputStream(
+                new ByteArrayInputStream("data".getBytes(StandardCharsets.UTF_8)), "data.txt", "text/plain"));
+    }
+
+    private static String readAttachments(EmailContext context) throws MailProvider.MailProviderException {
+        StringBuilder content = new StringBuilder();
+        for (Attachment attachment : context.getAttachments()) {
+            try (InputStream in = Channels.newInputStream(attachment.getSource().openChannel())) {
+                content.append(new String(in.readAllBytes(), StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                throw new MailProvider.MailProviderException("Failed to read attachment", e);
+            }
+        }
+        return content.toString();
+    }
+
+    private static LoadBalancingMailProvider provider(MailProvider first, MailProvider second) {
+        // The first member gets the first turns, the second one is only reached on failover
+        return LoadBalancingMailProvider.builder()
+                .provider("first", first, 1000)
+                .provider("second", second, 1)
+                .circuitBreaker(0.5, 2, Duration.ofMinutes(1))
+                .build();
+    }
+
+    private static EmailContext context(String to) {
+        return new EmailContext("sender@example.com", List.of(to), "Hello", "<p>Hello</p>", true);
+    }
+
+    /**
+     * Provider failing on transport for some recipients and rejecting others
+     */
+    private static final class ScriptedProvider implements MailProvider {
+        private final List<String> failing = new ArrayList<>();
+        private final List<String> rejecting = new ArrayList<>();
+        private final List<String> attempts = new ArrayList<>();
+        private MailProviderException lastFailure;
+
+        @Override
+        public void sendMail(MailContext context) throws MailProviderException {
+            String to = ((EmailContext) context).getTo().get(0);
+            attempts.add(to);
+            if (failing.contains(to)) {
+                lastFailure = new MailProviderException("Connection refused");
+                throw lastFailure;
+            }
+            if (rejecting.contains(to)) {
+                throw new MailProviderException("Recipient rejected: " + to, null, true);
+            }
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.example.email.core.resilience;
+
+import com.example.email.core.provider.EmailContext;
+import com.example.email.core.provider.MailBatchResult;
+import com.example.email.core.provider.MailProvider;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ResilientMailProviderTest {
+
+    @Test
+    void permanentFailuresDoNotOpenTheBreaker() {
+        ResilientMailProvider provider = provider(context -> {
+            throw new MailProvider.MailProviderException("Recipient rejected", null, true);
+        });
+
+        for (int i = 0; i < 5; i++) {
+            assertThrows(MailProvider.MailProviderException.class, () -> provider.sendMail(context(0)));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, provider.getCircuitState());
+    }
+
+    @Test
+    void transportFailuresOpenTheBreaker() {
+        ResilientMailProvider provider = provider(context -> {
+            throw new MailProvider.MailProviderException("Connection refused");
+        });
+
+        for (int i = 0; i < 2; i++) {
+            assertThrows(MailProvider.MailProviderException.class, () -> provider.sendMail(context(0)));
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, provider.getCircuitState());
+        assertThrows(CallNotPermittedException.class, () -> provider.sendMail(context(0)));
+    }
+
+    @Test
+    void batchCountsAsFailedByItsTransportFailureRate() {
+        List<Integer> failing = new ArrayList<>();
+        ResilientMailProvider provider = provider(context -> {
+            int index = Integer.parseInt(((EmailContext) context).getSubject());
+            if (failing.contains(index)) {
+                throw new MailProvider.MailProviderException("Connection reset");
+            }
+        });
+
+        // One failure in ten stays below the 50% threshold, even twice in a row
+        failing.add(3);
+        provider.sendMails(batch(10));
+        provider.sendMails(batch(10));
+        assertEquals(CircuitBreaker.State.CLOSED, provider.getCircuitState());
+
+        // Most of the batch failing counts as a failed call, although some messages went out
+        for (int i = 0; i < 8; i++) {
+            failing.add(i);
+        }
+        MailBatchResult result = provider.sendMails(batch(10));
+        assertEquals(2, result.getSuccessCount());
+        provider.sendMails(batch(10));
+        assertEquals(CircuitBreaker.State.OPEN, provider.getCircuitState());
+    }
+
+    private static ResilientMailProvider provider(MailProvider delegate) {
+        return ResilientMailProvider.builder(delegate)
+                .name("test")
+                .consecutiveFailureThreshold(2)
+                .openDuration(Duration.ofMinutes(1))
+                .build();
+    }
+
+    private static List<EmailContext> batch(int size) {
+        List<EmailContext> contexts = new ArrayList<>();
+        for (int i = 0; i < size; i++) {
+            contexts.add(context(i));
+        }
+        return contexts;
+    }
+
+    private static EmailContext context(int index) {
+        return new EmailContext("sender@example.com", List.of("user" + index + "@example.com"),
+                String.valueOf(index), "<p>Hello</p>", true);
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.email.core.sender;
+
+import com.example.email.core.model.Email;
+import com.example.email.core.provider.EmailContext;
+import com.example.email.core.provider.MailBatchResult;
+import com.example.email.core.provider.MailContext;
+import com.example.email.core.provider.MailProvider;
+import com.example.email.core.provider.MailProviderFactory;
+import org.junit.jupiter.api.Test;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConfigurableEmailSenderTest {
+
+    @Test
+    void sendAllHandsTheProviderBoundedChunks() {
+        RecordingProvider provider = new RecordingProvider("fail@example.com");
+        MailProviderFactory.registerProvider("chunk-test", provider, false);
+        ConfigurableEmailSender sender = new ConfigurableEmailSender("chunk-test");
+
+        List<Email> emails = new ArrayList<>();
+        for (int i = 0; i < 1234; i++) {
+            emails.add(email(i == 700 ? "fail@example.com" : "user" + i + "@example.com"));
+        }
+        BatchSendResult result = sender.sendAll(emails);
+
+        assertEquals(List.of(500, 500, 234), provider.batchSizes);
+        assertEquals(1233, result.getSuccessCount());
+        assertEquals(1, result.getFailureCount());
+        assertFalse(result.getResults().get(700).isSuccess());
+        assertTrue(result.getResults().get(701).isSuccess());
+    }
+
+    @Test
+    void reRegisteredProviderIsUsedByTheNextSend() throws Exception {
+        List<String> sentBy = new ArrayList<>();
+        MailProviderFactory.registerProvider("reregister-test", context -> sentBy.add("first"), false);
+        ConfigurableEmailSender sender = new ConfigurableEmailSender("reregister-test");
+        sender.send(email("user@example.com"));
+
+        MailProviderFactory.registerProvider("reregister-test", context -> sentBy.add("second"), false);
+        sender.send(email("user@example.com"));
+        // Unrelated registrations only cause a repeated lookup
+        MailProviderFactory.registerProvider("reregister-other", context -> sentBy.add("other"), false);
+        sender.send(email("user@example.com"));
+
+        assertEquals(List.of("first", "second", "second"), sentBy);
+    }
+
+    @Test
+    void factoryDoesNotKeepSendersReachable() throws Exception {
+        MailProviderFactory.registerProvider("reachability-test", context -> { }, false);
+        ConfigurableEmailSender sender = new ConfigurableEmailSender("reachability-test");
+        sender.send(email("user@example.com"));
+        WeakReference<ConfigurableEmailSender> reference = new WeakReference<>(sender);
+        sender = null;
+
+        for (int i = 0; i < 50 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        assertNull(reference.get());
+    }
+
+    private static Email email(String to) {
+        return Email.builder()
+                .from("sender@example.com")
+                .to(to)
+                .subject("Hello")
+                .content("<p>Hello</p>")
+                .build();
+    }
+
+    /**
+     * Provider recording the size of every batch, failing one recipient
+     */
+    private static final class RecordingProvider implements MailProvider {
+        private final String failingRecipient;
+        private final List<Integer> batchSizes = new ArrayList<>();
+
+        private RecordingProvider(String failingRecipient) {
+            this.failingRecipient = failingRecipient;
+        }
+
+        @Override
+        public void sendMail(MailContext context) throws MailProviderException {
+            if (((EmailContext) context).getTo().contains(failingRecipient)) {
+                throw new MailProviderException("Rejected recipient " + failingRecipient);
+            }
+        }
+
+        @Override
+        public MailBatchResult sendMails(List<? extends MailContext> contexts) {
+            batchSizes.add(contexts.size());
+            return MailProvider.super.sendMails(contexts);
+        }
+    }
+}
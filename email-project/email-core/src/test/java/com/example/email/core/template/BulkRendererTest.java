@@ -0,0 +1,167 @@
+package com.example.email.core.template;
+
+import com.example.email.core.model.ContentWriter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BulkRendererTest {
+
+    private final ExecutorService executor = Executors.newFixedThreadPool(4);
+
+    @AfterEach
+    void shutdownExecutor() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void inputOrderFollowsTheInputsWhateverTheRenderTime() {
+        BulkRenderer renderer = BulkRenderer.builder().executor(executor).maxPending(4).build();
+
+        // Earlier inputs take longer, so they finish last within each window
+        List<BulkRenderer.Result<Integer>> results = renderer.render(IntStream.range(0, 12).boxed(),
+                i -> writer -> {
+                    sleep(3 * (4 - i % 4));
+                    writer.write("content " + i);
+                }, BulkRenderer.Order.INPUT).toList();
+
+        assertEquals(12, results.size());
+        for (int i = 0; i < results.size(); i++) {
+            assertEquals(i, results.get(i).getIndex());
+            assertEquals(i, results.get(i).getInput());
+            assertEquals("content " + i, results.get(i).getContent());
+        }
+    }
+
+    @Test
+    void completionOrderReturnsResultsAsSoonAsTheyAreRendered() throws Exception {
+        BulkRenderer renderer = BulkRenderer.builder().executor(executor).maxPending(2).build();
+        CountDownLatch firstConsumed = new CountDownLatch(1);
+
+        try (Stream<BulkRenderer.Result<Integer>> results = renderer.render(Stream.of(0, 1),
+                i -> writer -> {
+                    if (i == 0) {
+                        // The first input only finishes once the second was consumed
+                        await(firstConsumed);
+                    }
+                    writer.write("content " + i);
+                }, BulkRenderer.Order.COMPLETION)) {
+            Iterator<BulkRenderer.Result<Integer>> iterator = results.iterator();
+
+            BulkRenderer.Result<Integer> first = iterator.next();
+            firstConsumed.countDown();
+            BulkRenderer.Result<Integer> second = iterator.next();
+
+            assertEquals(1, first.getIndex());
+            assertEquals("content 1", first.getContent());
+            assertEquals(0, second.getIndex());
+            assertEquals("content 0", second.getContent());
+            assertFalse(iterator.hasNext());
+        }
+    }
+
+    @Test
+    void noMoreThanMaxPendingInputsAreAheadOfTheConsumer() {
+        int maxPending = 3;
+        BulkRenderer renderer = BulkRenderer.builder().executor(executor).maxPending(maxPending).build();
+        AtomicInteger pulled = new AtomicInteger();
+        AtomicInteger rendering = new AtomicInteger();
+        AtomicInteger maxRendering = new AtomicInteger();
+        int[] consumed = new int[1];
+
+        Stream<Integer> inputs = Stream.iterate(0, i -> i + 1).limit(50).peek(i -> pulled.incrementAndGet());
+        renderer.render(inputs, i -> writer -> {
+            maxRendering.accumulateAndGet(rendering.incrementAndGet(), Math::max);
+            sleep(1);
+            rendering.decrementAndGet();
+            writer.write("content " + i);
+        }, BulkRenderer.Order.COMPLETION).forEach(result -> {
+            assertTrue(pulled.get() - consumed[0] <= maxPending, "pulled " + pulled.get() + ", consumed " + consumed[0]);
+            consumed[0]++;
+        });
+
+        assertEquals(50, consumed[0]);
+        assertEquals(50, pulled.get());
+        assertTrue(maxRendering.get() <= maxPending, "rendering " + maxRendering.get());
+    }
+
+    @Test
+    void failuresAreReportedInTheirResultAndDoNotEndTheStream() {
+        BulkRenderer renderer = BulkRenderer.builder().executor(executor).maxPending(2).build();
+        IllegalArgumentException creationFailure = new IllegalArgumentException("Unknown template");
+
+        List<BulkRenderer.Result<Integer>> results = renderer.render(IntStream.range(0, 5).boxed(), i -> {
+            if (i == 1) {
+                throw creationFailure;
+            }
+            return (ContentWriter) writer -> {
+                if (i == 3) {
+                    throw new IOException("Template failed");
+                }
+                writer.write("content " + i);
+            };
+        }, BulkRenderer.Order.INPUT).toList();
+
+        assertEquals(List.of(0, 1, 2, 3, 4), results.stream().map(BulkRenderer.Result::getInput).toList());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals(creationFailure, results.get(1).getError());
+        assertNull(results.get(1).getContent());
+        assertFalse(results.get(3).isSuccess());
+        UncheckedIOException renderFailure = assertInstanceOf(UncheckedIOException.class, results.get(3).getError());
+        assertEquals("Template failed", renderFailure.getCause().getMessage());
+        assertNull(results.get(3).getContent());
+        for (int i : new int[] {0, 2, 4}) {
+            assertTrue(results.get(i).isSuccess());
+            assertNull(results.get(i).getError());
+            assertEquals("content " + i, results.get(i).getContent());
+        }
+    }
+
+    @Test
+    void rendersOnADedicatedPoolByDefault() {
+        BulkRenderer renderer = BulkRenderer.builder().maxPending(8).build();
+
+        List<String> threads = renderer.render(IntStream.range(0, 16).boxed(),
+                i -> writer -> writer.write(Thread.currentThread().getName()), BulkRenderer.Order.INPUT)
+                .map(BulkRenderer.Result::getContent)
+                .collect(Collectors.toList());
+
+        for (String thread : threads) {
+            assertTrue(thread.startsWith("bulk-render-"), thread);
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
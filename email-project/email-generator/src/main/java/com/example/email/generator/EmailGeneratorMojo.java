@@ -49,6 +49,13 @@ public class EmailGeneratorMojo extends AbstractMojo {
     @Parameter(defaultValue = "false")
     private boolean includeRenderMethod;
 
+    /**
+     * Whether to include service methods that render the template into the message
+     * as it is sent, instead of into a string when the email is created.
+     */
+    @Parameter(defaultValue = "false")
+    private boolean includeStreamingMethod;
+
     /**
      * Annotation to use for nullable parameters.
      */
@@ -126,7 +133,7 @@ public class EmailGeneratorMojo extends AbstractMojo {
                     outputDirectory, packageName, nullableAnnotation, useLombok, logger);
             EmailServiceGenerator serviceGenerator = new EmailServiceGenerator(
                     outputDirectory, packageName, serviceClassName,
-                    includeRenderMethod, logger, parameterClassGenerator);
+                    includeRenderMethod, includeStreamingMethod, logger, parameterClassGenerator);
 
             // Read definitions
             List<EmailDefinition> definitions = definitionReader.readDefinitions();
@@ -6,12 +6,14 @@ import com.example.email.core.generator.VariableDefinition;
 import com.example.email.core.model.Email;
 import com.example.email.core.service.EmailConfig;
 import com.example.email.core.service.EmailTemplateService;
+import com.example.email.core.template.BulkRenderer;
 import com.example.email.core.template.TemplateEngine;
 import com.squareup.javapoet.ClassName;
 import com.squareup.javapoet.CodeBlock;
 import com.squareup.javapoet.JavaFile;
 import com.squareup.javapoet.MethodSpec;
 import com.squareup.javapoet.ParameterSpec;
+import com.squareup.javapoet.ParameterizedTypeName;
 import com.squareup.javapoet.TypeSpec;
 
 import javax.lang.model.element.Modifier;
@@ -20,6 +22,7 @@ import java.io.IOException;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.stream.Stream;
 
 /**
  * Updated EmailServiceGenerator with simplified model structure
@@ -30,6 +33,7 @@ public class EmailServiceGenerator {
     private final String packageName;
     private final String serviceClassName;
     private final boolean includeRenderMethod;
+    private final boolean includeStreamingMethod;
     private final GeneratorLogger logger;
     private final ParameterClassGenerator parameterClassGenerator;
 
@@ -38,12 +42,14 @@ public class EmailServiceGenerator {
             String packageName,
             String serviceClassName,
             boolean includeRenderMethod,
+            boolean includeStreamingMethod,
             GeneratorLogger logger,
             ParameterClassGenerator parameterClassGenerator) {
         this.outputDirectory = outputDirectory;
         this.packageName = packageName;
         this.serviceClassName = serviceClassName;
         this.includeRenderMethod = includeRenderMethod;
+        this.includeStreamingMethod = includeStreamingMethod;
         this.logger = logger;
         this.parameterClassGenerator = parameterClassGenerator;
     }
@@ -81,12 +87,21 @@ public class EmailServiceGenerator {
             }
 
             // Generate service method with parameter class
-            generateServiceMethod(serviceBuilder, email, paramClassName, sectionParamClasses);
+            generateServiceMethod(serviceBuilder, email, paramClassName);
+
+            // Generate streaming service method if needed
+            if (includeStreamingMethod) {
+                generateStreamingMethod(serviceBuilder, email, paramClassName);
+            }
 
             // Generate render method if needed
             if (includeRenderMethod) {
-                generateRenderMethod(serviceBuilder, email, paramClassName, sectionParamClasses);
+                generateRenderMethod(serviceBuilder, email, paramClassName);
             }
+
+            // Generate model and bulk render methods
+            generateModelMethod(serviceBuilder, email, paramClassName, sectionParamClasses);
+            generateBulkRenderMethod(serviceBuilder, email, paramClassName);
         }
 
         // Create the JavaFile and write to output directory
@@ -97,13 +112,12 @@ public class EmailServiceGenerator {
     }
 
     /**
-     * Generate service method with simplified model structure
+     * Generate service method creating an email with its template rendered up front
      */
     private void generateServiceMethod(
             TypeSpec.Builder serviceBuilder,
             EmailDefinition email,
-            ClassName paramClassName,
-            Map<String, ClassName> sectionParamClasses) {
+            ClassName paramClassName) {
 
         MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(email.getMethodName())
                 .addModifiers(Modifier.PUBLIC)
@@ -114,93 +128,146 @@ public class EmailServiceGenerator {
                 .addJavadoc("@param params The parameters for this email template\n")
                 .addJavadoc("@return An email builder configured with the template content\n");
 
-        // Create method body with simplified structure
-        CodeBlock.Builder codeBlockBuilder = CodeBlock.builder()
-                .addStatement("$T<$T, $T> model = new $T<>()",
-                        Map.class, String.class, Object.class, HashMap.class);
-
-        // Add main variables to model - these go at the top level
-        for (VariableDefinition var : email.getVariables()) {
-            codeBlockBuilder.addStatement("model.put($S, params.get$L())",
-                    var.getName(), capitalizeFirst(var.getName()));
-        }
-
-        // Add section parameters with special handling for 'content' section
-        for (Map.Entry<String, ClassName> entry : sectionParamClasses.entrySet()) {
-            String sectionName = entry.getKey();
-            SectionDefinition section = email.getSectionDefinition(sectionName).orElse(null);
-
-            if (section != null && section.getVariables() != null && !section.getVariables().isEmpty()) {
-                codeBlockBuilder.beginControlFlow("if (params.get$LParams() != null)", capitalizeFirst(sectionName));
-
-                // For 'content' section, put variables directly in top level of model
-                if ("content".equals(sectionName)) {
-                    // Add content section variables directly to model top level
-                    for (VariableDefinition var : section.getVariables()) {
-                        codeBlockBuilder.addStatement("model.put($S, params.get$LParams().get$L())",
-                                var.getName(), // no section prefix for content variables
-                                capitalizeFirst(sectionName), capitalizeFirst(var.getName()));
-                    }
-                } else {
-                    // For other sections, create a single section map
-                    codeBlockBuilder.addStatement("$T<$T, $T> " + sectionName + "Map = new $T<>()",
-                            Map.class, String.class, Object.class, HashMap.class);
-
-                    // Add section variables directly to section map
-                    for (VariableDefinition var : section.getVariables()) {
-                        codeBlockBuilder.addStatement(sectionName + "Map.put($S, params.get$LParams().get$L())",
-                                var.getName(),
-                                capitalizeFirst(sectionName), capitalizeFirst(var.getName()));
-                    }
+        CodeBlock codeBlock = CodeBlock.builder()
+                .addStatement("$T<$T, $T> model = $L(params)",
+                        Map.class, String.class, Object.class, email.getModelMethodName())
+                .addStatement("String content = processTemplate($S, model)", email.getTemplatePath())
+                .addStatement("return createEmailBuilder()" +
+                        "\n        .subject((String) model.get($S))" +
+                        "\n        .content(content)" +
+                        "\n        .html(true)", "subject")
+                .build();
 
-                    // Add the section map to the model
-                    codeBlockBuilder.addStatement("model.put($S, " + sectionName + "Map)", sectionName);
-                }
+        methodBuilder.addCode(codeBlock);
+        serviceBuilder.addMethod(methodBuilder.build());
+    }
 
-                codeBlockBuilder.endControlFlow();
-            }
-        }
+    /**
+     * Generate service method creating an email whose template is rendered
+     * straight into the message as it is sent
+     */
+    private void generateStreamingMethod(
+            TypeSpec.Builder serviceBuilder,
+            EmailDefinition email,
+            ClassName paramClassName) {
 
-        // Set subject (top level variable)
-        codeBlockBuilder.addStatement("String actualSubject = params.getSubject() != null ? params.getSubject() : $S",
-                        email.getSubject())
-                .addStatement("model.put($S, actualSubject)", "subject");
+        MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(email.getStreamingMethodName())
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ClassName.get(Email.Builder.class))
+                .addJavadoc("Create an email builder for the $L template, rendering the template\n", email.getIdentifier())
+                .addJavadoc("into the message when it is sent instead of into a string up front.\n")
+                .addJavadoc("Template errors are reported by the send.\n")
+                .addJavadoc("<p>Default subject: $L</p>\n", email.getSubject())
+                .addParameter(ParameterSpec.builder(paramClassName, "params").build())
+                .addJavadoc("@param params The parameters for this email template\n")
+                .addJavadoc("@return An email builder configured with the template content\n");
 
-        // Process template and create email
-        codeBlockBuilder.addStatement("String content = processTemplate($S, model)",
-                        email.getTemplatePath())
+        CodeBlock codeBlock = CodeBlock.builder()
+                .addStatement("$T<$T, $T> model = $L(params)",
+                        Map.class, String.class, Object.class, email.getModelMethodName())
                 .addStatement("return createEmailBuilder()" +
-                        "\n        .subject(actualSubject)" +
-                        "\n        .content(content)" +
-                        "\n        .html(true)");
+                        "\n        .subject((String) model.get($S))" +
+                        "\n        .content(renderTemplate($S, model))" +
+                        "\n        .html(true)", "subject", email.getTemplatePath())
+                .build();
 
-        methodBuilder.addCode(codeBlockBuilder.build());
+        methodBuilder.addCode(codeBlock);
         serviceBuilder.addMethod(methodBuilder.build());
     }
 
     /**
-     * Generate render method with simplified model structure
+     * Generate render method processing the template without creating an email
      */
     private void generateRenderMethod(
             TypeSpec.Builder serviceBuilder,
             EmailDefinition email,
-            ClassName paramClassName,
-            Map<String, ClassName> sectionParamClasses) {
+            ClassName paramClassName) {
 
-        MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(email.getRenderMethodName())
+        MethodSpec method = MethodSpec.methodBuilder(email.getRenderMethodName())
                 .addModifiers(Modifier.PUBLIC)
                 .returns(ClassName.get(String.class))
                 .addJavadoc("Render the $L template without creating an email\n", email.getIdentifier())
                 .addParameter(ParameterSpec.builder(paramClassName, "params").build())
                 .addJavadoc("@param params The parameters for this email template\n")
-                .addJavadoc("@return The rendered HTML content\n");
+                .addJavadoc("@return The rendered HTML content\n")
+                .addStatement("return processTemplate($S, $L(params))",
+                        email.getTemplatePath(), email.getModelMethodName())
+                .build();
+
+        serviceBuilder.addMethod(method);
+    }
+
+    /**
+     * Generate method creating the template model from the parameters
+     */
+    private void generateModelMethod(
+            TypeSpec.Builder serviceBuilder,
+            EmailDefinition email,
+            ClassName paramClassName,
+            Map<String, ClassName> sectionParamClasses) {
+
+        MethodSpec.Builder methodBuilder = MethodSpec.methodBuilder(email.getModelMethodName())
+                .addModifiers(Modifier.PROTECTED)
+                .returns(ParameterizedTypeName.get(Map.class, String.class, Object.class))
+                .addJavadoc("Create the model of the $L template\n", email.getIdentifier())
+                .addParameter(ParameterSpec.builder(paramClassName, "params").build())
+                .addJavadoc("@param params The parameters for this email template\n")
+                .addJavadoc("@return The template model\n");
 
-        // Create method body with same structure as service method
         CodeBlock.Builder codeBlockBuilder = CodeBlock.builder()
                 .addStatement("$T<$T, $T> model = new $T<>()",
                         Map.class, String.class, Object.class, HashMap.class);
 
-        // Add main variables to model
+        addModelStatements(codeBlockBuilder, email, sectionParamClasses);
+
+        // Set subject
+        codeBlockBuilder.beginControlFlow("if (params.getSubject() != null)")
+                .addStatement("model.put($S, params.getSubject())", "subject")
+                .nextControlFlow("else")
+                .addStatement("model.put($S, $S)", "subject", email.getSubject())
+                .endControlFlow()
+                .addStatement("return model");
+
+        methodBuilder.addCode(codeBlockBuilder.build());
+        serviceBuilder.addMethod(methodBuilder.build());
+    }
+
+    /**
+     * Generate bulk render method, rendering the template for many parameter sets in parallel
+     */
+    private void generateBulkRenderMethod(
+            TypeSpec.Builder serviceBuilder,
+            EmailDefinition email,
+            ClassName paramClassName) {
+
+        MethodSpec method = MethodSpec.methodBuilder(email.getBulkRenderMethodName())
+                .addModifiers(Modifier.PUBLIC)
+                .returns(ParameterizedTypeName.get(ClassName.get(Stream.class),
+                        ParameterizedTypeName.get(ClassName.get(BulkRenderer.Result.class), paramClassName)))
+                .addJavadoc("Render the $L template for many parameter sets in parallel\n", email.getIdentifier())
+                .addParameter(ParameterSpec.builder(
+                        ParameterizedTypeName.get(ClassName.get(Stream.class), paramClassName), "params").build())
+                .addParameter(ParameterSpec.builder(ClassName.get(BulkRenderer.Order.class), "order").build())
+                .addJavadoc("@param params The parameters, one set per email\n")
+                .addJavadoc("@param order Whether results follow the order of the parameters\n")
+                .addJavadoc("    or are returned as soon as they are rendered\n")
+                .addJavadoc("@return The rendered HTML contents, each with the parameters it was rendered for\n")
+                .addStatement("return renderTemplates($S, params, this::$L, order)",
+                        email.getTemplatePath(), email.getModelMethodName())
+                .build();
+
+        serviceBuilder.addMethod(method);
+    }
+
+    /**
+     * Add the statements filling the template model from the parameters
+     */
+    private void addModelStatements(
+            CodeBlock.Builder codeBlockBuilder,
+            EmailDefinition email,
+            Map<String, ClassName> sectionParamClasses) {
+
+        // Add main variables to model - these go at the top level
         for (VariableDefinition var : email.getVariables()) {
             codeBlockBuilder.addStatement("model.put($S, params.get$L())",
                     var.getName(), capitalizeFirst(var.getName()));
@@ -241,20 +308,6 @@ public class EmailServiceGenerator {
                 codeBlockBuilder.endControlFlow();
             }
         }
-
-        // Set subject
-        codeBlockBuilder.beginControlFlow("if (params.getSubject() != null)")
-                .addStatement("model.put($S, params.getSubject())", "subject")
-                .nextControlFlow("else")
-                .addStatement("model.put($S, $S)", "subject", email.getSubject())
-                .endControlFlow();
-
-        // Process template and return content
-        codeBlockBuilder.addStatement("return processTemplate($S, model)",
-                email.getTemplatePath());
-
-        methodBuilder.addCode(codeBlockBuilder.build());
-        serviceBuilder.addMethod(methodBuilder.build());
     }
 
     private String capitalizeFirst(String str) {
@@ -1,62 +1,217 @@
 package com.example.email.spring;
 
+import com.example.email.core.async.BoundedSendExecutor;
+import com.example.email.core.async.SendExecutor;
+import com.example.email.core.async.VirtualThreadSendExecutor;
+import com.example.email.core.attachment.AttachmentStore;
+import com.example.email.core.metrics.MailMetrics;
 import com.example.email.core.provider.MailInterceptor;
+import com.example.email.core.provider.MailPipeline;
 import com.example.email.core.provider.MailProvider;
 import com.example.email.core.provider.MailProviderFactory;
+import com.example.email.core.ratelimit.RateLimitedMailProvider;
+import com.example.email.core.resilience.ResilientMailProvider;
 import com.example.email.core.sender.ConfigurableEmailSender;
 import com.example.email.core.sender.EmailSender;
 import com.example.email.core.template.TemplateEngine;
+import com.example.email.spring.metrics.MicrometerMailMetrics;
+import com.example.email.spring.provider.SmtpTransportPool;
 import com.example.email.spring.provider.SpringMailProvider;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
 import org.springframework.boot.autoconfigure.AutoConfigureAfter;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
 import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.boot.autoconfigure.mail.MailSenderAutoConfiguration;
 import org.springframework.boot.autoconfigure.thymeleaf.ThymeleafAutoConfiguration;
 import org.springframework.boot.context.properties.EnableConfigurationProperties;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.ResourceLoader;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
 
 import java.util.List;
 
 @Configuration
 @EnableConfigurationProperties(EmailProperties.class)
-@AutoConfigureAfter({ThymeleafAutoConfiguration.class, MailSenderAutoConfiguration.class})
+@AutoConfigureAfter(value = {ThymeleafAutoConfiguration.class, MailSenderAutoConfiguration.class},
+        name = "org.springframework.boot.actuate.autoconfigure.metrics.CompositeMeterRegistryAutoConfiguration")
 public class EmailAutoConfiguration {
 
+    @Bean(destroyMethod = "close")
+    @ConditionalOnMissingBean
+    @ConditionalOnBean(JavaMailSenderImpl.class)
+    @ConditionalOnProperty(prefix = "email.pool", name = "enabled", havingValue = "true")
+    public SmtpTransportPool smtpTransportPool(JavaMailSenderImpl javaMailSender,
+                                               EmailProperties emailProperties) {
+        EmailProperties.Pool pool = emailProperties.getPool();
+        return SmtpTransportPool.builder(javaMailSender)
+                .maxTotal(pool.getMaxTotal())
+                .idleTimeout(pool.getIdleTimeout())
+                .maxLifetime(pool.getMaxLifetime())
+                .maxMessagesPerConnection(pool.getMaxMessagesPerConnection())
+                .validationInterval(pool.getValidationInterval())
+                .borrowTimeout(pool.getBorrowTimeout())
+                .evictionInterval(pool.getEvictionInterval())
+                .build();
+    }
+
+    @Bean
+    @ConditionalOnMissingBean
+    @ConditionalOnProperty(prefix = "email.attachment-cache", name = "enabled", havingValue = "true")
+    public AttachmentStore attachmentStore(EmailProperties emailProperties) {
+        EmailProperties.AttachmentCache cache = emailProperties.getAttachmentCache();
+        return AttachmentStore.builder()
+                .maxCacheSize(cache.getMaxSize().toBytes())
+                .maxEntrySize(cache.getMaxEntrySize().toBytes())
+                .build();
+    }
+
+    /**
+     * The interceptor pipeline of the mail provider. Inject it into a MailService placed
+     * in front of the provider so that each interceptor runs once per message.
+     */
+    @Bean
+    @ConditionalOnMissingBean
+    public MailPipeline mailPipeline(List<MailInterceptor> interceptors, EmailProperties emailProperties) {
+        return SpringMailProvider.createPipeline(interceptors)
+                .setVetoTimeout(emailProperties.getPipeline().getVetoTimeout());
+    }
+
     @Bean
     @ConditionalOnMissingBean(MailProvider.class)
     @ConditionalOnBean(JavaMailSender.class)
     public MailProvider mailProvider(JavaMailSender javaMailSender,
                                      EmailProperties emailProperties,
-                                     List<MailInterceptor> interceptors) {
-        // Create the provider with interceptors
+                                     MailPipeline mailPipeline,
+                                     ObjectProvider<SmtpTransportPool> transportPool,
+                                     ObjectProvider<AttachmentStore> attachmentStore,
+                                     ObjectProvider<MailMetrics> mailMetrics) {
+        MailMetrics metrics = mailMetrics.getIfAvailable();
+        // Create the provider with the shared interceptor pipeline
         SpringMailProvider provider = new SpringMailProvider(
                 javaMailSender,
                 emailProperties.isEnabled(),
-                interceptors
+                mailPipeline
         );
+        transportPool.ifAvailable(provider::setTransportPool);
+        attachmentStore.ifAvailable(provider::setAttachmentStore);
+        provider.setMetrics(metrics);
+
+        MailProvider registered = provider;
+        EmailProperties.Resilience resilience = emailProperties.getResilience();
+        if (resilience.isEnabled()) {
+            registered = resilient(registered, resilience).setMetrics(metrics);
+        }
+        // Rate limiting goes outside, so emails waiting for a permit do not hold a bulkhead slot
+        EmailProperties.RateLimit rateLimit = emailProperties.getRateLimit();
+        if (rateLimit.isEnabled()) {
+            registered = rateLimited(registered, rateLimit);
+        }
 
         // Register the provider with the factory
-        MailProviderFactory.registerProvider("spring", provider, true);
+        MailProviderFactory.registerProvider("spring", registered, true);
+
+        return registered;
+    }
+
+    private static ResilientMailProvider resilient(MailProvider provider, EmailProperties.Resilience resilience) {
+        return ResilientMailProvider.builder(provider)
+                .name("spring")
+                .failureRate(resilience.getFailureRateThreshold(), resilience.getWindowSize())
+                .consecutiveFailureThreshold(resilience.getConsecutiveFailures())
+                .openDuration(resilience.getOpenDuration())
+                .slowCallThreshold(resilience.getSlowCallThreshold())
+                .maxConcurrentCalls(resilience.getMaxConcurrentCalls())
+                .maxWait(resilience.getMaxWait())
+                .build();
+    }
 
-        return provider;
+    private static MailProvider rateLimited(MailProvider provider, EmailProperties.RateLimit rateLimit) {
+        RateLimitedMailProvider.Builder builder = RateLimitedMailProvider.builder(provider);
+        if (rateLimit.getProviderRate() > 0) {
+            builder.providerLimit(RateLimitedMailProvider.Limit.perSecond(
+                    rateLimit.getProviderRate(), rateLimit.getProviderBurst()));
+        }
+        if (rateLimit.getDomainRate() > 0) {
+            builder.defaultDomainLimit(RateLimitedMailProvider.Limit.perSecond(
+                    rateLimit.getDomainRate(), rateLimit.getDomainBurst()));
+        }
+        rateLimit.getDomains().forEach((domain, rate) -> builder.domainLimit(domain,
+                RateLimitedMailProvider.Limit.perSecond(rate, rateLimit.getDomainBurst())));
+        return builder.build();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(SendExecutor.class)
+    @ConditionalOnProperty(prefix = "email.async", name = "mode", havingValue = "bounded")
+    public SendExecutor boundedSendExecutor(EmailProperties emailProperties) {
+        EmailProperties.Async async = emailProperties.getAsync();
+        return new BoundedSendExecutor(
+                async.getWorkerThreads(),
+                async.getQueueCapacity(),
+                async.getOverflowPolicy()
+        );
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    @ConditionalOnMissingBean(SendExecutor.class)
+    @ConditionalOnProperty(prefix = "email.async", name = "mode", havingValue = "virtual")
+    public SendExecutor virtualThreadSendExecutor(EmailProperties emailProperties) {
+        EmailProperties.Async async = emailProperties.getAsync();
+        return new VirtualThreadSendExecutor(async.getMaxConcurrentSends(), async.getQueueCapacity());
     }
 
     @Bean
     @ConditionalOnMissingBean(EmailSender.class)
-    public EmailSender emailSender(EmailProperties emailProperties) {
+    public EmailSender emailSender(EmailProperties emailProperties,
+                                   ObjectProvider<SendExecutor> sendExecutor) {
         String providerName = emailProperties.getProvider().getName();
+        ConfigurableEmailSender emailSender;
         if (providerName != null && !providerName.isEmpty()) {
-            return new ConfigurableEmailSender(providerName);
+            emailSender = new ConfigurableEmailSender(providerName);
+        } else {
+            emailSender = new ConfigurableEmailSender();
         }
-        return new ConfigurableEmailSender();
+        sendExecutor.ifAvailable(emailSender::setSendExecutor);
+        return emailSender;
     }
 
     @Bean
     @ConditionalOnMissingBean
-    public TemplateEngine emailTemplateEngine(org.thymeleaf.ITemplateEngine thymeleafEngine) {
-        return new ThymeleafTemplateEngine(thymeleafEngine);
+    public TemplateEngine emailTemplateEngine(org.thymeleaf.ITemplateEngine thymeleafEngine,
+                                              EmailProperties emailProperties) {
+        EmailProperties.TemplateCache cache = emailProperties.getTemplateCache();
+        if (!cache.isEnabled()) {
+            return new ThymeleafTemplateEngine(thymeleafEngine);
+        }
+        return ThymeleafTemplateEngine.builder(thymeleafEngine)
+                .maxSize(cache.getMaxSize())
+                .timeToLive(cache.getTimeToLive())
+                .build();
+    }
+
+    /**
+     * Parse every template listed in the email definitions at startup,
+     * so the first send of a template does not pay for parsing it.
+     * Warm-up follows the template cache setting unless configured explicitly.
+     */
+    @Bean
+    public SmartInitializingSingleton emailTemplateWarmUp(TemplateEngine emailTemplateEngine,
+                                                          EmailProperties emailProperties,
+                                                          ResourceLoader resourceLoader) {
+        return () -> {
+            if (emailProperties.getTemplateCache().isWarmUpEnabled()
+                    && emailTemplateEngine instanceof ThymeleafTemplateEngine) {
+                ((ThymeleafTemplateEngine) emailTemplateEngine).warmUp(
+                        resourceLoader.getResource(emailProperties.getTemplateCache().getDefinitionsLocation()));
+            }
+        };
     }
 
     @Bean
@@ -64,4 +219,50 @@ public class EmailAutoConfiguration {
     public SpringEmailConfig emailConfig(EmailProperties emailProperties) {
         return new SpringEmailConfig(emailProperties);
     }
+
+    /**
+     * Micrometer metrics, enabled when Micrometer and a MeterRegistry are available
+     */
+    @Configuration(proxyBeanMethods = false)
+    @ConditionalOnClass(MeterRegistry.class)
+    @ConditionalOnProperty(prefix = "email.metrics", name = "enabled", havingValue = "true", matchIfMissing = true)
+    static class MetricsConfiguration {
+
+        @Bean
+        @ConditionalOnMissingBean(MailMetrics.class)
+        @ConditionalOnBean(MeterRegistry.class)
+        public MailMetrics mailMetrics(MeterRegistry meterRegistry,
+                                       EmailProperties emailProperties,
+                                       ObjectProvider<SendExecutor> sendExecutor) {
+            MicrometerMailMetrics metrics = new MicrometerMailMetrics(
+                    meterRegistry,
+                    emailProperties.getMetrics().isPercentileHistogram()
+            );
+            sendExecutor.ifAvailable(executor -> {
+                if (executor instanceof BoundedSendExecutor) {
+                    metrics.registerQueue("bounded", ((BoundedSendExecutor) executor)::getQueueSize);
+                } else if (executor instanceof VirtualThreadSendExecutor) {
+                    metrics.registerQueue("virtual", ((VirtualThreadSendExecutor) executor)::getWaitingCount);
+                }
+            });
+
+            return metrics;
+        }
+
+        /**
+         * Report components created outside this configuration, such as template services,
+         * to the Micrometer metrics for as long as the application context is running
+         */
+        @Bean
+        @ConditionalOnBean(MailMetrics.class)
+        public DisposableBean globalMailMetrics(MailMetrics mailMetrics) {
+            MailMetrics.setGlobal(mailMetrics);
+            return () -> {
+                // Leave the global alone if another context has replaced it since
+                if (MailMetrics.global() == mailMetrics) {
+                    MailMetrics.setGlobal(null);
+                }
+            };
+        }
+    }
 }
@@ -1,6 +1,12 @@
 package com.example.email.spring;
 
+import com.example.email.core.async.BoundedSendExecutor;
 import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Spring Boot configuration properties for email service.
@@ -28,6 +34,46 @@ public class EmailProperties {
      */
     private Provider provider = new Provider();
 
+    /**
+     * Asynchronous sending configuration
+     */
+    private Async async = new Async();
+
+    /**
+     * SMTP connection pool configuration
+     */
+    private Pool pool = new Pool();
+
+    /**
+     * Send rate limit configuration
+     */
+    private RateLimit rateLimit = new RateLimit();
+
+    /**
+     * Circuit breaker and bulkhead configuration
+     */
+    private Resilience resilience = new Resilience();
+
+    /**
+     * Metrics configuration
+     */
+    private Metrics metrics = new Metrics();
+
+    /**
+     * Encoded attachment cache configuration
+     */
+    private AttachmentCache attachmentCache = new AttachmentCache();
+
+    /**
+     * Email template cache and warm-up configuration
+     */
+    private TemplateCache templateCache = new TemplateCache();
+
+    /**
+     * Interceptor pipeline configuration
+     */
+    private Pipeline pipeline = new Pipeline();
+
     public String getFromAddress() {
         return fromAddress;
     }
@@ -60,6 +106,70 @@ public class EmailProperties {
         this.provider = provider;
     }
 
+    public Async getAsync() {
+        return async;
+    }
+
+    public void setAsync(Async async) {
+        this.async = async;
+    }
+
+    public Pool getPool() {
+        return pool;
+    }
+
+    public void setPool(Pool pool) {
+        this.pool = pool;
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    public void setRateLimit(RateLimit rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public Resilience getResilience() {
+        return resilience;
+    }
+
+    public void setResilience(Resilience resilience) {
+        this.resilience = resilience;
+    }
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    public void setMetrics(Metrics metrics) {
+        this.metrics = metrics;
+    }
+
+    public AttachmentCache getAttachmentCache() {
+        return attachmentCache;
+    }
+
+    public void setAttachmentCache(AttachmentCache attachmentCache) {
+        this.attachmentCache = attachmentCache;
+    }
+
+    public TemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    public void setTemplateCache(TemplateCache templateCache) {
+        this.templateCache = templateCache;
+    }
+
+    public Pipeline getPipeline() {
+        return pipeline;
+    }
+
+    public void setPipeline(Pipeline pipeline) {
+        this.pipeline = pipeline;
+    }
+
     /**
      * Mail provider configuration properties
      */
@@ -78,4 +188,570 @@ public class EmailProperties {
             this.name = name;
         }
     }
+
+    /**
+     * Asynchronous sending configuration properties
+     */
+    public static class Async {
+        /**
+         * How asynchronous sends are executed
+         */
+        public enum Mode {
+            /**
+             * Asynchronous sending is disabled
+             */
+            NONE,
+
+            /**
+             * Fixed worker pool with a bounded queue
+             */
+            BOUNDED,
+
+            /**
+             * One virtual thread per send, capped by maxConcurrentSends
+             */
+            VIRTUAL
+        }
+
+        /**
+         * Execution mode for asynchronous sends
+         */
+        private Mode mode = Mode.NONE;
+
+        /**
+         * Number of worker threads in BOUNDED mode
+         */
+        private int workerThreads = 4;
+
+        /**
+         * Maximum number of queued sends in BOUNDED mode, and in VIRTUAL mode
+         * on runtimes without virtual threads
+         */
+        private int queueCapacity = 1000;
+
+        /**
+         * What to do when the queue is full in BOUNDED mode
+         */
+        private BoundedSendExecutor.OverflowPolicy overflowPolicy = BoundedSendExecutor.OverflowPolicy.BLOCK;
+
+        /**
+         * Maximum number of concurrent SMTP sessions in VIRTUAL mode
+         */
+        private int maxConcurrentSends = 100;
+
+        public Mode getMode() {
+            return mode;
+        }
+
+        public void setMode(Mode mode) {
+            this.mode = mode;
+        }
+
+        public int getWorkerThreads() {
+            return workerThreads;
+        }
+
+        public void setWorkerThreads(int workerThreads) {
+            this.workerThreads = workerThreads;
+        }
+
+        public int getQueueCapacity() {
+            return queueCapacity;
+        }
+
+        public void setQueueCapacity(int queueCapacity) {
+            this.queueCapacity = queueCapacity;
+        }
+
+        public BoundedSendExecutor.OverflowPolicy getOverflowPolicy() {
+            return overflowPolicy;
+        }
+
+        public void setOverflowPolicy(BoundedSendExecutor.OverflowPolicy overflowPolicy) {
+            this.overflowPolicy = overflowPolicy;
+        }
+
+        public int getMaxConcurrentSends() {
+            return maxConcurrentSends;
+        }
+
+        public void setMaxConcurrentSends(int maxConcurrentSends) {
+            this.maxConcurrentSends = maxConcurrentSends;
+        }
+    }
+
+    /**
+     * SMTP connection pool configuration properties
+     */
+    public static class Pool {
+        /**
+         * Whether to send through a pool of reusable SMTP connections
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of open SMTP connections
+         */
+        private int maxTotal = 8;
+
+        /**
+         * Idle connections older than this are closed
+         */
+        private Duration idleTimeout = Duration.ofMinutes(1);
+
+        /**
+         * Connections are closed once they have been open this long
+         */
+        private Duration maxLifetime = Duration.ofMinutes(10);
+
+        /**
+         * Connections are closed once they have sent this many messages
+         */
+        private int maxMessagesPerConnection = 100;
+
+        /**
+         * Connections idle longer than this are checked with a NOOP before reuse
+         */
+        private Duration validationInterval = Duration.ofSeconds(5);
+
+        /**
+         * Maximum time to wait for a free connection
+         */
+        private Duration borrowTimeout = Duration.ofSeconds(30);
+
+        /**
+         * How often idle connections are checked for eviction
+         */
+        private Duration evictionInterval = Duration.ofSeconds(30);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxTotal() {
+            return maxTotal;
+        }
+
+        public void setMaxTotal(int maxTotal) {
+            this.maxTotal = maxTotal;
+        }
+
+        public Duration getIdleTimeout() {
+            return idleTimeout;
+        }
+
+        public void setIdleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+        }
+
+        public Duration getMaxLifetime() {
+            return maxLifetime;
+        }
+
+        public void setMaxLifetime(Duration maxLifetime) {
+            this.maxLifetime = maxLifetime;
+        }
+
+        public int getMaxMessagesPerConnection() {
+            return maxMessagesPerConnection;
+        }
+
+        public void setMaxMessagesPerConnection(int maxMessagesPerConnection) {
+            this.maxMessagesPerConnection = maxMessagesPerConnection;
+        }
+
+        public Duration getValidationInterval() {
+            return validationInterval;
+        }
+
+        public void setValidationInterval(Duration validationInterval) {
+            this.validationInterval = validationInterval;
+        }
+
+        public Duration getBorrowTimeout() {
+            return borrowTimeout;
+        }
+
+        public void setBorrowTimeout(Duration borrowTimeout) {
+            this.borrowTimeout = borrowTimeout;
+        }
+
+        public Duration getEvictionInterval() {
+            return evictionInterval;
+        }
+
+        public void setEvictionInterval(Duration evictionInterval) {
+            this.evictionInterval = evictionInterval;
+        }
+    }
+
+    /**
+     * Send rate limit configuration properties
+     */
+    public static class RateLimit {
+        /**
+         * Whether to limit the sending rate of the mail provider
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of emails per second through the provider, 0 for no limit
+         */
+        private double providerRate = 50;
+
+        /**
+         * Number of emails that can be sent at once through the provider after an idle period
+         */
+        private int providerBurst = 50;
+
+        /**
+         * Maximum number of emails per second to each recipient domain, 0 for no limit
+         */
+        private double domainRate = 0;
+
+        /**
+         * Number of emails that can be sent at once to a recipient domain after an idle period
+         */
+        private int domainBurst = 10;
+
+        /**
+         * Emails per second for specific recipient domains, overriding domainRate
+         */
+        private Map<String, Double> domains = new LinkedHashMap<>();
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getProviderRate() {
+            return providerRate;
+        }
+
+        public void setProviderRate(double providerRate) {
+            this.providerRate = providerRate;
+        }
+
+        public int getProviderBurst() {
+            return providerBurst;
+        }
+
+        public void setProviderBurst(int providerBurst) {
+            this.providerBurst = providerBurst;
+        }
+
+        public double getDomainRate() {
+            return domainRate;
+        }
+
+        public void setDomainRate(double domainRate) {
+            this.domainRate = domainRate;
+        }
+
+        public int getDomainBurst() {
+            return domainBurst;
+        }
+
+        public void setDomainBurst(int domainBurst) {
+            this.domainBurst = domainBurst;
+        }
+
+        public Map<String, Double> getDomains() {
+            return domains;
+        }
+
+        public void setDomains(Map<String, Double> domains) {
+            this.domains = domains;
+        }
+    }
+
+    /**
+     * Circuit breaker and bulkhead configuration properties
+     */
+    public static class Resilience {
+        /**
+         * Whether to guard the mail provider with a circuit breaker and a bulkhead
+         */
+        private boolean enabled = false;
+
+        /**
+         * Failure rate between 0 and 1 at which the circuit breaker opens
+         */
+        private double failureRateThreshold = 0.5;
+
+        /**
+         * Number of calls the failure rate is computed over
+         */
+        private int windowSize = 20;
+
+        /**
+         * Number of failed calls in a row that open the circuit breaker, 0 to disable
+         */
+        private int consecutiveFailures = 5;
+
+        /**
+         * Calls slower than this per message count as failures, unset to disable
+         */
+        private Duration slowCallThreshold = Duration.ofSeconds(10);
+
+        /**
+         * How long sends are rejected before a trial call is let through
+         */
+        private Duration openDuration = Duration.ofSeconds(30);
+
+        /**
+         * Maximum number of concurrent calls into the mail provider
+         */
+        private int maxConcurrentCalls = 20;
+
+        /**
+         * How long a send waits for a free bulkhead slot before it is rejected
+         */
+        private Duration maxWait = Duration.ZERO;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public double getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public void setFailureRateThreshold(double failureRateThreshold) {
+            this.failureRateThreshold = failureRateThreshold;
+        }
+
+        public int getWindowSize() {
+            return windowSize;
+        }
+
+        public void setWindowSize(int windowSize) {
+            this.windowSize = windowSize;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        public void setConsecutiveFailures(int consecutiveFailures) {
+            this.consecutiveFailures = consecutiveFailures;
+        }
+
+        public Duration getSlowCallThreshold() {
+            return slowCallThreshold;
+        }
+
+        public void setSlowCallThreshold(Duration slowCallThreshold) {
+            this.slowCallThreshold = slowCallThreshold;
+        }
+
+        public Duration getOpenDuration() {
+            return openDuration;
+        }
+
+        public void setOpenDuration(Duration openDuration) {
+            this.openDuration = openDuration;
+        }
+
+        public int getMaxConcurrentCalls() {
+            return maxConcurrentCalls;
+        }
+
+        public void setMaxConcurrentCalls(int maxConcurrentCalls) {
+            this.maxConcurrentCalls = maxConcurrentCalls;
+        }
+
+        public Duration getMaxWait() {
+            return maxWait;
+        }
+
+        public void setMaxWait(Duration maxWait) {
+            this.maxWait = maxWait;
+        }
+    }
+
+    /**
+     * Metrics configuration properties
+     */
+    public static class Metrics {
+        /**
+         * Whether to record send metrics when Micrometer is available
+         */
+        private boolean enabled = true;
+
+        /**
+         * Whether stage timers publish histogram buckets for percentile aggregation
+         */
+        private boolean percentileHistogram = false;
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public boolean isPercentileHistogram() {
+            return percentileHistogram;
+        }
+
+        public void setPercentileHistogram(boolean percentileHistogram) {
+            this.percentileHistogram = percentileHistogram;
+        }
+    }
+
+    /**
+     * Encoded attachment cache configuration properties
+     */
+    public static class AttachmentCache {
+        /**
+         * Whether file and byte array attachments are encoded once and cached off-heap
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum off-heap memory for cached attachments
+         */
+        private DataSize maxSize = DataSize.ofMegabytes(64);
+
+        /**
+         * Attachments larger than this are streamed instead of cached;
+         * once base64 encoded, an attachment of this size must fit in the maximum size
+         */
+        private DataSize maxEntrySize = DataSize.ofMegabytes(16);
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public DataSize getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(DataSize maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public DataSize getMaxEntrySize() {
+            return maxEntrySize;
+        }
+
+        public void setMaxEntrySize(DataSize maxEntrySize) {
+            this.maxEntrySize = maxEntrySize;
+        }
+    }
+
+    /**
+     * Email template cache and warm-up configuration properties
+     */
+    public static class TemplateCache {
+        /**
+         * Whether parsed email templates are cached even where Thymeleaf caching is disabled
+         */
+        private boolean enabled = false;
+
+        /**
+         * Maximum number of parsed templates kept in the cache
+         */
+        private int maxSize = 200;
+
+        /**
+         * How long a parsed email template is cached, unset to cache it until evicted
+         */
+        private Duration timeToLive;
+
+        /**
+         * Whether to parse every template listed in the email definitions at startup,
+         * by default only when the template cache is enabled
+         */
+        private Boolean warmUp;
+
+        /**
+         * Location of the email definitions the email service was generated from
+         */
+        private String definitionsLocation = "classpath:email-definitions.json";
+
+        public boolean isEnabled() {
+            return enabled;
+        }
+
+        public void setEnabled(boolean enabled) {
+            this.enabled = enabled;
+        }
+
+        public int getMaxSize() {
+            return maxSize;
+        }
+
+        public void setMaxSize(int maxSize) {
+            this.maxSize = maxSize;
+        }
+
+        public Duration getTimeToLive() {
+            return timeToLive;
+        }
+
+        public void setTimeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+        }
+
+        public Boolean getWarmUp() {
+            return warmUp;
+        }
+
+        public void setWarmUp(Boolean warmUp) {
+            this.warmUp = warmUp;
+        }
+
+        /**
+         * Whether templates are warmed up, following {@link #isEnabled()} unless set explicitly
+         *
+         * @return true if templates are parsed at startup
+         */
+        public boolean isWarmUpEnabled() {
+            return warmUp != null ? warmUp : enabled;
+        }
+
+        public String getDefinitionsLocation() {
+            return definitionsLocation;
+        }
+
+        public void setDefinitionsLocation(String definitionsLocation) {
+            this.definitionsLocation = definitionsLocation;
+        }
+    }
+
+    /**
+     * Interceptor pipeline configuration properties
+     */
+    public static class Pipeline {
+        /**
+         * How long a send waits for asynchronous interceptor checks before it is cancelled
+         */
+        private Duration vetoTimeout = Duration.ofSeconds(30);
+
+        public Duration getVetoTimeout() {
+            return vetoTimeout;
+        }
+
+        public void setVetoTimeout(Duration vetoTimeout) {
+            this.vetoTimeout = vetoTimeout;
+        }
+    }
 }
@@ -1,31 +1,300 @@
 package com.example.email.spring;
 
+import com.example.email.core.generator.EmailDefinition;
+import com.example.email.core.model.ContentWriter;
 import com.example.email.core.template.TemplateEngine;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
 import org.springframework.context.i18n.LocaleContextHolder;
+import org.springframework.core.io.Resource;
+import org.thymeleaf.IEngineConfiguration;
 import org.thymeleaf.ITemplateEngine;
+import org.thymeleaf.cache.StandardCacheManager;
 import org.thymeleaf.context.Context;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templatemode.TemplateMode;
+import org.thymeleaf.templateresolver.ClassLoaderTemplateResolver;
+import org.thymeleaf.templateresolver.ITemplateResolver;
+import org.thymeleaf.templateresolver.TemplateResolution;
+import org.thymeleaf.util.PatternSpec;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Set;
 
+/**
+ * Template engine backed by Thymeleaf.
+ * <p>
+ * When created through {@link #builder(ITemplateEngine)}, email templates are processed
+ * by a private Thymeleaf engine with its own always cacheable template resolver, so
+ * their parsed form is cached with the configured size and time to live even where the
+ * application disables Thymeleaf caching, e.g. in development profiles. The private
+ * engine uses the dialects of the application's engine, which itself is left untouched
+ * and still processes all other templates. {@link #warmUp(Collection)} parses templates
+ * ahead of their first send.
+ */
 public class ThymeleafTemplateEngine implements TemplateEngine, ApplicationContextAware {
+    private static final Logger logger = LoggerFactory.getLogger(ThymeleafTemplateEngine.class);
 
     private final ITemplateEngine thymeleafEngine;
+    // Private engine and the template names it processes, both null without an email template cache
+    private final SpringTemplateEngine emailEngine;
+    private final PatternSpec emailTemplates;
 
     public ThymeleafTemplateEngine(ITemplateEngine thymeleafEngine) {
         this.thymeleafEngine = thymeleafEngine;
+        this.emailEngine = null;
+        this.emailTemplates = null;
     }
 
+    private ThymeleafTemplateEngine(Builder builder) {
+        this.thymeleafEngine = builder.thymeleafEngine;
+        this.emailEngine = createEmailEngine(builder);
+        this.emailTemplates = new PatternSpec();
+        this.emailTemplates.setPatterns(Set.of(builder.templatePattern));
+    }
+
+    /**
+     * Create a builder for an engine with an explicit email template cache
+     *
+     * @param thymeleafEngine The application's Thymeleaf engine, used for templates that are
+     *                        not email templates and as the source of the dialects
+     * @return A new builder
+     */
+    public static Builder builder(ITemplateEngine thymeleafEngine) {
+        return new Builder(thymeleafEngine);
+    }
+
+    /**
+     * Resolve messages in email templates from the application context, like the
+     * application's engine does
+     */
     @Override
     public void setApplicationContext(ApplicationContext applicationContext) {
+        if (emailEngine != null && !emailEngine.isInitialized()) {
+            emailEngine.setMessageSource(applicationContext);
+        }
     }
 
     @Override
     public String process(String templateName, Map<String, Object> model) {
+        return engineFor(templateName).process(templateName, createContext(model, LocaleContextHolder.getLocale()));
+    }
+
+    /**
+     * Process a template, writing the output as it is produced
+     */
+    @Override
+    public void process(String templateName, Map<String, Object> model, Writer writer) {
+        engineFor(templateName).process(templateName, createContext(model, LocaleContextHolder.getLocale()), writer);
+    }
+
+    /**
+     * Create content that processes a template in the current locale,
+     * even when it is written on another thread
+     */
+    @Override
+    public ContentWriter render(String templateName, Map<String, Object> model) {
+        Locale locale = LocaleContextHolder.getLocale();
+        ITemplateEngine engine = engineFor(templateName);
+        return writer -> engine.process(templateName, createContext(model, locale), writer);
+    }
+
+    private ITemplateEngine engineFor(String templateName) {
+        return emailEngine != null && emailTemplates.matches(templateName) ? emailEngine : thymeleafEngine;
+    }
+
+    private static Context createContext(Map<String, Object> model, Locale locale) {
         Context context = new Context();
         context.setVariables(model);
-        context.setLocale(LocaleContextHolder.getLocale());
-        return thymeleafEngine.process(templateName, context);
+        context.setLocale(locale);
+        return context;
+    }
+
+    /**
+     * Parse templates ahead of their first use, so that they are cached.
+     * Each template is processed once with an empty model and its output discarded;
+     * templates that fail without their variables are still parsed and cached.
+     *
+     * @param templateNames The names of the templates
+     * @return The number of templates that could be resolved
+     */
+    public int warmUp(Collection<String> templateNames) {
+        int resolved = 0;
+        for (String templateName : templateNames) {
+            ITemplateEngine engine = engineFor(templateName);
+            if (!exists(engine, templateName)) {
+                logger.warn("Email template {} could not be resolved for warm-up", templateName);
+                continue;
+            }
+            Context context = new Context();
+            context.setLocale(LocaleContextHolder.getLocale());
+            try {
+                engine.process(templateName, context, Writer.nullWriter());
+            } catch (RuntimeException e) {
+                // Parsed and cached, but the template needs its variables to render
+                logger.debug("Email template {} failed to render without a model: {}", templateName, e.getMessage());
+            }
+            resolved++;
+        }
+        logger.info("Warmed up {} of {} email templates", resolved, templateNames.size());
+        return resolved;
+    }
+
+    /**
+     * Parse the templates of all emails in an email definitions file ahead of their first use.
+     * A missing or unreadable file is logged and skipped.
+     *
+     * @param definitions The email definitions JSON the email service was generated from
+     * @return The number of templates that could be resolved
+     */
+    public int warmUp(Resource definitions) {
+        if (!definitions.exists()) {
+            logger.debug("No email definitions at {}, skipping template warm-up", definitions);
+            return 0;
+        }
+        List<String> templateNames;
+        try (InputStream in = definitions.getInputStream()) {
+            templateNames = readTemplateNames(in);
+        } catch (IOException e) {
+            logger.warn("Failed to read email definitions from {}: {}", definitions, e.getMessage());
+            return 0;
+        }
+        return warmUp(templateNames);
+    }
+
+    /**
+     * Check whether one of the engine's template resolvers finds the template.
+     * Engines that do not expose their resolvers are assumed to find it.
+     */
+    private static boolean exists(ITemplateEngine engine, String templateName) {
+        if (!(engine instanceof org.thymeleaf.TemplateEngine)) {
+            return true;
+        }
+        IEngineConfiguration configuration = ((org.thymeleaf.TemplateEngine) engine).getConfiguration();
+        for (ITemplateResolver resolver : configuration.getTemplateResolvers()) {
+            TemplateResolution resolution = resolver.resolveTemplate(configuration, null, templateName, null);
+            if (resolution != null && resolution.getTemplateResource().exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Read the template names of all emails in an email definitions file,
+     * the same JSON the email generator reads
+     *
+     * @param definitionsJson The definitions file content
+     * @return The template names, in definition order
+     * @throws IOException If the content cannot be read or parsed
+     */
+    public static List<String> readTemplateNames(InputStream definitionsJson) throws IOException {
+        JsonNode emails = new ObjectMapper().readTree(definitionsJson).path("emails");
+        List<String> templateNames = new ArrayList<>();
+        for (JsonNode email : emails) {
+            String identifier = email.path("identifier").asText(null);
+            if (identifier != null) {
+                EmailDefinition definition = new EmailDefinition();
+                definition.setIdentifier(identifier);
+                templateNames.add(definition.getTemplatePath());
+            }
+        }
+        return templateNames;
+    }
+
+    /**
+     * Create the private engine for email templates. Templates they include are
+     * resolved by the same resolver, so fragments and layouts are cached as well.
+     */
+    private SpringTemplateEngine createEmailEngine(Builder builder) {
+        ClassLoaderTemplateResolver resolver = new ClassLoaderTemplateResolver();
+        resolver.setPrefix(builder.templatePrefix);
+        resolver.setSuffix(".html");
+        resolver.setTemplateMode(TemplateMode.HTML);
+        resolver.setCharacterEncoding("UTF-8");
+        resolver.setCheckExistence(true);
+        resolver.setCacheable(true);
+        resolver.setCacheTTLMs(builder.timeToLive != null ? builder.timeToLive.toMillis() : null);
+
+        StandardCacheManager cacheManager = new StandardCacheManager();
+        cacheManager.setTemplateCacheMaxSize(builder.maxSize);
+
+        SpringTemplateEngine engine = new SpringTemplateEngine();
+        engine.setTemplateResolver(resolver);
+        engine.setCacheManager(cacheManager);
+        if (thymeleafEngine instanceof org.thymeleaf.TemplateEngine) {
+            // Reading the dialects does not initialize the application's engine
+            engine.setDialects(((org.thymeleaf.TemplateEngine) thymeleafEngine).getDialects());
+        }
+        return engine;
+    }
+
+    /**
+     * Builder for ThymeleafTemplateEngine
+     */
+    public static class Builder {
+        private final ITemplateEngine thymeleafEngine;
+        private int maxSize = 200;
+        private Duration timeToLive;
+        private String templatePrefix = "templates/";
+        private String templatePattern = "email/*";
+
+        private Builder(ITemplateEngine thymeleafEngine) {
+            this.thymeleafEngine = thymeleafEngine;
+        }
+
+        /**
+         * Maximum number of parsed templates kept in the cache
+         */
+        public Builder maxSize(int maxSize) {
+            this.maxSize = maxSize;
+            return this;
+        }
+
+        /**
+         * How long a parsed email template is cached, or null to cache it until evicted
+         */
+        public Builder timeToLive(Duration timeToLive) {
+            this.timeToLive = timeToLive;
+            return this;
+        }
+
+        /**
+         * Class path prefix of the template names
+         */
+        public Builder templatePrefix(String templatePrefix) {
+            this.templatePrefix = templatePrefix;
+            return this;
+        }
+
+        /**
+         * Pattern of the template names processed and cached as email templates
+         */
+        public Builder templatePattern(String templatePattern) {
+            this.templatePattern = templatePattern;
+            return this;
+        }
+
+        public ThymeleafTemplateEngine build() {
+            if (thymeleafEngine == null) {
+                throw new IllegalStateException("Thymeleaf engine must be set");
+            }
+            if (maxSize < 1) {
+                throw new IllegalStateException("maxSize must be at least 1");
+            }
+            return new ThymeleafTemplateEngine(this);
+        }
     }
 }
@@ -0,0 +1,128 @@
+package com.example.email.spring.metrics;
+
+import com.example.email.core.metrics.AbstractMailMetrics;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Mail metrics backed by a Micrometer registry.
+ * <p>
+ * Meters:
+ * <ul>
+ *     <li>{@code email.send.stage} - timer per component and stage</li>
+ *     <li>{@code email.send.outcome} - counter per component and outcome</li>
+ *     <li>{@code email.send.in.flight} - gauge per component</li>
+ *     <li>{@code email.send.queue.depth} - gauge per registered queue</li>
+ *     <li>{@code email.provider.circuit.state} - gauge per guarded provider, 0 closed, 1 open, 2 half-open</li>
+ *     <li>{@code email.provider.bulkhead.active} - gauge per guarded provider</li>
+ * </ul>
+ * Meters are looked up once per component and cached in arrays indexed by
+ * stage and outcome, so recording does not touch the registry.
+ */
+public class MicrometerMailMetrics extends AbstractMailMetrics {
+    private static final Stage[] STAGES = Stage.values();
+    private static final Outcome[] OUTCOMES = Outcome.values();
+
+    private final MeterRegistry registry;
+    private final boolean percentileHistogram;
+    private final ConcurrentHashMap<String, Timer[]> timers = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Counter[]> counters = new ConcurrentHashMap<>();
+
+    public MicrometerMailMetrics(MeterRegistry registry) {
+        this(registry, false);
+    }
+
+    /**
+     * Create Micrometer mail metrics
+     *
+     * @param registry The registry to register meters with
+     * @param percentileHistogram Whether stage timers publish histogram buckets for percentile aggregation
+     */
+    public MicrometerMailMetrics(MeterRegistry registry, boolean percentileHistogram) {
+        this.registry = registry;
+        this.percentileHistogram = percentileHistogram;
+    }
+
+    @Override
+    protected void recordDuration(String component, Stage stage, long nanos) {
+        Timer[] componentTimers = timers.get(component);
+        if (componentTimers == null) {
+            componentTimers = timers.computeIfAbsent(component, this::createTimers);
+        }
+        componentTimers[stage.ordinal()].record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void recordOutcome(String component, Outcome outcome) {
+        Counter[] componentCounters = counters.get(component);
+        if (componentCounters == null) {
+            componentCounters = counters.computeIfAbsent(component, this::createCounters);
+        }
+        componentCounters[outcome.ordinal()].increment();
+    }
+
+    @Override
+    protected void registerInFlight(String component, AtomicInteger counter) {
+        Gauge.builder("email.send.in.flight", counter, AtomicInteger::get)
+                .description("Emails currently being sent")
+                .tag("component", component)
+                .register(registry);
+    }
+
+    @Override
+    public void registerQueue(String name, IntSupplier depth) {
+        Gauge.builder("email.send.queue.depth", depth, IntSupplier::getAsInt)
+                .description("Emails waiting to be sent")
+                .tag("queue", name)
+                .register(registry);
+    }
+
+    @Override
+    public void registerCircuitBreaker(String name, IntSupplier state) {
+        Gauge.builder("email.provider.circuit.state", state, IntSupplier::getAsInt)
+                .description("Circuit breaker state, 0 closed, 1 open, 2 half-open")
+                .tag("provider", name)
+                .register(registry);
+    }
+
+    @Override
+    public void registerBulkhead(String name, IntSupplier activeCalls) {
+        Gauge.builder("email.provider.bulkhead.active", activeCalls, IntSupplier::getAsInt)
+                .description("Calls currently in progress through the provider bulkhead")
+                .tag("provider", name)
+                .register(registry);
+    }
+
+    private Timer[] createTimers(String component) {
+        Timer[] created = new Timer[STAGES.length];
+        for (Stage stage : STAGES) {
+            created[stage.ordinal()] = Timer.builder("email.send.stage")
+                    .description("Time spent in a stage of the send pipeline")
+                    .tag("component", component)
+                    .tag("stage", stage.name().toLowerCase(Locale.ROOT))
+                    .publishPercentileHistogram(percentileHistogram)
+                    .register(registry);
+        }
+        return created;
+    }
+
+    private Counter[] createCounters(String component) {
+        Counter[] created = new Counter[OUTCOMES.length];
+        for (Outcome outcome : OUTCOMES) {
+            created[outcome.ordinal()] = Counter.builder("email.send.outcome")
+                    .description("Completed sends by outcome")
+                    .tag("component", component)
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        return created;
+    }
+}
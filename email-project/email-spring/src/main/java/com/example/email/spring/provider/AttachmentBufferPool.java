@@ -0,0 +1,67 @@
+package com.example.email.spring.provider;
+
+import com.example.email.core.attachment.Base64Lines;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of the buffers used to stream attachments.
+ * Each entry pairs a direct buffer that file content is read into with the heap
+ * array its base64 encoding is written from. When all pooled entries are in use,
+ * a temporary heap entry is handed out instead of waiting, so the pool limits
+ * direct memory without ever blocking a send.
+ */
+final class AttachmentBufferPool {
+    static final int CHUNK_SIZE = Base64Lines.CHUNK_SIZE;
+
+    private static final AttachmentBufferPool SHARED =
+            new AttachmentBufferPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+
+    private final int capacity;
+    private final ArrayBlockingQueue<Buffers> idle;
+    private final AtomicInteger created = new AtomicInteger();
+
+    AttachmentBufferPool(int capacity) {
+        this.capacity = capacity;
+        this.idle = new ArrayBlockingQueue<>(capacity);
+    }
+
+    static AttachmentBufferPool shared() {
+        return SHARED;
+    }
+
+    Buffers acquire() {
+        Buffers buffers = idle.poll();
+        if (buffers != null) {
+            return buffers;
+        }
+        if (created.incrementAndGet() <= capacity) {
+            return new Buffers(true);
+        }
+        created.decrementAndGet();
+        return new Buffers(false);
+    }
+
+    void release(Buffers buffers) {
+        if (buffers.pooled) {
+            idle.offer(buffers);
+        }
+    }
+
+    /**
+     * Input and output buffers for encoding one chunk
+     */
+    static final class Buffers {
+        final ByteBuffer input;
+        final byte[] output;
+        private final boolean pooled;
+
+        private Buffers(boolean pooled) {
+            this.pooled = pooled;
+            this.input = pooled ? ByteBuffer.allocateDirect(CHUNK_SIZE) : ByteBuffer.allocate(CHUNK_SIZE);
+            this.output = new byte[(int) Base64Lines.encodedLength(CHUNK_SIZE)];
+        }
+    }
+}
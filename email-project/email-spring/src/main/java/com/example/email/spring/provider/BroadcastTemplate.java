@@ -0,0 +1,146 @@
+package com.example.email.spring.provider;
+
+import jakarta.mail.Address;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A broadcast message encoded once: the header lines shared by all recipients and
+ * the fully encoded body including every attachment. Messages for single recipients
+ * are created from it by adding their own To, Date and Message-ID headers, without
+ * touching the body again.
+ */
+final class BroadcastTemplate {
+    // Headers written per recipient; all other headers are shared
+    private static final String[] RECIPIENT_HEADERS = {"To", "Cc", "Bcc", "Date", "Message-ID", "Content-Length"};
+
+    private final Session session;
+    private final String[] headerLines;
+    private final byte[] body;
+    private final String messageIdPrefix;
+    private final String messageIdDomain;
+    private final AtomicLong messageIdSequence = new AtomicLong();
+
+    private BroadcastTemplate(Session session, String[] headerLines, byte[] body, String messageIdDomain) {
+        this.session = session;
+        this.headerLines = headerLines;
+        this.body = body;
+        this.messageIdPrefix = Long.toString(System.currentTimeMillis(), 36)
+                + "." + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        this.messageIdDomain = messageIdDomain;
+    }
+
+    /**
+     * Encode a fully built message
+     *
+     * @param session The session for the messages created from the template
+     * @param message The message with the shared headers and content
+     * @return The encoded template
+     * @throws MessagingException If the message cannot be encoded
+     * @throws IOException If an attachment cannot be read
+     */
+    static BroadcastTemplate encode(Session session, MimeMessage message) throws MessagingException, IOException {
+        message.saveChanges();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(16 * 1024);
+        message.writeTo(out, RECIPIENT_HEADERS);
+        byte[] encoded = out.toByteArray();
+
+        List<String> headerLines = Collections.list(message.getNonMatchingHeaderLines(RECIPIENT_HEADERS));
+        byte[] body = Arrays.copyOfRange(encoded, bodyStart(encoded), encoded.length);
+        return new BroadcastTemplate(session, headerLines.toArray(new String[0]), body, domainOf(message));
+    }
+
+    /**
+     * Find the first byte after the blank line that ends the header section
+     */
+    private static int bodyStart(byte[] encoded) {
+        for (int i = 3; i < encoded.length; i++) {
+            if (encoded[i] == '\n' && encoded[i - 1] == '\r' && encoded[i - 2] == '\n' && encoded[i - 3] == '\r') {
+                return i + 1;
+            }
+        }
+        return encoded.length;
+    }
+
+    private static String domainOf(MimeMessage message) throws MessagingException {
+        Address[] from = message.getFrom();
+        if (from != null && from.length > 0 && from[0] instanceof InternetAddress) {
+            String address = ((InternetAddress) from[0]).getAddress();
+            int at = address != null ? address.lastIndexOf('@') : -1;
+            if (at >= 0 && at < address.length() - 1) {
+                return address.substring(at + 1);
+            }
+        }
+        return "localhost";
+    }
+
+    /**
+     * Create the message for one recipient
+     *
+     * @param to The To addresses of the message
+     * @return A message sharing the encoded body of this template
+     * @throws MessagingException If an address is invalid
+     */
+    MimeMessage createMessage(List<String> to) throws MessagingException {
+        InternetAddress[] addresses = new InternetAddress[to.size()];
+        for (int i = 0; i < addresses.length; i++) {
+            addresses[i] = parseAddress(to.get(i));
+        }
+        return new PreEncodedMimeMessage(this, addresses);
+    }
+
+    /**
+     * Parse and validate an address the way MimeMessageHelper does
+     */
+    private static InternetAddress parseAddress(String address) throws MessagingException {
+        InternetAddress[] parsed = InternetAddress.parse(address);
+        if (parsed.length != 1) {
+            throw new AddressException("Illegal address", address);
+        }
+        InternetAddress result = parsed[0];
+        if (result.getPersonal() != null) {
+            try {
+                result = new InternetAddress(result.getAddress(), result.getPersonal(), "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw new MessagingException("Failed to encode address: " + address, e);
+            }
+        }
+        result.validate();
+        return result;
+    }
+
+    String nextMessageId() {
+        return "<" + messageIdPrefix + "." + messageIdSequence.incrementAndGet() + "@" + messageIdDomain + ">";
+    }
+
+    static String currentDate() {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC));
+    }
+
+    Session getSession() {
+        return session;
+    }
+
+    String[] getHeaderLines() {
+        return headerLines;
+    }
+
+    byte[] getBody() {
+        return body;
+    }
+}
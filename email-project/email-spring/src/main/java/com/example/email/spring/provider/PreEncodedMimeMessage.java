@@ -0,0 +1,36 @@
+package com.example.email.spring.provider;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.InternetAddress;
+import jakarta.mail.internet.MimeMessage;
+
+/**
+ * Message of a broadcast whose body was encoded once by a {@link BroadcastTemplate}.
+ * Only the recipient headers belong to this message; the encoded body is shared
+ * with every other message of the broadcast and written out as is.
+ */
+final class PreEncodedMimeMessage extends MimeMessage {
+
+    PreEncodedMimeMessage(BroadcastTemplate template, InternetAddress[] to) throws MessagingException {
+        super(template.getSession());
+        for (String line : template.getHeaderLines()) {
+            addHeaderLine(line);
+        }
+        setRecipients(RecipientType.TO, to);
+        setHeader("Date", BroadcastTemplate.currentDate());
+        setHeader("Message-ID", template.nextMessageId());
+
+        // An unmodified message is written from its raw content, which is never changed
+        content = template.getBody();
+        modified = false;
+        saved = true;
+    }
+
+    /**
+     * Nothing to update: the headers and the encoded content are already complete.
+     * Changing the content of this message is not supported.
+     */
+    @Override
+    public void saveChanges() {
+    }
+}
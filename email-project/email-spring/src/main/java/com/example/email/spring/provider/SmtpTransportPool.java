@@ -0,0 +1,450 @@
+package com.example.email.spring.provider;
+
+import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.Transport;
+import jakarta.mail.internet.MimeMessage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.Date;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of connected and authenticated SMTP transports shared across threads.
+ * Opening a transport costs a TCP connect, EHLO, STARTTLS and AUTH round trip,
+ * which dominates the latency of small transactional emails; reusing pooled
+ * transports reduces a warm send to the message transfer itself.
+ * <p>
+ * Connections are retired when they exceed their maximum lifetime or message
+ * count, evicted when idle for too long, and probed before reuse when they
+ * have not been used for a while.
+ */
+public class SmtpTransportPool implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SmtpTransportPool.class);
+
+    private final Session session;
+    private final String protocol;
+    private final String host;
+    private final int port;
+    private final String username;
+    private final String password;
+
+    private final int maxTotal;
+    private final long idleTimeoutNanos;
+    private final long maxLifetimeNanos;
+    private final int maxMessagesPerConnection;
+    private final long validationIntervalNanos;
+    private final long borrowTimeoutNanos;
+
+    // Most recently used connections are kept at the head, so idle ones age out at the tail
+    private final ConcurrentLinkedDeque<PooledTransport> idle = new ConcurrentLinkedDeque<>();
+    private final Semaphore permits;
+    private final ScheduledExecutorService evictor;
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong destroyedCount = new AtomicLong();
+    private volatile boolean closed;
+
+    private SmtpTransportPool(Builder builder) {
+        this.session = builder.session;
+        this.protocol = builder.protocol;
+        this.host = builder.host;
+        this.port = builder.port;
+        this.username = builder.username;
+        this.password = builder.password;
+        this.maxTotal = builder.maxTotal;
+        this.idleTimeoutNanos = builder.idleTimeout.toNanos();
+        this.maxLifetimeNanos = builder.maxLifetime.toNanos();
+        this.maxMessagesPerConnection = builder.maxMessagesPerConnection;
+        this.validationIntervalNanos = builder.validationInterval.toNanos();
+        this.borrowTimeoutNanos = builder.borrowTimeout.toNanos();
+        this.permits = new Semaphore(builder.maxTotal, true);
+
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "smtp-transport-pool-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        long evictionMillis = builder.evictionInterval.toMillis();
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, evictionMillis, evictionMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a builder for a pool connecting with the given session
+     *
+     * @param session The JavaMail session used to create transports
+     * @return A new builder
+     */
+    public static Builder builder(Session session) {
+        return new Builder(session);
+    }
+
+    /**
+     * Create a builder using the session and connection settings of a JavaMailSenderImpl
+     *
+     * @param mailSender The configured mail sender
+     * @return A new builder with session, protocol, host, port and credentials set
+     */
+    public static Builder builder(JavaMailSenderImpl mailSender) {
+        return new Builder(mailSender.getSession())
+                .protocol(mailSender.getProtocol())
+                .host(mailSender.getHost())
+                .port(mailSender.getPort())
+                .credentials(mailSender.getUsername(), mailSender.getPassword());
+    }
+
+    /**
+     * Send a single message on a pooled transport
+     *
+     * @param message The message to send
+     * @throws MessagingException If the message could not be sent
+     */
+    public void send(MimeMessage message) throws MessagingException {
+        PooledTransport transport = borrow();
+        boolean healthy = false;
+        try {
+            transport.send(message);
+            healthy = true;
+        } catch (SendFailedException e) {
+            // The server rejected addresses of this message, the connection itself is fine
+            healthy = true;
+            throw e;
+        } finally {
+            release(transport, healthy);
+        }
+    }
+
+    /**
+     * Send several messages, reusing pooled transports for the whole batch.
+     * A message rejected by the server does not stop the rest of the batch.
+     * When its transport fails, the transport is discarded and the batch continues
+     * on a fresh one; when no transport can be obtained, the remaining messages fail
+     * with the same cause.
+     *
+     * @param messages The messages to send
+     * @return The failed messages mapped to their cause; empty if all were sent
+     */
+    public Map<MimeMessage, Exception> sendAll(List<MimeMessage> messages) {
+        Map<MimeMessage, Exception> failures = new IdentityHashMap<>();
+        PooledTransport transport = null;
+        try {
+            for (int i = 0; i < messages.size(); i++) {
+                MimeMessage message = messages.get(i);
+                if (transport == null) {
+                    try {
+                        transport = borrow();
+                    } catch (MessagingException | RuntimeException e) {
+                        // Connecting failed, every further attempt would most likely wait and fail the same way
+                        for (MimeMessage remaining : messages.subList(i, messages.size())) {
+                            failures.put(remaining, e);
+                        }
+                        break;
+                    }
+                }
+                try {
+                    transport.send(message);
+                } catch (SendFailedException e) {
+                    // Rejected addresses, the transport can still be used
+                    failures.put(message, e);
+                } catch (MessagingException | RuntimeException e) {
+                    failures.put(message, e);
+                    release(transport, false);
+                    transport = null;
+                    continue;
+                }
+                if (isRetired(transport, System.nanoTime())) {
+                    release(transport, true);
+                    transport = null;
+                }
+            }
+        } finally {
+            if (transport != null) {
+                release(transport, true);
+            }
+        }
+        return failures;
+    }
+
+    /**
+     * Borrow a connected transport, creating one if none is idle
+     *
+     * @return A connected transport that must be returned with {@link #release(PooledTransport, boolean)}
+     * @throws MessagingException If no transport became available in time or connecting failed
+     */
+    public PooledTransport borrow() throws MessagingException {
+        if (closed) {
+            throw new MessagingException("SMTP transport pool is closed");
+        }
+        try {
+            if (!permits.tryAcquire(borrowTimeoutNanos, TimeUnit.NANOSECONDS)) {
+                throw new MessagingException("Timed out waiting for an SMTP connection from the pool");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MessagingException("Interrupted while waiting for an SMTP connection", e);
+        }
+
+        try {
+            PooledTransport transport;
+            while ((transport = idle.pollFirst()) != null) {
+                if (isReusable(transport)) {
+                    return transport;
+                }
+                destroy(transport);
+            }
+            return create();
+        } catch (MessagingException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Return a borrowed transport to the pool
+     *
+     * @param transport The borrowed transport
+     * @param healthy false if the transport failed and must not be reused
+     */
+    public void release(PooledTransport transport, boolean healthy) {
+        try {
+            transport.lastUsedNanos = System.nanoTime();
+            if (healthy && !closed && !isRetired(transport, transport.lastUsedNanos)) {
+                idle.offerFirst(transport);
+            } else {
+                destroy(transport);
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * Close all idle transports and stop accepting new borrows.
+     * Borrowed transports are closed when they are released.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        evictor.shutdownNow();
+        PooledTransport transport;
+        while ((transport = idle.pollFirst()) != null) {
+            destroy(transport);
+        }
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public int getActiveCount() {
+        return maxTotal - permits.availablePermits();
+    }
+
+    public int getMaxTotal() {
+        return maxTotal;
+    }
+
+    public long getCreatedCount() {
+        return createdCount.get();
+    }
+
+    public long getDestroyedCount() {
+        return destroyedCount.get();
+    }
+
+    private PooledTransport create() throws MessagingException {
+        Transport transport = protocol != null ? session.getTransport(protocol) : session.getTransport();
+        transport.connect(host, port, username, password);
+        createdCount.incrementAndGet();
+        return new PooledTransport(transport);
+    }
+
+    private boolean isReusable(PooledTransport transport) {
+        long now = System.nanoTime();
+        if (isRetired(transport, now) || now - transport.lastUsedNanos >= idleTimeoutNanos) {
+            return false;
+        }
+        if (now - transport.lastUsedNanos >= validationIntervalNanos) {
+            // For SMTP this issues a NOOP, so only probe connections that sat idle for a while
+            return transport.transport.isConnected();
+        }
+        return true;
+    }
+
+    private boolean isRetired(PooledTransport transport, long now) {
+        return transport.messageCount >= maxMessagesPerConnection
+                || now - transport.createdNanos >= maxLifetimeNanos;
+    }
+
+    private void evictIdle() {
+        long now = System.nanoTime();
+        for (PooledTransport transport : idle) {
+            boolean expired = isRetired(transport, now) || now - transport.lastUsedNanos >= idleTimeoutNanos;
+            if (expired && idle.remove(transport)) {
+                destroy(transport);
+            }
+        }
+    }
+
+    private void destroy(PooledTransport transport) {
+        destroyedCount.incrementAndGet();
+        try {
+            transport.transport.close();
+        } catch (MessagingException e) {
+            logger.debug("Error closing SMTP transport: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * A pooled transport together with its usage statistics
+     */
+    public static final class PooledTransport {
+        private final Transport transport;
+        private final long createdNanos;
+        private volatile long lastUsedNanos;
+        private int messageCount;
+
+        private PooledTransport(Transport transport) {
+            this.transport = transport;
+            this.createdNanos = System.nanoTime();
+            this.lastUsedNanos = this.createdNanos;
+        }
+
+        /**
+         * Send a message on this transport, preparing it the same way JavaMailSenderImpl does
+         *
+         * @param message The message to send
+         * @throws MessagingException If the message could not be sent
+         */
+        public void send(MimeMessage message) throws MessagingException {
+            if (message.getSentDate() == null) {
+                message.setSentDate(new Date());
+            }
+            String messageId = message.getMessageID();
+            message.saveChanges();
+            if (messageId != null) {
+                // Preserve an explicitly specified message id
+                message.setHeader("Message-ID", messageId);
+            }
+            messageCount++;
+            transport.sendMessage(message, message.getAllRecipients());
+        }
+
+        public int getMessageCount() {
+            return messageCount;
+        }
+    }
+
+    /**
+     * Builder for SmtpTransportPool
+     */
+    public static class Builder {
+        private final Session session;
+        private String protocol;
+        private String host;
+        private int port = -1;
+        private String username;
+        private String password;
+        private int maxTotal = 8;
+        private Duration idleTimeout = Duration.ofMinutes(1);
+        private Duration maxLifetime = Duration.ofMinutes(10);
+        private int maxMessagesPerConnection = 100;
+        private Duration validationInterval = Duration.ofSeconds(5);
+        private Duration borrowTimeout = Duration.ofSeconds(30);
+        private Duration evictionInterval = Duration.ofSeconds(30);
+
+        private Builder(Session session) {
+            this.session = session;
+        }
+
+        public Builder protocol(String protocol) {
+            this.protocol = protocol;
+            return this;
+        }
+
+        public Builder host(String host) {
+            this.host = host;
+            return this;
+        }
+
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        public Builder credentials(String username, String password) {
+            // Empty credentials mean no authentication, as in JavaMailSenderImpl
+            if ("".equals(username)) {
+                username = null;
+                if ("".equals(password)) {
+                    password = null;
+                }
+            }
+            this.username = username;
+            this.password = password;
+            return this;
+        }
+
+        public Builder maxTotal(int maxTotal) {
+            this.maxTotal = maxTotal;
+            return this;
+        }
+
+        public Builder idleTimeout(Duration idleTimeout) {
+            this.idleTimeout = idleTimeout;
+            return this;
+        }
+
+        public Builder maxLifetime(Duration maxLifetime) {
+            this.maxLifetime = maxLifetime;
+            return this;
+        }
+
+        public Builder maxMessagesPerConnection(int maxMessagesPerConnection) {
+            this.maxMessagesPerConnection = maxMessagesPerConnection;
+            return this;
+        }
+
+        public Builder validationInterval(Duration validationInterval) {
+            this.validationInterval = validationInterval;
+            return this;
+        }
+
+        public Builder borrowTimeout(Duration borrowTimeout) {
+            this.borrowTimeout = borrowTimeout;
+            return this;
+        }
+
+        public Builder evictionInterval(Duration evictionInterval) {
+            this.evictionInterval = evictionInterval;
+            return this;
+        }
+
+        public SmtpTransportPool build() {
+            if (session == null) {
+                throw new IllegalStateException("SMTP transport pool must have a session");
+            }
+            if (maxTotal < 1) {
+                throw new IllegalStateException("SMTP transport pool must allow at least one connection");
+            }
+            if (maxMessagesPerConnection < 1) {
+                throw new IllegalStateException("maxMessagesPerConnection must be at least 1");
+            }
+            if (evictionInterval == null || evictionInterval.isZero() || evictionInterval.isNegative()) {
+                throw new IllegalStateException("evictionInterval must be positive");
+            }
+            return new SmtpTransportPool(this);
+        }
+    }
+}
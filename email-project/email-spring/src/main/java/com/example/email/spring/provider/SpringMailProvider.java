@@ -1,24 +1,39 @@
 package com.example.email.spring.provider;
 
+import com.example.email.core.attachment.AttachmentStore;
+import com.example.email.core.attachment.EncodedContent;
+import com.example.email.core.metrics.MailMetrics;
+import com.example.email.core.model.Attachment;
+import com.example.email.core.model.ContentWriter;
 import com.example.email.core.provider.EmailContext;
-import com.example.email.core.provider.MailAttachment;
+import com.example.email.core.provider.MailBatchResult;
 import com.example.email.core.provider.MailContext;
 import com.example.email.core.provider.MailInterceptor;
+import com.example.email.core.provider.MailPipeline;
 import com.example.email.core.provider.MailProvider;
 import jakarta.mail.MessagingException;
+import jakarta.mail.SendFailedException;
+import jakarta.mail.Session;
+import jakarta.mail.internet.AddressException;
+import jakarta.mail.internet.MimeBodyPart;
 import jakarta.mail.internet.MimeMessage;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.FileSystemResource;
-import org.springframework.core.io.InputStreamResource;
+import org.springframework.mail.MailException;
+import org.springframework.mail.MailSendException;
 import org.springframework.mail.javamail.JavaMailSender;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
 import org.springframework.mail.javamail.MimeMessageHelper;
 
-import java.io.File;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
 
 /**
  * Spring implementation of the MailProvider interface.
@@ -27,13 +42,23 @@ import java.util.List;
 public class SpringMailProvider implements MailProvider {
     private static final Logger logger = LoggerFactory.getLogger(SpringMailProvider.class);
 
+    /**
+     * Component name used when reporting metrics
+     */
+    public static final String METRICS_COMPONENT = "spring";
+
+    // Batches and broadcasts are sent in chunks of this size, bounding the messages held at once
+    private static final int BATCH_SIZE = 500;
+
     private final JavaMailSender javaMailSender;
     private final boolean enabled;
-    private final List<MailInterceptor> interceptors = new ArrayList<>();
+    private final MailPipeline pipeline;
+    private volatile SmtpTransportPool transportPool;
+    private volatile AttachmentStore attachmentStore;
+    private volatile MailMetrics metrics;
 
     public SpringMailProvider(JavaMailSender javaMailSender, boolean enabled) {
-        this.javaMailSender = javaMailSender;
-        this.enabled = enabled;
+        this(javaMailSender, enabled, createPipeline(null));
     }
 
     /**
@@ -44,11 +69,38 @@ public class SpringMailProvider implements MailProvider {
      * @param interceptors List of mail interceptors to apply
      */
     public SpringMailProvider(JavaMailSender javaMailSender, boolean enabled, List<MailInterceptor> interceptors) {
+        this(javaMailSender, enabled, createPipeline(interceptors));
+    }
+
+    /**
+     * Create a SpringMailProvider running the interceptors of an existing pipeline.
+     * When a {@link com.example.email.core.provider.MailService} in front of this provider
+     * shares the pipeline, each interceptor runs once per message.
+     *
+     * @param javaMailSender The JavaMailSender to use
+     * @param enabled Whether email sending is enabled
+     * @param pipeline The interceptor pipeline
+     */
+    public SpringMailProvider(JavaMailSender javaMailSender, boolean enabled, MailPipeline pipeline) {
         this.javaMailSender = javaMailSender;
         this.enabled = enabled;
-        if (interceptors != null) {
-            this.interceptors.addAll(interceptors);
-        }
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * Create a pipeline that logs interceptor failures
+     *
+     * @param interceptors The interceptors, ordered by their order, may be null
+     * @return A new pipeline
+     */
+    public static MailPipeline createPipeline(List<MailInterceptor> interceptors) {
+        return new MailPipeline(interceptors).setErrorListener((interceptor, phase, error) -> {
+            if (phase == MailPipeline.Phase.BEFORE_SEND) {
+                logger.error("Error in mail interceptor: " + error.getMessage(), error);
+            } else {
+                logger.error("Error in mail interceptor afterSend: " + error.getMessage(), error);
+            }
+        });
     }
 
     /**
@@ -59,7 +111,7 @@ public class SpringMailProvider implements MailProvider {
      */
     public SpringMailProvider addInterceptor(MailInterceptor interceptor) {
         if (interceptor != null) {
-            this.interceptors.add(interceptor);
+            pipeline.addInterceptor(interceptor);
         }
         return this;
     }
@@ -71,137 +123,484 @@ public class SpringMailProvider implements MailProvider {
      * @return This provider for chaining
      */
     public SpringMailProvider addInterceptors(List<MailInterceptor> interceptors) {
-        if (interceptors != null) {
-            this.interceptors.addAll(interceptors);
-        }
+        pipeline.addInterceptors(interceptors);
         return this;
     }
 
     /**
-     * Get all registered interceptors
+     * Get all registered interceptors in execution order
      *
      * @return Unmodifiable list of interceptors
      */
     public List<MailInterceptor> getInterceptors() {
-        return Collections.unmodifiableList(interceptors);
+        return pipeline.getInterceptors();
+    }
+
+    /**
+     * Get the pipeline the interceptors run in
+     *
+     * @return The interceptor pipeline
+     */
+    public MailPipeline getPipeline() {
+        return pipeline;
+    }
+
+    /**
+     * Run the afterSend hooks of synchronous interceptors on an executor instead of the
+     * sending thread, each independently of the others. Asynchronous interceptors are
+     * never waited for after sending.
+     *
+     * @param executor The executor, or null to run the hooks on the sending thread
+     * @return This provider for chaining
+     */
+    public SpringMailProvider setAfterSendExecutor(Executor executor) {
+        pipeline.setAfterSendExecutor(executor);
+        return this;
+    }
+
+    /**
+     * Send messages through a pool of reusable SMTP connections instead of
+     * letting JavaMailSender open a new connection per send
+     *
+     * @param transportPool The pool to use, or null to send through JavaMailSender
+     * @return This provider for chaining
+     */
+    public SpringMailProvider setTransportPool(SmtpTransportPool transportPool) {
+        this.transportPool = transportPool;
+        return this;
+    }
+
+    public SmtpTransportPool getTransportPool() {
+        return transportPool;
+    }
+
+    /**
+     * Serve file and byte array attachments from a store that encodes each distinct
+     * content only once
+     *
+     * @param attachmentStore The store to use, or null to encode attachments on every send
+     * @return This provider for chaining
+     */
+    public SpringMailProvider setAttachmentStore(AttachmentStore attachmentStore) {
+        this.attachmentStore = attachmentStore;
+        return this;
+    }
+
+    public AttachmentStore getAttachmentStore() {
+        return attachmentStore;
+    }
+
+    /**
+     * Set the metrics this provider reports to
+     *
+     * @param metrics The metrics, or null to use {@link MailMetrics#global()}
+     * @return This provider for chaining
+     */
+    public SpringMailProvider setMetrics(MailMetrics metrics) {
+        this.metrics = metrics;
+        return this;
+    }
+
+    /**
+     * Get the metrics this provider reports to
+     *
+     * @return The metrics set on this provider, or the global metrics
+     */
+    public MailMetrics getMetrics() {
+        MailMetrics current = metrics;
+        return current != null ? current : MailMetrics.global();
     }
 
     @Override
     public void sendMail(MailContext context) throws MailProviderException {
         if (!(context instanceof EmailContext)) {
-            throw new MailProviderException("SpringMailProvider requires an EmailContext");
+            throw new MailProviderException("SpringMailProvider requires an EmailContext", null, true);
         }
 
         EmailContext emailContext = (EmailContext) context;
+        MailMetrics metrics = getMetrics();
+        long start = metrics.startTimer();
+        metrics.inFlight(METRICS_COMPONENT, 1);
+        MailMetrics.Outcome outcome = MailMetrics.Outcome.FAILURE;
+        try {
+            long stageStart = metrics.startTimer();
+            MailPipeline.Stages stages = pipeline.enter(context);
+            boolean proceed = stages.beforeSend(context);
+            metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.INTERCEPTOR_BEFORE, stageStart);
+
+            if (!proceed) {
+                logger.info("Email sending was cancelled by an interceptor");
+                outcome = MailMetrics.Outcome.VETOED;
+                // Notify interceptors about cancellation
+                notifyAfterSend(stages, context, false, metrics);
+                return;
+            }
+
+            if (!enabled) {
+                logger.info("Email sending is disabled. Would have sent email with subject: {}", emailContext.getSubject());
+                outcome = MailMetrics.Outcome.DISABLED;
+                // Notify interceptors about disabled sending
+                notifyAfterSend(stages, context, false, metrics);
+                return;
+            }
+
+            if (javaMailSender == null) {
+                logger.warn("JavaMailSender is not configured. Cannot send email: {}", emailContext.getSubject());
+                // Notify interceptors about failure
+                notifyAfterSend(stages, context, false, metrics);
+                return;
+            }
 
-        // Execute before send interceptors
-        boolean proceed = true;
-        for (MailInterceptor interceptor : interceptors) {
+            boolean success = false;
             try {
-                if (!interceptor.beforeSend(context)) {
-                    proceed = false;
-                    break;
+                stageStart = metrics.startTimer();
+                MimeMessage message;
+                try {
+                    message = createMimeMessage(emailContext);
+                } catch (MessagingException e) {
+                    logger.error("Failed to build email: " + e.getMessage(), e);
+                    throw new MailProviderException("Failed to build email: " + e.getMessage(), e, true);
                 }
-            } catch (Exception e) {
-                logger.error("Error in mail interceptor: " + e.getMessage(), e);
-                proceed = false;
-                break;
+                metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.MIME_BUILD, stageStart);
+
+                stageStart = metrics.startTimer();
+                SmtpTransportPool pool = transportPool;
+                if (pool != null) {
+                    pool.send(message);
+                } else {
+                    javaMailSender.send(message);
+                }
+                metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.TRANSPORT_SEND, stageStart);
+                logger.info("Email sent to {} with subject: {}", String.join(", ", emailContext.getTo()), emailContext.getSubject());
+                success = true;
+                outcome = MailMetrics.Outcome.SUCCESS;
+            } catch (MessagingException e) {
+                logger.error("Failed to send email: " + e.getMessage(), e);
+                throw sendFailure(e);
+            } catch (MailSendException e) {
+                // The only message of the send failed; report its own cause when there is one
+                logger.error("Failed to send email: " + e.getMessage(), e);
+                Exception cause = e.getFailedMessages().isEmpty() ? e : e.getFailedMessages().values().iterator().next();
+                throw sendFailure(cause);
+            } catch (MailException e) {
+                logger.error("Failed to send email: " + e.getMessage(), e);
+                throw new MailProviderException("Failed to send email: " + e.getMessage(), e);
+            } finally {
+                // Always notify interceptors about the result
+                notifyAfterSend(stages, context, success, metrics);
             }
+        } finally {
+            metrics.inFlight(METRICS_COMPONENT, -1);
+            metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.TOTAL, start);
+            metrics.recordOutcome(METRICS_COMPONENT, outcome);
         }
+    }
 
-        if (!proceed) {
-            logger.info("Email sending was cancelled by an interceptor");
-            // Notify interceptors about cancellation
-            notifyAfterSend(context, false);
-            return;
+    /**
+     * Send a batch of emails over a single transport connection.
+     * Each message still runs through the interceptors individually; the messages
+     * that pass are handed to {@link JavaMailSender#send(MimeMessage...)} in chunks,
+     * or sent on pooled transports when a transport pool is configured.
+     * Only the MIME messages of one chunk are held at a time.
+     */
+    @Override
+    public MailBatchResult sendMails(List<? extends MailContext> contexts) {
+        if (contexts.size() <= BATCH_SIZE) {
+            return sendBatch(contexts, null, null);
         }
-
-        if (!enabled) {
-            logger.info("Email sending is disabled. Would have sent email with subject: {}", emailContext.getSubject());
-            // Notify interceptors about disabled sending
-            notifyAfterSend(context, false);
-            return;
+        MailBatchResult result = new MailBatchResult(contexts.size());
+        for (int start = 0; start < contexts.size(); start += BATCH_SIZE) {
+            int end = Math.min(start + BATCH_SIZE, contexts.size());
+            copyFailures(sendBatch(contexts.subList(start, end), null, null), start, result);
         }
+        return result;
+    }
 
-        if (javaMailSender == null) {
-            logger.warn("JavaMailSender is not configured. Cannot send email: {}", emailContext.getSubject());
-            // Notify interceptors about failure
-            notifyAfterSend(context, false);
-            return;
+    /**
+     * Send the same email to many recipients with its content encoded only once.
+     * The body and attachments are encoded into a shared template, and the message
+     * for each recipient only adds its own To, Date and Message-ID headers.
+     * Interceptors still run per recipient; a recipient whose context an interceptor
+     * changes beyond its To addresses gets a fully rebuilt message.
+     * Recipients are sent in batches like {@link #sendMails(List)}.
+     */
+    @Override
+    public MailBatchResult sendBroadcast(EmailContext template, List<String> recipients) {
+        if (!enabled || javaMailSender == null || recipients.isEmpty()) {
+            return MailProvider.super.sendBroadcast(template, recipients);
         }
 
-        boolean success = false;
+        MailMetrics metrics = getMetrics();
+        EmailContext shared = template.forRecipient(recipients.get(0)).setTo(List.of());
+        BroadcastTemplate encoded;
         try {
-            MimeMessage message = javaMailSender.createMimeMessage();
-            boolean hasAttachments = !emailContext.getAttachments().isEmpty();
-            MimeMessageHelper helper = new MimeMessageHelper(message, hasAttachments, "UTF-8");
-
-            helper.setFrom(emailContext.getFrom());
-            helper.setTo(emailContext.getTo().toArray(new String[0]));
+            long stageStart = metrics.startTimer();
+            encoded = BroadcastTemplate.encode(getSession(), createMimeMessage(shared));
+            metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.MIME_BUILD, stageStart);
+        } catch (MessagingException | IOException e) {
+            logger.error("Failed to encode broadcast email: " + e.getMessage(), e);
+            MailBatchResult result = new MailBatchResult(recipients.size());
+            MailProviderException failure = new MailProviderException("Failed to build email: " + e.getMessage(), e, true);
+            for (int i = 0; i < recipients.size(); i++) {
+                result.markFailed(i, failure);
+            }
+            return result;
+        }
 
-            List<String> cc = emailContext.getCc();
-            if (!cc.isEmpty()) {
-                helper.setCc(cc.toArray(new String[0]));
+        MailBatchResult result = new MailBatchResult(recipients.size());
+        for (int start = 0; start < recipients.size(); start += BATCH_SIZE) {
+            int end = Math.min(start + BATCH_SIZE, recipients.size());
+            List<EmailContext> contexts = new ArrayList<>(end - start);
+            for (int i = start; i < end; i++) {
+                contexts.add(template.forRecipient(recipients.get(i)));
             }
+            copyFailures(sendBatch(contexts, shared, encoded), start, result);
+        }
+        return result;
+    }
 
-            List<String> bcc = emailContext.getBcc();
-            if (!bcc.isEmpty()) {
-                helper.setBcc(bcc.toArray(new String[0]));
+    private static void copyFailures(MailBatchResult chunkResult, int offset, MailBatchResult result) {
+        for (int i = 0; i < chunkResult.size(); i++) {
+            if (!chunkResult.isSuccess(i)) {
+                result.markFailed(offset + i, chunkResult.getFailure(i));
             }
+        }
+    }
 
-            helper.setSubject(emailContext.getSubject());
-            helper.setText(emailContext.getContent(), emailContext.isHtml());
+    /**
+     * Send a batch, building messages with the same content as the broadcast context
+     * from its encoded template
+     */
+    private MailBatchResult sendBatch(List<? extends MailContext> contexts, EmailContext broadcast,
+                                      BroadcastTemplate encoded) {
+        MailBatchResult result = new MailBatchResult(contexts.size());
+        boolean[] attempted = new boolean[contexts.size()];
+        MailPipeline.Stages[] stages = new MailPipeline.Stages[contexts.size()];
+        List<MimeMessage> messages = new ArrayList<>(contexts.size());
+        Map<MimeMessage, Integer> messageIndexes = new IdentityHashMap<>();
+        MailMetrics.Outcome[] outcomes = new MailMetrics.Outcome[contexts.size()];
+        MailMetrics metrics = getMetrics();
+        long start = metrics.startTimer();
+        metrics.inFlight(METRICS_COMPONENT, contexts.size());
 
-            // Add attachments if any
-            if (hasAttachments) {
-                for (MailAttachment attachment : emailContext.getAttachments()) {
-                    addAttachment(helper, attachment);
+        // Run the after send hooks however the batch ended, so every context leaves the pipeline
+        boolean completed = false;
+        try {
+            for (int i = 0; i < contexts.size(); i++) {
+                MailContext context = contexts.get(i);
+                if (!(context instanceof EmailContext)) {
+                    result.markFailed(i, new MailProviderException("SpringMailProvider requires an EmailContext", null, true));
+                    continue;
+                }
+                EmailContext emailContext = (EmailContext) context;
+
+                // Vetoed, disabled and unconfigured sends complete normally, just like sendMail
+                long stageStart = metrics.startTimer();
+                stages[i] = pipeline.enter(context);
+                boolean proceed = stages[i].beforeSend(context);
+                metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.INTERCEPTOR_BEFORE, stageStart);
+                if (!proceed) {
+                    logger.info("Email sending was cancelled by an interceptor");
+                    outcomes[i] = MailMetrics.Outcome.VETOED;
+                    continue;
+                }
+                if (!enabled) {
+                    logger.info("Email sending is disabled. Would have sent email with subject: {}", emailContext.getSubject());
+                    outcomes[i] = MailMetrics.Outcome.DISABLED;
+                    continue;
+                }
+                if (javaMailSender == null) {
+                    logger.warn("JavaMailSender is not configured. Cannot send email: {}", emailContext.getSubject());
+                    continue;
+                }
+
+                attempted[i] = true;
+                try {
+                    stageStart = metrics.startTimer();
+                    MimeMessage message = encoded != null && broadcast.hasSameContent(emailContext)
+                            ? encoded.createMessage(emailContext.getTo())
+                            : createMimeMessage(emailContext);
+                    metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.MIME_BUILD, stageStart);
+                    messageIndexes.put(message, i);
+                    messages.add(message);
+                } catch (MessagingException e) {
+                    logger.error("Failed to build email: " + e.getMessage(), e);
+                    result.markFailed(i, new MailProviderException("Failed to build email: " + e.getMessage(), e, true));
                 }
             }
 
-            javaMailSender.send(message);
-            logger.info("Email sent to {} with subject: {}", String.join(", ", emailContext.getTo()), emailContext.getSubject());
-            success = true;
-        } catch (MessagingException e) {
-            logger.error("Failed to send email: " + e.getMessage(), e);
-            throw new MailProviderException("Failed to send email: " + e.getMessage(), e);
+            long transportStart = metrics.startTimer();
+            SmtpTransportPool pool = transportPool;
+            if (!messages.isEmpty() && pool != null) {
+                for (Map.Entry<MimeMessage, Exception> failed : pool.sendAll(messages).entrySet()) {
+                    Exception cause = failed.getValue();
+                    logger.error("Failed to send email: " + cause.getMessage(), cause);
+                    result.markFailed(messageIndexes.get(failed.getKey()), sendFailure(cause));
+                }
+            } else if (!messages.isEmpty()) {
+                try {
+                    javaMailSender.send(messages.toArray(new MimeMessage[0]));
+                } catch (MailSendException e) {
+                    // Only the listed messages failed; the rest of the batch went out
+                    for (Map.Entry<Object, Exception> failed : e.getFailedMessages().entrySet()) {
+                        Integer index = messageIndexes.get(failed.getKey());
+                        if (index != null) {
+                            Exception cause = failed.getValue();
+                            logger.error("Failed to send email: " + cause.getMessage(), cause);
+                            result.markFailed(index, sendFailure(cause));
+                        }
+                    }
+                    if (e.getFailedMessages().isEmpty()) {
+                        markAllFailed(result, messageIndexes, e);
+                    }
+                } catch (MailException e) {
+                    markAllFailed(result, messageIndexes, e);
+                }
+            }
+            if (!messages.isEmpty()) {
+                metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.TRANSPORT_SEND, transportStart);
+            }
+            completed = true;
         } finally {
-            // Always notify interceptors about the result
-            notifyAfterSend(context, success);
+            int sent = 0;
+            for (int i = 0; i < contexts.size(); i++) {
+                boolean success = completed && attempted[i] && result.isSuccess(i);
+                if (stages[i] != null) {
+                    if (success) {
+                        sent++;
+                    }
+                    notifyAfterSend(stages[i], contexts.get(i), success, metrics);
+                }
+                metrics.recordOutcome(METRICS_COMPONENT, outcomes[i] != null ? outcomes[i]
+                        : success ? MailMetrics.Outcome.SUCCESS : MailMetrics.Outcome.FAILURE);
+            }
+            metrics.inFlight(METRICS_COMPONENT, -contexts.size());
+            metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.TOTAL, start);
+            logger.info("Sent {} of {} emails in batch", sent, contexts.size());
+        }
+        return result;
+    }
+
+    /**
+     * Wrap a failure reported by JavaMail. Rejected addresses are permanent, since
+     * the relay would reject them again; everything else is a transport failure.
+     */
+    private static MailProviderException sendFailure(Exception cause) {
+        boolean permanent = cause instanceof SendFailedException || cause instanceof AddressException;
+        return new MailProviderException("Failed to send email: " + cause.getMessage(), cause, permanent);
+    }
+
+    private Session getSession() {
+        if (javaMailSender instanceof JavaMailSenderImpl) {
+            return ((JavaMailSenderImpl) javaMailSender).getSession();
+        }
+        return Session.getInstance(new Properties());
+    }
+
+    private void markAllFailed(MailBatchResult result, Map<MimeMessage, Integer> messageIndexes, Exception e) {
+        logger.error("Failed to send email batch: " + e.getMessage(), e);
+        for (Integer index : messageIndexes.values()) {
+            result.markFailed(index, new MailProviderException("Failed to send email: " + e.getMessage(), e));
         }
     }
 
+    /**
+     * Build the MIME message for an email context
+     *
+     * @param emailContext The email context
+     * @return The populated MIME message
+     * @throws MessagingException If the message cannot be built
+     */
+    private MimeMessage createMimeMessage(EmailContext emailContext) throws MessagingException {
+        MimeMessage message = javaMailSender.createMimeMessage();
+        boolean hasAttachments = !emailContext.getAttachments().isEmpty();
+        MimeMessageHelper helper = new MimeMessageHelper(message, hasAttachments, "UTF-8");
+
+        helper.setFrom(emailContext.getFrom());
+        helper.setTo(emailContext.getTo().toArray(new String[0]));
+
+        List<String> cc = emailContext.getCc();
+        if (!cc.isEmpty()) {
+            helper.setCc(cc.toArray(new String[0]));
+        }
+
+        List<String> bcc = emailContext.getBcc();
+        if (!bcc.isEmpty()) {
+            helper.setBcc(bcc.toArray(new String[0]));
+        }
+
+        helper.setSubject(emailContext.getSubject());
+        ContentWriter contentWriter = emailContext.getContentWriter();
+        if (contentWriter == null) {
+            helper.setText(emailContext.getContent(), emailContext.isHtml());
+        } else if (helper.isMultipart()) {
+            // Stream the content into the message as it is sent instead of rendering it here
+            MimeBodyPart body = new MimeBodyPart();
+            StreamingContentDataHandler.setContent(body, contentWriter, emailContext.isHtml());
+            helper.getMimeMultipart().addBodyPart(body);
+        } else {
+            StreamingContentDataHandler.setContent(message, contentWriter, emailContext.isHtml());
+        }
+
+        // Add attachments if any
+        if (hasAttachments) {
+            for (Attachment attachment : emailContext.getAttachments()) {
+                addAttachment(helper, attachment);
+            }
+        }
+
+        return message;
+    }
+
     /**
      * Notify all interceptors after sending attempt
      *
+     * @param stages The stages the before send hooks ran in
      * @param context The mail context
      * @param success Whether sending was successful
+     * @param metrics The metrics to report the time spent to
      */
-    private void notifyAfterSend(MailContext context, boolean success) {
-        for (MailInterceptor interceptor : interceptors) {
+    private void notifyAfterSend(MailPipeline.Stages stages, MailContext context, boolean success,
+                                 MailMetrics metrics) {
+        long start = metrics.startTimer();
+        stages.afterSend(context, success);
+        metrics.recordStage(METRICS_COMPONENT, MailMetrics.Stage.INTERCEPTOR_AFTER, start);
+    }
+
+    /**
+     * Add an attachment. Attachments are streamed from their source into the
+     * message as it is written instead of being loaded into memory; with an
+     * attachment store, file content and shared byte arrays are encoded once and
+     * reused. Other byte arrays are usually unique to one email, so hashing and
+     * caching them would cost more than encoding them directly.
+     */
+    private void addAttachment(MimeMessageHelper helper, Attachment attachment) throws MessagingException {
+        Attachment.AttachmentSource source = attachment.getSource();
+        AttachmentStore store = attachmentStore;
+
+        EncodedContent encoded = null;
+        if (store != null && source instanceof Attachment.PathAttachmentSource) {
+            Path path = ((Attachment.PathAttachmentSource) source).getPath();
             try {
-                interceptor.afterSend(context, success);
-            } catch (Exception e) {
-                logger.error("Error in mail interceptor afterSend: " + e.getMessage(), e);
+                encoded = store.get(path);
+            } catch (IOException e) {
+                throw new MessagingException("Failed to read attachment: " + path, e);
             }
+        } else if (store != null && source instanceof Attachment.ByteArrayAttachmentSource
+                && ((Attachment.ByteArrayAttachmentSource) source).isShared()) {
+            encoded = store.get(((Attachment.ByteArrayAttachmentSource) source).getBytes());
         }
-    }
-
-    private void addAttachment(MimeMessageHelper helper, MailAttachment attachment) throws MessagingException {
-        MailAttachment.AttachmentSource source = attachment.getSource();
 
-        if (source instanceof MailAttachment.PathAttachmentSource) {
-            FileSystemResource resource = new FileSystemResource(
-                    new File(((MailAttachment.PathAttachmentSource) source).getPath().toString()));
-            helper.addAttachment(attachment.getName(), resource, attachment.getContentType());
-        } else if (source instanceof MailAttachment.InputStreamAttachmentSource) {
-            InputStreamResource resource = new InputStreamResource(
-                    ((MailAttachment.InputStreamAttachmentSource) source).getInputStream());
-            helper.addAttachment(attachment.getName(), resource, attachment.getContentType());
-        } else if (source instanceof MailAttachment.ByteArrayAttachmentSource) {
+        if (encoded != null) {
+            helper.getRootMimeMultipart().addBodyPart(new StreamingAttachmentBodyPart(
+                    encoded, attachment.getName(), attachment.getContentType()));
+        } else if (source instanceof Attachment.ByteArrayAttachmentSource) {
             ByteArrayResource resource = new ByteArrayResource(
-                    ((MailAttachment.ByteArrayAttachmentSource) source).getBytes());
+                    ((Attachment.ByteArrayAttachmentSource) source).getBytes());
             helper.addAttachment(attachment.getName(), resource, attachment.getContentType());
+        } else {
+            helper.getRootMimeMultipart().addBodyPart(new StreamingAttachmentBodyPart(
+                    source, attachment.getName(), attachment.getContentType()));
         }
     }
 }
@@ -0,0 +1,167 @@
+package com.example.email.spring.provider;
+
+import com.example.email.core.attachment.Base64Lines;
+import com.example.email.core.attachment.EncodedContent;
+import com.example.email.core.model.Attachment;
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+import jakarta.mail.MessagingException;
+import jakarta.mail.Part;
+import jakarta.mail.internet.MimeBodyPart;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Enumeration;
+
+/**
+ * Attachment body part that base64-encodes its content straight from the source
+ * into the message output stream. Content is read in fixed-size chunks through
+ * pooled buffers, so an attachment never has to fit in memory.
+ * <p>
+ * Attachments can be written as often as their source can be read, so stream
+ * attachments only once; a failing provider does not hand a message whose stream
+ * has been read to another provider. Content that is already encoded, from an
+ * {@link com.example.email.core.attachment.AttachmentStore}, is copied out as is.
+ */
+class StreamingAttachmentBodyPart extends MimeBodyPart {
+    private static final byte[] CRLF = {'\r', '\n'};
+    private static final String DEFAULT_CONTENT_TYPE = "application/octet-stream";
+
+    private final Attachment.AttachmentSource source;
+    private final EncodedContent encoded;
+
+    /**
+     * Create an attachment read from its source as the message is written
+     *
+     * @param source The attachment content
+     * @param name The attachment file name
+     * @param contentType The content type, or null for application/octet-stream
+     * @throws MessagingException If the headers cannot be set
+     */
+    StreamingAttachmentBodyPart(Attachment.AttachmentSource source, String name, String contentType)
+            throws MessagingException {
+        this(source, () -> Channels.newInputStream(source.openChannel()), null, name, contentType);
+    }
+
+    /**
+     * Create an attachment from content that is already encoded
+     *
+     * @param encoded The encoded content, written as is
+     * @param name The attachment file name
+     * @param contentType The content type, or null for application/octet-stream
+     * @throws MessagingException If the headers cannot be set
+     */
+    StreamingAttachmentBodyPart(EncodedContent encoded, String name, String contentType) throws MessagingException {
+        this(null, () -> Base64.getMimeDecoder().wrap(encoded.openStream()), encoded, name, contentType);
+    }
+
+    private StreamingAttachmentBodyPart(Attachment.AttachmentSource source, StreamSource streamSource,
+                                        EncodedContent encoded, String name, String contentType)
+            throws MessagingException {
+        this.source = source;
+        this.encoded = encoded;
+        String type = contentType != null ? contentType : DEFAULT_CONTENT_TYPE;
+        // Only for callers that inspect the content; writeTo never goes through it
+        setDataHandler(new DataHandler(new ContentDataSource(streamSource, type, name)));
+        setHeader("Content-Type", type);
+        setDisposition(Part.ATTACHMENT);
+        if (name != null) {
+            setFileName(name);
+        }
+        setHeader("Content-Transfer-Encoding", "base64");
+    }
+
+    /**
+     * Headers are set once in the constructor; nothing is derived from the content
+     */
+    @Override
+    protected void updateHeaders() {
+    }
+
+    @Override
+    public void writeTo(OutputStream os) throws IOException, MessagingException {
+        Enumeration<String> headerLines = getAllHeaderLines();
+        while (headerLines.hasMoreElements()) {
+            os.write(headerLines.nextElement().getBytes(StandardCharsets.ISO_8859_1));
+            os.write(CRLF);
+        }
+        os.write(CRLF);
+
+        AttachmentBufferPool pool = AttachmentBufferPool.shared();
+        AttachmentBufferPool.Buffers buffers = pool.acquire();
+        try {
+            if (encoded != null) {
+                encoded.writeTo(os, buffers.output);
+            } else {
+                encodeContent(os, buffers);
+            }
+        } finally {
+            pool.release(buffers);
+        }
+        os.flush();
+    }
+
+    private void encodeContent(OutputStream os, AttachmentBufferPool.Buffers buffers) throws IOException {
+        try (ReadableByteChannel channel = source.openChannel()) {
+            ByteBuffer input = buffers.input;
+            boolean end = false;
+            while (!end) {
+                input.clear();
+                while (input.hasRemaining()) {
+                    if (channel.read(input) < 0) {
+                        end = true;
+                        break;
+                    }
+                }
+                input.flip();
+                os.write(buffers.output, 0, Base64Lines.encode(input, buffers.output));
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface StreamSource {
+        InputStream open() throws IOException;
+    }
+
+    /**
+     * Data source over the raw attachment content
+     */
+    private static final class ContentDataSource implements DataSource {
+        private final StreamSource streamSource;
+        private final String contentType;
+        private final String name;
+
+        private ContentDataSource(StreamSource streamSource, String contentType, String name) {
+            this.streamSource = streamSource;
+            this.contentType = contentType;
+            this.name = name;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            return streamSource.open();
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("Attachment content is read-only");
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+}
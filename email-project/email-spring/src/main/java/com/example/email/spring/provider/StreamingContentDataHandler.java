@@ -0,0 +1,97 @@
+package com.example.email.spring.provider;
+
+import com.example.email.core.model.ContentWriter;
+import jakarta.activation.DataHandler;
+import jakarta.activation.DataSource;
+import jakarta.mail.MessagingException;
+import jakarta.mail.internet.MimePart;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Data handler that writes the content of an email from its {@link ContentWriter}
+ * straight into the message output stream, through the transfer encoder, as the
+ * message is sent. The content is never held as a string or byte array.
+ * <p>
+ * The transfer encoding is set up front, so JavaMail does not write the content
+ * once more just to choose one.
+ */
+final class StreamingContentDataHandler extends DataHandler {
+    private final ContentWriter contentWriter;
+
+    private StreamingContentDataHandler(ContentWriter contentWriter, String contentType) {
+        super(new ContentDataSource(contentWriter, contentType));
+        this.contentWriter = contentWriter;
+    }
+
+    /**
+     * Set the content of a message or body part to the output of a content writer
+     *
+     * @param part The message or body part
+     * @param contentWriter The content writer
+     * @param html Whether the content is HTML
+     * @throws MessagingException If the headers cannot be set
+     */
+    static void setContent(MimePart part, ContentWriter contentWriter, boolean html) throws MessagingException {
+        String contentType = (html ? "text/html" : "text/plain") + "; charset=UTF-8";
+        part.setDataHandler(new StreamingContentDataHandler(contentWriter, contentType));
+        part.setHeader("Content-Type", contentType);
+        part.setHeader("Content-Transfer-Encoding", "quoted-printable");
+    }
+
+    @Override
+    public void writeTo(OutputStream os) throws IOException {
+        // Not closed, the message keeps writing to the stream
+        Writer writer = new OutputStreamWriter(os, StandardCharsets.UTF_8);
+        try {
+            contentWriter.writeTo(writer);
+        } catch (RuntimeException e) {
+            throw new IOException("Failed to render email content: " + e.getMessage(), e);
+        }
+        writer.flush();
+    }
+
+    /**
+     * Data source rendering the content into memory, only for callers that
+     * inspect the content; writeTo never goes through it
+     */
+    private static final class ContentDataSource implements DataSource {
+        private final ContentWriter contentWriter;
+        private final String contentType;
+
+        private ContentDataSource(ContentWriter contentWriter, String contentType) {
+            this.contentWriter = contentWriter;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            try {
+                return new ByteArrayInputStream(contentWriter.render().getBytes(StandardCharsets.UTF_8));
+            } catch (RuntimeException e) {
+                throw new IOException("Failed to render email content: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public OutputStream getOutputStream() throws IOException {
+            throw new IOException("Email content is read-only");
+        }
+
+        @Override
+        public String getContentType() {
+            return contentType;
+        }
+
+        @Override
+        public String getName() {
+            return null;
+        }
+    }
+}
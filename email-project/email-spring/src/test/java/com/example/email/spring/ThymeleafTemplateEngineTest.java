@@ -0,0 +1,39 @@
+package com.example.email.spring;
+
+import org.junit.jupiter.api.Test;
+import org.thymeleaf.spring6.SpringTemplateEngine;
+import org.thymeleaf.templateresolver.StringTemplateResolver;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class ThymeleafTemplateEngineTest {
+
+    @Test
+    void emailTemplatesUseAPrivateEngine() {
+        SpringTemplateEngine applicationEngine = new SpringTemplateEngine();
+        StringTemplateResolver applicationResolver = new StringTemplateResolver();
+        applicationEngine.setTemplateResolver(applicationResolver);
+
+        ThymeleafTemplateEngine engine = ThymeleafTemplateEngine.builder(applicationEngine).build();
+
+        assertEquals("<p>Hello Ada</p>", engine.process("email/greeting", Map.of("name", "Ada")).trim());
+        // The application's engine was neither configured nor used for the email template
+        assertFalse(applicationEngine.isInitialized());
+        assertEquals(1, applicationEngine.getTemplateResolvers().size());
+
+        // Other templates are still processed by the application's engine
+        assertEquals("Hi Ada", engine.process("Hi [[${name}]]", Map.of("name", "Ada")));
+    }
+
+    @Test
+    void warmUpSkipsMissingTemplates() {
+        ThymeleafTemplateEngine engine = ThymeleafTemplateEngine.builder(new SpringTemplateEngine()).build();
+
+        // The greeting renders without its variable, the other template does not exist
+        assertEquals(1, engine.warmUp(List.of("email/greeting", "email/missing")));
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.email.spring.metrics;
+
+import com.example.email.core.metrics.MailMetrics;
+import com.example.email.core.provider.EmailContext;
+import com.example.email.spring.provider.SpringMailProvider;
+import com.example.email.testsupport.FakeSmtpServer;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class MicrometerMailMetricsTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final MicrometerMailMetrics metrics = new MicrometerMailMetrics(registry);
+
+    @Test
+    void stagesAreTimedPerComponentAndStage() {
+        metrics.recordStage("service", MailMetrics.Stage.TEMPLATE_RENDER, metrics.startTimer());
+        metrics.recordStage("service", MailMetrics.Stage.TEMPLATE_RENDER, metrics.startTimer());
+        metrics.recordStage("spring", MailMetrics.Stage.TOTAL, metrics.startTimer());
+
+        assertEquals(2, timer("service", "template_render").count());
+        assertEquals(1, timer("spring", "total").count());
+        // All stages of a component are registered together, unused ones stay at zero
+        assertEquals(0, timer("service", "mime_build").count());
+        assertNull(registry.find("email.send.stage").tag("component", "other").timer());
+    }
+
+    @Test
+    void outcomesAreCountedPerComponent() {
+        metrics.recordOutcome("spring", MailMetrics.Outcome.SUCCESS);
+        metrics.recordOutcome("spring", MailMetrics.Outcome.SUCCESS);
+        metrics.recordOutcome("spring", MailMetrics.Outcome.VETOED);
+        metrics.recordOutcome("service", MailMetrics.Outcome.FAILURE);
+
+        assertEquals(2.0, counter("spring", "success"));
+        assertEquals(1.0, counter("spring", "vetoed"));
+        assertEquals(0.0, counter("spring", "failure"));
+        assertEquals(1.0, counter("service", "failure"));
+    }
+
+    @Test
+    void gaugesFollowTheirSources() {
+        AtomicInteger depth = new AtomicInteger(3);
+        metrics.registerQueue("bounded", depth::get);
+        metrics.inFlight("spring", 2);
+        metrics.inFlight("spring", -1);
+
+        assertEquals(3.0, registry.get("email.send.queue.depth").tag("queue", "bounded").gauge().value());
+        depth.set(7);
+        assertEquals(7.0, registry.get("email.send.queue.depth").tag("queue", "bounded").gauge().value());
+        assertEquals(1.0, registry.get("email.send.in.flight").tag("component", "spring").gauge().value());
+    }
+
+    @Test
+    void providerReportsStagesAndOutcomes() throws Exception {
+        try (FakeSmtpServer server = FakeSmtpServer.builder().build().start()) {
+            JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+            mailSender.setHost(server.getHost());
+            mailSender.setPort(server.getPort());
+            SpringMailProvider provider = new SpringMailProvider(mailSender, true).setMetrics(metrics);
+
+            provider.sendMail(new EmailContext("sender@example.com", List.of("a@example.com"),
+                    "Hello", "<p>Hello</p>", true));
+
+            String component = SpringMailProvider.METRICS_COMPONENT;
+            for (String stage : List.of("interceptor_before", "mime_build", "transport_send", "total")) {
+                assertEquals(1, timer(component, stage).count(), stage);
+            }
+            assertTrue(timer(component, "total").totalTime(TimeUnit.NANOSECONDS) > 0);
+            assertEquals(1.0, counter(component, "success"));
+            assertEquals(0, metrics.getInFlight(component));
+        }
+    }
+
+    private Timer timer(String component, String stage) {
+        Timer timer = registry.find("email.send.stage").tag("component", component).tag("stage", stage).timer();
+        assertNotNull(timer, component + "/" + stage);
+        return timer;
+    }
+
+    private double counter(String component, String outcome) {
+        return registry.get("email.send.outcome").tag("component", component).tag("outcome", outcome)
+                .counter().count();
+    }
+}
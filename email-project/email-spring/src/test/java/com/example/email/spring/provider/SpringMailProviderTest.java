@@ -0,0 +1,185 @@
+package com.example.email.spring.provider;
+
+import com.example.email.core.provider.EmailContext;
+import com.example.email.core.provider.MailBatchResult;
+import com.example.email.core.provider.MailContext;
+import com.example.email.core.provider.MailInterceptor;
+import com.example.email.core.provider.MailProvider;
+import com.example.email.testsupport.FakeSmtpServer;
+import com.example.email.testsupport.ReceivedMessage;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SpringMailProviderTest {
+
+    private FakeSmtpServer server;
+
+    @BeforeEach
+    void startServer() {
+        server = FakeSmtpServer.builder()
+                .bodyMode(FakeSmtpServer.BodyMode.CAPTURE)
+                .rejectRecipient("unknown@example.com")
+                .build()
+                .start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void largeBatchesAreSentInChunks() throws Exception {
+        SpringMailProvider provider = new SpringMailProvider(mailSender(), true);
+        List<EmailContext> contexts = new ArrayList<>();
+        for (int i = 0; i < 1201; i++) {
+            contexts.add(email("user" + i + "@example.com"));
+        }
+
+        MailBatchResult result = provider.sendMails(contexts);
+
+        assertEquals(1201, result.getSuccessCount());
+        assertTrue(server.awaitMessageCount(1201, Duration.ofSeconds(30)));
+        // Each chunk of at most 500 messages is sent over its own connection
+        assertEquals(3, server.getConnectionCount());
+    }
+
+    @Test
+    void pooledTransportIsReusedAcrossSends() throws Exception {
+        JavaMailSenderImpl mailSender = mailSender();
+        try (SmtpTransportPool pool = SmtpTransportPool.builder(mailSender).maxTotal(1).build()) {
+            SpringMailProvider provider = new SpringMailProvider(mailSender, true).setTransportPool(pool);
+            for (int i = 0; i < 5; i++) {
+                provider.sendMail(email("user" + i + "@example.com"));
+            }
+
+            assertTrue(server.awaitMessageCount(5, Duration.ofSeconds(10)));
+            assertEquals(1, server.getConnectionCount());
+            assertEquals(1, pool.getCreatedCount());
+        }
+    }
+
+    @Test
+    void rejectedRecipientFailsOnlyItsMessageAndKeepsTheTransport() throws Exception {
+        JavaMailSenderImpl mailSender = mailSender();
+        try (SmtpTransportPool pool = SmtpTransportPool.builder(mailSender).maxTotal(1).build()) {
+            SpringMailProvider provider = new SpringMailProvider(mailSender, true).setTransportPool(pool);
+
+            MailBatchResult result = provider.sendMails(List.of(
+                    email("a@example.com"), email("unknown@example.com"), email("b@example.com")));
+
+            assertTrue(result.isSuccess(0));
+            assertFalse(result.isSuccess(1));
+            MailProvider.MailProviderException failure =
+                    assertInstanceOf(MailProvider.MailProviderException.class, result.getFailure(1));
+            assertTrue(failure.isPermanent());
+            assertTrue(result.isSuccess(2));
+
+            assertTrue(server.awaitMessageCount(2, Duration.ofSeconds(10)));
+            assertEquals(1, server.getConnectionCount());
+            assertEquals(0, pool.getDestroyedCount());
+        }
+    }
+
+    @Test
+    void broadcastSendsTheSharedContentToEachRecipient() throws Exception {
+        // Changing the subject for one recipient makes the provider rebuild that message
+        MailInterceptor personalize = new MailInterceptor() {
+            @Override
+            public boolean beforeSend(MailContext context) {
+                EmailContext email = (EmailContext) context;
+                if (email.getTo().contains("b@example.com")) {
+                    email.setSubject("Personal offer");
+                }
+                return true;
+            }
+
+            @Override
+            public void afterSend(MailContext context, boolean success) {
+            }
+        };
+        SpringMailProvider provider = new SpringMailProvider(mailSender(), true, List.of(personalize));
+
+        MailBatchResult result = provider.sendBroadcast(email("ignored@example.com"),
+                List.of("a@example.com", "b@example.com", "c@example.com"));
+
+        assertEquals(3, result.getSuccessCount());
+        assertTrue(server.awaitMessageCount(3, Duration.ofSeconds(10)));
+        List<ReceivedMessage> messages = server.getMessages();
+        assertEquals(3, messages.size());
+        for (ReceivedMessage message : messages) {
+            String recipient = message.getRecipients().get(0);
+            String text = message.asString();
+            assertEquals(1, message.getRecipients().size());
+            assertTrue(text.contains("To: " + recipient + "\r\n"), text);
+            assertTrue(text.contains("Hello everyone"), text);
+            assertTrue(text.contains(recipient.equals("b@example.com") ? "Subject: Personal offer" : "Subject: News"), text);
+        }
+    }
+
+    @Test
+    void uncheckedTransportFailureLeavesThePipeline() throws Exception {
+        AtomicBoolean broken = new AtomicBoolean(true);
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl() {
+            @Override
+            public void send(MimeMessage... mimeMessages) {
+                if (broken.getAndSet(false)) {
+                    throw new IllegalStateException("Transport bug");
+                }
+                super.send(mimeMessages);
+            }
+        };
+        mailSender.setHost(server.getHost());
+        mailSender.setPort(server.getPort());
+        List<String> calls = new CopyOnWriteArrayList<>();
+        MailInterceptor recording = new MailInterceptor() {
+            @Override
+            public boolean beforeSend(MailContext context) {
+                calls.add("before");
+                return true;
+            }
+
+            @Override
+            public void afterSend(MailContext context, boolean success) {
+                calls.add("after:" + success);
+            }
+        };
+        SpringMailProvider provider = new SpringMailProvider(mailSender, true, List.of(recording));
+
+        EmailContext context = email("a@example.com");
+        assertThrows(IllegalStateException.class, () -> provider.sendMails(List.of(context)));
+        assertEquals(List.of("before", "after:false"), calls);
+
+        // The context is sent again with its interceptors instead of being treated as nested
+        calls.clear();
+        assertTrue(provider.sendMails(List.of(context)).isSuccess(0));
+        assertEquals(List.of("before", "after:true"), calls);
+        assertTrue(server.awaitMessageCount(1, Duration.ofSeconds(10)));
+    }
+
+    private JavaMailSenderImpl mailSender() {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost(server.getHost());
+        mailSender.setPort(server.getPort());
+        return mailSender;
+    }
+
+    private static EmailContext email(String to) {
+        return new EmailContext("sender@example.com", List.of(to), "News", "<p>Hello everyone</p>", true);
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.email.spring.provider;
+
+import com.example.email.core.attachment.Base64Lines;
+import com.example.email.core.model.Attachment;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingAttachmentBodyPartTest {
+    private static final int CHUNK = Base64Lines.CHUNK_SIZE;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void fileContentRoundTripsAroundTheChunkSize() throws Exception {
+        int[] sizes = {0, 1, 2, 3, Base64Lines.LINE_BYTES, CHUNK - 1, CHUNK, CHUNK + 1, 2 * CHUNK + 57};
+        for (int size : sizes) {
+            byte[] content = randomBytes(size);
+            Path file = directory.resolve("file-" + size + ".bin");
+            Files.write(file, content);
+
+            String written = write(new StreamingAttachmentBodyPart(
+                    Attachment.fromPath(file, "file.bin", null).getSource(), "file.bin", null));
+
+            String body = body(written);
+            assertEquals(Base64Lines.encodedLength(size), body.length(), "size " + size);
+            assertArrayEquals(content, Base64.getMimeDecoder().decode(body), "size " + size);
+            for (String line : body.split("\r\n")) {
+                assertTrue(line.length() <= 76, "size " + size);
+            }
+        }
+    }
+
+    @Test
+    void headersDescribeTheAttachment() throws Exception {
+        String written = write(new StreamingAttachmentBodyPart(
+                Attachment.fromBytes("data".getBytes(StandardCharsets.UTF_8), "data.txt", "text/plain").getSource(),
+                "data.txt", "text/plain"));
+
+        String headers = written.substring(0, written.indexOf("\r\n\r\n"));
+        assertTrue(headers.contains("Content-Type: text/plain"));
+        assertTrue(headers.contains("Content-Transfer-Encoding: base64"));
+        assertTrue(headers.contains("filename=data.txt"));
+        assertEquals("ZGF0YQ==\r\n", body(written));
+    }
+
+    @Test
+    void streamAttachmentCanOnlyBeWrittenOnce() throws Exception {
+        byte[] content = randomBytes(CHUNK + 10);
+        StreamingAttachmentBodyPart part = new StreamingAttachmentBodyPart(
+                Attachment.fromInputStream(new ByteArrayInputStream(content), "data.bin", null).getSource(),
+                "data.bin", null);
+
+        assertArrayEquals(content, Base64.getMimeDecoder().decode(body(write(part))));
+        assertThrows(IOException.class, () -> write(part));
+    }
+
+    private static String write(StreamingAttachmentBodyPart part) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        part.writeTo(out);
+        return out.toString(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String body(String written) {
+        return written.substring(written.indexOf("\r\n\r\n") + 4);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        new Random(size).nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.email.spring.provider;
+
+import com.example.email.core.model.ContentWriter;
+import com.example.email.core.provider.EmailContext;
+import com.example.email.testsupport.FakeSmtpServer;
+import com.example.email.testsupport.ReceivedMessage;
+import jakarta.mail.Session;
+import jakarta.mail.internet.MimeMessage;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.mail.javamail.JavaMailSenderImpl;
+
+import java.io.ByteArrayInputStream;
+import java.time.Duration;
+import java.util.List;
+import java.util.Properties;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StreamingContentDataHandlerTest {
+
+    // Long lines and non-ASCII characters, so the encoder has to wrap and escape
+    private static final String CONTENT = "<html><body><p>Gr\u00fc\u00dfe aus Z\u00fcrich = "
+            + "x".repeat(200) + "</p>\n<p>" + "\u00dcn\u00efc\u00f6d\u00e9 ".repeat(30) + "</p></body></html>";
+
+    private FakeSmtpServer server;
+
+    @BeforeEach
+    void startServer() {
+        server = FakeSmtpServer.builder()
+                .bodyMode(FakeSmtpServer.BodyMode.CAPTURE)
+                .build()
+                .start();
+    }
+
+    @AfterEach
+    void stopServer() {
+        server.close();
+    }
+
+    @Test
+    void streamedContentMatchesStringContent() throws Exception {
+        SpringMailProvider provider = new SpringMailProvider(mailSender(), true);
+
+        // As created by the generated methods with and without the streaming variant
+        provider.sendMail(email("string@example.com", CONTENT, true));
+        EmailContext streamed = email("streamed@example.com", null, true);
+        streamed.setContentWriter(writer -> writer.write(CONTENT));
+        provider.sendMail(streamed);
+
+        assertTrue(server.awaitMessageCount(2, Duration.ofSeconds(10)));
+        for (ReceivedMessage received : server.getMessages()) {
+            MimeMessage message = parse(received);
+            assertEquals("quoted-printable", message.getEncoding(), received.getRecipients().get(0));
+            assertTrue(message.getContentType().startsWith("text/html"), message.getContentType());
+            assertEquals(CONTENT, text(message));
+            assertEncodedLinesAreShort(received.asString());
+        }
+    }
+
+    @Test
+    void plainTextContentIsStreamed() throws Exception {
+        SpringMailProvider provider = new SpringMailProvider(mailSender(), true);
+        EmailContext context = email("plain@example.com", null, false);
+        context.setContentWriter(writer -> writer.write("Gr\u00fc\u00dfe\nsecond line"));
+
+        provider.sendMail(context);
+
+        assertTrue(server.awaitMessageCount(1, Duration.ofSeconds(10)));
+        MimeMessage message = parse(server.getMessages().get(0));
+        assertEquals("quoted-printable", message.getEncoding());
+        assertTrue(message.getContentType().startsWith("text/plain"), message.getContentType());
+        assertEquals("Gr\u00fc\u00dfe\nsecond line", text(message));
+        assertTrue(server.getMessages().get(0).asString().contains("Gr=C3=BC=C3=9Fe"));
+    }
+
+    @Test
+    void contentWriterIsCalledOncePerSend() throws Exception {
+        int[] calls = new int[1];
+        ContentWriter contentWriter = writer -> {
+            calls[0]++;
+            writer.write(CONTENT);
+        };
+        SpringMailProvider provider = new SpringMailProvider(mailSender(), true);
+        EmailContext context = email("once@example.com", null, true);
+        context.setContentWriter(contentWriter);
+
+        provider.sendMail(context);
+
+        assertTrue(server.awaitMessageCount(1, Duration.ofSeconds(10)));
+        assertEquals(1, calls[0]);
+    }
+
+    private static void assertEncodedLinesAreShort(String text) {
+        for (String line : text.split("\r\n")) {
+            assertTrue(line.length() <= 76, line);
+        }
+    }
+
+    /**
+     * Get the decoded text, with the line breaks the message is sent with normalized
+     */
+    private static String text(MimeMessage message) throws Exception {
+        return ((String) message.getContent()).replace("\r\n", "\n").stripTrailing();
+    }
+
+    private static MimeMessage parse(ReceivedMessage received) throws Exception {
+        return new MimeMessage(Session.getInstance(new Properties()), new ByteArrayInputStream(received.getData()));
+    }
+
+    private JavaMailSenderImpl mailSender() {
+        JavaMailSenderImpl mailSender = new JavaMailSenderImpl();
+        mailSender.setHost(server.getHost());
+        mailSender.setPort(server.getPort());
+        return mailSender;
+    }
+
+    private static EmailContext email(String to, String content, boolean html) {
+        return new EmailContext("sender@example.com", List.of(to), "News", content, html);
+    }
+}
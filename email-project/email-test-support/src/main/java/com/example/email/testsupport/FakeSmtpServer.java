@@ -0,0 +1,709 @@
+package com.example.email.testsupport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded SMTP server for tests and load tests.
+ * <p>
+ * All connections are served by a single non-blocking selector thread, which
+ * is enough to accept mail at loopback line rate. The server accepts every
+ * envelope except recipients configured to be rejected, supports pipelining, and depending on the {@link BodyMode} discards,
+ * counts or captures message bodies. Replies can be delayed to simulate a slow
+ * relay; delayed replies are scheduled on the selector thread instead of
+ * blocking it, so latency does not limit throughput across connections.
+ * <p>
+ * The server speaks plain SMTP without TLS or authentication.
+ */
+public class FakeSmtpServer implements AutoCloseable {
+
+    /**
+     * What the server does with message bodies
+     */
+    public enum BodyMode {
+        /**
+         * Only count messages
+         */
+        DISCARD,
+
+        /**
+         * Count messages and body bytes
+         */
+        COUNT,
+
+        /**
+         * Keep every message for inspection with {@link #getMessages()}
+         */
+        CAPTURE
+    }
+
+    private static final int DATA_END = -1;
+
+    private final InetAddress bindAddress;
+    private final int requestedPort;
+    private final String hostname;
+    private final BodyMode bodyMode;
+    private final long commandLatencyNanos;
+    private final long messageLatencyNanos;
+    private final int bufferSize;
+    private final Set<String> rejectedRecipients;
+
+    private final AtomicLong connectionCount = new AtomicLong();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicLong messageCount = new AtomicLong();
+    private final AtomicLong bodyBytes = new AtomicLong();
+    private final ConcurrentLinkedQueue<ReceivedMessage> messages = new ConcurrentLinkedQueue<>();
+    private final Object messageMonitor = new Object();
+    private volatile int messageWaiters;
+
+    // Only accessed by the selector thread
+    private final PriorityQueue<ScheduledReply> scheduledReplies = new PriorityQueue<>();
+    private long replySequence;
+
+    private Selector selector;
+    private ServerSocketChannel serverChannel;
+    private Thread selectorThread;
+    private volatile boolean running;
+
+    private FakeSmtpServer(Builder builder) {
+        this.bindAddress = builder.bindAddress;
+        this.requestedPort = builder.port;
+        this.hostname = builder.hostname;
+        this.bodyMode = builder.bodyMode;
+        this.commandLatencyNanos = builder.commandLatency.toNanos();
+        this.messageLatencyNanos = builder.messageLatency.toNanos();
+        this.bufferSize = builder.bufferSize;
+        this.rejectedRecipients = Set.copyOf(builder.rejectedRecipients);
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Bind the server socket and start accepting connections
+     *
+     * @return This server for chaining
+     * @throws UncheckedIOException If the port cannot be bound
+     */
+    public synchronized FakeSmtpServer start() {
+        if (running) {
+            return this;
+        }
+        try {
+            selector = Selector.open();
+            serverChannel = ServerSocketChannel.open();
+            serverChannel.bind(new InetSocketAddress(bindAddress, requestedPort), 1024);
+            serverChannel.configureBlocking(false);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to start fake SMTP server", e);
+        }
+        running = true;
+        selectorThread = new Thread(this::selectLoop, "fake-smtp-selector");
+        selectorThread.setDaemon(true);
+        selectorThread.start();
+        return this;
+    }
+
+    /**
+     * Get the port the server listens on, useful when it was started on port 0
+     *
+     * @return The bound port
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public String getHost() {
+        return bindAddress.getHostAddress();
+    }
+
+    private void selectLoop() {
+        try {
+            while (running) {
+                ScheduledReply next = scheduledReplies.peek();
+                if (next == null) {
+                    selector.select();
+                } else {
+                    long waitNanos = next.due - System.nanoTime();
+                    if (waitNanos <= 0) {
+                        selector.selectNow();
+                    } else {
+                        selector.select(Math.max(1L, TimeUnit.NANOSECONDS.toMillis(waitNanos + 999_999L)));
+                    }
+                }
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    SmtpSession session = (SmtpSession) key.attachment();
+                    try {
+                        if (key.isReadable()) {
+                            read(session);
+                        }
+                        if (!session.closed && key.isWritable()) {
+                            flush(session);
+                        }
+                    } catch (IOException e) {
+                        closeSession(session);
+                    }
+                }
+
+                runDueReplies();
+            }
+        } catch (IOException e) {
+            // Selector failure; the server cannot continue
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof SmtpSession) {
+                    closeSession((SmtpSession) key.attachment());
+                }
+            }
+            closeQuietly(serverChannel);
+            closeQuietly(selector);
+        }
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+            SmtpSession session = new SmtpSession(channel, key, bufferSize);
+            key.attach(session);
+            connectionCount.incrementAndGet();
+            activeConnections.incrementAndGet();
+            try {
+                reply(session, "220 " + hostname + " ESMTP fake server ready", commandLatencyNanos);
+                flush(session);
+            } catch (IOException e) {
+                closeSession(session);
+            }
+        }
+    }
+
+    private void read(SmtpSession session) throws IOException {
+        int read = session.channel.read(session.in);
+        if (read < 0) {
+            closeSession(session);
+            return;
+        }
+        session.in.flip();
+        process(session);
+        session.in.clear();
+        if (!session.closed) {
+            flush(session);
+        }
+    }
+
+    /**
+     * Consume everything read so far; partial command lines are kept in the session
+     */
+    private void process(SmtpSession session) {
+        byte[] array = session.in.array();
+        int position = session.in.position();
+        int limit = session.in.limit();
+        while (position < limit && !session.closeAfterFlush) {
+            if (session.dataMode) {
+                position = consumeData(session, array, position, limit);
+                continue;
+            }
+            byte b = array[position++];
+            if (b == '\n') {
+                handleLine(session);
+            } else if (session.lineLength < SmtpSession.MAX_LINE_LENGTH) {
+                session.line[session.lineLength++] = b;
+            } else {
+                session.lineTooLong = true;
+            }
+        }
+    }
+
+    private int consumeData(SmtpSession session, byte[] array, int position, int limit) {
+        int start = position;
+        int state = session.dataState;
+        while (position < limit) {
+            if (state == SmtpSession.DATA_TEXT) {
+                // Fast path: skip to the next CR
+                while (position < limit && array[position] != '\r') {
+                    position++;
+                }
+                if (position == limit) {
+                    break;
+                }
+                position++;
+                state = SmtpSession.DATA_CR;
+                continue;
+            }
+            byte b = array[position++];
+            switch (state) {
+                case SmtpSession.DATA_CR:
+                    state = b == '\n' ? SmtpSession.DATA_LINE_START : b == '\r' ? SmtpSession.DATA_CR : SmtpSession.DATA_TEXT;
+                    break;
+                case SmtpSession.DATA_LINE_START:
+                    state = b == '.' ? SmtpSession.DATA_DOT : b == '\r' ? SmtpSession.DATA_CR : SmtpSession.DATA_TEXT;
+                    break;
+                case SmtpSession.DATA_DOT:
+                    state = b == '\r' ? SmtpSession.DATA_DOT_CR : SmtpSession.DATA_TEXT;
+                    break;
+                default:
+                    state = b == '\n' ? DATA_END : b == '\r' ? SmtpSession.DATA_CR : SmtpSession.DATA_TEXT;
+                    break;
+            }
+            if (state == DATA_END) {
+                break;
+            }
+        }
+
+        int consumed = position - start;
+        session.dataBytes += consumed;
+        if (session.capture != null) {
+            session.capture.write(array, start, consumed);
+        }
+        if (state == DATA_END) {
+            finishMessage(session);
+        } else {
+            session.dataState = state;
+        }
+        return position;
+    }
+
+    private void finishMessage(SmtpSession session) {
+        // The terminating "." CRLF is not part of the message
+        long size = session.dataBytes - 3;
+        if (bodyMode != BodyMode.DISCARD) {
+            bodyBytes.addAndGet(size);
+        }
+        if (session.capture != null) {
+            byte[] raw = session.capture.toByteArray();
+            messages.add(new ReceivedMessage(session.mailFrom, session.recipients, unstuff(raw, raw.length - 3)));
+        }
+        long count = messageCount.incrementAndGet();
+        session.resetTransaction();
+
+        if (messageWaiters > 0) {
+            synchronized (messageMonitor) {
+                messageMonitor.notifyAll();
+            }
+        }
+        reply(session, "250 2.0.0 Ok: queued as " + count, commandLatencyNanos + messageLatencyNanos);
+    }
+
+    /**
+     * Remove the dot added in front of lines starting with a dot
+     */
+    private static byte[] unstuff(byte[] raw, int length) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(length);
+        boolean lineStart = true;
+        for (int i = 0; i < length; i++) {
+            byte b = raw[i];
+            if (!(lineStart && b == '.')) {
+                out.write(b);
+            }
+            lineStart = b == '\n';
+        }
+        return out.toByteArray();
+    }
+
+    private void handleLine(SmtpSession session) {
+        int length = session.lineLength;
+        if (length > 0 && session.line[length - 1] == '\r') {
+            length--;
+        }
+        String line = new String(session.line, 0, length, StandardCharsets.US_ASCII);
+        session.lineLength = 0;
+        if (session.lineTooLong) {
+            session.lineTooLong = false;
+            reply(session, "500 5.5.6 Line too long", commandLatencyNanos);
+            return;
+        }
+        handleCommand(session, line);
+    }
+
+    private void handleCommand(SmtpSession session, String line) {
+        int space = line.indexOf(' ');
+        String verb = (space < 0 ? line : line.substring(0, space)).toUpperCase(Locale.ROOT);
+        switch (verb) {
+            case "EHLO":
+                session.resetTransaction();
+                reply(session, "250-" + hostname + "\r\n250-PIPELINING\r\n250-8BITMIME\r\n250 SIZE", commandLatencyNanos);
+                break;
+            case "HELO":
+                session.resetTransaction();
+                reply(session, "250 " + hostname, commandLatencyNanos);
+                break;
+            case "MAIL":
+                session.resetTransaction();
+                session.mailFrom = address(line);
+                reply(session, "250 2.1.0 Ok", commandLatencyNanos);
+                break;
+            case "RCPT":
+                if (session.mailFrom == null) {
+                    reply(session, "503 5.5.1 Need MAIL command", commandLatencyNanos);
+                } else {
+                    String recipient = address(line);
+                    if (rejectedRecipients.contains(recipient.toLowerCase(Locale.ROOT))) {
+                        reply(session, "550 5.1.1 Mailbox unavailable", commandLatencyNanos);
+                    } else {
+                        session.recipients.add(recipient);
+                        reply(session, "250 2.1.5 Ok", commandLatencyNanos);
+                    }
+                }
+                break;
+            case "DATA":
+                if (session.recipients.isEmpty()) {
+                    reply(session, "503 5.5.1 Need RCPT command", commandLatencyNanos);
+                } else {
+                    session.startData(bodyMode == BodyMode.CAPTURE);
+                    reply(session, "354 End data with <CR><LF>.<CR><LF>", commandLatencyNanos);
+                }
+                break;
+            case "RSET":
+                session.resetTransaction();
+                reply(session, "250 2.0.0 Ok", commandLatencyNanos);
+                break;
+            case "NOOP":
+                reply(session, "250 2.0.0 Ok", commandLatencyNanos);
+                break;
+            case "VRFY":
+                reply(session, "252 2.0.0 Cannot verify", commandLatencyNanos);
+                break;
+            case "QUIT":
+                session.closeAfterFlush = true;
+                reply(session, "221 2.0.0 Bye", commandLatencyNanos);
+                break;
+            default:
+                reply(session, "502 5.5.2 Command not recognized", commandLatencyNanos);
+                break;
+        }
+    }
+
+    /**
+     * Extract the address from {@code MAIL FROM:<address>} or {@code RCPT TO:<address>}
+     */
+    private static String address(String line) {
+        int open = line.indexOf('<');
+        int close = line.indexOf('>', open + 1);
+        if (open >= 0 && close > open) {
+            return line.substring(open + 1, close);
+        }
+        int colon = line.indexOf(':');
+        return colon >= 0 ? line.substring(colon + 1).trim() : "";
+    }
+
+    /**
+     * Queue a reply. Without latency it goes straight to the output buffer,
+     * otherwise it is scheduled, keeping the replies of a session in order.
+     */
+    private void reply(SmtpSession session, String text, long latencyNanos) {
+        byte[] bytes = (text + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        if (latencyNanos <= 0 && session.scheduledReplies == 0) {
+            session.appendOutput(bytes);
+            return;
+        }
+        long due = Math.max(System.nanoTime() + latencyNanos, session.lastReplyDue);
+        session.lastReplyDue = due;
+        session.scheduledReplies++;
+        scheduledReplies.add(new ScheduledReply(due, replySequence++, session, bytes));
+    }
+
+    private void runDueReplies() {
+        long now = System.nanoTime();
+        while (!scheduledReplies.isEmpty() && scheduledReplies.peek().due - now <= 0) {
+            ScheduledReply reply = scheduledReplies.poll();
+            SmtpSession session = reply.session;
+            session.scheduledReplies--;
+            if (session.closed) {
+                continue;
+            }
+            session.appendOutput(reply.bytes);
+            try {
+                flush(session);
+            } catch (IOException e) {
+                closeSession(session);
+            }
+        }
+    }
+
+    private void flush(SmtpSession session) throws IOException {
+        session.out.flip();
+        if (session.out.hasRemaining()) {
+            session.channel.write(session.out);
+        }
+        session.out.compact();
+        if (session.out.position() > 0) {
+            session.key.interestOps(SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+        } else {
+            session.key.interestOps(SelectionKey.OP_READ);
+            if (session.closeAfterFlush && session.scheduledReplies == 0) {
+                closeSession(session);
+            }
+        }
+    }
+
+    private void closeSession(SmtpSession session) {
+        if (session.closed) {
+            return;
+        }
+        session.closed = true;
+        session.key.cancel();
+        closeQuietly(session.channel);
+        activeConnections.decrementAndGet();
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        if (closeable == null) {
+            return;
+        }
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Nothing to do during shutdown
+        }
+    }
+
+    /**
+     * Wait until the server has received at least the given number of messages in total
+     *
+     * @param count The message count to wait for
+     * @param timeout The maximum time to wait
+     * @return true if the count was reached, false on timeout
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    public boolean awaitMessageCount(long count, Duration timeout) throws InterruptedException {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        synchronized (messageMonitor) {
+            messageWaiters++;
+            try {
+                while (messageCount.get() < count) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(messageMonitor, remaining);
+                }
+                return true;
+            } finally {
+                messageWaiters--;
+            }
+        }
+    }
+
+    /**
+     * Get the messages captured so far
+     *
+     * @return The captured messages in arrival order; always empty unless the body mode is CAPTURE
+     */
+    public List<ReceivedMessage> getMessages() {
+        return new ArrayList<>(messages);
+    }
+
+    /**
+     * Reset all counters and drop captured messages
+     */
+    public void reset() {
+        messages.clear();
+        messageCount.set(0);
+        bodyBytes.set(0);
+        connectionCount.set(0);
+    }
+
+    public long getMessageCount() {
+        return messageCount.get();
+    }
+
+    /**
+     * Get the total size of all received message bodies
+     *
+     * @return The number of bytes received in DATA sections; always 0 in DISCARD mode
+     */
+    public long getBodyBytes() {
+        return bodyBytes.get();
+    }
+
+    /**
+     * Get the number of connections accepted since start or the last reset
+     *
+     * @return The number of accepted connections
+     */
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    public BodyMode getBodyMode() {
+        return bodyMode;
+    }
+
+    /**
+     * Stop the server and close all connections
+     */
+    @Override
+    public void close() {
+        Thread thread;
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            thread = selectorThread;
+        }
+        selector.wakeup();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class ScheduledReply implements Comparable<ScheduledReply> {
+        private final long due;
+        private final long sequence;
+        private final SmtpSession session;
+        private final byte[] bytes;
+
+        private ScheduledReply(long due, long sequence, SmtpSession session, byte[] bytes) {
+            this.due = due;
+            this.sequence = sequence;
+            this.session = session;
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int compareTo(ScheduledReply other) {
+            int byDue = Long.compare(due - other.due, 0L);
+            return byDue != 0 ? byDue : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    /**
+     * Builder for FakeSmtpServer
+     */
+    public static class Builder {
+        private InetAddress bindAddress = InetAddress.getLoopbackAddress();
+        private int port = 0;
+        private String hostname = "localhost";
+        private BodyMode bodyMode = BodyMode.COUNT;
+        private Duration commandLatency = Duration.ZERO;
+        private Duration messageLatency = Duration.ZERO;
+        private int bufferSize = 64 * 1024;
+        private final Set<String> rejectedRecipients = new HashSet<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Address to listen on, the loopback address by default
+         */
+        public Builder bindAddress(InetAddress bindAddress) {
+            this.bindAddress = bindAddress;
+            return this;
+        }
+
+        /**
+         * Port to listen on, 0 (the default) picks a free port
+         */
+        public Builder port(int port) {
+            this.port = port;
+            return this;
+        }
+
+        /**
+         * Host name announced in the greeting and EHLO reply
+         */
+        public Builder hostname(String hostname) {
+            this.hostname = hostname;
+            return this;
+        }
+
+        public Builder bodyMode(BodyMode bodyMode) {
+            this.bodyMode = bodyMode;
+            return this;
+        }
+
+        /**
+         * Delay before every reply, simulating network round trip time
+         */
+        public Builder commandLatency(Duration commandLatency) {
+            this.commandLatency = commandLatency;
+            return this;
+        }
+
+        /**
+         * Additional delay before a message is accepted after DATA, simulating relay processing
+         */
+        public Builder messageLatency(Duration messageLatency) {
+            this.messageLatency = messageLatency;
+            return this;
+        }
+
+        /**
+         * Size of the per-connection read buffer
+         */
+        public Builder bufferSize(int bufferSize) {
+            this.bufferSize = bufferSize;
+            return this;
+        }
+
+        /**
+         * Reject a recipient address with a permanent 550 reply to RCPT,
+         * simulating an unknown mailbox; matching ignores case
+         */
+        public Builder rejectRecipient(String address) {
+            this.rejectedRecipients.add(address.toLowerCase(Locale.ROOT));
+            return this;
+        }
+
+        /**
+         * Create the server; call {@link FakeSmtpServer#start()} to bind it
+         *
+         * @return The new server
+         */
+        public FakeSmtpServer build() {
+            if (bodyMode == null) {
+                throw new IllegalStateException("Body mode must not be null");
+            }
+            if (commandLatency.isNegative() || messageLatency.isNegative()) {
+                throw new IllegalStateException("Latency must not be negative");
+            }
+            if (bufferSize < 512) {
+                throw new IllegalStateException("Buffer size must be at least 512 bytes");
+            }
+            return new FakeSmtpServer(this);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.email.testsupport;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * A message captured by {@link FakeSmtpServer} in {@link FakeSmtpServer.BodyMode#CAPTURE} mode
+ */
+public final class ReceivedMessage {
+    private final String from;
+    private final List<String> recipients;
+    private final byte[] data;
+
+    ReceivedMessage(String from, List<String> recipients, byte[] data) {
+        this.from = from;
+        this.recipients = List.copyOf(recipients);
+        this.data = data;
+    }
+
+    /**
+     * Get the envelope sender from MAIL FROM
+     *
+     * @return The sender address
+     */
+    public String getFrom() {
+        return from;
+    }
+
+    /**
+     * Get the envelope recipients from RCPT TO
+     *
+     * @return The recipient addresses
+     */
+    public List<String> getRecipients() {
+        return recipients;
+    }
+
+    /**
+     * Get the raw message with headers, after dot-unstuffing
+     *
+     * @return A copy of the message bytes
+     */
+    public byte[] getData() {
+        return data.clone();
+    }
+
+    public int getSize() {
+        return data.length;
+    }
+
+    /**
+     * Get the raw message as text
+     *
+     * @return The message decoded as UTF-8
+     */
+    public String asString() {
+        return new String(data, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,79 @@
+package com.example.email.testsupport;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * State of one client connection. Only touched by the selector thread.
+ */
+final class SmtpSession {
+    // Progress through the CRLF "." CRLF terminator of the DATA section
+    static final int DATA_TEXT = 0;
+    static final int DATA_CR = 1;
+    static final int DATA_LINE_START = 2;
+    static final int DATA_DOT = 3;
+    static final int DATA_DOT_CR = 4;
+
+    static final int MAX_LINE_LENGTH = 4096;
+
+    final SocketChannel channel;
+    final SelectionKey key;
+    final ByteBuffer in;
+    ByteBuffer out;
+
+    final byte[] line = new byte[MAX_LINE_LENGTH];
+    int lineLength;
+    boolean lineTooLong;
+
+    boolean dataMode;
+    int dataState;
+    long dataBytes;
+    ByteArrayOutputStream capture;
+
+    String mailFrom;
+    final List<String> recipients = new ArrayList<>();
+
+    // Replies are delayed in order: a reply is never due before the previous one
+    long lastReplyDue;
+    int scheduledReplies;
+    boolean closeAfterFlush;
+    boolean closed;
+
+    SmtpSession(SocketChannel channel, SelectionKey key, int bufferSize) {
+        this.channel = channel;
+        this.key = key;
+        this.in = ByteBuffer.allocate(bufferSize);
+        this.out = ByteBuffer.allocate(1024);
+    }
+
+    void startData(boolean captureBody) {
+        dataMode = true;
+        dataState = DATA_LINE_START;
+        dataBytes = 0;
+        capture = captureBody ? new ByteArrayOutputStream(8192) : null;
+    }
+
+    void resetTransaction() {
+        mailFrom = null;
+        recipients.clear();
+        dataMode = false;
+        capture = null;
+    }
+
+    /**
+     * Append bytes to the output buffer, growing it if needed
+     */
+    void appendOutput(byte[] bytes) {
+        if (out.remaining() < bytes.length) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes.length));
+            out.flip();
+            grown.put(out);
+            out = grown;
+        }
+        out.put(bytes);
+    }
+}
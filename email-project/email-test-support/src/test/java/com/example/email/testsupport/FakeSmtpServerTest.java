@@ -0,0 +1,233 @@
+package com.example.email.testsupport;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FakeSmtpServerTest {
+
+    @Test
+    void speaksTheSmtpDialog() throws Exception {
+        try (FakeSmtpServer server = FakeSmtpServer.builder().bodyMode(FakeSmtpServer.BodyMode.CAPTURE).build().start();
+             Client client = new Client(server)) {
+            assertTrue(client.reply().startsWith("220 "));
+            assertTrue(client.command("EHLO client").contains("250-PIPELINING"));
+            assertEquals("250 2.1.0 Ok", client.command("MAIL FROM:<sender@example.com>"));
+            assertEquals("250 2.1.5 Ok", client.command("RCPT TO:<a@example.com>"));
+            assertEquals("250 2.1.5 Ok", client.command("RCPT TO:<b@example.com>"));
+            assertTrue(client.command("DATA").startsWith("354 "));
+            // A line starting with a dot is sent with an extra dot, which the server removes
+            client.write("Subject: Hi\r\n\r\n..hidden\r\nend\r\n");
+            assertEquals("250 2.0.0 Ok: queued as 1", client.command("."));
+            assertEquals("221 2.0.0 Bye", client.command("QUIT"));
+        }
+    }
+
+    @Test
+    void capturedMessageHasTheUnstuffedBody() throws Exception {
+        try (FakeSmtpServer server = FakeSmtpServer.builder().bodyMode(FakeSmtpServer.BodyMode.CAPTURE).build().start();
+             Client client = new Client(server)) {
+            client.reply();
+            client.command("HELO client");
+            client.command("MAIL FROM:<sender@example.com>");
+            client.command("RCPT TO:<a@example.com>");
+            client.command("DATA");
+            client.write("Subject: Hi\r\n\r\n..hidden\r\n");
+            client.command(".");
+
+            assertTrue(server.awaitMessageCount(1, Duration.ofSeconds(5)));
+            List<ReceivedMessage> messages = server.getMessages();
+            assertEquals(1, messages.size());
+            assertEquals("sender@example.com", messages.get(0).getFrom());
+            assertEquals(List.of("a@example.com"), messages.get(0).getRecipients());
+            assertEquals("Subject: Hi\r\n\r\n.hidden\r\n", messages.get(0).asString());
+            assertEquals(1, server.getConnectionCount());
+        }
+    }
+
+    @Test
+    void rejectsCommandsOutOfSequence() throws Exception {
+        try (FakeSmtpServer server = FakeSmtpServer.builder()
+                .rejectRecipient("Unknown@example.com")
+                .build()
+                .start();
+             Client client = new Client(server)) {
+            client.reply();
+            client.command("EHLO client");
+            assertTrue(client.command("RCPT TO:<a@example.com>").startsWith("503 "));
+            assertTrue(client.command("DATA").startsWith("503 "));
+            assertTrue(client.command("HELLO").startsWith("502 "));
+            assertTrue(client.command("NOOP " + "x".repeat(5000)).startsWith("500 "));
+
+            client.command("MAIL FROM:<sender@example.com>");
+            assertTrue(client.command("RCPT TO:<unknown@example.com>").startsWith("550 "));
+            // No recipient was accepted, so there is nothing to send to
+            assertTrue(client.command("DATA").startsWith("503 "));
+            assertEquals(0, server.getMessageCount());
+        }
+    }
+
+    @Test
+    void pipelinedCommandsAreAnsweredInOrder() throws Exception {
+        try (FakeSmtpServer server = FakeSmtpServer.builder().build().start();
+             Client client = new Client(server)) {
+            client.reply();
+            client.command("EHLO client");
+            client.write("MAIL FROM:<sender@example.com>\r\nRCPT TO:<a@example.com>\r\nDATA\r\n");
+            assertEquals("250 2.1.0 Ok", client.reply());
+            assertEquals("250 2.1.5 Ok", client.reply());
+            assertTrue(client.reply().startsWith("354 "));
+            client.write("Subject: Hi\r\n\r\nbody\r\n.\r\nMAIL FROM:<sender@example.com>\r\n");
+            assertTrue(client.reply().startsWith("250 2.0.0 Ok: queued"));
+            assertEquals("250 2.1.0 Ok", client.reply());
+
+            assertEquals(1, server.getMessageCount());
+            assertEquals("Subject: Hi\r\n\r\nbody\r\n".length(), server.getBodyBytes());
+        }
+    }
+
+    @Test
+    void repliesAreDelayedByTheConfiguredLatency() throws Exception {
+        try (FakeSmtpServer server = FakeSmtpServer.builder()
+                .commandLatency(Duration.ofMillis(50))
+                .messageLatency(Duration.ofMillis(150))
+                .build()
+                .start();
+             Client client = new Client(server)) {
+            client.reply();
+            long start = System.nanoTime();
+            client.command("NOOP");
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+
+            client.command("MAIL FROM:<sender@example.com>");
+            client.command("RCPT TO:<a@example.com>");
+            client.command("DATA");
+            client.write("Subject: Hi\r\n\r\nbody\r\n");
+            start = System.nanoTime();
+            client.command(".");
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(200));
+        }
+    }
+
+    @Test
+    void latencyIsNotSerializedAcrossConnections() throws Exception {
+        int connections = 8;
+        ExecutorService clients = Executors.newFixedThreadPool(connections);
+        try (FakeSmtpServer server = FakeSmtpServer.builder()
+                .commandLatency(Duration.ofMillis(200))
+                .build()
+                .start()) {
+            long start = System.nanoTime();
+            List<CompletableFuture<String>> replies = new ArrayList<>();
+            for (int i = 0; i < connections; i++) {
+                replies.add(CompletableFuture.supplyAsync(() -> {
+                    try (Client client = new Client(server)) {
+                        client.reply();
+                        return client.command("NOOP");
+                    } catch (IOException e) {
+                        throw new IllegalStateException(e);
+                    }
+                }, clients));
+            }
+            for (CompletableFuture<String> reply : replies) {
+                assertEquals("250 2.0.0 Ok", reply.get(10, TimeUnit.SECONDS));
+            }
+
+            // Greeting and NOOP take 400 ms on each connection; served one by one they would take 3.2 s
+            assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(2000));
+            assertEquals(connections, server.getConnectionCount());
+        } finally {
+            clients.shutdown();
+        }
+    }
+
+    @Test
+    void awaitMessageCountTimesOutAndResetClearsCounters() throws Exception {
+        try (FakeSmtpServer server = FakeSmtpServer.builder().bodyMode(FakeSmtpServer.BodyMode.CAPTURE).build().start();
+             Client client = new Client(server)) {
+            assertFalse(server.awaitMessageCount(1, Duration.ofMillis(50)));
+
+            client.reply();
+            client.command("HELO client");
+            client.command("MAIL FROM:<sender@example.com>");
+            client.command("RCPT TO:<a@example.com>");
+            client.command("DATA");
+            client.write("Subject: Hi\r\n\r\nbody\r\n");
+            client.command(".");
+            assertTrue(server.awaitMessageCount(1, Duration.ofSeconds(5)));
+
+            server.reset();
+            assertEquals(0, server.getMessageCount());
+            assertEquals(0, server.getBodyBytes());
+            assertEquals(0, server.getConnectionCount());
+            assertEquals(List.of(), server.getMessages());
+            assertEquals(1, server.getActiveConnections());
+        }
+    }
+
+    /**
+     * Minimal blocking SMTP client speaking raw protocol lines
+     */
+    private static final class Client implements AutoCloseable {
+        private final Socket socket;
+        private final BufferedReader in;
+        private final OutputStream out;
+
+        private Client(FakeSmtpServer server) throws IOException {
+            socket = new Socket(server.getHost(), server.getPort());
+            socket.setSoTimeout(5000);
+            in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII));
+            out = socket.getOutputStream();
+        }
+
+        private String command(String line) throws IOException {
+            write(line + "\r\n");
+            return reply();
+        }
+
+        private void write(String text) throws IOException {
+            out.write(text.getBytes(StandardCharsets.US_ASCII));
+            out.flush();
+        }
+
+        /**
+         * Read one reply; the lines of a multi-line reply are joined with a newline
+         */
+        private String reply() throws IOException {
+            StringBuilder reply = new StringBuilder();
+            String line;
+            do {
+                line = in.readLine();
+                if (line == null) {
+                    throw new IOException("Connection closed by the server");
+                }
+                if (reply.length() > 0) {
+                    reply.append('\n');
+                }
+                reply.append(line);
+            } while (line.length() > 3 && line.charAt(3) == '-');
+            return reply.toString();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}